@@ -0,0 +1,32 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loader that fetches the values of many keys at once, so that all misses of
+ * a {@link Cache#getAll(java.util.Collection, BatchCacheLoader)} call cost a
+ * single round trip. Use a {@link SingleKeyLoaderAdapter} to combine existing
+ * {@link CacheLoader}s into a batch loader.
+ * 
+ * @param <K>
+ *            type of the keys.
+ * @param <V>
+ *            type of the loaded values.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface BatchCacheLoader<K, V> {
+
+    /**
+     * Gets new versions of the values of the given keys.
+     * 
+     * @param keys
+     *            to load the values of.
+     * @return the new values by key. Keys for which no value exists may be
+     *         left out.
+     * @throws CacheException
+     *             if loading failed.
+     */
+    Map<K, V> refreshAll(Set<K> keys) throws CacheException;
+}
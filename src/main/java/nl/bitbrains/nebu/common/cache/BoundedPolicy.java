@@ -0,0 +1,214 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which entries to evict from a cache with a maximum total weight,
+ * following the W-TinyLFU policy: new entries enter a small LRU window, and
+ * entries leaving the window are only admitted to the main LRU space if they
+ * have been used more often recently than the entry they would replace, as
+ * estimated by a {@link FrequencySketch}. This keeps a burst of one-off keys
+ * from flushing out the frequently used ones.
+ * 
+ * The policy only keeps track of keys and weights; the owning cache removes
+ * the evicted keys from its own map. Writes and removals must be done while
+ * holding {@link #lock()}, so that the cache and the policy stay consistent.
+ * Accesses are recorded without blocking and are skipped when the lock is
+ * busy, which makes the LRU order approximate under contention.
+ * 
+ * @param <K>
+ *            type of the cache keys.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class BoundedPolicy<K> {
+
+    private static final int WINDOW_PERCENTAGE = 1;
+    private static final int PERCENT = 100;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final LinkedHashMap<K, Integer> window;
+    private final LinkedHashMap<K, Integer> main;
+    private final FrequencySketch sketch;
+    private final ReentrantLock lock;
+    private long windowWeight;
+    private long mainWeight;
+
+    /**
+     * @param maximumWeight
+     *            the maximum total weight of all entries in the cache.
+     */
+    BoundedPolicy(final long maximumWeight) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum weight should not be negative.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight * BoundedPolicy.WINDOW_PERCENTAGE
+                / BoundedPolicy.PERCENT);
+        this.window = new LinkedHashMap<K, Integer>(BoundedPolicy.INITIAL_CAPACITY,
+                BoundedPolicy.LOAD_FACTOR, true);
+        this.main = new LinkedHashMap<K, Integer>(BoundedPolicy.INITIAL_CAPACITY,
+                BoundedPolicy.LOAD_FACTOR, true);
+        this.sketch = new FrequencySketch(maximumWeight);
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * @return the maximum total weight of all entries in the cache.
+     */
+    long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * @return the total weight of the entries currently tracked.
+     */
+    long getWeight() {
+        return this.windowWeight + this.mainWeight;
+    }
+
+    /**
+     * Acquires the lock that guards writes to the policy and the cache.
+     */
+    void lock() {
+        this.lock.lock();
+    }
+
+    /**
+     * Releases the lock acquired by {@link #lock()}.
+     */
+    void unlock() {
+        this.lock.unlock();
+    }
+
+    /**
+     * Records a read of the key. Does not block.
+     * 
+     * @param key
+     *            that was read.
+     */
+    void recordAccess(final K key) {
+        this.sketch.increment(key);
+        if (this.lock.tryLock()) {
+            try {
+                if (this.window.get(key) == null) {
+                    this.main.get(key);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records that the key was added to or replaced in the cache. Must be
+     * called while holding the lock.
+     * 
+     * @param key
+     *            that was written.
+     * @param weight
+     *            of the new entry.
+     * @return the keys that should be evicted from the cache, possibly
+     *         including the key that was just written.
+     */
+    List<K> recordWrite(final K key, final int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight should not be negative.");
+        }
+        this.recordRemoval(key);
+        this.sketch.increment(key);
+        this.window.put(key, weight);
+        this.windowWeight += weight;
+
+        final List<K> evicted = new ArrayList<K>();
+        final Iterator<Map.Entry<K, Integer>> candidates = this.window.entrySet().iterator();
+        while ((this.windowWeight > this.windowMaximum || this.getWeight() > this.maximumWeight)
+                && candidates.hasNext()) {
+            final Map.Entry<K, Integer> candidate = candidates.next();
+            candidates.remove();
+            this.windowWeight -= candidate.getValue();
+            this.admit(candidate.getKey(), candidate.getValue(), evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Records that the key was removed from the cache. Must be called while
+     * holding the lock.
+     * 
+     * @param key
+     *            that was removed.
+     */
+    void recordRemoval(final K key) {
+        Integer weight = this.window.remove(key);
+        if (weight != null) {
+            this.windowWeight -= weight;
+        }
+        weight = this.main.remove(key);
+        if (weight != null) {
+            this.mainWeight -= weight;
+        }
+    }
+
+    /**
+     * Forgets all keys and their usage. Must be called while holding the lock.
+     */
+    void clear() {
+        this.window.clear();
+        this.main.clear();
+        this.windowWeight = 0;
+        this.mainWeight = 0;
+        this.sketch.clear();
+    }
+
+    /**
+     * Moves a candidate that left the window into the main space, if it is
+     * used more frequently than each of the entries it has to replace. The
+     * entries are only evicted once the candidate is admitted, so a rejected
+     * candidate leaves the main space as it was.
+     * 
+     * @param candidate
+     *            key that left the window.
+     * @param weight
+     *            of the candidate.
+     * @param evicted
+     *            list to add the evicted keys to.
+     */
+    private void admit(final K candidate, final int weight, final List<K> evicted) {
+        final int candidateFrequency = this.sketch.frequency(candidate);
+        final long excess = this.getWeight() + weight - this.maximumWeight;
+        long freed = 0;
+        int victimCount = 0;
+        final Iterator<Map.Entry<K, Integer>> victims = this.main.entrySet().iterator();
+        while (freed < excess) {
+            if (!victims.hasNext()) {
+                evicted.add(candidate);
+                return;
+            }
+            final Map.Entry<K, Integer> victim = victims.next();
+            if (candidateFrequency <= this.sketch.frequency(victim.getKey())) {
+                evicted.add(candidate);
+                return;
+            }
+            freed += victim.getValue();
+            victimCount++;
+        }
+        final Iterator<Map.Entry<K, Integer>> removed = this.main.entrySet().iterator();
+        for (int i = 0; i < victimCount; i++) {
+            final Map.Entry<K, Integer> victim = removed.next();
+            removed.remove();
+            this.mainWeight -= victim.getValue();
+            evicted.add(victim.getKey());
+        }
+        this.main.put(candidate, weight);
+        this.mainWeight += weight;
+    }
+}
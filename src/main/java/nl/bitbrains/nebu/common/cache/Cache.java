@@ -0,0 +1,1109 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Named cache that is safe for use by multiple threads. Every cache has its
+ * own entries, expiration time, size bounds and statistics, so clearing or
+ * bounding one cache does not affect any other. Use a {@link CacheBuilder} to
+ * create one.
+ * 
+ * Reads never block; concurrent misses on the same key are collapsed into a
+ * single call to the {@link CacheLoader}, while misses on different keys load
+ * independently. By default a cache is unbounded. With
+ * {@link #setMaximumSize(long)} or {@link #setMaximumWeight(long, Weigher)} it
+ * evicts entries once the bound is exceeded, keeping the entries that were
+ * used most often recently.
+ * 
+ * {@link #getAll(Collection, BatchCacheLoader)} looks up many keys at once and
+ * loads all of the missing ones with a single call to a
+ * {@link BatchCacheLoader}.
+ * 
+ * Loader failures are not cached by default. With a
+ * {@link FailureBackoffPolicy}, a key that failed to load is not loaded again
+ * until its backoff has passed, and entries whose refresh failed keep their
+ * last value in the meantime.
+ * 
+ * Statistics are always collected; read them with {@link #getStatistics()} or
+ * register the cache with JMX using {@link #registerMBean(MBeanServer)}.
+ * 
+ * @param <K>
+ *            type of the keys.
+ * @param <V>
+ *            type of the cached values.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class Cache<K, V> {
+
+    public static final long UNBOUNDED = -1;
+
+    private static final String NO_SUCH_KEY_TEXT = "No cache entry found for key";
+    private static final String INTERRUPTED_TEXT = "Interrupted while waiting for cache entry";
+    private static final String NOT_LOADED_TEXT = "Loader returned no value for key";
+    private static final String BACKOFF_TEXT = "Loading failed recently, not retrying yet";
+    private static final String MBEAN_DOMAIN = "nl.bitbrains.nebu.common.cache";
+    private static final String MBEAN_TYPE = "Cache";
+
+    private final String name;
+    private final int expirationTime;
+    private final RefreshAheadPolicy refreshPolicy;
+    private final ConcurrentMap<K, FutureTask<V>> loading;
+    private final StatsCounter stats;
+    private final ConcurrentMap<K, LoadFailure> failures;
+
+    private volatile Map<K, CacheEntry> map;
+    private volatile BoundedPolicy<K> bounds;
+    private volatile Weigher<? super K, ? super V> weigher;
+    private volatile Ticker ticker;
+    private volatile FailureBackoffPolicy backoffPolicy;
+
+    /**
+     * Use a {@link CacheBuilder} to create a cache.
+     * 
+     * @param name
+     *            of the cache.
+     * @param expirationTime
+     *            default number of seconds until an entry is invalidated.
+     * @param refreshPolicy
+     *            default {@link RefreshAheadPolicy}, may be null.
+     * @param ticker
+     *            to measure the age of entries with.
+     */
+    protected Cache(final String name, final int expirationTime,
+            final RefreshAheadPolicy refreshPolicy, final Ticker ticker) {
+        this.name = name;
+        this.expirationTime = expirationTime;
+        this.refreshPolicy = refreshPolicy;
+        this.ticker = ticker;
+        this.loading = new ConcurrentHashMap<K, FutureTask<V>>();
+        this.stats = new StatsCounter();
+        this.failures = new ConcurrentHashMap<K, LoadFailure>();
+        this.map = new ConcurrentHashMap<K, CacheEntry>();
+    }
+
+    /**
+     * @return the name of the cache.
+     */
+    public final String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the number of seconds until an entry is invalidated, if no
+     *         other expiration time is given when loading it.
+     */
+    public final int getExpirationTime() {
+        return this.expirationTime;
+    }
+
+    /**
+     * @return the {@link RefreshAheadPolicy} entries get if no other policy
+     *         is given when loading them, may be null.
+     */
+    public final RefreshAheadPolicy getRefreshPolicy() {
+        return this.refreshPolicy;
+    }
+
+    /**
+     * Gets the value for the key if it exists. Will update the cache if it is
+     * currently expired.
+     * 
+     * Throws an {@link IllegalArgumentException} if the key is not present.
+     * 
+     * @param key
+     *            to find the value for.
+     * @return the value.
+     * @throws CacheException
+     *             if updating the cache failed.
+     */
+    public final V get(final K key) throws CacheException {
+        // One lookup, as another thread may remove the entry at any time.
+        final CacheEntry entry = this.map.get(key);
+        if (entry != null) {
+            this.recordHit(key);
+            return this.cast(entry.getValue());
+        }
+        this.stats.recordMiss();
+        throw new IllegalArgumentException(Cache.NO_SUCH_KEY_TEXT);
+    }
+
+    /**
+     * Puts a new value in that is valid forever.
+     * 
+     * @param key
+     *            to use
+     * @param value
+     *            to use
+     */
+    public final void put(final K key, final V value) {
+        this.failures.remove(key);
+        this.store(key, new CacheEntry(value, null, 0, null, this.ticker, this.stats, null));
+    }
+
+    /**
+     * Will give the current value for the key if present. Will not refresh an
+     * expired cache entry.
+     * 
+     * Throws an {@link IllegalArgumentException} if the key is not present.
+     * 
+     * @param key
+     *            to get the value for.
+     * @return the value.
+     */
+    public final V getNoRefresh(final K key) {
+        final CacheEntry entry = this.map.get(key);
+        if (entry != null) {
+            this.recordHit(key);
+            return this.cast(entry.getNonRefreshedValue());
+        }
+        this.stats.recordMiss();
+        throw new IllegalArgumentException(Cache.NO_SUCH_KEY_TEXT);
+    }
+
+    /**
+     * Calls {@link #get(Object, CacheLoader, int, RefreshAheadPolicy)} with
+     * the expiration time and refresh policy of this cache.
+     * 
+     * @param key
+     *            to get the value for
+     * @param loader
+     *            to use if the value needs refreshing.
+     * @return the value.
+     * @throws CacheException
+     *             if refreshing fails.
+     */
+    public final V get(final K key, final CacheLoader<? extends V> loader)
+            throws CacheException {
+        return this.get(key, loader, this.expirationTime, this.refreshPolicy);
+    }
+
+    /**
+     * Will try to get the value for the key, updating it if the key has
+     * expired. If updating the value fails, the cache entry will be fully
+     * removed from the cache. Concurrent misses on the same key share a single
+     * call to the loader.
+     * 
+     * @param key
+     *            to get the value for
+     * @param loader
+     *            to use if the value needs refreshing.
+     * @param entryExpirationTime
+     *            to set as maximum time the cacheEntry can be considered valid.
+     * @return the value.
+     * @throws CacheException
+     *             if refreshing fails.
+     */
+    public final V get(final K key, final CacheLoader<? extends V> loader,
+            final int entryExpirationTime) throws CacheException {
+        return this.get(key, loader, entryExpirationTime, null);
+    }
+
+    /**
+     * Will try to get the value for the key, loading it if it is not present.
+     * Once loaded, the entry is refreshed according to the given
+     * {@link RefreshAheadPolicy}: close to or shortly after expiration the
+     * current value is returned while a refresh runs in the background.
+     * 
+     * @param key
+     *            to get the value for
+     * @param loader
+     *            to use if the value needs refreshing.
+     * @param entryExpirationTime
+     *            to set as maximum time the cacheEntry can be considered valid.
+     * @param entryRefreshPolicy
+     *            describes when to refresh in the background, may be null to
+     *            always refresh on the calling thread.
+     * @return the value.
+     * @throws CacheException
+     *             if loading or refreshing fails.
+     */
+    public final V get(final K key, final CacheLoader<? extends V> loader,
+            final int entryExpirationTime, final RefreshAheadPolicy entryRefreshPolicy)
+            throws CacheException {
+        if (this.map.containsKey(key)) {
+            final CacheEntry entry = this.map.get(key);
+            if (entry != null) {
+                this.recordHit(key);
+                return this.cast(entry.getValue());
+            }
+        }
+        this.stats.recordMiss();
+        return this.load(key, loader, entryExpirationTime, entryRefreshPolicy);
+    }
+
+    /**
+     * Calls {@link #getAll(Collection, BatchCacheLoader, int, RefreshAheadPolicy)}
+     * with the expiration time and refresh policy of this cache.
+     * 
+     * @param keys
+     *            to get the values for.
+     * @param loader
+     *            to load the missing values with.
+     * @return the values by key, in the order of the keys.
+     * @throws CacheException
+     *             if loading fails or the loader returned no value for one of
+     *             the keys.
+     */
+    public final Map<K, V> getAll(final Collection<? extends K> keys,
+            final BatchCacheLoader<K, ? extends V> loader) throws CacheException {
+        return this.getAll(keys, loader, this.expirationTime, this.refreshPolicy);
+    }
+
+    /**
+     * Gets the values of many keys at once. Values that are in the cache are
+     * returned from memory, all others are loaded with a single call to the
+     * loader. Keys that are already being loaded by another thread are not
+     * loaded again; their results are awaited instead. If loading fails, the
+     * entries of the keys that were not loaded are removed from the cache.
+     * 
+     * Entries loaded this way refresh themselves by passing only their own
+     * key to the loader.
+     * 
+     * @param keys
+     *            to get the values for.
+     * @param loader
+     *            to load the missing values with.
+     * @param entryExpirationTime
+     *            to set as maximum time the loaded entries can be considered
+     *            valid.
+     * @param entryRefreshPolicy
+     *            describes when to refresh the loaded entries in the
+     *            background, may be null.
+     * @return the values by key, in the order of the keys.
+     * @throws CacheException
+     *             if loading fails or the loader returned no value for one of
+     *             the keys.
+     */
+    public final Map<K, V> getAll(final Collection<? extends K> keys,
+            final BatchCacheLoader<K, ? extends V> loader, final int entryExpirationTime,
+            final RefreshAheadPolicy entryRefreshPolicy) throws CacheException {
+        ErrorChecker.throwIfNullArgument(keys, "keys");
+        ErrorChecker.throwIfNullArgument(loader, "loader");
+        final Map<K, V> values = new LinkedHashMap<K, V>();
+        final Map<K, Promise<V>> owned = new LinkedHashMap<K, Promise<V>>();
+        final Map<K, FutureTask<V>> awaited = new LinkedHashMap<K, FutureTask<V>>();
+        for (final K key : keys) {
+            if (values.containsKey(key) || owned.containsKey(key) || awaited.containsKey(key)) {
+                continue;
+            }
+            final CacheEntry entry = this.map.get(key);
+            if (entry != null && !entry.mustRefresh()) {
+                this.recordHit(key);
+                values.put(key, this.cast(entry.getValue()));
+                continue;
+            }
+            this.stats.recordMiss();
+            final Promise<V> promise = new Promise<V>();
+            final FutureTask<V> inFlight = this.loading.putIfAbsent(key, promise);
+            if (inFlight == null) {
+                owned.put(key, promise);
+            } else {
+                awaited.put(key, inFlight);
+            }
+        }
+        if (!owned.isEmpty()) {
+            this.loadAll(owned, loader, entryExpirationTime, entryRefreshPolicy, values);
+        }
+        for (final Map.Entry<K, FutureTask<V>> entry : awaited.entrySet()) {
+            values.put(entry.getKey(), Cache.awaitLoad(entry.getValue()));
+        }
+        final Map<K, V> ordered = new LinkedHashMap<K, V>();
+        for (final K key : keys) {
+            ordered.put(key, values.get(key));
+        }
+        return ordered;
+    }
+
+    /**
+     * Loads the keys this thread claimed in {@link #loading} with one call to
+     * the loader, skipping keys that another thread loaded in the meantime.
+     * Every promise is completed and released, also when loading fails.
+     * 
+     * @param owned
+     *            the keys to load and the promises to complete.
+     * @param loader
+     *            to load with.
+     * @param entryExpirationTime
+     *            to give the new entries.
+     * @param entryRefreshPolicy
+     *            to give the new entries, may be null.
+     * @param values
+     *            map to add the values to.
+     * @throws CacheException
+     *             if loading fails or the loader returned no value for one of
+     *             the keys.
+     */
+    private void loadAll(final Map<K, Promise<V>> owned,
+            final BatchCacheLoader<K, ? extends V> loader, final int entryExpirationTime,
+            final RefreshAheadPolicy entryRefreshPolicy, final Map<K, V> values)
+            throws CacheException {
+        final Set<K> toLoad = new LinkedHashSet<K>();
+        Throwable failure = null;
+        try {
+            CacheException backoff = null;
+            for (final Map.Entry<K, Promise<V>> claim : owned.entrySet()) {
+                final CacheEntry entry = this.map.get(claim.getKey());
+                final CacheException keyBackoff = this.getBackoff(claim.getKey());
+                if (entry != null && !entry.mustRefresh()) {
+                    final V value = this.cast(entry.getValue());
+                    values.put(claim.getKey(), value);
+                    claim.getValue().complete(value);
+                } else if (keyBackoff != null) {
+                    backoff = keyBackoff;
+                } else {
+                    toLoad.add(claim.getKey());
+                }
+            }
+            if (!toLoad.isEmpty()) {
+                this.loadBatch(toLoad, loader, entryExpirationTime, entryRefreshPolicy, owned,
+                               values);
+            }
+            if (backoff != null) {
+                throw backoff;
+            }
+        } catch (final CacheException e) {
+            failure = e;
+            this.discardUnloaded(toLoad, values, e);
+            throw e;
+        } catch (final RuntimeException | Error e) {
+            failure = e;
+            this.discardUnloaded(toLoad, values, null);
+            throw e;
+        } finally {
+            for (final Map.Entry<K, Promise<V>> claim : owned.entrySet()) {
+                if (!claim.getValue().isDone()) {
+                    claim.getValue().fail(failure == null ? new CacheException(
+                            Cache.NOT_LOADED_TEXT) : failure);
+                }
+                this.loading.remove(claim.getKey(), claim.getValue());
+            }
+        }
+    }
+
+    /**
+     * Loads keys with a single call to the loader and stores the results.
+     * 
+     * @param toLoad
+     *            the keys to load.
+     * @param loader
+     *            to load with.
+     * @param entryExpirationTime
+     *            to give the new entries.
+     * @param entryRefreshPolicy
+     *            to give the new entries, may be null.
+     * @param owned
+     *            the promises to complete.
+     * @param values
+     *            map to add the values to.
+     * @throws CacheException
+     *             if loading fails or the loader returned no value for one of
+     *             the keys.
+     */
+    private void loadBatch(final Set<K> toLoad, final BatchCacheLoader<K, ? extends V> loader,
+            final int entryExpirationTime, final RefreshAheadPolicy entryRefreshPolicy,
+            final Map<K, Promise<V>> owned, final Map<K, V> values) throws CacheException {
+        final long start = this.ticker.read();
+        final Map<K, ? extends V> loaded;
+        try {
+            loaded = loader.refreshAll(Collections.unmodifiableSet(toLoad));
+        } catch (final CacheException e) {
+            this.stats.recordLoadFailure(this.ticker.read() - start);
+            throw e;
+        }
+        final long loadTime = this.ticker.read() - start;
+        for (final K key : toLoad) {
+            if (loaded.containsKey(key)) {
+                final V value = loaded.get(key);
+                final CacheLoader<Object> entryLoader = Cache
+                        .asObjectLoader(new BatchEntryLoader<K, V>(key, loader));
+                this.failures.remove(key);
+                this.store(key, new CacheEntry(value, entryLoader, entryExpirationTime,
+                        entryRefreshPolicy, this.ticker, this.stats, this.backoffPolicy));
+                values.put(key, value);
+                owned.get(key).complete(value);
+            }
+        }
+        if (!values.keySet().containsAll(toLoad)) {
+            this.stats.recordLoadFailure(loadTime);
+            throw new CacheException(Cache.NOT_LOADED_TEXT);
+        }
+        this.stats.recordLoadSuccess(loadTime);
+    }
+
+    /**
+     * Removes the entries of keys that failed to load and, with a
+     * {@link FailureBackoffPolicy}, remembers the failure.
+     * 
+     * @param toLoad
+     *            the keys that were to be loaded.
+     * @param values
+     *            the values that were loaded.
+     * @param cause
+     *            why loading failed, null if it was not a
+     *            {@link CacheException}.
+     */
+    private void discardUnloaded(final Set<K> toLoad, final Map<K, V> values,
+            final CacheException cause) {
+        for (final K key : toLoad) {
+            if (!values.containsKey(key)) {
+                this.discardEntry(key);
+                if (cause != null) {
+                    this.recordFailure(key, cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the value for a key that was not found in the cache. Only one
+     * thread per key calls the loader; other threads that miss on the same key
+     * in the meantime wait for and share its result.
+     * 
+     * @param key
+     *            to load the value for.
+     * @param loader
+     *            to use for loading.
+     * @param entryExpirationTime
+     *            to set as maximum time the cacheEntry can be considered valid.
+     * @param entryRefreshPolicy
+     *            to give the new entry, may be null.
+     * @return the loaded value.
+     * @throws CacheException
+     *             if loading fails.
+     */
+    private V load(final K key, final CacheLoader<? extends V> loader,
+            final int entryExpirationTime, final RefreshAheadPolicy entryRefreshPolicy)
+            throws CacheException {
+        final CacheException backoff = this.getBackoff(key);
+        if (backoff != null) {
+            throw backoff;
+        }
+        final FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws CacheException {
+                return Cache.this.loadEntry(key, loader, entryExpirationTime,
+                                            entryRefreshPolicy);
+            }
+        });
+        FutureTask<V> inFlight = this.loading.putIfAbsent(key, task);
+        if (inFlight == null) {
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                this.loading.remove(key, task);
+            }
+        }
+        return Cache.awaitLoad(inFlight);
+    }
+
+    /**
+     * Calls the loader and stores its result, unless another thread completed
+     * a load for the key just before this one was started.
+     * 
+     * @param key
+     *            to load the value for.
+     * @param loader
+     *            to use for loading.
+     * @param entryExpirationTime
+     *            to set as maximum time the cacheEntry can be considered valid.
+     * @param entryRefreshPolicy
+     *            to give the new entry, may be null.
+     * @return the loaded value.
+     * @throws CacheException
+     *             if loading fails.
+     */
+    private V loadEntry(final K key, final CacheLoader<? extends V> loader,
+            final int entryExpirationTime, final RefreshAheadPolicy entryRefreshPolicy)
+            throws CacheException {
+        if (this.map.containsKey(key)) {
+            final CacheEntry entry = this.map.get(key);
+            if (entry != null) {
+                return this.cast(entry.getValue());
+            }
+        }
+        final long start = this.ticker.read();
+        try {
+            final V value = loader.refresh();
+            this.stats.recordLoadSuccess(this.ticker.read() - start);
+            this.failures.remove(key);
+            this.store(key, new CacheEntry(value, Cache.asObjectLoader(loader),
+                    entryExpirationTime, entryRefreshPolicy, this.ticker, this.stats,
+                    this.backoffPolicy));
+            return value;
+        } catch (final CacheException e1) {
+            this.stats.recordLoadFailure(this.ticker.read() - start);
+            this.discardEntry(key);
+            this.recordFailure(key, e1);
+            throw e1;
+        }
+    }
+
+    /**
+     * @param key
+     *            to look up.
+     * @return the exception to throw if loading the key failed less than a
+     *         backoff ago, null if it may be loaded.
+     */
+    private CacheException getBackoff(final K key) {
+        final LoadFailure failure = this.failures.get(key);
+        if (failure == null || this.ticker.read() - failure.getRetryTime() >= 0) {
+            return null;
+        }
+        return new CacheException(Cache.BACKOFF_TEXT, failure.getCause());
+    }
+
+    /**
+     * Remembers that loading a key failed, if there is a
+     * {@link FailureBackoffPolicy}. Each consecutive failure doubles the
+     * backoff. Failures recorded by several threads at once are all counted.
+     * 
+     * @param key
+     *            that failed to load.
+     * @param cause
+     *            of the failure.
+     */
+    private void recordFailure(final K key, final CacheException cause) {
+        final FailureBackoffPolicy policy = this.backoffPolicy;
+        if (policy == null) {
+            return;
+        }
+        while (true) {
+            final LoadFailure previous = this.failures.get(key);
+            final int count = previous == null ? 1 : previous.getCount() + 1;
+            final LoadFailure failure = new LoadFailure(cause, count, this.ticker.read()
+                    + policy.getBackoffNanos(count));
+            if (previous == null ? this.failures.putIfAbsent(key, failure) == null
+                    : this.failures.replace(key, previous, failure)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for a load to finish and unwraps its outcome.
+     * 
+     * @param <V>
+     *            type of the loaded value.
+     * @param inFlight
+     *            the load to wait for.
+     * @return the loaded value.
+     * @throws CacheException
+     *             if the load failed or the thread was interrupted.
+     */
+    private static <V> V awaitLoad(final FutureTask<V> inFlight) throws CacheException {
+        try {
+            return inFlight.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException(Cache.INTERRUPTED_TEXT, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof CacheException) {
+                throw (CacheException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheException(cause);
+        }
+    }
+
+    /**
+     * Stores an entry, evicting other entries if the cache becomes too large.
+     * The entry itself may be evicted right away if it is used less often
+     * than the entries it would replace.
+     * 
+     * @param key
+     *            to store the entry under.
+     * @param entry
+     *            to store.
+     */
+    private void store(final K key, final CacheEntry entry) {
+        final BoundedPolicy<K> policy = this.bounds;
+        if (policy == null) {
+            this.map.put(key, entry);
+            return;
+        }
+        final int weight = this.weigh(key, entry);
+        policy.lock();
+        try {
+            this.map.put(key, entry);
+            this.evict(policy.recordWrite(key, weight));
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    /**
+     * @param key
+     *            of the entry.
+     * @param entry
+     *            to weigh.
+     * @return the weight according to the configured {@link Weigher}, or 1 if
+     *         there is none.
+     */
+    private int weigh(final K key, final CacheEntry entry) {
+        final Weigher<? super K, ? super V> entryWeigher = this.weigher;
+        if (entryWeigher == null) {
+            return 1;
+        }
+        return entryWeigher.weigh(key, this.cast(entry.getNonRefreshedValue()));
+    }
+
+    /**
+     * Removes evicted keys from the cache. Must be called while holding the
+     * lock of the {@link BoundedPolicy}.
+     * 
+     * @param keys
+     *            to evict.
+     */
+    private void evict(final Iterable<K> keys) {
+        for (final K victim : keys) {
+            this.map.remove(victim);
+            this.stats.recordEviction();
+        }
+    }
+
+    /**
+     * Counts a hit and lets the eviction policy know the key was used.
+     * 
+     * @param key
+     *            that was found.
+     */
+    private void recordHit(final K key) {
+        this.stats.recordHit();
+        final BoundedPolicy<K> policy = this.bounds;
+        if (policy != null) {
+            policy.recordAccess(key);
+        }
+    }
+
+    /**
+     * Limits the number of entries in the cache. Entries beyond the limit are
+     * evicted right away.
+     * 
+     * @param maximumSize
+     *            the maximum number of entries, or {@link #UNBOUNDED}.
+     */
+    public final void setMaximumSize(final long maximumSize) {
+        this.setMaximumWeight(maximumSize, null);
+    }
+
+    /**
+     * Limits the total weight of the entries in the cache. Entries beyond the
+     * limit are evicted right away. Meant to be called while setting up the
+     * cache, not while it is in use.
+     * 
+     * @param maximumWeight
+     *            the maximum total weight, or {@link #UNBOUNDED}.
+     * @param entryWeigher
+     *            to weigh the entries with, or null to give every entry a
+     *            weight of 1.
+     */
+    public final void setMaximumWeight(final long maximumWeight,
+            final Weigher<? super K, ? super V> entryWeigher) {
+        if (maximumWeight == Cache.UNBOUNDED) {
+            this.bounds = null;
+            this.weigher = null;
+            return;
+        }
+        final BoundedPolicy<K> policy = new BoundedPolicy<K>(maximumWeight);
+        policy.lock();
+        try {
+            this.weigher = entryWeigher;
+            this.bounds = policy;
+            for (final Map.Entry<K, CacheEntry> entry : this.map.entrySet()) {
+                final int weight = this.weigh(entry.getKey(), entry.getValue());
+                this.evict(policy.recordWrite(entry.getKey(), weight));
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    /**
+     * @return the maximum total weight of the entries, or {@link #UNBOUNDED}.
+     */
+    public final long getMaximumWeight() {
+        final BoundedPolicy<K> policy = this.bounds;
+        if (policy == null) {
+            return Cache.UNBOUNDED;
+        }
+        return policy.getMaximumWeight();
+    }
+
+    /**
+     * Sets how long to wait before loading again after a loader failed.
+     * Applies to loads started and entries added from now on.
+     * 
+     * @param policy
+     *            the backoff policy, or null to not cache failures.
+     */
+    public final void setFailureBackoffPolicy(final FailureBackoffPolicy policy) {
+        this.backoffPolicy = policy;
+        if (policy == null) {
+            this.failures.clear();
+        }
+    }
+
+    /**
+     * @return the backoff policy for loader failures, may be null.
+     */
+    public final FailureBackoffPolicy getFailureBackoffPolicy() {
+        return this.backoffPolicy;
+    }
+
+    /**
+     * Sets the time source used to determine the age of entries that are
+     * added from now on.
+     * 
+     * @param newTicker
+     *            the time source, {@link Ticker#SYSTEM} by default.
+     */
+    public final void setTicker(final Ticker newTicker) {
+        ErrorChecker.throwIfNullArgument(newTicker, "ticker");
+        this.ticker = newTicker;
+    }
+
+    /**
+     * @return a snapshot of the statistics of this cache.
+     */
+    public final CacheStats getStatistics() {
+        return this.stats.snapshot();
+    }
+
+    /**
+     * @return the number of times a key was found in the cache.
+     */
+    public final long getHitCount() {
+        return this.getStatistics().getHitCount();
+    }
+
+    /**
+     * @return the number of times a key was not found in the cache.
+     */
+    public final long getMissCount() {
+        return this.getStatistics().getMissCount();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was too large.
+     */
+    public final long getEvictionCount() {
+        return this.getStatistics().getEvictionCount();
+    }
+
+    /**
+     * Sets all statistics back to zero.
+     */
+    public final void resetStatistics() {
+        this.stats.reset();
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public final int size() {
+        return this.map.size();
+    }
+
+    /**
+     * @return the name this cache has when registered as an MBean.
+     * @throws CacheException
+     *             if the name of the cache can not be used in an object name.
+     */
+    public final ObjectName getObjectName() throws CacheException {
+        try {
+            return new ObjectName(Cache.MBEAN_DOMAIN + ":type=" + Cache.MBEAN_TYPE + ",name="
+                    + ObjectName.quote(this.name));
+        } catch (final MalformedObjectNameException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * Registers a {@link CacheStatsMXBean} for this cache under
+     * {@link #getObjectName()}, so that its statistics can be monitored with
+     * JMX.
+     * 
+     * @param server
+     *            to register with, for example the platform MBean server.
+     * @throws CacheException
+     *             if registration failed, for example because a cache with the
+     *             same name is already registered.
+     */
+    public final void registerMBean(final MBeanServer server) throws CacheException {
+        ErrorChecker.throwIfNullArgument(server, "server");
+        try {
+            server.registerMBean(new CacheStatsBean(this), this.getObjectName());
+        } catch (final JMException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * Removes the MBean registered by {@link #registerMBean(MBeanServer)}.
+     * 
+     * @param server
+     *            the MBean was registered with.
+     * @throws CacheException
+     *             if the MBean was not registered.
+     */
+    public final void unregisterMBean(final MBeanServer server) throws CacheException {
+        ErrorChecker.throwIfNullArgument(server, "server");
+        try {
+            server.unregisterMBean(this.getObjectName());
+        } catch (final JMException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    /**
+     * Completely wipes the cache.
+     */
+    public final void clear() {
+        this.failures.clear();
+        final BoundedPolicy<K> policy = this.bounds;
+        if (policy == null) {
+            this.map.clear();
+            return;
+        }
+        policy.lock();
+        try {
+            this.map.clear();
+            policy.clear();
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    /**
+     * Wipes a single entry of the cache, including a recent load failure.
+     * 
+     * @param key
+     *            to wipe
+     */
+    public final void clearEntry(final K key) {
+        this.failures.remove(key);
+        this.discardEntry(key);
+    }
+
+    /**
+     * Removes a single entry from the cache and its eviction policy, but
+     * keeps any recent load failure.
+     * 
+     * @param key
+     *            to remove.
+     */
+    private void discardEntry(final K key) {
+        final BoundedPolicy<K> policy = this.bounds;
+        if (policy == null) {
+            this.removeEntry(key);
+            return;
+        }
+        policy.lock();
+        try {
+            this.removeEntry(key);
+            policy.recordRemoval(key);
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    /**
+     * Removes a single entry from the map, if present.
+     * 
+     * @param key
+     *            to remove.
+     */
+    private void removeEntry(final K key) {
+        if (this.map.containsKey(key)) {
+            this.map.remove(key);
+        }
+    }
+
+    /**
+     * Internal function so that tests can potentially mock the internal cache
+     * object.
+     * 
+     * @return the map.
+     */
+    final Map<K, CacheEntry> getMap() {
+        return this.map;
+    }
+
+    /**
+     * Function so that tests can potentially mock the internal cache object.
+     * 
+     * @param map
+     *            the map to set.
+     */
+    final void setMap(final Map<K, CacheEntry> map) {
+        this.map = map;
+    }
+
+    /**
+     * Entries only ever hold values put in through this cache, so they are
+     * always of type V.
+     * 
+     * @param value
+     *            taken from an entry.
+     * @return the value as V.
+     */
+    @SuppressWarnings("unchecked")
+    private V cast(final Object value) {
+        return (V) value;
+    }
+
+    /**
+     * {@link CacheEntry} only treats the values of its loader as objects, so
+     * any loader can be used as an object loader.
+     * 
+     * @param loader
+     *            to convert.
+     * @return the same loader.
+     */
+    @SuppressWarnings("unchecked")
+    private static CacheLoader<Object> asObjectLoader(final CacheLoader<?> loader) {
+        return (CacheLoader<Object>) loader;
+    }
+
+    /**
+     * Result of a load that is performed as part of a batch rather than by
+     * running the task itself.
+     * 
+     * @param <V>
+     *            type of the loaded value.
+     */
+    private static final class Promise<V> extends FutureTask<V> {
+
+        /**
+         * Creates an incomplete promise.
+         */
+        Promise() {
+            super(new Callable<V>() {
+                @Override
+                public V call() {
+                    throw new IllegalStateException("Promises are completed, not run.");
+                }
+            });
+        }
+
+        /**
+         * @param value
+         *            the loaded value.
+         */
+        void complete(final V value) {
+            this.set(value);
+        }
+
+        /**
+         * @param failure
+         *            why loading failed.
+         */
+        void fail(final Throwable failure) {
+            this.setException(failure);
+        }
+    }
+
+    /**
+     * Refreshes a single entry that was loaded by a {@link BatchCacheLoader},
+     * by passing only its own key to the loader.
+     * 
+     * @param <K>
+     *            type of the keys.
+     * @param <V>
+     *            type of the loaded values.
+     */
+    private static final class BatchEntryLoader<K, V> implements CacheLoader<V> {
+
+        private final K key;
+        private final BatchCacheLoader<K, ? extends V> loader;
+
+        /**
+         * @param key
+         *            of the entry.
+         * @param loader
+         *            to refresh with.
+         */
+        BatchEntryLoader(final K key, final BatchCacheLoader<K, ? extends V> loader) {
+            this.key = key;
+            this.loader = loader;
+        }
+
+        @Override
+        public V refresh() throws CacheException {
+            final Map<K, ? extends V> loaded = this.loader.refreshAll(Collections
+                    .singleton(this.key));
+            if (!loaded.containsKey(this.key)) {
+                throw new CacheException(Cache.NOT_LOADED_TEXT);
+            }
+            return loaded.get(this.key);
+        }
+    }
+
+    /**
+     * Remembers that loading a key failed.
+     */
+    private static final class LoadFailure {
+
+        private final CacheException cause;
+        private final int count;
+        private final long retryTime;
+
+        /**
+         * @param cause
+         *            of the last failure.
+         * @param count
+         *            number of consecutive failures.
+         * @param retryTime
+         *            ticker time after which loading may be tried again.
+         */
+        LoadFailure(final CacheException cause, final int count, final long retryTime) {
+            this.cause = cause;
+            this.count = count;
+            this.retryTime = retryTime;
+        }
+
+        /**
+         * @return the cause of the last failure.
+         */
+        CacheException getCause() {
+            return this.cause;
+        }
+
+        /**
+         * @return the number of consecutive failures.
+         */
+        int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the ticker time after which loading may be tried again.
+         */
+        long getRetryTime() {
+            return this.retryTime;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package nl.bitbrains.nebu.common.cache;
+
+import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Builder class for the {@link Cache}.
+ * 
+ * @param <K>
+ *            type of the keys of the cache.
+ * @param <V>
+ *            type of the values of the cache.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class CacheBuilder<K, V> implements IBuilder<Cache<K, V>> {
+
+    private String name;
+    private int expirationTime;
+    private RefreshAheadPolicy refreshPolicy;
+    private long maximumWeight;
+    private Weigher<? super K, ? super V> weigher;
+    private Ticker ticker;
+    private FailureBackoffPolicy backoffPolicy;
+
+    /**
+     * Simple constructor.
+     */
+    public CacheBuilder() {
+        this.reset();
+    }
+
+    @Override
+    public final void reset() {
+        this.name = null;
+        this.expirationTime = CacheEntry.DEFAULT_EXPIRATION_TIME_SEC;
+        this.refreshPolicy = null;
+        this.maximumWeight = Cache.UNBOUNDED;
+        this.weigher = null;
+        this.ticker = Ticker.SYSTEM;
+        this.backoffPolicy = null;
+    }
+
+    /**
+     * @param name
+     *            to build with.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withName(final String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param expirationTime
+     *            default number of seconds until an entry is invalidated.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withExpirationTime(final int expirationTime) {
+        this.expirationTime = expirationTime;
+        return this;
+    }
+
+    /**
+     * @param refreshPolicy
+     *            default {@link RefreshAheadPolicy} of the entries.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withRefreshPolicy(final RefreshAheadPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+        return this;
+    }
+
+    /**
+     * @param maximumSize
+     *            the maximum number of entries, or {@link Cache#UNBOUNDED}.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withMaximumSize(final long maximumSize) {
+        return this.withMaximumWeight(maximumSize, null);
+    }
+
+    /**
+     * @param maximumWeight
+     *            the maximum total weight, or {@link Cache#UNBOUNDED}.
+     * @param weigher
+     *            to weigh the entries with, or null to give every entry a
+     *            weight of 1.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withMaximumWeight(final long maximumWeight,
+            final Weigher<? super K, ? super V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * @param ticker
+     *            time source to measure the age of entries with.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withTicker(final Ticker ticker) {
+        this.ticker = ticker;
+        return this;
+    }
+
+    /**
+     * @param backoffPolicy
+     *            describes how long to wait before loading again after a
+     *            loader failed, null to not cache failures.
+     * @return this for fluency.
+     */
+    public final CacheBuilder<K, V> withFailureBackoffPolicy(
+            final FailureBackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy;
+        return this;
+    }
+
+    /**
+     * @return the built {@link Cache} object.
+     */
+    @Override
+    public final Cache<K, V> build() {
+        ErrorChecker.throwIfNotSet(this.name, "name");
+        ErrorChecker.throwIfNotSet(this.ticker, "ticker");
+        final Cache<K, V> res = new Cache<K, V>(this.name, this.expirationTime,
+                this.refreshPolicy, this.ticker);
+        res.setFailureBackoffPolicy(this.backoffPolicy);
+        if (this.maximumWeight != Cache.UNBOUNDED) {
+            res.setMaximumWeight(this.maximumWeight, this.weigher);
+        }
+        this.reset();
+        return res;
+    }
+}
@@ -1,11 +1,25 @@
 package nl.bitbrains.nebu.common.cache;
 
 import java.util.Calendar;
-import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents an entry for the Cachemanager. Contains a refresh mechanism to
- * ensure the cacheEntry is automatically refreshed.
+ * ensure the cacheEntry is automatically refreshed. Entries may be read by
+ * multiple threads; an expired entry is refreshed by only one of them.
+ * 
+ * If the entry has a {@link RefreshAheadPolicy}, entries that are about to
+ * expire or have only just expired are refreshed in the background while the
+ * current value is returned.
+ * 
+ * If the entry has a {@link FailureBackoffPolicy}, a failed refresh does not
+ * throw but keeps the current value, and no new refresh is tried until the
+ * backoff has passed.
+ * 
+ * Ages are measured with a {@link Ticker}, so reading a valid entry does not
+ * allocate and is not affected by changes to the system clock.
  * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  * 
@@ -14,10 +28,17 @@ public class CacheEntry {
 
     public static final int DEFAULT_EXPIRATION_TIME_SEC = 120;
 
-    private Object value;
-    private Calendar dt;
+    private volatile Object value;
+    private volatile long loadTime;
     private final CacheLoader<Object> cacheLoader;
-    private final int expirationTime;
+    private final long expirationNanos;
+    private final Ticker ticker;
+    private final RefreshAheadPolicy refreshPolicy;
+    private final AtomicBoolean refreshing;
+    private final StatsCounter stats;
+    private final FailureBackoffPolicy backoffPolicy;
+    private volatile int failureCount;
+    private volatile long retryTime;
 
     /**
      * Constructor.
@@ -33,21 +54,116 @@ public class CacheEntry {
      */
     protected CacheEntry(final Object value, final Calendar creationDate,
             final CacheLoader<Object> loader, final int expirationTime) {
+        this(value, creationDate, loader, expirationTime, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param value
+     *            to cache.
+     * @param creationDate
+     *            when the value parameter was obtained.
+     * @param loader
+     *            to use when the entry needs refreshing.
+     * @param expirationTime
+     *            is the number of seconds until the entry is invalidated.
+     * @param refreshPolicy
+     *            describes when to refresh in the background, may be null to
+     *            always refresh on the reading thread.
+     */
+    protected CacheEntry(final Object value, final Calendar creationDate,
+            final CacheLoader<Object> loader, final int expirationTime,
+            final RefreshAheadPolicy refreshPolicy) {
+        this(value, loader, expirationTime, refreshPolicy, Ticker.SYSTEM);
+        final long ageMillis = System.currentTimeMillis()
+                - creationDate.getTimeInMillis();
+        this.loadTime -= TimeUnit.MILLISECONDS.toNanos(ageMillis);
+    }
+
+    /**
+     * Constructor for a value that was obtained just now.
+     * 
+     * @param value
+     *            to cache.
+     * @param loader
+     *            to use when the entry needs refreshing.
+     * @param expirationTime
+     *            is the number of seconds until the entry is invalidated.
+     * @param refreshPolicy
+     *            describes when to refresh in the background, may be null to
+     *            always refresh on the reading thread.
+     * @param ticker
+     *            to measure the age of the entry with.
+     */
+    protected CacheEntry(final Object value, final CacheLoader<Object> loader,
+            final int expirationTime, final RefreshAheadPolicy refreshPolicy,
+            final Ticker ticker) {
+        this(value, loader, expirationTime, refreshPolicy, ticker, null, null);
+    }
+
+    /**
+     * Constructor for a value that was obtained just now, for an entry of a
+     * {@link Cache} that keeps statistics.
+     * 
+     * @param value
+     *            to cache.
+     * @param loader
+     *            to use when the entry needs refreshing.
+     * @param expirationTime
+     *            is the number of seconds until the entry is invalidated.
+     * @param refreshPolicy
+     *            describes when to refresh in the background, may be null to
+     *            always refresh on the reading thread.
+     * @param ticker
+     *            to measure the age of the entry and the refresh time with.
+     * @param stats
+     *            to record refreshes in, may be null.
+     * @param backoffPolicy
+     *            describes how long to keep the current value after a failed
+     *            refresh, may be null to throw refresh failures instead.
+     */
+    CacheEntry(final Object value, final CacheLoader<Object> loader,
+            final int expirationTime, final RefreshAheadPolicy refreshPolicy,
+            final Ticker ticker, final StatsCounter stats,
+            final FailureBackoffPolicy backoffPolicy) {
+        this.stats = stats;
+        this.backoffPolicy = backoffPolicy;
         this.value = value;
-        this.dt = creationDate;
+        this.ticker = ticker;
+        this.loadTime = ticker.read();
         this.cacheLoader = loader;
-        this.expirationTime = expirationTime;
+        this.expirationNanos = TimeUnit.SECONDS.toNanos(expirationTime);
+        this.refreshPolicy = refreshPolicy;
+        this.refreshing = new AtomicBoolean(false);
     }
 
     /**
-     * Will update the cache value if needed!
+     * Will update the cache value if needed! With a {@link RefreshAheadPolicy}
+     * the update may happen in the background, in which case the current
+     * value is returned.
      * 
      * @return the value.
      * @throws CacheException
      *             if the updating process failed.
      */
     public final Object getValue() throws CacheException {
-        if (!this.isValid()) {
+        if (this.refreshPolicy != null && this.cacheLoader != null) {
+            final Object current = this.value;
+            final long age = this.getAgeNanos();
+            final long refreshAhead = TimeUnit.SECONDS.toNanos(this.refreshPolicy
+                    .getRefreshAheadTime());
+            final long maxStale = TimeUnit.SECONDS.toNanos(this.refreshPolicy
+                    .getMaxStaleTime());
+            if (age < this.expirationNanos - refreshAhead) {
+                return current;
+            }
+            if (age < this.expirationNanos + maxStale) {
+                this.refreshInBackground();
+                return current;
+            }
+        }
+        if (!this.isValid() && !this.isBackingOff()) {
             this.updateCache();
         }
         return this.value;
@@ -63,14 +179,132 @@ public class CacheEntry {
     }
 
     /**
-     * Updates the cache.
+     * @return true iff {@link #getValue()} would have to refresh the value on
+     *         the calling thread before returning it.
+     */
+    final boolean mustRefresh() {
+        if (this.cacheLoader == null) {
+            return false;
+        }
+        long usableNanos = this.expirationNanos;
+        if (this.refreshPolicy != null) {
+            usableNanos += TimeUnit.SECONDS.toNanos(this.refreshPolicy.getMaxStaleTime());
+        }
+        return this.getAgeNanos() >= usableNanos && !this.isBackingOff();
+    }
+
+    /**
+     * Updates the cache, unless another thread already did so while this one
+     * was waiting.
      * 
      * @throws CacheException
-     *             if the updating process fails.
+     *             if the updating process fails and there is no
+     *             {@link FailureBackoffPolicy}.
+     */
+    private synchronized void updateCache() throws CacheException {
+        if (this.isValid() || this.isBackingOff()) {
+            return;
+        }
+        try {
+            this.value = this.refresh();
+            this.loadTime = this.ticker.read();
+            this.failureCount = 0;
+        } catch (final CacheException e) {
+            if (this.backoffPolicy == null) {
+                throw e;
+            }
+            this.startBackoff();
+        }
+    }
+
+    /**
+     * Counts a failed refresh and postpones the next one. Must be called
+     * while synchronized on this entry.
      */
-    private void updateCache() throws CacheException {
-        this.value = this.cacheLoader.refresh();
-        this.dt = Calendar.getInstance();
+    private void startBackoff() {
+        this.failureCount++;
+        this.retryTime = this.ticker.read()
+                + this.backoffPolicy.getBackoffNanos(this.failureCount);
+    }
+
+    /**
+     * @return true iff a refresh failed recently and the backoff has not yet
+     *         passed.
+     */
+    private boolean isBackingOff() {
+        return this.failureCount > 0 && this.ticker.read() - this.retryTime < 0;
+    }
+
+    /**
+     * Starts a refresh on the executor of the {@link RefreshAheadPolicy},
+     * unless one is already running or a previous refresh failed less than a
+     * backoff ago. A failed background refresh leaves the current value in
+     * place; once it is too stale, a reading thread will refresh it and see
+     * the failure.
+     */
+    private void refreshInBackground() {
+        if (this.isBackingOff() || !this.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.refreshPolicy.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Object refreshed = CacheEntry.this.refresh();
+                        synchronized (CacheEntry.this) {
+                            CacheEntry.this.value = refreshed;
+                            CacheEntry.this.loadTime = CacheEntry.this.ticker
+                                    .read();
+                            CacheEntry.this.failureCount = 0;
+                        }
+                    } catch (final CacheException e) {
+                        // Keep the current value until it becomes too stale.
+                        if (CacheEntry.this.backoffPolicy != null) {
+                            synchronized (CacheEntry.this) {
+                                CacheEntry.this.startBackoff();
+                            }
+                        }
+                    } finally {
+                        CacheEntry.this.refreshing.set(false);
+                    }
+                }
+            });
+            if (this.stats != null) {
+                this.stats.recordRefreshAhead();
+            }
+        } catch (final RejectedExecutionException e) {
+            this.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Calls the loader, recording how long it took.
+     * 
+     * @return the refreshed value.
+     * @throws CacheException
+     *             if the loader failed.
+     */
+    private Object refresh() throws CacheException {
+        if (this.stats == null) {
+            return this.cacheLoader.refresh();
+        }
+        final long start = this.ticker.read();
+        try {
+            final Object refreshed = this.cacheLoader.refresh();
+            this.stats.recordLoadSuccess(this.ticker.read() - start);
+            return refreshed;
+        } catch (final CacheException e) {
+            this.stats.recordLoadFailure(this.ticker.read() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of nanoseconds since the value was obtained.
+     */
+    private long getAgeNanos() {
+        return this.ticker.read() - this.loadTime;
     }
 
     /**
@@ -79,12 +313,7 @@ public class CacheEntry {
      * @return true iff the cache entry is still valid.
      */
     private boolean isValid() {
-        if (this.cacheLoader == null) {
-            return true;
-        }
-        final Date now = new Date();
-        final Calendar exp = (Calendar) this.dt.clone();
-        exp.add(Calendar.SECOND, this.expirationTime);
-        return now.before(exp.getTime());
+        return this.cacheLoader == null
+                || this.getAgeNanos() < this.expirationNanos;
     }
 }
@@ -1,18 +1,32 @@
 package nl.bitbrains.nebu.common.cache;
 
-import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
 
 /**
+ * Static facade over a default {@link Cache} of objects, kept for code that
+ * does not need a cache of its own. Subsystems that want their own expiry,
+ * size bounds or statistics should create a separate {@link Cache} with a
+ * {@link CacheBuilder} instead, so that they do not share (and clear) each
+ * other's entries.
+ * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  * 
  */
 public abstract class CacheManager {
 
-    private static Map<String, CacheEntry> cache = new HashMap<String, CacheEntry>();
+    public static final long UNBOUNDED = Cache.UNBOUNDED;
+    public static final String DEFAULT_CACHE_NAME = "default";
+
+    private static final Cache<String, Object> DEFAULT_CACHE = new CacheBuilder<String, Object>()
+            .withName(CacheManager.DEFAULT_CACHE_NAME).build();
 
-    private static final String NO_SUCH_KEY_TEXT = "No cache entry found for key";
+    /**
+     * @return the cache all static methods of this class operate on.
+     */
+    public static Cache<String, Object> getDefaultCache() {
+        return CacheManager.DEFAULT_CACHE;
+    }
 
     /**
      * Gets the value for the key if it exists. Will update the cache if it is
@@ -27,10 +41,7 @@ public abstract class CacheManager {
      *             if updating the cache failed.
      */
     public static Object get(final String key) throws CacheException {
-        if (CacheManager.getCache().containsKey(key)) {
-            return CacheManager.getCache().get(key).getValue();
-        }
-        throw new IllegalArgumentException(CacheManager.NO_SUCH_KEY_TEXT);
+        return CacheManager.DEFAULT_CACHE.get(key);
     }
 
     /**
@@ -42,9 +53,7 @@ public abstract class CacheManager {
      *            to use
      */
     public static void put(final String key, final Object value) {
-        CacheManager.getCache().put(key,
-                                    new CacheEntry(value, Calendar
-                                            .getInstance(), null, 0));
+        CacheManager.DEFAULT_CACHE.put(key, value);
     }
 
     /**
@@ -58,10 +67,7 @@ public abstract class CacheManager {
      * @return the value.
      */
     public static Object getNoRefresh(final String key) {
-        if (CacheManager.getCache().containsKey(key)) {
-            return CacheManager.getCache().get(key).getNonRefreshedValue();
-        }
-        throw new IllegalArgumentException(CacheManager.NO_SUCH_KEY_TEXT);
+        return CacheManager.DEFAULT_CACHE.getNoRefresh(key);
     }
 
     /**
@@ -78,14 +84,14 @@ public abstract class CacheManager {
      */
     public static Object get(final String key, final CacheLoader<Object> loader)
             throws CacheException {
-        return CacheManager.get(key, loader,
-                                CacheEntry.DEFAULT_EXPIRATION_TIME_SEC);
+        return CacheManager.DEFAULT_CACHE.get(key, loader);
     }
 
     /**
      * Will try to get the value for the key, updating it if the key has
      * expired. If updating the value fails, the cache entry will be fully
-     * removed from the cache.
+     * removed from the cache. Concurrent misses on the same key share a single
+     * call to the loader.
      * 
      * @param key
      *            to get the value for
@@ -100,27 +106,141 @@ public abstract class CacheManager {
     public static Object get(final String key,
             final CacheLoader<Object> loader, final int expirationTime)
             throws CacheException {
-        if (CacheManager.getCache().containsKey(key)) {
-            return CacheManager.getCache().get(key).getValue();
-        }
-        try {
-            CacheManager.getCache().put(key,
-                                        new CacheEntry(loader.refresh(),
-                                                Calendar.getInstance(), loader,
-                                                expirationTime));
+        return CacheManager.DEFAULT_CACHE.get(key, loader, expirationTime);
+    }
+
+    /**
+     * Will try to get the value for the key, loading it if it is not present.
+     * Once loaded, the entry is refreshed according to the given
+     * {@link RefreshAheadPolicy}: close to or shortly after expiration the
+     * current value is returned while a refresh runs in the background.
+     * 
+     * @param key
+     *            to get the value for
+     * @param loader
+     *            to use if the value needs refreshing.
+     * @param expirationTime
+     *            to set as maximum time the cacheEntry can be considered valid.
+     * @param refreshPolicy
+     *            describes when to refresh in the background, may be null to
+     *            always refresh on the calling thread.
+     * @return the value.
+     * @throws CacheException
+     *             if loading or refreshing fails.
+     */
+    public static Object get(final String key,
+            final CacheLoader<Object> loader, final int expirationTime,
+            final RefreshAheadPolicy refreshPolicy) throws CacheException {
+        return CacheManager.DEFAULT_CACHE.get(key, loader, expirationTime,
+                                              refreshPolicy);
+    }
+
+    /**
+     * Gets the values of many keys at once, loading all missing values with a
+     * single call to the loader.
+     * 
+     * @param keys
+     *            to get the values for.
+     * @param loader
+     *            to load the missing values with.
+     * @return the values by key.
+     * @throws CacheException
+     *             if loading fails or the loader returned no value for one of
+     *             the keys.
+     */
+    public static Map<String, Object> getAll(final Collection<String> keys,
+            final BatchCacheLoader<String, Object> loader) throws CacheException {
+        return CacheManager.DEFAULT_CACHE.getAll(keys, loader);
+    }
+
+    /**
+     * Limits the number of entries in the cache. Entries beyond the limit are
+     * evicted right away.
+     * 
+     * @param maximumSize
+     *            the maximum number of entries, or {@link #UNBOUNDED}.
+     */
+    public static void setMaximumSize(final long maximumSize) {
+        CacheManager.DEFAULT_CACHE.setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Limits the total weight of the entries in the cache. Entries beyond the
+     * limit are evicted right away. Meant to be called while setting up the
+     * cache, not while it is in use.
+     * 
+     * @param maximumWeight
+     *            the maximum total weight, or {@link #UNBOUNDED}.
+     * @param entryWeigher
+     *            to weigh the entries with, or null to give every entry a
+     *            weight of 1.
+     */
+    public static void setMaximumWeight(final long maximumWeight,
+            final Weigher<String, Object> entryWeigher) {
+        CacheManager.DEFAULT_CACHE.setMaximumWeight(maximumWeight, entryWeigher);
+    }
+
+    /**
+     * Sets how long to wait before loading again after a loader failed.
+     * 
+     * @param policy
+     *            the backoff policy, or null to not cache failures.
+     */
+    public static void setFailureBackoffPolicy(final FailureBackoffPolicy policy) {
+        CacheManager.DEFAULT_CACHE.setFailureBackoffPolicy(policy);
+    }
+
+    /**
+     * Sets the time source used to determine the age of entries that are
+     * added from now on.
+     * 
+     * @param newTicker
+     *            the time source, {@link Ticker#SYSTEM} by default.
+     */
+    public static void setTicker(final Ticker newTicker) {
+        CacheManager.DEFAULT_CACHE.setTicker(newTicker);
+    }
 
-        } catch (final CacheException e1) {
-            CacheManager.clearCacheEntry(key);
-            throw e1;
-        }
-        return CacheManager.getCache().get(key).getValue();
+    /**
+     * @return a snapshot of the statistics of the default cache.
+     */
+    public static CacheStats getStatistics() {
+        return CacheManager.DEFAULT_CACHE.getStatistics();
+    }
+
+    /**
+     * @return the number of times a key was found in the cache.
+     */
+    public static long getHitCount() {
+        return CacheManager.DEFAULT_CACHE.getHitCount();
+    }
+
+    /**
+     * @return the number of times a key was not found in the cache.
+     */
+    public static long getMissCount() {
+        return CacheManager.DEFAULT_CACHE.getMissCount();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was too large.
+     */
+    public static long getEvictionCount() {
+        return CacheManager.DEFAULT_CACHE.getEvictionCount();
+    }
+
+    /**
+     * Sets all statistics back to zero.
+     */
+    public static void resetStatistics() {
+        CacheManager.DEFAULT_CACHE.resetStatistics();
     }
 
     /**
      * Completely wipes the cache.
      */
     public static void resetCache() {
-        CacheManager.getCache().clear();
+        CacheManager.DEFAULT_CACHE.clear();
     }
 
     /**
@@ -130,19 +250,7 @@ public abstract class CacheManager {
      *            to wipe
      */
     public static void clearCacheEntry(final String key) {
-        if (CacheManager.getCache().containsKey(key)) {
-            CacheManager.getCache().remove(key);
-        }
-    }
-
-    /**
-     * Internal function so that tests can potentially mock the internal cache
-     * object.
-     * 
-     * @return the map.
-     */
-    private static Map<String, CacheEntry> getCache() {
-        return CacheManager.cache;
+        CacheManager.DEFAULT_CACHE.clearEntry(key);
     }
 
     /**
@@ -152,6 +260,6 @@ public abstract class CacheManager {
      *            the map to set.
      */
     protected static void setCache(final Map<String, CacheEntry> cache) {
-        CacheManager.cache = cache;
+        CacheManager.DEFAULT_CACHE.setMap(cache);
     }
 }
@@ -0,0 +1,137 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Snapshot of the statistics of a {@link Cache}. Counts start when the cache
+ * is created or when its statistics were last reset.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long evictionCount;
+    private final long refreshAheadCount;
+
+    /**
+     * @param hitCount
+     *            number of lookups that found an entry.
+     * @param missCount
+     *            number of lookups that found no entry.
+     * @param loadSuccessCount
+     *            number of loads and refreshes that succeeded.
+     * @param loadFailureCount
+     *            number of loads and refreshes that threw a
+     *            {@link CacheException}.
+     * @param totalLoadTime
+     *            nanoseconds spent in loads and refreshes.
+     * @param evictionCount
+     *            number of entries evicted because the cache was too large.
+     * @param refreshAheadCount
+     *            number of refreshes started in the background.
+     */
+    CacheStats(final long hitCount, final long missCount, final long loadSuccessCount,
+            final long loadFailureCount, final long totalLoadTime, final long evictionCount,
+            final long refreshAheadCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.refreshAheadCount = refreshAheadCount;
+    }
+
+    /**
+     * @return the number of lookups that found an entry.
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of lookups that found no entry.
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * @return the number of lookups.
+     */
+    public long getRequestCount() {
+        return this.hitCount + this.missCount;
+    }
+
+    /**
+     * @return the fraction of lookups that found an entry, 1 if there were
+     *         no lookups.
+     */
+    public double getHitRate() {
+        final long requests = this.getRequestCount();
+        if (requests == 0) {
+            return 1.0;
+        }
+        return (double) this.hitCount / requests;
+    }
+
+    /**
+     * @return the number of loads and refreshes that succeeded.
+     */
+    public long getLoadSuccessCount() {
+        return this.loadSuccessCount;
+    }
+
+    /**
+     * @return the number of loads and refreshes that threw a
+     *         {@link CacheException}.
+     */
+    public long getLoadFailureCount() {
+        return this.loadFailureCount;
+    }
+
+    /**
+     * @return the number of loads and refreshes.
+     */
+    public long getLoadCount() {
+        return this.loadSuccessCount + this.loadFailureCount;
+    }
+
+    /**
+     * @return the number of nanoseconds spent in loads and refreshes.
+     */
+    public long getTotalLoadTime() {
+        return this.totalLoadTime;
+    }
+
+    /**
+     * @return the average number of nanoseconds a load or refresh took, 0 if
+     *         there were none.
+     */
+    public double getAverageLoadPenalty() {
+        final long loads = this.getLoadCount();
+        if (loads == 0) {
+            return 0.0;
+        }
+        return (double) this.totalLoadTime / loads;
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was too large.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return the number of refreshes started in the background by a
+     *         {@link RefreshAheadPolicy}.
+     */
+    public long getRefreshAheadCount() {
+        return this.refreshAheadCount;
+    }
+}
@@ -0,0 +1,81 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Exposes the statistics of a {@link Cache} as a {@link CacheStatsMXBean}.
+ * Every attribute is read from a fresh snapshot.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class CacheStatsBean implements CacheStatsMXBean {
+
+    private final Cache<?, ?> cache;
+
+    /**
+     * @param cache
+     *            to expose the statistics of.
+     */
+    CacheStatsBean(final Cache<?, ?> cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public int getSize() {
+        return this.cache.size();
+    }
+
+    @Override
+    public long getMaximumWeight() {
+        return this.cache.getMaximumWeight();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.cache.getStatistics().getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.cache.getStatistics().getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return this.cache.getStatistics().getHitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return this.cache.getStatistics().getLoadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return this.cache.getStatistics().getLoadFailureCount();
+    }
+
+    @Override
+    public long getTotalLoadTime() {
+        return this.cache.getStatistics().getTotalLoadTime();
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return this.cache.getStatistics().getAverageLoadPenalty();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.cache.getStatistics().getEvictionCount();
+    }
+
+    @Override
+    public long getRefreshAheadCount() {
+        return this.cache.getStatistics().getRefreshAheadCount();
+    }
+
+    @Override
+    public void resetStatistics() {
+        this.cache.resetStatistics();
+    }
+}
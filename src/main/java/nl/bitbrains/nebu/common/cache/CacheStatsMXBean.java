@@ -0,0 +1,73 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * JMX view of the statistics of a {@link Cache}, registered with
+ * {@link Cache#registerMBean(javax.management.MBeanServer)}. The attributes
+ * have the same meaning as those of {@link CacheStats}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface CacheStatsMXBean {
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    int getSize();
+
+    /**
+     * @return the maximum total weight of the entries, or
+     *         {@link Cache#UNBOUNDED}.
+     */
+    long getMaximumWeight();
+
+    /**
+     * @return the number of lookups that found an entry.
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups that found no entry.
+     */
+    long getMissCount();
+
+    /**
+     * @return the fraction of lookups that found an entry.
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of loads and refreshes that succeeded.
+     */
+    long getLoadSuccessCount();
+
+    /**
+     * @return the number of loads and refreshes that failed.
+     */
+    long getLoadFailureCount();
+
+    /**
+     * @return the number of nanoseconds spent in loads and refreshes.
+     */
+    long getTotalLoadTime();
+
+    /**
+     * @return the average number of nanoseconds a load or refresh took.
+     */
+    double getAverageLoadPenalty();
+
+    /**
+     * @return the number of entries evicted because the cache was too large.
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of refreshes started in the background.
+     */
+    long getRefreshAheadCount();
+
+    /**
+     * Sets all statistics back to zero.
+     */
+    void resetStatistics();
+}
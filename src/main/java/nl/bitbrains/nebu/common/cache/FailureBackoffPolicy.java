@@ -0,0 +1,70 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how long a {@link Cache} waits before calling a
+ * {@link CacheLoader} again after it failed. The first failure starts a
+ * backoff of {@link #getInitialBackoffTime()} seconds; every following
+ * failure doubles it, up to {@link #getMaxBackoffTime()} seconds.
+ * 
+ * During the backoff, entries that have a value keep returning it even if
+ * they have expired, and lookups of keys that failed to load throw a
+ * {@link CacheException} without calling the loader.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class FailureBackoffPolicy {
+
+    private static final int GROWTH_FACTOR = 2;
+
+    private final int initialBackoffTime;
+    private final int maxBackoffTime;
+
+    /**
+     * @param initialBackoffTime
+     *            number of seconds to wait after the first failure.
+     * @param maxBackoffTime
+     *            maximum number of seconds to wait after repeated failures.
+     */
+    public FailureBackoffPolicy(final int initialBackoffTime, final int maxBackoffTime) {
+        if (initialBackoffTime <= 0) {
+            throw new IllegalArgumentException("Initial backoff time should be positive.");
+        }
+        if (maxBackoffTime < initialBackoffTime) {
+            throw new IllegalArgumentException(
+                    "Maximum backoff time should not be less than the initial backoff time.");
+        }
+        this.initialBackoffTime = initialBackoffTime;
+        this.maxBackoffTime = maxBackoffTime;
+    }
+
+    /**
+     * @return the number of seconds to wait after the first failure.
+     */
+    public int getInitialBackoffTime() {
+        return this.initialBackoffTime;
+    }
+
+    /**
+     * @return the maximum number of seconds to wait after repeated failures.
+     */
+    public int getMaxBackoffTime() {
+        return this.maxBackoffTime;
+    }
+
+    /**
+     * @param failures
+     *            number of consecutive failures, at least 1.
+     * @return the number of nanoseconds to wait before trying again.
+     */
+    long getBackoffNanos(final int failures) {
+        final long max = TimeUnit.SECONDS.toNanos(this.maxBackoffTime);
+        long backoff = TimeUnit.SECONDS.toNanos(this.initialBackoffTime);
+        for (int i = 1; i < failures && backoff < max; i++) {
+            backoff *= FailureBackoffPolicy.GROWTH_FACTOR;
+        }
+        return Math.min(backoff, max);
+    }
+}
@@ -0,0 +1,125 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Count-Min sketch that estimates how often keys have been used recently,
+ * using four small counters per key. Each row has four counters per expected
+ * entry to keep collisions rare. All counters are halved periodically so
+ * that keys that were popular in the past gradually lose their advantage.
+ * 
+ * The sketch is not synchronized. Concurrent increments may get lost, which
+ * only makes the estimates slightly less accurate.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class FrequencySketch {
+
+    public static final int MAX_FREQUENCY = 15;
+
+    private static final int DEPTH = 4;
+    private static final int MIN_WIDTH = 16;
+    private static final int MAX_WIDTH = 1 << 20;
+    private static final int WIDTH_FACTOR = 4;
+    private static final int SAMPLE_FACTOR = 10;
+    private static final int SPREAD_SHIFT = 16;
+    private static final int[] SEEDS = { 0x97cb3127, 0x2e7a3b0d, 0x6f1c52a9, 0x52dce729 };
+
+    private final byte[] table;
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries
+     *            number of distinct keys the sketch should be able to tell
+     *            apart.
+     */
+    FrequencySketch(final long expectedEntries) {
+        int size = FrequencySketch.MIN_WIDTH;
+        while (size < expectedEntries && size < FrequencySketch.MAX_WIDTH) {
+            size <<= 1;
+        }
+        this.sampleSize = FrequencySketch.SAMPLE_FACTOR * size;
+        this.width = FrequencySketch.WIDTH_FACTOR * size;
+        this.table = new byte[FrequencySketch.DEPTH * this.width];
+    }
+
+    /**
+     * @param key
+     *            to look up.
+     * @return the estimated number of recent uses of the key, at most
+     *         {@link #MAX_FREQUENCY}.
+     */
+    int frequency(final Object key) {
+        final int hash = FrequencySketch.spread(key.hashCode());
+        int frequency = FrequencySketch.MAX_FREQUENCY;
+        for (int i = 0; i < FrequencySketch.DEPTH; i++) {
+            frequency = Math.min(frequency, this.table[this.indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records a use of the key.
+     * 
+     * @param key
+     *            that was used.
+     */
+    void increment(final Object key) {
+        final int hash = FrequencySketch.spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < FrequencySketch.DEPTH; i++) {
+            final int index = this.indexOf(hash, i);
+            if (this.table[index] < FrequencySketch.MAX_FREQUENCY) {
+                this.table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++this.additions >= this.sampleSize) {
+            this.halve();
+        }
+    }
+
+    /**
+     * Forgets all recorded uses.
+     */
+    void clear() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = 0;
+        }
+        this.additions = 0;
+    }
+
+    /**
+     * Halves all counters, so that history fades out.
+     */
+    private void halve() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (byte) (this.table[i] >>> 1);
+        }
+        this.additions /= 2;
+    }
+
+    /**
+     * @param hash
+     *            spread hash code of the key.
+     * @param row
+     *            of the sketch.
+     * @return the index of the counter for the key in the given row.
+     */
+    private int indexOf(final int hash, final int row) {
+        int h = hash * FrequencySketch.SEEDS[row];
+        h += h >>> FrequencySketch.SPREAD_SHIFT;
+        return row * this.width + (h & (this.width - 1));
+    }
+
+    /**
+     * @param hashCode
+     *            to spread.
+     * @return the hash code with its high bits mixed into its low bits.
+     */
+    private static int spread(final int hashCode) {
+        final int h = hashCode * 0x9e3779b9;
+        return h ^ (h >>> FrequencySketch.SPREAD_SHIFT);
+    }
+}
@@ -0,0 +1,132 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Describes when a {@link CacheEntry} refreshes its value in the background
+ * instead of on the thread that reads it.
+ * 
+ * Once an entry is within {@link #getRefreshAheadTime()} seconds of expiring,
+ * or has expired less than {@link #getMaxStaleTime()} seconds ago, reads
+ * return the current value immediately and a refresh is started on the
+ * executor. Reads of entries that have been expired for longer than that
+ * block until the value has been refreshed, as they would without a policy.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class RefreshAheadPolicy {
+
+    public static final int DEFAULT_REFRESH_THREADS = 2;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final long THREAD_KEEP_ALIVE_SEC = 60;
+    private static final String THREAD_NAME = "cache-refresh";
+
+    private final int refreshAheadTime;
+    private final int maxStaleTime;
+    private final Executor executor;
+
+    /**
+     * Creates a policy that refreshes on a shared, bounded executor.
+     * 
+     * @param refreshAheadTime
+     *            number of seconds before expiration at which a background
+     *            refresh is started.
+     * @param maxStaleTime
+     *            number of seconds after expiration during which the stale
+     *            value is still returned.
+     */
+    public RefreshAheadPolicy(final int refreshAheadTime, final int maxStaleTime) {
+        this(refreshAheadTime, maxStaleTime, DefaultExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * @param refreshAheadTime
+     *            number of seconds before expiration at which a background
+     *            refresh is started.
+     * @param maxStaleTime
+     *            number of seconds after expiration during which the stale
+     *            value is still returned.
+     * @param executor
+     *            to run the background refreshes on. Refreshes that the
+     *            executor rejects are retried on a later read.
+     */
+    public RefreshAheadPolicy(final int refreshAheadTime, final int maxStaleTime,
+            final Executor executor) {
+        ErrorChecker.throwIfNullArgument(executor, "executor");
+        if (refreshAheadTime < 0 || maxStaleTime < 0) {
+            throw new IllegalArgumentException("Refresh times should not be negative.");
+        }
+        this.refreshAheadTime = refreshAheadTime;
+        this.maxStaleTime = maxStaleTime;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the number of seconds before expiration at which a background
+     *         refresh is started.
+     */
+    public int getRefreshAheadTime() {
+        return this.refreshAheadTime;
+    }
+
+    /**
+     * @return the number of seconds after expiration during which the stale
+     *         value is still returned.
+     */
+    public int getMaxStaleTime() {
+        return this.maxStaleTime;
+    }
+
+    /**
+     * @return the executor background refreshes run on.
+     */
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Lazily creates the executor shared by all policies that do not specify
+     * their own. Its queue is bounded and refreshes that do not fit are
+     * rejected; the entry then stays stale until the next read.
+     */
+    private static final class DefaultExecutorHolder {
+
+        private static final Executor EXECUTOR = DefaultExecutorHolder.create();
+
+        /**
+         * Utility class.
+         */
+        private DefaultExecutorHolder() {
+        }
+
+        /**
+         * @return a bounded executor with daemon threads.
+         */
+        private static Executor create() {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    RefreshAheadPolicy.DEFAULT_REFRESH_THREADS,
+                    RefreshAheadPolicy.DEFAULT_REFRESH_THREADS,
+                    RefreshAheadPolicy.THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(RefreshAheadPolicy.DEFAULT_QUEUE_SIZE),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r,
+                                    RefreshAheadPolicy.THREAD_NAME);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
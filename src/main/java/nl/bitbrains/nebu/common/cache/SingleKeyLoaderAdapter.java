@@ -0,0 +1,55 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Adapts a {@link CacheLoader} per key to the {@link BatchCacheLoader}
+ * interface. The keys are still loaded one by one, so this only helps callers
+ * that want to use {@link Cache#getAll(java.util.Collection, BatchCacheLoader)}
+ * before a real batch loader is available.
+ * 
+ * @param <K>
+ *            type of the keys.
+ * @param <V>
+ *            type of the loaded values.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class SingleKeyLoaderAdapter<K, V> implements BatchCacheLoader<K, V> {
+
+    private final Map<K, ? extends CacheLoader<? extends V>> loaders;
+
+    /**
+     * @param loaders
+     *            the loader of every key that may be requested.
+     */
+    public SingleKeyLoaderAdapter(final Map<K, ? extends CacheLoader<? extends V>> loaders) {
+        ErrorChecker.throwIfNullArgument(loaders, "loaders");
+        this.loaders = loaders;
+    }
+
+    /**
+     * Calls the loader of every key. Keys without a loader are left out.
+     * 
+     * @param keys
+     *            to load the values of.
+     * @return the new values by key.
+     * @throws CacheException
+     *             if any of the loaders failed.
+     */
+    @Override
+    public final Map<K, V> refreshAll(final Set<K> keys) throws CacheException {
+        final Map<K, V> values = new HashMap<K, V>();
+        for (final K key : keys) {
+            final CacheLoader<? extends V> loader = this.loaders.get(key);
+            if (loader != null) {
+                values.put(key, loader.refresh());
+            }
+        }
+        return values;
+    }
+}
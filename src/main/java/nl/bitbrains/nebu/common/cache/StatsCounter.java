@@ -0,0 +1,101 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Collects the statistics of a {@link Cache} while it is in use. Every
+ * statistic is a {@link StripedCounter}, so counting is cheap enough to be
+ * always on, even when many threads read the cache at once.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class StatsCounter {
+
+    private final StripedCounter hits;
+    private final StripedCounter misses;
+    private final StripedCounter loadSuccesses;
+    private final StripedCounter loadFailures;
+    private final StripedCounter totalLoadTime;
+    private final StripedCounter evictions;
+    private final StripedCounter refreshAheads;
+
+    /**
+     * Creates a counter with all statistics at zero.
+     */
+    StatsCounter() {
+        this.hits = new StripedCounter();
+        this.misses = new StripedCounter();
+        this.loadSuccesses = new StripedCounter();
+        this.loadFailures = new StripedCounter();
+        this.totalLoadTime = new StripedCounter();
+        this.evictions = new StripedCounter();
+        this.refreshAheads = new StripedCounter();
+    }
+
+    /**
+     * Records a lookup that found an entry.
+     */
+    void recordHit() {
+        this.hits.increment();
+    }
+
+    /**
+     * Records a lookup that found no entry.
+     */
+    void recordMiss() {
+        this.misses.increment();
+    }
+
+    /**
+     * @param loadTime
+     *            nanoseconds the successful load or refresh took.
+     */
+    void recordLoadSuccess(final long loadTime) {
+        this.loadSuccesses.increment();
+        this.totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * @param loadTime
+     *            nanoseconds the failed load or refresh took.
+     */
+    void recordLoadFailure(final long loadTime) {
+        this.loadFailures.increment();
+        this.totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * Records an entry that was evicted because the cache was too large.
+     */
+    void recordEviction() {
+        this.evictions.increment();
+    }
+
+    /**
+     * Records a refresh that was started in the background.
+     */
+    void recordRefreshAhead() {
+        this.refreshAheads.increment();
+    }
+
+    /**
+     * @return the current values of all statistics.
+     */
+    CacheStats snapshot() {
+        return new CacheStats(this.hits.sum(), this.misses.sum(), this.loadSuccesses.sum(),
+                this.loadFailures.sum(), this.totalLoadTime.sum(), this.evictions.sum(),
+                this.refreshAheads.sum());
+    }
+
+    /**
+     * Sets all statistics back to zero.
+     */
+    void reset() {
+        this.hits.reset();
+        this.misses.reset();
+        this.loadSuccesses.reset();
+        this.loadFailures.reset();
+        this.totalLoadTime.reset();
+        this.evictions.reset();
+        this.refreshAheads.reset();
+    }
+}
@@ -0,0 +1,90 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads updates over several cells, so that threads counting
+ * at the same time rarely contend on the same cache line. Reading the sum is
+ * more expensive than updating it and is not an atomic snapshot when updates
+ * are in progress.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class StripedCounter {
+
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+    private static final int STRIPES = StripedCounter.stripeCount();
+    private static final int SPREAD = 0x9e3779b9;
+    private static final int SPREAD_SHIFT = 16;
+
+    private final AtomicLongArray cells;
+
+    /**
+     * Creates a counter that starts at zero.
+     */
+    StripedCounter() {
+        this.cells = new AtomicLongArray(StripedCounter.STRIPES * StripedCounter.PADDING);
+    }
+
+    /**
+     * Adds one.
+     */
+    void increment() {
+        this.add(1);
+    }
+
+    /**
+     * @param amount
+     *            to add.
+     */
+    void add(final long amount) {
+        this.cells.getAndAdd(StripedCounter.cellIndex(), amount);
+    }
+
+    /**
+     * @return the sum of all additions.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.cells.length(); i += StripedCounter.PADDING) {
+            sum += this.cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the counter back to zero. Additions made at the same time may be
+     * lost.
+     */
+    void reset() {
+        for (int i = 0; i < this.cells.length(); i += StripedCounter.PADDING) {
+            this.cells.set(i, 0);
+        }
+    }
+
+    /**
+     * @return the cell the current thread updates, which stays the same for
+     *         the lifetime of the thread.
+     */
+    private static int cellIndex() {
+        final int h = (int) Thread.currentThread().getId() * StripedCounter.SPREAD;
+        final int stripe = (h ^ (h >>> StripedCounter.SPREAD_SHIFT))
+                & (StripedCounter.STRIPES - 1);
+        return stripe * StripedCounter.PADDING;
+    }
+
+    /**
+     * @return the number of cells: a power of two of at least twice the
+     *         number of processors, limited to {@link #MAX_STRIPES}.
+     */
+    private static int stripeCount() {
+        final int wanted = 2 * Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < wanted && stripes < StripedCounter.MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,29 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Source of time for the cache. Only differences between two readings are
+ * meaningful, so the time need not be related to the wall clock. Tests can
+ * provide their own ticker to advance time without sleeping.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface Ticker {
+
+    /**
+     * Ticker backed by {@link System#nanoTime()}, which is not affected by
+     * changes to the system clock.
+     */
+    Ticker SYSTEM = new Ticker() {
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return the number of nanoseconds elapsed since some fixed but
+     *         arbitrary point in time.
+     */
+    long read();
+}
@@ -0,0 +1,28 @@
+package nl.bitbrains.nebu.common.cache;
+
+/**
+ * Calculates the weight of a cache entry, which is used to bound the total
+ * size of a cache when entries differ greatly in size, such as topologies of
+ * different data centers.
+ * 
+ * @param <K>
+ *            type of the cache keys.
+ * @param <V>
+ *            type of the cached values.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Weighs an entry. The weight is calculated once, when the entry is put
+     * into the cache, and is not updated when the entry is refreshed.
+     * 
+     * @param key
+     *            of the entry.
+     * @param value
+     *            of the entry.
+     * @return the weight of the entry, at least 0.
+     */
+    int weigh(K key, V value);
+}
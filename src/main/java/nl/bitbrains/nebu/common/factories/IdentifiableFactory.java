@@ -1,12 +1,15 @@
 package nl.bitbrains.nebu.common.factories;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import nl.bitbrains.nebu.common.interfaces.IBuilder;
 import nl.bitbrains.nebu.common.interfaces.Identifiable;
 import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 import nl.bitbrains.nebu.common.util.xml.XMLReader;
 import nl.bitbrains.nebu.common.util.xml.XMLWriter;
 
@@ -63,6 +66,52 @@ public abstract class IdentifiableFactory {
         return rootElement;
     }
 
+    /**
+     * Writes the start tag of the XML element for the
+     * {@link Identifiable}, the streaming counterpart of
+     * {@link #createRootXMLElement(Identifiable, String)}. The element must be
+     * ended by the caller.
+     * 
+     * @param object
+     *            {@link Identifiable} to convert.
+     * @param elementName
+     *            to use as tag name.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    protected final void startRootXMLElement(final Identifiable object,
+            final String elementName, final XMLOutput out) throws IOException {
+        ErrorChecker.throwIfNullArgument(object, "object");
+
+        out.startElement(elementName);
+        out.attribute(IdentifiableFactory.TAG_ID, object.getUniqueIdentifier());
+    }
+
+    /**
+     * Writes the XML elements of the {@link Identifiable} objects, using the
+     * given factory. This is the streaming counterpart of
+     * {@link #fillXMLElement(Element, List, XMLWriter)}.
+     * 
+     * @param objects
+     *            {@link Identifiable} objects to write.
+     * @param factory
+     *            to convert the objects.
+     * @param out
+     *            to write to.
+     * @param <T>
+     *            {@link Identifiable} type to use.
+     * @throws IOException
+     *             if writing fails.
+     */
+    protected final <T extends Identifiable> void writeXMLElements(final Collection<T> objects,
+            final XMLWriter<T> factory, final XMLOutput out) throws IOException {
+        for (final T res : objects) {
+            out.write(res, factory);
+        }
+    }
+
     /**
      * Checks if the root is of the righ tname, if not throws an exception.
      * 
@@ -1,19 +1,27 @@
 package nl.bitbrains.nebu.common.factories;
 
+import java.io.IOException;
 import java.text.ParseException;
 
 import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.util.binary.BinaryFactory;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
 import nl.bitbrains.nebu.common.util.xml.XMLFactory;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Element;
 
 /**
- * A simple factory that can write Integers to and from XML.
+ * A simple factory that can write Integers to and from XML and the binary
+ * format.
  * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  * 
  */
-public class IntegerFactory implements XMLFactory<Integer> {
+public class IntegerFactory implements XMLFactory<Integer>, StreamingXMLWriter<Integer>,
+        BinaryFactory<Integer> {
 
     public static final String TAG_INT = "integer";
 
@@ -70,8 +78,24 @@ public class IntegerFactory implements XMLFactory<Integer> {
         return elem;
     }
 
+    @Override
+    public void writeXML(final Integer i, final XMLOutput out) throws IOException {
+        out.textElement(IntegerFactory.TAG_INT, Integer.toString(i));
+    }
+
     @Override
     public IntegerFactory.Builder fromXML(final Element xml) throws ParseException {
         return new IntegerFactory.Builder().withNumber(Integer.parseInt(xml.getValue()));
     }
+
+    @Override
+    public void toBinary(final Integer i, final BinaryOutput out) throws IOException {
+        out.writeSignedVarInt(i);
+    }
+
+    @Override
+    public IntegerFactory.Builder fromBinary(final BinaryInput in) throws IOException,
+            ParseException {
+        return new IntegerFactory.Builder().withNumber(in.readSignedVarInt());
+    }
 }
@@ -1,19 +1,26 @@
 package nl.bitbrains.nebu.common.factories;
 
+import java.io.IOException;
 import java.text.ParseException;
 
 import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.util.binary.BinaryFactory;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
 import nl.bitbrains.nebu.common.util.xml.XMLFactory;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Element;
 
 /**
- * A simple factory that can write Strings to and from XML.
+ * A simple factory that can write Strings to and from XML and the binary format.
  * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  * 
  */
-public class StringFactory implements XMLFactory<String> {
+public class StringFactory implements XMLFactory<String>, StreamingXMLWriter<String>,
+        BinaryFactory<String> {
 
     public static final String TAG_STRING = "string";
 
@@ -70,9 +77,24 @@ public class StringFactory implements XMLFactory<String> {
         return elem;
     }
 
+    @Override
+    public void writeXML(final String object, final XMLOutput out) throws IOException {
+        out.textElement(StringFactory.TAG_STRING, object);
+    }
+
     @Override
     public StringFactory.Builder fromXML(final Element xml) throws ParseException {
         return new Builder().withString(xml.getText());
     }
 
+    @Override
+    public void toBinary(final String object, final BinaryOutput out) throws IOException {
+        out.writeString(object);
+    }
+
+    @Override
+    public StringFactory.Builder fromBinary(final BinaryInput in) throws IOException,
+            ParseException {
+        return new Builder().withString(in.readString());
+    }
 }
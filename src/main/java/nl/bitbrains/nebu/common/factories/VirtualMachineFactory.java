@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.factories;
 
+import java.io.IOException;
 import java.text.ParseException;
 
 import nl.bitbrains.nebu.common.VirtualMachine;
@@ -7,19 +8,27 @@ import nl.bitbrains.nebu.common.VirtualMachineBuilder;
 import nl.bitbrains.nebu.common.VirtualMachine.Status;
 import nl.bitbrains.nebu.common.topology.factory.PhysicalHostFactory;
 import nl.bitbrains.nebu.common.topology.factory.PhysicalStoreFactory;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.common.util.binary.BinaryFactory;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
 import nl.bitbrains.nebu.common.util.xml.XMLFactory;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
 
 /**
- * Converts {@link VirtualMachine} objects to and from XML.
+ * Converts {@link VirtualMachine} objects to and from XML and the binary
+ * format.
  * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  * 
  */
 public class VirtualMachineFactory extends IdentifiableFactory implements
-        XMLFactory<VirtualMachine> {
+        XMLFactory<VirtualMachine>, StreamingXMLWriter<VirtualMachine>,
+        BinaryFactory<VirtualMachine> {
 
     public static final String TAG_ELEMENT_ROOT = "virtualmachine";
     public static final String TAG_LIST_ELEMENT_ROOT = "virtualmachines";
@@ -28,6 +37,8 @@ public class VirtualMachineFactory extends IdentifiableFactory implements
     public static final String TAG_HOST = PhysicalHostFactory.TAG_ELEMENT_ROOT;
     public static final String TAG_DISK = PhysicalStoreFactory.TAG_ELEMENT_ROOT;
 
+    private static final Status[] STATUSES = Status.values();
+
     private final boolean extensive;
 
     /**
@@ -70,6 +81,34 @@ public class VirtualMachineFactory extends IdentifiableFactory implements
         return elem;
     }
 
+    /**
+     * Writes the {@link VirtualMachine} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public final void writeXML(final VirtualMachine object, final XMLOutput out)
+            throws IOException {
+        super.startRootXMLElement(object, VirtualMachineFactory.TAG_ELEMENT_ROOT, out);
+        if (this.extensive) {
+            out.textElement(VirtualMachineFactory.TAG_HOSTNAME, object.getHostname());
+            out.textElement(VirtualMachineFactory.TAG_STATUS, object.getStatus().toString());
+            out.startElement(VirtualMachineFactory.TAG_HOST);
+            out.attribute(IdentifiableFactory.TAG_ID, object.getHost());
+            out.endElement();
+            for (final String store : object.getStores()) {
+                out.startElement(VirtualMachineFactory.TAG_DISK);
+                out.attribute(IdentifiableFactory.TAG_ID, store);
+                out.endElement();
+            }
+        }
+        out.endElement();
+    }
+
     /**
      * Creates a {@link VirtualMachine} from XML.
      * 
@@ -95,4 +134,83 @@ public class VirtualMachineFactory extends IdentifiableFactory implements
         }
         return builder;
     }
+
+    /**
+     * Writes the {@link VirtualMachine} in the binary format. Like the XML,
+     * only the identifier is written by a factory that is not extensive.
+     * 
+     * @param object
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public final void toBinary(final VirtualMachine object, final BinaryOutput out)
+            throws IOException {
+        ErrorChecker.throwIfNullArgument(object, "object");
+        out.writeIdentifier(object.getUniqueIdentifier());
+        out.writeBoolean(this.extensive);
+        if (this.extensive) {
+            out.writeString(object.getHostname());
+            out.writeVarInt(object.getStatus().ordinal());
+            out.writeIdentifier(object.getHost());
+            out.writeVarInt(object.getStores().size());
+            for (final String store : object.getStores()) {
+                out.writeIdentifier(store);
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link VirtualMachine} from the binary format. The details
+     * written by an extensive factory are skipped if this factory is not
+     * extensive, just like they are ignored in the XML.
+     * 
+     * @param in
+     *            to read from.
+     * @return the created {@link VirtualMachine}.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input is not valid.
+     */
+    public final VirtualMachineBuilder fromBinary(final BinaryInput in) throws IOException,
+            ParseException {
+        ErrorChecker.throwIfNullArgument(in, "in");
+        final VirtualMachineBuilder builder = new VirtualMachineBuilder();
+        final String id = in.readIdentifier();
+        if (id == null) {
+            throw in.error("Missing identifier of virtual machine.");
+        }
+        builder.withUuid(id);
+        if (in.readBoolean()) {
+            final String hostname = in.readString();
+            final int status = in.readSize();
+            if (status >= VirtualMachineFactory.STATUSES.length) {
+                throw in.error("Invalid status " + status + ".");
+            }
+            final String host = in.readIdentifier();
+            final int stores = in.readSize();
+            if (this.extensive) {
+                builder.withStatus(VirtualMachineFactory.STATUSES[status]);
+                if (hostname != null) {
+                    builder.withHostname(hostname);
+                }
+                if (host != null) {
+                    builder.withHost(host);
+                }
+            }
+            for (int i = 0; i < stores; i++) {
+                final String store = in.readIdentifier();
+                if (store == null) {
+                    throw in.error("Missing identifier of disk.");
+                }
+                if (this.extensive) {
+                    builder.withDisk(store);
+                }
+            }
+        }
+        return builder;
+    }
 }
@@ -0,0 +1,346 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Topology that can be read and changed by many threads at once. The current
+ * version is an immutable {@link TopologySnapshot}: readers get it without
+ * locking and always see a consistent topology, no matter how long they hold
+ * on to it.
+ * 
+ * Writers collect their changes in a {@link Batch} and publish them at once.
+ * Publishing applies the changes to the current version and replaces it with
+ * a single compare-and-set, so readers see either all changes of a batch or
+ * none of them. If another batch was published in the meantime, the changes
+ * are applied again to the newer version. As the snapshots share all
+ * unchanged resources, this only costs time proportional to the number of
+ * changes.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class ConcurrentTopology {
+
+    private final AtomicReference<TopologySnapshot> current;
+
+    /**
+     * Creates an empty topology with a root with id "root".
+     */
+    public ConcurrentTopology() {
+        this(TopologySnapshot.empty());
+    }
+
+    /**
+     * @param initial
+     *            first version of the topology.
+     */
+    public ConcurrentTopology(final TopologySnapshot initial) {
+        ErrorChecker.throwIfNullArgument(initial, "initial");
+        this.current = new AtomicReference<TopologySnapshot>(initial);
+    }
+
+    /**
+     * @param topology
+     *            to take the first version from. Later changes to it are not
+     *            seen.
+     */
+    public ConcurrentTopology(final PhysicalTopology topology) {
+        this(TopologySnapshot.of(topology));
+    }
+
+    /**
+     * @return the current version of the topology.
+     */
+    public TopologySnapshot snapshot() {
+        return this.current.get();
+    }
+
+    /**
+     * @return a new, empty batch of changes to this topology.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Applies a single update and publishes the result.
+     * 
+     * @param update
+     *            to apply.
+     * @return the published version.
+     */
+    public TopologySnapshot update(final TopologyUpdate update) {
+        return this.batch().with(update).publish();
+    }
+
+    /**
+     * Applies the updates in order to the current version until the result
+     * can be published without losing a concurrent change.
+     * 
+     * @param updates
+     *            to apply.
+     * @return the published version.
+     */
+    private TopologySnapshot publish(final List<TopologyUpdate> updates) {
+        while (true) {
+            final TopologySnapshot base = this.current.get();
+            TopologySnapshot next = base;
+            for (final TopologyUpdate update : updates) {
+                next = update.apply(next);
+            }
+            if (next == base || this.current.compareAndSet(base, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Changes to a {@link ConcurrentTopology} that are published together.
+     * The methods correspond to those of {@link TopologySnapshot} and throw
+     * the same exceptions, but only when the batch is published. A batch
+     * should be used by a single thread.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public final class Batch {
+
+        private final List<TopologyUpdate> updates = new ArrayList<TopologyUpdate>();
+
+        /**
+         * Only created by {@link ConcurrentTopology#batch()}.
+         */
+        private Batch() {
+        }
+
+        /**
+         * @param update
+         *            to add to the batch.
+         * @return this batch.
+         */
+        public Batch with(final TopologyUpdate update) {
+            ErrorChecker.throwIfNullArgument(update, "update");
+            this.updates.add(update);
+            return this;
+        }
+
+        /**
+         * @return the number of changes in the batch.
+         */
+        public int size() {
+            return this.updates.size();
+        }
+
+        /**
+         * Applies all changes in the batch to the current version of the
+         * topology and publishes the result atomically. If a change fails,
+         * nothing is published. The batch is empty afterwards.
+         * 
+         * @return the published version.
+         */
+        public TopologySnapshot publish() {
+            final List<TopologyUpdate> pending = new ArrayList<TopologyUpdate>(this.updates);
+            this.updates.clear();
+            return ConcurrentTopology.this.publish(pending);
+        }
+
+        /**
+         * @param id
+         *            of the new data center.
+         * @return this batch.
+         * @see TopologySnapshot#withDataCenter(String)
+         */
+        public Batch withDataCenter(final String id) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withDataCenter(id);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the new rack.
+         * @param dataCenterID
+         *            identifier of the data center to place the rack in.
+         * @return this batch.
+         * @see TopologySnapshot#withRack(String, String)
+         */
+        public Batch withRack(final String id, final String dataCenterID) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withRack(id, dataCenterID);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the new host.
+         * @param rackID
+         *            identifier of the rack to place the host in.
+         * @return this batch.
+         * @see TopologySnapshot#withHost(String, String)
+         */
+        public Batch withHost(final String id, final String rackID) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withHost(id, rackID);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the new store.
+         * @param rackID
+         *            identifier of the rack to place the store in.
+         * @param capacity
+         *            of the store.
+         * @param used
+         *            capacity of the store.
+         * @return this batch.
+         * @see TopologySnapshot#withRackDisk(String, String, long, long)
+         */
+        public Batch withRackDisk(final String id, final String rackID, final long capacity,
+                final long used) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withRackDisk(id, rackID, capacity, used);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the new store.
+         * @param hostID
+         *            identifier of the host to place the store in.
+         * @param capacity
+         *            of the store.
+         * @param used
+         *            capacity of the store.
+         * @return this batch.
+         * @see TopologySnapshot#withHostDisk(String, String, long, long)
+         */
+        public Batch withHostDisk(final String id, final String hostID, final long capacity,
+                final long used) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withHostDisk(id, hostID, capacity, used);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the host.
+         * @param cpuUsage
+         *            the new cpu usage of the host.
+         * @param memUsage
+         *            the new memory usage of the host.
+         * @param lastUpdate
+         *            time the usage was measured, in milliseconds since the
+         *            epoch.
+         * @return this batch.
+         * @see TopologySnapshot#withHostUsage(String, double, double, long)
+         */
+        public Batch withHostUsage(final String id, final double cpuUsage,
+                final double memUsage, final long lastUpdate) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withHostUsage(id, cpuUsage, memUsage, lastUpdate);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the store.
+         * @param capacity
+         *            the new capacity of the store.
+         * @param used
+         *            the new used capacity of the store.
+         * @return this batch.
+         * @see TopologySnapshot#withStoreUsage(String, long, long)
+         */
+        public Batch withStoreUsage(final String id, final long capacity, final long used) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withStoreUsage(id, capacity, used);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the data center.
+         * @return this batch.
+         * @see TopologySnapshot#withoutDataCenter(String)
+         */
+        public Batch withoutDataCenter(final String id) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withoutDataCenter(id);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the rack.
+         * @return this batch.
+         * @see TopologySnapshot#withoutRack(String)
+         */
+        public Batch withoutRack(final String id) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withoutRack(id);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the host.
+         * @return this batch.
+         * @see TopologySnapshot#withoutHost(String)
+         */
+        public Batch withoutHost(final String id) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withoutHost(id);
+                }
+            });
+        }
+
+        /**
+         * @param id
+         *            of the store.
+         * @return this batch.
+         * @see TopologySnapshot#withoutStore(String)
+         */
+        public Batch withoutStore(final String id) {
+            return this.with(new TopologyUpdate() {
+                @Override
+                public TopologySnapshot apply(final TopologySnapshot snapshot) {
+                    return snapshot.withoutStore(id);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lazily creates the pool shared by the {@link TopologyMerger} and
+ * {@link TopologyQuery} instances that do not specify their own.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class DefaultPoolHolder {
+
+    static final ForkJoinPool POOL = new ForkJoinPool();
+
+    /**
+     * Utility class.
+     */
+    private DefaultPoolHolder() {
+    }
+}
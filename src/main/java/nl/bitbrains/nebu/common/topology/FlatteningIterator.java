@@ -0,0 +1,70 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator that walks one level down the topology tree lazily: it iterates
+ * over the children of each parent in turn, without collecting them in a
+ * list first. Elements can not be removed through the iterator.
+ * 
+ * @param <P>
+ *            type of the parents.
+ * @param <C>
+ *            type of the children.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+abstract class FlatteningIterator<P, C> implements Iterator<C> {
+
+    private final Iterator<? extends P> parents;
+    private Iterator<? extends C> current;
+
+    /**
+     * @param parents
+     *            whose children to iterate over.
+     */
+    FlatteningIterator(final Iterator<? extends P> parents) {
+        this(Collections.<C> emptyIterator(), parents);
+    }
+
+    /**
+     * @param first
+     *            children to iterate over before those of the parents.
+     * @param parents
+     *            whose children to iterate over.
+     */
+    FlatteningIterator(final Iterator<? extends C> first, final Iterator<? extends P> parents) {
+        this.current = first;
+        this.parents = parents;
+    }
+
+    /**
+     * @param parent
+     *            to get the children of.
+     * @return an iterator over the children of the parent.
+     */
+    protected abstract Iterator<? extends C> children(P parent);
+
+    @Override
+    public final boolean hasNext() {
+        while (!this.current.hasNext() && this.parents.hasNext()) {
+            this.current = this.children(this.parents.next());
+        }
+        return this.current.hasNext();
+    }
+
+    @Override
+    public final C next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.current.next();
+    }
+
+    @Override
+    public final void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
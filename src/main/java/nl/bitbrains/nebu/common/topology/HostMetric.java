@@ -0,0 +1,38 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * A metric of the usage of a host, by which the {@link UtilizationIndex}
+ * orders the hosts.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public enum HostMetric {
+
+    /**
+     * The cpu usage.
+     */
+    CPU_USAGE {
+        @Override
+        public double of(final PhysicalHost host) {
+            return host.getCpuUsage();
+        }
+    },
+
+    /**
+     * The memory usage.
+     */
+    MEM_USAGE {
+        @Override
+        public double of(final PhysicalHost host) {
+            return host.getMemUsage();
+        }
+    };
+
+    /**
+     * @param host
+     *            to get the metric of.
+     * @return the value of the metric for the host.
+     */
+    public abstract double of(PhysicalHost host);
+}
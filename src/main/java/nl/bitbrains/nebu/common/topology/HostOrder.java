@@ -0,0 +1,74 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Comparator;
+
+/**
+ * Orders hosts by their usage, for
+ * {@link TopologyQuery#top(int, Comparator)}. Hosts with the same usage are
+ * ordered by their identifier, so a query returns the same hosts whether it
+ * runs sequentially or in parallel.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public enum HostOrder implements Comparator<PhysicalHost> {
+
+    /**
+     * Least used cpu first.
+     */
+    LOWEST_CPU_USAGE {
+        @Override
+        int compareUsage(final PhysicalHost one, final PhysicalHost two) {
+            return Double.compare(one.getCpuUsage(), two.getCpuUsage());
+        }
+    },
+
+    /**
+     * Most used cpu first.
+     */
+    HIGHEST_CPU_USAGE {
+        @Override
+        int compareUsage(final PhysicalHost one, final PhysicalHost two) {
+            return Double.compare(two.getCpuUsage(), one.getCpuUsage());
+        }
+    },
+
+    /**
+     * Least used memory first.
+     */
+    LOWEST_MEM_USAGE {
+        @Override
+        int compareUsage(final PhysicalHost one, final PhysicalHost two) {
+            return Double.compare(one.getMemUsage(), two.getMemUsage());
+        }
+    },
+
+    /**
+     * Most used memory first.
+     */
+    HIGHEST_MEM_USAGE {
+        @Override
+        int compareUsage(final PhysicalHost one, final PhysicalHost two) {
+            return Double.compare(two.getMemUsage(), one.getMemUsage());
+        }
+    };
+
+    @Override
+    public int compare(final PhysicalHost one, final PhysicalHost two) {
+        final int res = this.compareUsage(one, two);
+        if (res != 0) {
+            return res;
+        }
+        return one.getUniqueIdentifier().compareTo(two.getUniqueIdentifier());
+    }
+
+    /**
+     * @param one
+     *            first host.
+     * @param two
+     *            second host.
+     * @return a negative number, zero or a positive number if the first host
+     *         comes before, together with or after the second.
+     */
+    abstract int compareUsage(PhysicalHost one, PhysicalHost two);
+}
@@ -0,0 +1,20 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * Condition on a host, used to select hosts with a {@link TopologyQuery}.
+ * Common conditions are created by {@link TopologyPredicates}. A predicate
+ * may be tested by several threads at once, so it should not have side
+ * effects.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface HostPredicate {
+
+    /**
+     * @param host
+     *            to test.
+     * @return true iff the host meets the condition.
+     */
+    boolean matches(PhysicalHost host);
+}
@@ -0,0 +1,52 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * The usage of a {@link PhysicalHost} as measured at one time, filled in by
+ * {@link PhysicalHost#readUsage(HostUsage)}. One instance can be reused to
+ * read many hosts, so that reading them creates no objects.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class HostUsage {
+
+    private double cpuUsage;
+    private double memUsage;
+    private long lastUpdate;
+
+    /**
+     * @return the cpu usage. Number between 0 and 1.
+     */
+    public double getCpuUsage() {
+        return this.cpuUsage;
+    }
+
+    /**
+     * @return the memory usage. Number between 0 and 1.
+     */
+    public double getMemUsage() {
+        return this.memUsage;
+    }
+
+    /**
+     * @return the time the usage was measured, in milliseconds since the
+     *         epoch, or 0 if it is unknown.
+     */
+    public long getLastUpdate() {
+        return this.lastUpdate;
+    }
+
+    /**
+     * @param cpuUsage
+     *            to set.
+     * @param memUsage
+     *            to set.
+     * @param lastUpdate
+     *            to set.
+     */
+    void set(final double cpuUsage, final double memUsage, final long lastUpdate) {
+        this.cpuUsage = cpuUsage;
+        this.memUsage = memUsage;
+        this.lastUpdate = lastUpdate;
+    }
+}
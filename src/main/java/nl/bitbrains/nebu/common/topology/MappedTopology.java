@@ -0,0 +1,781 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * A read-only topology in a file that is mapped into memory, so opening it
+ * only reads a small header, however large the topology is. The resources
+ * are only turned into {@link PhysicalResource} objects when they are asked
+ * for, and every call returns new objects, detached from any topology. The
+ * usage of the hosts and stores can also be read by their position in the
+ * file, without creating any objects.
+ * 
+ * The file holds one fixed-size record per resource, with the records of
+ * each kind in one array: hosts, stores, racks and data centers. Resources
+ * refer to each other by their position in these arrays, and the children
+ * of a resource are next to each other. The identifiers are stored once at
+ * the end of the file, and a hash table per kind of resource finds a
+ * resource by its identifier without reading the others.
+ * 
+ * The file can be at most 2 GB, and should not be changed while it is open.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class MappedTopology {
+
+    private static final byte[] MAGIC = { 'N', 'E', 'B', 'M' };
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int ROOT = 8;
+    private static final int COUNTS = 12;
+    private static final int OFFSETS = 28;
+    private static final int TABLES = 44;
+    private static final int STRINGS = 48;
+    private static final int SIZE = 52;
+
+    private static final int HOST = 0;
+    private static final int STORE = 1;
+    private static final int RACK = 2;
+    private static final int DATA_CENTER = 3;
+    private static final int KINDS = 4;
+    private static final int[] RECORD_SIZE = { 40, 24, 24, 12 };
+
+    private static final int CPU_USAGE = 8;
+    private static final int MEM_USAGE = 16;
+    private static final int LAST_UPDATE = 24;
+    private static final int HOST_STORES = 32;
+    private static final int CAPACITY = 8;
+    private static final int USED = 16;
+    private static final int RACK_HOSTS = 8;
+    private static final int RACK_STORES = 16;
+    private static final int DATA_CENTER_RACKS = 4;
+
+    private final ByteBuffer buffer;
+    private final int[] counts;
+    private final int[] offsets;
+    private final int[] tables;
+    private final int strings;
+
+    /**
+     * @param buffer
+     *            holding the whole file, of which the header has been
+     *            checked.
+     */
+    private MappedTopology(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.counts = new int[MappedTopology.KINDS];
+        this.offsets = new int[MappedTopology.KINDS];
+        this.tables = new int[MappedTopology.KINDS];
+        int table = buffer.getInt(MappedTopology.TABLES);
+        for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+            this.counts[kind] = buffer.getInt(MappedTopology.COUNTS + 4 * kind);
+            this.offsets[kind] = buffer.getInt(MappedTopology.OFFSETS + 4 * kind);
+            this.tables[kind] = table;
+            table += 4 * MappedTopology.tableSize(this.counts[kind]);
+        }
+        this.strings = buffer.getInt(MappedTopology.STRINGS);
+    }
+
+    /**
+     * Writes a topology to a file, replacing its contents.
+     * 
+     * @param topology
+     *            to write.
+     * @param file
+     *            to write to.
+     * @throws IOException
+     *             if writing fails or the topology does not fit in 2 GB.
+     */
+    public static void write(final PhysicalTopology topology, final File file)
+            throws IOException {
+        ErrorChecker.throwIfNullArgument(topology, "topology");
+        ErrorChecker.throwIfNullArgument(file, "file");
+        final byte[] content = new Writer(topology).write();
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(PhysicalTopology, File)} into
+     * memory.
+     * 
+     * @param file
+     *            to open.
+     * @return the topology in the file.
+     * @throws IOException
+     *             if the file can not be read.
+     * @throws ParseException
+     *             if the file does not hold a topology in this format.
+     */
+    public static MappedTopology open(final File file) throws IOException, ParseException {
+        ErrorChecker.throwIfNullArgument(file, "file");
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        final MappedByteBuffer buffer;
+        try {
+            final long length = in.length();
+            if (length < MappedTopology.HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new ParseException("File is not a mapped topology.", 0);
+            }
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            in.close();
+        }
+        for (int i = 0; i < MappedTopology.MAGIC.length; i++) {
+            if (buffer.get(i) != MappedTopology.MAGIC[i]) {
+                throw new ParseException("File is not a mapped topology.", i);
+            }
+        }
+        if (buffer.getInt(MappedTopology.MAGIC.length) != MappedTopology.VERSION) {
+            throw new ParseException("Unsupported version of the mapped topology format.",
+                    MappedTopology.MAGIC.length);
+        }
+        if (buffer.getInt(MappedTopology.SIZE) != buffer.capacity()) {
+            throw new ParseException("File is not complete.", buffer.capacity());
+        }
+        return new MappedTopology(buffer);
+    }
+
+    /**
+     * @return the identifier of the root.
+     */
+    public String getRootID() {
+        return this.readString(this.buffer.getInt(MappedTopology.ROOT));
+    }
+
+    /**
+     * @return the number of data centers.
+     */
+    public int getDataCenterCount() {
+        return this.counts[MappedTopology.DATA_CENTER];
+    }
+
+    /**
+     * @return the number of racks.
+     */
+    public int getRackCount() {
+        return this.counts[MappedTopology.RACK];
+    }
+
+    /**
+     * @return the number of hosts.
+     */
+    public int getHostCount() {
+        return this.counts[MappedTopology.HOST];
+    }
+
+    /**
+     * @return the number of stores, both in racks and in hosts.
+     */
+    public int getStoreCount() {
+        return this.counts[MappedTopology.STORE];
+    }
+
+    /**
+     * @param host
+     *            position of the host, from 0 up to the number of hosts.
+     * @return the identifier of the host.
+     */
+    public String getHostID(final int host) {
+        return this.readString(this.buffer.getInt(this.record(MappedTopology.HOST, host)));
+    }
+
+    /**
+     * @param host
+     *            position of the host.
+     * @return the cpu usage of the host.
+     */
+    public double getCpuUsage(final int host) {
+        return this.buffer.getDouble(this.record(MappedTopology.HOST, host)
+                + MappedTopology.CPU_USAGE);
+    }
+
+    /**
+     * @param host
+     *            position of the host.
+     * @return the memory usage of the host.
+     */
+    public double getMemUsage(final int host) {
+        return this.buffer.getDouble(this.record(MappedTopology.HOST, host)
+                + MappedTopology.MEM_USAGE);
+    }
+
+    /**
+     * @param host
+     *            position of the host.
+     * @return the time the usage of the host was measured, in milliseconds
+     *         since the epoch.
+     */
+    public long getLastUpdate(final int host) {
+        return this.buffer.getLong(this.record(MappedTopology.HOST, host)
+                + MappedTopology.LAST_UPDATE);
+    }
+
+    /**
+     * @param store
+     *            position of the store, from 0 up to the number of stores.
+     * @return the identifier of the store.
+     */
+    public String getStoreID(final int store) {
+        return this.readString(this.buffer.getInt(this.record(MappedTopology.STORE, store)));
+    }
+
+    /**
+     * @param store
+     *            position of the store.
+     * @return the capacity of the store.
+     */
+    public long getCapacity(final int store) {
+        return this.buffer.getLong(this.record(MappedTopology.STORE, store)
+                + MappedTopology.CAPACITY);
+    }
+
+    /**
+     * @param store
+     *            position of the store.
+     * @return the used capacity of the store.
+     */
+    public long getUsed(final int store) {
+        return this.buffer.getLong(this.record(MappedTopology.STORE, store)
+                + MappedTopology.USED);
+    }
+
+    /**
+     * @param dataCenterID
+     *            to look for.
+     * @return true iff there is a data center with that dataCenterID.
+     */
+    public boolean hasDataCenterByID(final String dataCenterID) {
+        return this.find(MappedTopology.DATA_CENTER, dataCenterID) >= 0;
+    }
+
+    /**
+     * @param rackID
+     *            to look for.
+     * @return true iff there is a rack with that rackID.
+     */
+    public boolean hasRackByID(final String rackID) {
+        return this.find(MappedTopology.RACK, rackID) >= 0;
+    }
+
+    /**
+     * @param cpuID
+     *            to look for.
+     * @return true iff there is a host with that cpuID.
+     */
+    public boolean hasCPUByID(final String cpuID) {
+        return this.find(MappedTopology.HOST, cpuID) >= 0;
+    }
+
+    /**
+     * @param storeID
+     *            to look for.
+     * @return true iff there is a store with that storeID.
+     */
+    public boolean hasStoreByID(final String storeID) {
+        return this.find(MappedTopology.STORE, storeID) >= 0;
+    }
+
+    /**
+     * @param dataCenterID
+     *            to look for.
+     * @return a new copy of the data center, with all resources below it.
+     * @throws NoSuchElementException
+     *             if there is no such data center.
+     */
+    public PhysicalDataCenter getDataCenterByID(final String dataCenterID) {
+        return this.readDataCenter(this.get(MappedTopology.DATA_CENTER, dataCenterID));
+    }
+
+    /**
+     * @param rackID
+     *            to look for.
+     * @return a new copy of the rack, with its hosts and stores.
+     * @throws NoSuchElementException
+     *             if there is no such rack.
+     */
+    public PhysicalRack getRackByID(final String rackID) {
+        return this.readRack(this.get(MappedTopology.RACK, rackID));
+    }
+
+    /**
+     * @param cpuID
+     *            to look for.
+     * @return a new copy of the host, with its stores.
+     * @throws NoSuchElementException
+     *             if there is no such host.
+     */
+    public PhysicalHost getCPUByID(final String cpuID) {
+        return this.readHost(this.get(MappedTopology.HOST, cpuID));
+    }
+
+    /**
+     * @param storeID
+     *            to look for.
+     * @return a new copy of the store.
+     * @throws NoSuchElementException
+     *             if there is no such store.
+     */
+    public PhysicalStore getStoreByID(final String storeID) {
+        return this.readStore(this.get(MappedTopology.STORE, storeID));
+    }
+
+    /**
+     * @return a new topology holding all resources of the file.
+     */
+    public PhysicalTopology toTopology() {
+        final PhysicalTopology res = new PhysicalTopology(new PhysicalRootBuilder().withUuid(
+                this.getRootID()).build());
+        for (int i = 0; i < this.getDataCenterCount(); i++) {
+            res.addDataCenter(this.readDataCenter(i));
+        }
+        return res;
+    }
+
+    /**
+     * @param index
+     *            of the data center.
+     * @return a new copy of the data center.
+     */
+    private PhysicalDataCenter readDataCenter(final int index) {
+        final int record = this.record(MappedTopology.DATA_CENTER, index);
+        final PhysicalDataCenter dataCenter = new PhysicalDataCenterBuilder().withUuid(
+                this.readString(this.buffer.getInt(record))).build();
+        final int first = this.buffer.getInt(record + MappedTopology.DATA_CENTER_RACKS);
+        final int count = this.buffer.getInt(record + MappedTopology.DATA_CENTER_RACKS + 4);
+        for (int i = first; i < first + count; i++) {
+            final PhysicalRack rack = this.readRack(i);
+            dataCenter.addRack(rack);
+            rack.setParent(dataCenter);
+        }
+        return dataCenter;
+    }
+
+    /**
+     * @param index
+     *            of the rack.
+     * @return a new copy of the rack.
+     */
+    private PhysicalRack readRack(final int index) {
+        final int record = this.record(MappedTopology.RACK, index);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid(
+                this.readString(this.buffer.getInt(record))).build();
+        final int firstHost = this.buffer.getInt(record + MappedTopology.RACK_HOSTS);
+        final int hosts = this.buffer.getInt(record + MappedTopology.RACK_HOSTS + 4);
+        for (int i = firstHost; i < firstHost + hosts; i++) {
+            final PhysicalHost host = this.readHost(i);
+            rack.addCPU(host);
+            host.setParent(rack);
+        }
+        final int firstStore = this.buffer.getInt(record + MappedTopology.RACK_STORES);
+        final int stores = this.buffer.getInt(record + MappedTopology.RACK_STORES + 4);
+        for (int i = firstStore; i < firstStore + stores; i++) {
+            final PhysicalStore store = this.readStore(i);
+            rack.addDisk(store);
+            store.setParent(rack);
+        }
+        return rack;
+    }
+
+    /**
+     * @param index
+     *            of the host.
+     * @return a new copy of the host.
+     */
+    private PhysicalHost readHost(final int index) {
+        final int record = this.record(MappedTopology.HOST, index);
+        final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+        builder.withCpuUsage(this.buffer.getDouble(record + MappedTopology.CPU_USAGE))
+                .withMemUsage(this.buffer.getDouble(record + MappedTopology.MEM_USAGE))
+                .withLastUpdate(this.buffer.getLong(record + MappedTopology.LAST_UPDATE));
+        final PhysicalHost host = builder.withUuid(this.readString(this.buffer.getInt(record)))
+                .build();
+        final int first = this.buffer.getInt(record + MappedTopology.HOST_STORES);
+        final int count = this.buffer.getInt(record + MappedTopology.HOST_STORES + 4);
+        for (int i = first; i < first + count; i++) {
+            final PhysicalStore store = this.readStore(i);
+            host.addDisk(store);
+            store.setParent(host);
+        }
+        return host;
+    }
+
+    /**
+     * @param index
+     *            of the store.
+     * @return a new copy of the store.
+     */
+    private PhysicalStore readStore(final int index) {
+        final int record = this.record(MappedTopology.STORE, index);
+        final PhysicalStoreBuilder builder = new PhysicalStoreBuilder();
+        builder.withCapacity(this.buffer.getLong(record + MappedTopology.CAPACITY)).withUsed(
+                this.buffer.getLong(record + MappedTopology.USED));
+        return builder.withUuid(this.readString(this.buffer.getInt(record))).build();
+    }
+
+    /**
+     * @param kind
+     *            of resource.
+     * @param index
+     *            of the resource.
+     * @return the offset of its record.
+     * @throws IndexOutOfBoundsException
+     *             if there is no such resource.
+     */
+    private int record(final int kind, final int index) {
+        if (index < 0 || index >= this.counts[kind]) {
+            throw new IndexOutOfBoundsException("No resource at position " + index + ".");
+        }
+        return this.offsets[kind] + index * MappedTopology.RECORD_SIZE[kind];
+    }
+
+    /**
+     * @param kind
+     *            of resource.
+     * @param id
+     *            to look for.
+     * @return the index of the resource.
+     * @throws NoSuchElementException
+     *             if there is no such resource.
+     */
+    private int get(final int kind, final String id) {
+        final int res = this.find(kind, id);
+        if (res < 0) {
+            throw new NoSuchElementException();
+        }
+        return res;
+    }
+
+    /**
+     * @param kind
+     *            of resource.
+     * @param id
+     *            to look for.
+     * @return the index of the resource, or -1 if there is none.
+     */
+    private int find(final int kind, final String id) {
+        if (id == null) {
+            return -1;
+        }
+        final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        final int mask = MappedTopology.tableSize(this.counts[kind]) - 1;
+        for (int slot = MappedTopology.hash(id) & mask;; slot = (slot + 1) & mask) {
+            final int entry = this.buffer.getInt(this.tables[kind] + 4 * slot);
+            if (entry == 0) {
+                return -1;
+            }
+            final int index = entry - 1;
+            if (this.stringEquals(this.buffer.getInt(this.record(kind, index)), bytes)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * @param ref
+     *            offset of the string in the string area.
+     * @param bytes
+     *            UTF-8 encoding of the string to compare with.
+     * @return true iff the strings are equal.
+     */
+    private boolean stringEquals(final int ref, final byte[] bytes) {
+        final int start = this.strings + ref;
+        if (this.buffer.getInt(start) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (this.buffer.get(start + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param ref
+     *            offset of the string in the string area.
+     * @return the string.
+     */
+    private String readString(final int ref) {
+        final int start = this.strings + ref;
+        final byte[] bytes = new byte[this.buffer.getInt(start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = this.buffer.get(start + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param count
+     *            number of resources in the table.
+     * @return the number of slots of the table, a power of two that leaves
+     *         at least half of them empty.
+     */
+    private static int tableSize(final int count) {
+        return Integer.highestOneBit(Math.max(1, count)) << 2;
+    }
+
+    /**
+     * @param id
+     *            to hash.
+     * @return the hash code of the id, with the high bits spread to the low
+     *         bits.
+     */
+    private static int hash(final String id) {
+        final int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Lays out a topology in the format of the file.
+     */
+    private static final class Writer {
+
+        private final PhysicalTopology topology;
+        private final List<List<? extends PhysicalResource>> resources;
+        private final ByteArrayOutputStream strings;
+
+        /**
+         * @param topology
+         *            to write.
+         */
+        private Writer(final PhysicalTopology topology) {
+            this.topology = topology;
+            this.resources = new ArrayList<List<? extends PhysicalResource>>();
+            this.strings = new ByteArrayOutputStream();
+        }
+
+        /**
+         * @return the content of the file.
+         * @throws IOException
+         *             if the topology does not fit in 2 GB.
+         */
+        private byte[] write() throws IOException {
+            final List<PhysicalHost> hosts = new ArrayList<PhysicalHost>();
+            final List<PhysicalStore> stores = new ArrayList<PhysicalStore>();
+            final List<PhysicalRack> racks = new ArrayList<PhysicalRack>();
+            final List<PhysicalDataCenter> dataCenters = new ArrayList<PhysicalDataCenter>(
+                    this.topology.getDataCenterView());
+            this.resources.add(hosts);
+            this.resources.add(stores);
+            this.resources.add(racks);
+            this.resources.add(dataCenters);
+            for (final PhysicalDataCenter dataCenter : dataCenters) {
+                racks.addAll(dataCenter.getRackView());
+            }
+            for (final PhysicalRack rack : racks) {
+                for (final PhysicalHost host : rack.getCPUView()) {
+                    hosts.add(host);
+                    stores.addAll(host.getDiskView());
+                }
+                stores.addAll(rack.getDiskView());
+            }
+
+            final int[] offsets = new int[MappedTopology.KINDS];
+            long size = MappedTopology.HEADER_SIZE;
+            for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+                offsets[kind] = (int) size;
+                size += (long) this.resources.get(kind).size() * MappedTopology.RECORD_SIZE[kind];
+            }
+            final int tables = (int) size;
+            for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+                size += 4L * MappedTopology.tableSize(this.resources.get(kind).size());
+            }
+            final int stringsStart = (int) size;
+            final int root = this.addString(this.topology.getRoot().getUniqueIdentifier());
+            final int[][] ids = new int[MappedTopology.KINDS][];
+            for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+                final List<? extends PhysicalResource> list = this.resources.get(kind);
+                ids[kind] = new int[list.size()];
+                for (int i = 0; i < list.size(); i++) {
+                    ids[kind][i] = this.addString(list.get(i).getUniqueIdentifier());
+                }
+            }
+            size += this.strings.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The topology does not fit in a mapped file.");
+            }
+
+            final ByteBuffer out = ByteBuffer.allocate((int) size);
+            out.put(MappedTopology.MAGIC);
+            out.putInt(MappedTopology.VERSION);
+            out.putInt(MappedTopology.ROOT, root);
+            for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+                out.putInt(MappedTopology.COUNTS + 4 * kind, this.resources.get(kind).size());
+                out.putInt(MappedTopology.OFFSETS + 4 * kind, offsets[kind]);
+            }
+            out.putInt(MappedTopology.TABLES, tables);
+            out.putInt(MappedTopology.STRINGS, stringsStart);
+            out.putInt(MappedTopology.SIZE, (int) size);
+
+            this.writeRecords(out, offsets, ids, hosts, stores, racks, dataCenters);
+            int table = tables;
+            for (int kind = 0; kind < MappedTopology.KINDS; kind++) {
+                table = Writer.writeTable(out, table, this.resources.get(kind));
+            }
+            out.position(stringsStart);
+            out.put(this.strings.toByteArray());
+            return out.array();
+        }
+
+        /**
+         * Writes the records of all resources, in which the children of a
+         * resource are the ranges that follow from the order of the lists.
+         * 
+         * @param out
+         *            to write to.
+         * @param offsets
+         *            of the record arrays.
+         * @param ids
+         *            offsets of the identifiers of the resources.
+         * @param hosts
+         *            in the order of their racks.
+         * @param stores
+         *            in the order of their hosts and racks.
+         * @param racks
+         *            in the order of their data centers.
+         * @param dataCenters
+         *            of the topology.
+         */
+        private void writeRecords(final ByteBuffer out, final int[] offsets, final int[][] ids,
+                final List<PhysicalHost> hosts, final List<PhysicalStore> stores,
+                final List<PhysicalRack> racks, final List<PhysicalDataCenter> dataCenters) {
+            int host = 0;
+            int store = 0;
+            int rack = 0;
+            for (int d = 0; d < dataCenters.size(); d++) {
+                final int dcRecord = offsets[MappedTopology.DATA_CENTER] + d
+                        * MappedTopology.RECORD_SIZE[MappedTopology.DATA_CENTER];
+                final int racksOfDataCenter = dataCenters.get(d).getRackView().size();
+                out.putInt(dcRecord, ids[MappedTopology.DATA_CENTER][d]);
+                out.putInt(dcRecord + MappedTopology.DATA_CENTER_RACKS, rack);
+                out.putInt(dcRecord + MappedTopology.DATA_CENTER_RACKS + 4, racksOfDataCenter);
+                for (int r = rack; r < rack + racksOfDataCenter; r++) {
+                    final int rackRecord = offsets[MappedTopology.RACK] + r
+                            * MappedTopology.RECORD_SIZE[MappedTopology.RACK];
+                    final PhysicalRack current = racks.get(r);
+                    out.putInt(rackRecord, ids[MappedTopology.RACK][r]);
+                    out.putInt(rackRecord + 4, d);
+                    out.putInt(rackRecord + MappedTopology.RACK_HOSTS, host);
+                    out.putInt(rackRecord + MappedTopology.RACK_HOSTS + 4, current.getCPUView()
+                            .size());
+                    for (final PhysicalHost cpu : current.getCPUView()) {
+                        final int hostRecord = offsets[MappedTopology.HOST] + host
+                                * MappedTopology.RECORD_SIZE[MappedTopology.HOST];
+                        out.putInt(hostRecord, ids[MappedTopology.HOST][host]);
+                        out.putInt(hostRecord + 4, r);
+                        out.putDouble(hostRecord + MappedTopology.CPU_USAGE, cpu.getCpuUsage());
+                        out.putDouble(hostRecord + MappedTopology.MEM_USAGE, cpu.getMemUsage());
+                        out.putLong(hostRecord + MappedTopology.LAST_UPDATE, cpu.getLastUpdate());
+                        out.putInt(hostRecord + MappedTopology.HOST_STORES, store);
+                        out.putInt(hostRecord + MappedTopology.HOST_STORES + 4, cpu
+                                .getDiskView().size());
+                        store = Writer.writeStores(out, offsets, ids, stores, store, cpu
+                                .getDiskView().size(), host);
+                        host++;
+                    }
+                    out.putInt(rackRecord + MappedTopology.RACK_STORES, store);
+                    out.putInt(rackRecord + MappedTopology.RACK_STORES + 4, current
+                            .getDiskView().size());
+                    store = Writer.writeStores(out, offsets, ids, stores, store, current
+                            .getDiskView().size(), -1 - r);
+                }
+                rack += racksOfDataCenter;
+            }
+        }
+
+        /**
+         * @param out
+         *            to write to.
+         * @param offsets
+         *            of the record arrays.
+         * @param ids
+         *            offsets of the identifiers of the resources.
+         * @param stores
+         *            all stores.
+         * @param first
+         *            index of the first store to write.
+         * @param count
+         *            number of stores to write.
+         * @param parent
+         *            index of the host the stores are in, or -1 minus the
+         *            index of the rack.
+         * @return the index of the store after the last one written.
+         */
+        private static int writeStores(final ByteBuffer out, final int[] offsets,
+                final int[][] ids, final List<PhysicalStore> stores, final int first,
+                final int count, final int parent) {
+            for (int s = first; s < first + count; s++) {
+                final int record = offsets[MappedTopology.STORE] + s
+                        * MappedTopology.RECORD_SIZE[MappedTopology.STORE];
+                out.putInt(record, ids[MappedTopology.STORE][s]);
+                out.putInt(record + 4, parent);
+                out.putLong(record + MappedTopology.CAPACITY, stores.get(s).getCapacity());
+                out.putLong(record + MappedTopology.USED, stores.get(s).getUsed());
+            }
+            return first + count;
+        }
+
+        /**
+         * Writes a hash table from identifier to index, using linear probing.
+         * An entry holds the index plus one, so that 0 marks an empty slot.
+         * 
+         * @param out
+         *            to write to.
+         * @param offset
+         *            of the table.
+         * @param list
+         *            resources to put in the table.
+         * @return the offset after the table.
+         */
+        private static int writeTable(final ByteBuffer out, final int offset,
+                final List<? extends PhysicalResource> list) {
+            final int size = MappedTopology.tableSize(list.size());
+            final int mask = size - 1;
+            for (int i = 0; i < list.size(); i++) {
+                int slot = MappedTopology.hash(list.get(i).getUniqueIdentifier()) & mask;
+                while (out.getInt(offset + 4 * slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                out.putInt(offset + 4 * slot, i + 1);
+            }
+            return offset + 4 * size;
+        }
+
+        /**
+         * @param value
+         *            to add to the string area.
+         * @return the offset of the string in the area.
+         */
+        private int addString(final String value) {
+            final int ref = this.strings.size();
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            final int length = bytes.length;
+            this.strings.write(length >>> 24);
+            this.strings.write(length >>> 16);
+            this.strings.write(length >>> 8);
+            this.strings.write(length);
+            this.strings.write(bytes, 0, length);
+            return ref;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * Decides which values are kept when
+ * {@link PhysicalTopology#mergeTree(PhysicalTopology, PhysicalTopology, MergePolicy)}
+ * finds a host or store with the same identifier in both topologies. The
+ * structure of the merged topology does not depend on the policy: resources
+ * from either topology are kept, and a resource found in both stays where the
+ * first topology placed it.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public enum MergePolicy {
+
+    /**
+     * Keeps the values of the first topology.
+     */
+    PREFER_LEFT {
+        @Override
+        boolean preferRight(final PhysicalHost left, final PhysicalHost right) {
+            return false;
+        }
+
+        @Override
+        boolean preferRight(final PhysicalStore left, final PhysicalStore right) {
+            return false;
+        }
+    },
+
+    /**
+     * Takes the values of the second topology.
+     */
+    PREFER_RIGHT {
+        @Override
+        boolean preferRight(final PhysicalHost left, final PhysicalHost right) {
+            return true;
+        }
+
+        @Override
+        boolean preferRight(final PhysicalStore left, final PhysicalStore right) {
+            return true;
+        }
+    },
+
+    /**
+     * Takes the usage of the host that was measured last, preferring the
+     * first topology if both were measured at the same time. Stores do not
+     * record when they were measured, so their values are taken from the
+     * first topology.
+     */
+    NEWEST_USAGE {
+        @Override
+        boolean preferRight(final PhysicalHost left, final PhysicalHost right) {
+            return right.getLastUpdate() > left.getLastUpdate();
+        }
+
+        @Override
+        boolean preferRight(final PhysicalStore left, final PhysicalStore right) {
+            return false;
+        }
+    };
+
+    /**
+     * @param left
+     *            host of the first topology.
+     * @param right
+     *            host with the same identifier in the second topology.
+     * @return true iff the usage of the right host should be kept.
+     */
+    abstract boolean preferRight(PhysicalHost left, PhysicalHost right);
+
+    /**
+     * @param left
+     *            store of the first topology.
+     * @param right
+     *            store with the same identifier in the second topology.
+     * @return true iff the capacity and usage of the right store should be
+     *         kept.
+     */
+    abstract boolean preferRight(PhysicalStore left, PhysicalStore right);
+}
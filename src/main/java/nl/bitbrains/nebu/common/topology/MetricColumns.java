@@ -0,0 +1,484 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The usage of all hosts and stores of a {@link PhysicalTopology}, kept in
+ * one primitive array per metric. Every host and every store has a slot: an
+ * int from 0 up to the number of hosts or stores, at which its metrics are
+ * found in the arrays. Scanning a metric of all hosts is then a loop over a
+ * single array instead of a walk over the resources of the topology.
+ * 
+ * The slots are dense: when a resource is removed, the last resource is
+ * moved into its slot. A slot therefore only identifies a resource until the
+ * next resource is removed. The topology keeps the columns up to date as it
+ * is changed through its methods.
+ * 
+ * The topology changes the columns under its own lock, and every read takes
+ * that lock too, so a single call never sees a half-made change. A slot
+ * from one call may however belong to another resource in the next, if the
+ * topology changed in between; hold the lock of the topology across the
+ * calls to prevent that.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class MetricColumns {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Object lock;
+
+    private final Map<String, Integer> hostSlots;
+    private PhysicalHost[] hosts;
+    private double[] cpuUsage;
+    private double[] memUsage;
+    private long[] lastUpdate;
+    private int hostCount;
+
+    private final Map<String, Integer> storeSlots;
+    private PhysicalStore[] stores;
+    private long[] capacity;
+    private long[] used;
+    private int storeCount;
+
+    /**
+     * Only created by the topology.
+     * 
+     * @param lock
+     *            under which the topology changes the columns.
+     */
+    MetricColumns(final Object lock) {
+        this.lock = lock;
+        this.hostSlots = new HashMap<String, Integer>();
+        this.hosts = new PhysicalHost[MetricColumns.INITIAL_CAPACITY];
+        this.cpuUsage = new double[MetricColumns.INITIAL_CAPACITY];
+        this.memUsage = new double[MetricColumns.INITIAL_CAPACITY];
+        this.lastUpdate = new long[MetricColumns.INITIAL_CAPACITY];
+        this.storeSlots = new HashMap<String, Integer>();
+        this.stores = new PhysicalStore[MetricColumns.INITIAL_CAPACITY];
+        this.capacity = new long[MetricColumns.INITIAL_CAPACITY];
+        this.used = new long[MetricColumns.INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return the number of hosts, which is one more than the highest slot.
+     */
+    public int getHostCount() {
+        synchronized (this.lock) {
+            return this.hostCount;
+        }
+    }
+
+    /**
+     * @return the number of stores, which is one more than the highest slot.
+     */
+    public int getStoreCount() {
+        synchronized (this.lock) {
+            return this.storeCount;
+        }
+    }
+
+    /**
+     * @param hostID
+     *            identifier of the host.
+     * @return the slot of the host.
+     * @throws NoSuchElementException
+     *             if there is no host with that identifier.
+     */
+    public int getHostSlot(final String hostID) {
+        synchronized (this.lock) {
+            return MetricColumns.getSlot(this.hostSlots, hostID);
+        }
+    }
+
+    /**
+     * @param storeID
+     *            identifier of the store.
+     * @return the slot of the store.
+     * @throws NoSuchElementException
+     *             if there is no store with that identifier.
+     */
+    public int getStoreSlot(final String storeID) {
+        synchronized (this.lock) {
+            return MetricColumns.getSlot(this.storeSlots, storeID);
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the host.
+     * @return the host.
+     */
+    public PhysicalHost getHost(final int slot) {
+        synchronized (this.lock) {
+            return this.hosts[this.checkHostSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the host.
+     * @return the cpu usage of the host.
+     */
+    public double getCpuUsage(final int slot) {
+        synchronized (this.lock) {
+            return this.cpuUsage[this.checkHostSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the host.
+     * @return the memory usage of the host.
+     */
+    public double getMemUsage(final int slot) {
+        synchronized (this.lock) {
+            return this.memUsage[this.checkHostSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the host.
+     * @return the time the usage of the host was measured, in milliseconds
+     *         since the epoch.
+     */
+    public long getLastUpdate(final int slot) {
+        synchronized (this.lock) {
+            return this.lastUpdate[this.checkHostSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the store.
+     * @return the store.
+     */
+    public PhysicalStore getStore(final int slot) {
+        synchronized (this.lock) {
+            return this.stores[this.checkStoreSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the store.
+     * @return the capacity of the store.
+     */
+    public long getCapacity(final int slot) {
+        synchronized (this.lock) {
+            return this.capacity[this.checkStoreSlot(slot)];
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the store.
+     * @return the used capacity of the store.
+     */
+    public long getUsed(final int slot) {
+        synchronized (this.lock) {
+            return this.used[this.checkStoreSlot(slot)];
+        }
+    }
+
+    /**
+     * @return the cpu usage of all hosts, indexed by their slot.
+     */
+    public double[] copyCpuUsage() {
+        synchronized (this.lock) {
+            return Arrays.copyOf(this.cpuUsage, this.hostCount);
+        }
+    }
+
+    /**
+     * @return the memory usage of all hosts, indexed by their slot.
+     */
+    public double[] copyMemUsage() {
+        synchronized (this.lock) {
+            return Arrays.copyOf(this.memUsage, this.hostCount);
+        }
+    }
+
+    /**
+     * @return the sum of the cpu usage of all hosts.
+     */
+    public double getTotalCpuUsage() {
+        synchronized (this.lock) {
+            return MetricColumns.sum(this.cpuUsage, this.hostCount);
+        }
+    }
+
+    /**
+     * @return the sum of the memory usage of all hosts.
+     */
+    public double getTotalMemUsage() {
+        synchronized (this.lock) {
+            return MetricColumns.sum(this.memUsage, this.hostCount);
+        }
+    }
+
+    /**
+     * @return the sum of the capacity of all stores.
+     */
+    public long getTotalCapacity() {
+        synchronized (this.lock) {
+            return MetricColumns.sum(this.capacity, this.storeCount);
+        }
+    }
+
+    /**
+     * @return the sum of the used capacity of all stores.
+     */
+    public long getUsedCapacity() {
+        synchronized (this.lock) {
+            return MetricColumns.sum(this.used, this.storeCount);
+        }
+    }
+
+    /**
+     * @param maxCpu
+     *            highest cpu usage to count.
+     * @param maxMem
+     *            highest memory usage to count.
+     * @return the number of hosts with at most the given cpu and memory
+     *         usage.
+     */
+    public int countHostsBelow(final double maxCpu, final double maxMem) {
+        synchronized (this.lock) {
+            int res = 0;
+            // Without branches, as whether a host is counted is unpredictable.
+            for (int i = 0; i < this.hostCount; i++) {
+                res += this.cpuUsage[i] <= maxCpu & this.memUsage[i] <= maxMem ? 1 : 0;
+            }
+            return res;
+        }
+    }
+
+    /**
+     * @return the slot of a host with the lowest cpu usage, or -1 if there
+     *         are no hosts.
+     */
+    public int getLeastCpuUsedSlot() {
+        synchronized (this.lock) {
+            int res = -1;
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < this.hostCount; i++) {
+                if (this.cpuUsage[i] < min) {
+                    min = this.cpuUsage[i];
+                    res = i;
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Adds a host, or replaces the host with the same identifier.
+     * 
+     * @param host
+     *            to add.
+     */
+    void putHost(final PhysicalHost host) {
+        final Integer existing = this.hostSlots.get(host.getUniqueIdentifier());
+        final int slot;
+        if (existing == null) {
+            slot = this.hostCount++;
+            if (slot == this.hosts.length) {
+                final int length = slot * 2;
+                this.hosts = Arrays.copyOf(this.hosts, length);
+                this.cpuUsage = Arrays.copyOf(this.cpuUsage, length);
+                this.memUsage = Arrays.copyOf(this.memUsage, length);
+                this.lastUpdate = Arrays.copyOf(this.lastUpdate, length);
+            }
+            this.hostSlots.put(host.getUniqueIdentifier(), slot);
+        } else {
+            slot = existing;
+        }
+        this.hosts[slot] = host;
+        this.setHost(slot, host);
+    }
+
+    /**
+     * @param hostID
+     *            identifier of the host to remove.
+     */
+    void removeHost(final String hostID) {
+        final Integer slot = this.hostSlots.remove(hostID);
+        if (slot == null) {
+            return;
+        }
+        final int last = --this.hostCount;
+        if (slot != last) {
+            this.hosts[slot] = this.hosts[last];
+            this.cpuUsage[slot] = this.cpuUsage[last];
+            this.memUsage[slot] = this.memUsage[last];
+            this.lastUpdate[slot] = this.lastUpdate[last];
+            this.hostSlots.put(this.hosts[slot].getUniqueIdentifier(), slot);
+        }
+        this.hosts[last] = null;
+    }
+
+    /**
+     * Copies the usage of a host into its slot, if it has one.
+     * 
+     * @param host
+     *            of which the usage changed.
+     */
+    void updateHost(final PhysicalHost host) {
+        final Integer slot = this.hostSlots.get(host.getUniqueIdentifier());
+        if (slot != null && this.hosts[slot] == host) {
+            this.setHost(slot, host);
+        }
+    }
+
+    /**
+     * @param slot
+     *            of the host.
+     * @param host
+     *            to copy the usage of.
+     */
+    private void setHost(final int slot, final PhysicalHost host) {
+        this.cpuUsage[slot] = host.getCpuUsage();
+        this.memUsage[slot] = host.getMemUsage();
+        this.lastUpdate[slot] = host.getLastUpdate();
+    }
+
+    /**
+     * Adds a store, or replaces the store with the same identifier.
+     * 
+     * @param store
+     *            to add.
+     */
+    void putStore(final PhysicalStore store) {
+        final Integer existing = this.storeSlots.get(store.getUniqueIdentifier());
+        final int slot;
+        if (existing == null) {
+            slot = this.storeCount++;
+            if (slot == this.stores.length) {
+                final int length = slot * 2;
+                this.stores = Arrays.copyOf(this.stores, length);
+                this.capacity = Arrays.copyOf(this.capacity, length);
+                this.used = Arrays.copyOf(this.used, length);
+            }
+            this.storeSlots.put(store.getUniqueIdentifier(), slot);
+        } else {
+            slot = existing;
+        }
+        this.stores[slot] = store;
+        this.capacity[slot] = store.getCapacity();
+        this.used[slot] = store.getUsed();
+    }
+
+    /**
+     * @param storeID
+     *            identifier of the store to remove.
+     */
+    void removeStore(final String storeID) {
+        final Integer slot = this.storeSlots.remove(storeID);
+        if (slot == null) {
+            return;
+        }
+        final int last = --this.storeCount;
+        if (slot != last) {
+            this.stores[slot] = this.stores[last];
+            this.capacity[slot] = this.capacity[last];
+            this.used[slot] = this.used[last];
+            this.storeSlots.put(this.stores[slot].getUniqueIdentifier(), slot);
+        }
+        this.stores[last] = null;
+    }
+
+    /**
+     * Copies the capacity and usage of a store into its slot, if it has one.
+     * 
+     * @param store
+     *            of which the usage changed.
+     */
+    void updateStore(final PhysicalStore store) {
+        final Integer slot = this.storeSlots.get(store.getUniqueIdentifier());
+        if (slot != null && this.stores[slot] == store) {
+            this.capacity[slot] = store.getCapacity();
+            this.used[slot] = store.getUsed();
+        }
+    }
+
+    /**
+     * @param slot
+     *            to check.
+     * @return the slot.
+     * @throws IndexOutOfBoundsException
+     *             if no host has the slot.
+     */
+    private int checkHostSlot(final int slot) {
+        if (slot < 0 || slot >= this.hostCount) {
+            throw new IndexOutOfBoundsException("No host at slot " + slot + ".");
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot
+     *            to check.
+     * @return the slot.
+     * @throws IndexOutOfBoundsException
+     *             if no store has the slot.
+     */
+    private int checkStoreSlot(final int slot) {
+        if (slot < 0 || slot >= this.storeCount) {
+            throw new IndexOutOfBoundsException("No store at slot " + slot + ".");
+        }
+        return slot;
+    }
+
+    /**
+     * @param slots
+     *            to look in.
+     * @param id
+     *            to look for.
+     * @return the slot of the id.
+     * @throws NoSuchElementException
+     *             if the id has no slot.
+     */
+    private static int getSlot(final Map<String, Integer> slots, final String id) {
+        final Integer res = slots.get(id);
+        if (res == null) {
+            throw new NoSuchElementException();
+        }
+        return res;
+    }
+
+    /**
+     * @param values
+     *            to add up.
+     * @param length
+     *            number of values.
+     * @return the sum of the first values.
+     */
+    private static double sum(final double[] values, final int length) {
+        double res = 0;
+        for (int i = 0; i < length; i++) {
+            res += values[i];
+        }
+        return res;
+    }
+
+    /**
+     * @param values
+     *            to add up.
+     * @param length
+     *            number of values.
+     * @return the sum of the first values.
+     */
+    private static long sum(final long[] values, final int length) {
+        long res = 0;
+        for (int i = 0; i < length; i++) {
+            res += values[i];
+        }
+        return res;
+    }
+}
@@ -0,0 +1,566 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Immutable map that shares its structure with the maps it was derived from,
+ * for the snapshots of a topology. The entries are kept in a hash array
+ * mapped trie: each level uses five bits of the hash of a key to pick one of
+ * at most 32 children. Adding or removing an entry only copies the nodes on
+ * the path to it, so it takes O(log32 n) time and space, and the old map
+ * stays valid and unchanged.
+ * 
+ * Keys and values should not be null. Keys whose hashes are equal are kept
+ * in a list on the lowest level.
+ * 
+ * @param <K>
+ *            type of the keys.
+ * @param <V>
+ *            type of the values.
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << PersistentMap.BITS) - 1;
+    private static final int MAX_DEPTH = 8;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    /**
+     * @param root
+     *            of the trie, or null if the map is empty.
+     * @param size
+     *            number of entries in the trie.
+     */
+    private PersistentMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K>
+     *            type of the keys.
+     * @param <V>
+     *            type of the values.
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return PersistentMap.EMPTY;
+    }
+
+    /**
+     * @return the number of entries in the map.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true iff the map has no entries.
+     */
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param key
+     *            to look up.
+     * @return the value of the key, or null if the map does not contain it.
+     */
+    @SuppressWarnings("unchecked")
+    V get(final Object key) {
+        if (this.root == null || key == null) {
+            return null;
+        }
+        return (V) this.root.find(0, PersistentMap.hash(key), key);
+    }
+
+    /**
+     * @param key
+     *            to look up.
+     * @return true iff the map contains the key.
+     */
+    boolean containsKey(final Object key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @param key
+     *            to add.
+     * @param value
+     *            of the key.
+     * @return a map that also maps the key to the value, replacing any
+     *         previous value of the key. This map is returned if it already
+     *         did.
+     */
+    PersistentMap<K, V> plus(final K key, final V value) {
+        ErrorChecker.throwIfNullArgument(key, "key");
+        ErrorChecker.throwIfNullArgument(value, "value");
+        final boolean[] added = new boolean[1];
+        final int hash = PersistentMap.hash(key);
+        final Node node;
+        if (this.root == null) {
+            node = BitmapNode.EMPTY.plus(0, hash, key, value, added);
+        } else {
+            node = this.root.plus(0, hash, key, value, added);
+        }
+        if (node == this.root) {
+            return this;
+        }
+        return new PersistentMap<K, V>(node, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * @param key
+     *            to remove.
+     * @return a map without the key. This map is returned if it did not
+     *         contain the key.
+     */
+    PersistentMap<K, V> minus(final Object key) {
+        if (this.root == null || key == null) {
+            return this;
+        }
+        final Node node = this.root.minus(0, PersistentMap.hash(key), key);
+        if (node == this.root) {
+            return this;
+        }
+        if (node == null) {
+            return PersistentMap.empty();
+        }
+        return new PersistentMap<K, V>(node, this.size - 1);
+    }
+
+    /**
+     * @return an unmodifiable collection of the values in the map, in no
+     *         particular order.
+     */
+    Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator<V>(PersistentMap.this.root);
+            }
+
+            @Override
+            public int size() {
+                return PersistentMap.this.size;
+            }
+        };
+    }
+
+    /**
+     * Spreads the higher bits of the hash of the key to the lower levels of
+     * the trie.
+     * 
+     * @param key
+     *            to hash.
+     * @return the hash of the key.
+     */
+    private static int hash(final Object key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param hash
+     *            of a key.
+     * @param shift
+     *            of the level in the trie.
+     * @return the bit of the key in the bitmap of a node on that level.
+     */
+    private static int bit(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & PersistentMap.MASK);
+    }
+
+    /**
+     * @param array
+     *            to copy.
+     * @param index
+     *            of the element to replace.
+     * @param element
+     *            to place at the index.
+     * @return a copy of the array with the element replaced.
+     */
+    private static Object[] copyAndSet(final Object[] array, final int index,
+            final Object element) {
+        final Object[] res = array.clone();
+        res[index] = element;
+        return res;
+    }
+
+    /**
+     * @param array
+     *            of key and value pairs.
+     * @param pair
+     *            index of the pair to remove.
+     * @return a copy of the array without the pair.
+     */
+    private static Object[] copyAndRemove(final Object[] array, final int pair) {
+        final Object[] res = new Object[array.length - 2];
+        System.arraycopy(array, 0, res, 0, 2 * pair);
+        System.arraycopy(array, 2 * pair + 2, res, 2 * pair, res.length - 2 * pair);
+        return res;
+    }
+
+    /**
+     * Node of the trie. Its array holds pairs of a key and its value. In a
+     * {@link BitmapNode}, a pair may instead hold null and a child node.
+     */
+    private abstract static class Node {
+
+        protected final Object[] array;
+
+        /**
+         * @param array
+         *            of pairs.
+         */
+        protected Node(final Object[] array) {
+            this.array = array;
+        }
+
+        /**
+         * @param shift
+         *            of the level of this node.
+         * @param hash
+         *            of the key.
+         * @param key
+         *            to look up.
+         * @return the value of the key, or null.
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * @param shift
+         *            of the level of this node.
+         * @param hash
+         *            of the key.
+         * @param key
+         *            to add.
+         * @param value
+         *            of the key.
+         * @param added
+         *            set to true if the key was not in the node yet.
+         * @return the node with the key, or this node if nothing changed.
+         */
+        abstract Node plus(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @param shift
+         *            of the level of this node.
+         * @param hash
+         *            of the key.
+         * @param key
+         *            to remove.
+         * @return the node without the key, this node if it did not contain
+         *         it, or null if the node became empty.
+         */
+        abstract Node minus(int shift, int hash, Object key);
+    }
+
+    /**
+     * Node with a bit set in its bitmap for every occupied slot out of 32.
+     * The pairs are stored in the order of their bits.
+     */
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        /**
+         * @param bitmap
+         *            of the occupied slots.
+         * @param array
+         *            of pairs.
+         */
+        private BitmapNode(final int bitmap, final Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        /**
+         * @param bit
+         *            of an occupied slot.
+         * @return the index of the pair of the slot.
+         */
+        private int index(final int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(final int shift, final int hash, final Object key) {
+            final int bit = PersistentMap.bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+            final int index = 2 * this.index(bit);
+            final Object keyOrNull = this.array[index];
+            if (keyOrNull == null) {
+                return ((Node) this.array[index + 1]).find(shift + PersistentMap.BITS, hash,
+                                                           key);
+            }
+            return key.equals(keyOrNull) ? this.array[index + 1] : null;
+        }
+
+        @Override
+        Node plus(final int shift, final int hash, final Object key, final Object value,
+                final boolean[] added) {
+            final int bit = PersistentMap.bit(hash, shift);
+            final int index = 2 * this.index(bit);
+            if ((this.bitmap & bit) == 0) {
+                final Object[] res = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, res, 0, index);
+                res[index] = key;
+                res[index + 1] = value;
+                System.arraycopy(this.array, index, res, index + 2, this.array.length - index);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, res);
+            }
+            final Object keyOrNull = this.array[index];
+            final Object valueOrNode = this.array[index + 1];
+            if (keyOrNull == null) {
+                final Node child = ((Node) valueOrNode).plus(shift + PersistentMap.BITS, hash,
+                                                             key, value, added);
+                if (child == valueOrNode) {
+                    return this;
+                }
+                return new BitmapNode(this.bitmap, PersistentMap.copyAndSet(this.array,
+                                                                            index + 1, child));
+            }
+            if (key.equals(keyOrNull)) {
+                if (value == valueOrNode) {
+                    return this;
+                }
+                return new BitmapNode(this.bitmap, PersistentMap.copyAndSet(this.array,
+                                                                            index + 1, value));
+            }
+            added[0] = true;
+            final Node child = BitmapNode.createNode(shift + PersistentMap.BITS, keyOrNull,
+                                                     valueOrNode, hash, key, value);
+            final Object[] res = PersistentMap.copyAndSet(this.array, index, null);
+            res[index + 1] = child;
+            return new BitmapNode(this.bitmap, res);
+        }
+
+        @Override
+        Node minus(final int shift, final int hash, final Object key) {
+            final int bit = PersistentMap.bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            final int index = 2 * this.index(bit);
+            final Object keyOrNull = this.array[index];
+            if (keyOrNull == null) {
+                final Node node = (Node) this.array[index + 1];
+                final Node child = node.minus(shift + PersistentMap.BITS, hash, key);
+                if (child == node) {
+                    return this;
+                }
+                if (child != null) {
+                    return new BitmapNode(this.bitmap, PersistentMap.copyAndSet(this.array,
+                                                                                index + 1,
+                                                                                child));
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+            if (this.bitmap == bit) {
+                return null;
+            }
+            return new BitmapNode(this.bitmap ^ bit, PersistentMap.copyAndRemove(this.array,
+                                                                                 index / 2));
+        }
+
+        /**
+         * @param shift
+         *            of the level of the new node.
+         * @param key1
+         *            first key.
+         * @param value1
+         *            value of the first key.
+         * @param hash2
+         *            hash of the second key.
+         * @param key2
+         *            second key.
+         * @param value2
+         *            value of the second key.
+         * @return a node containing both keys.
+         */
+        private static Node createNode(final int shift, final Object key1, final Object value1,
+                final int hash2, final Object key2, final Object value2) {
+            final int hash1 = PersistentMap.hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            final boolean[] added = new boolean[1];
+            return BitmapNode.EMPTY.plus(shift, hash1, key1, value1, added)
+                    .plus(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * Node holding the pairs of keys that have the same hash.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        /**
+         * @param hash
+         *            of all keys in the node.
+         * @param array
+         *            of pairs.
+         */
+        private CollisionNode(final int hash, final Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        /**
+         * @param key
+         *            to look for.
+         * @return the index of the key in the array, or -1.
+         */
+        private int indexOf(final Object key) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (key.equals(this.array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(final int shift, final int hash, final Object key) {
+            final int index = this.indexOf(key);
+            return index < 0 ? null : this.array[index + 1];
+        }
+
+        @Override
+        Node plus(final int shift, final int hash, final Object key, final Object value,
+                final boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(PersistentMap.bit(this.hash, shift), new Object[] { null,
+                        this }).plus(shift, hash, key, value, added);
+            }
+            final int index = this.indexOf(key);
+            if (index >= 0) {
+                if (this.array[index + 1] == value) {
+                    return this;
+                }
+                return new CollisionNode(hash, PersistentMap.copyAndSet(this.array, index + 1,
+                                                                        value));
+            }
+            final Object[] res = new Object[this.array.length + 2];
+            System.arraycopy(this.array, 0, res, 0, this.array.length);
+            res[this.array.length] = key;
+            res[this.array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, res);
+        }
+
+        @Override
+        Node minus(final int shift, final int hash, final Object key) {
+            final int index = this.indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (this.array.length == 2) {
+                return null;
+            }
+            return new CollisionNode(this.hash, PersistentMap.copyAndRemove(this.array,
+                                                                            index / 2));
+        }
+    }
+
+    /**
+     * Walks the trie depth first, keeping the position in each node on the
+     * path in a small stack.
+     * 
+     * @param <V>
+     *            type of the values.
+     */
+    private static final class ValueIterator<V> implements Iterator<V> {
+
+        private final Object[][] arrays = new Object[PersistentMap.MAX_DEPTH][];
+        private final int[] positions = new int[PersistentMap.MAX_DEPTH];
+        private int depth = -1;
+        private Object next;
+
+        /**
+         * @param root
+         *            of the trie, or null.
+         */
+        private ValueIterator(final Node root) {
+            if (root != null) {
+                this.push(root);
+                this.advance();
+            }
+        }
+
+        /**
+         * @param node
+         *            to visit next.
+         */
+        private void push(final Node node) {
+            this.depth++;
+            this.arrays[this.depth] = node.array;
+            this.positions[this.depth] = 0;
+        }
+
+        /**
+         * Moves to the next value, or sets it to null at the end.
+         */
+        private void advance() {
+            this.next = null;
+            while (this.depth >= 0) {
+                final Object[] array = this.arrays[this.depth];
+                final int position = this.positions[this.depth];
+                if (position >= array.length) {
+                    this.arrays[this.depth] = null;
+                    this.depth--;
+                } else {
+                    this.positions[this.depth] = position + 2;
+                    if (array[position] != null) {
+                        this.next = array[position + 1];
+                        return;
+                    }
+                    this.push((Node) array[position + 1]);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+            final V res = (V) this.next;
+            this.advance();
+            return res;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
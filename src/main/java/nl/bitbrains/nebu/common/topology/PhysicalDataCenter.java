@@ -1,7 +1,10 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -56,6 +59,33 @@ public class PhysicalDataCenter extends PhysicalResource {
         return new ArrayList<PhysicalRack>(this.racks.values());
     }
 
+    /**
+     * @return an unmodifiable view of the racks contained in the
+     *         PhysicalDataCenter, which reflects later changes.
+     */
+    public Collection<PhysicalRack> getRackView() {
+        return Collections.unmodifiableCollection(this.racks.values());
+    }
+
+    /**
+     * Iterates over the racks without wrapping them in a view, for use by
+     * the lazy iterators of the {@link PhysicalTopology}.
+     * 
+     * @return an iterator over the racks.
+     */
+    Iterator<PhysicalRack> rackIterator() {
+        return this.racks.values().iterator();
+    }
+
+    /**
+     * @param id
+     *            of the rack.
+     * @return the rack with that id, or null if there is none.
+     */
+    PhysicalRack findRack(final String id) {
+        return this.racks.get(id);
+    }
+
     /**
      * @param rack
      *            the rack to add to the PhysicalDataCenter.
@@ -1,19 +1,32 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * This class represents a physical CPU placed inside a physical rack. Each
  * PhysicalCPU has a PhysicalRack parent and has a unique identifier through the
  * Identifiable interface.
  * 
+ * The usage of a host can be updated in place while other threads read it.
+ * It is guarded by a version that is odd while an update is in progress, so
+ * that {@link #readUsage(HostUsage)} always sees the cpu usage, memory usage
+ * and time of one update together, without taking a lock or creating
+ * objects.
+ * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  */
 public class PhysicalHost extends PhysicalResourceWithDisks {
 
+    private static final AtomicLongFieldUpdater<PhysicalHost> VERSION = AtomicLongFieldUpdater
+            .newUpdater(PhysicalHost.class, "version");
+
     private PhysicalRack parent;
-    private final double memUsage;
-    private final double cpuUsage;
+    private volatile long version;
+    private volatile double memUsage;
+    private volatile double cpuUsage;
+    private volatile long lastUpdate;
+    private volatile Histories histories;
 
     /**
      * @param identifier
@@ -26,13 +39,17 @@ public class PhysicalHost extends PhysicalResourceWithDisks {
      *            to set.
      * @param memUsage
      *            to set.
+     * @param lastUpdate
+     *            time the usage was measured.
      */
     protected PhysicalHost(final String identifier, final PhysicalRack parent,
-            final Map<String, PhysicalStore> disks, final double cpuUsage, final double memUsage) {
+            final Map<String, PhysicalStore> disks, final double cpuUsage, final double memUsage,
+            final long lastUpdate) {
         super(identifier, disks);
         this.parent = parent;
         this.cpuUsage = cpuUsage;
         this.memUsage = memUsage;
+        this.lastUpdate = lastUpdate;
     }
 
     /**
@@ -43,8 +60,10 @@ public class PhysicalHost extends PhysicalResourceWithDisks {
      */
     public PhysicalHost(final PhysicalHost other) {
         super(other.getUniqueIdentifier(), other.getDisks());
-        this.cpuUsage = other.cpuUsage;
-        this.memUsage = other.memUsage;
+        final HostUsage usage = other.readUsage(new HostUsage());
+        this.cpuUsage = usage.getCpuUsage();
+        this.memUsage = usage.getMemUsage();
+        this.lastUpdate = usage.getLastUpdate();
     }
 
     /**
@@ -76,6 +95,173 @@ public class PhysicalHost extends PhysicalResourceWithDisks {
         return this.memUsage;
     }
 
+    /**
+     * @return the time the usage was measured, in milliseconds since the
+     *         epoch, or 0 if it is unknown.
+     */
+    public long getLastUpdate() {
+        return this.lastUpdate;
+    }
+
+    /**
+     * Reads the usage of this host as it was after a single update, even if
+     * other threads update it at the same time.
+     * 
+     * @param usage
+     *            to copy the usage into, which can be reused between calls.
+     * @return the usage.
+     */
+    public HostUsage readUsage(final HostUsage usage) {
+        long before;
+        do {
+            before = this.version;
+            usage.set(this.cpuUsage, this.memUsage, this.lastUpdate);
+        } while ((before & 1) != 0 || this.version != before);
+        return usage;
+    }
+
+    /**
+     * Updates the usage of this host in place, unless it already holds a
+     * newer measurement. It is safe to call while other threads read or
+     * update the host. The aggregates and columns of a
+     * {@link PhysicalTopology} do not see this change; use
+     * {@link PhysicalTopology#updateHostUsage(PhysicalHost, double, double, long)}
+     * for a host in a topology that keeps them.
+     * 
+     * @param cpuUsage
+     *            the new cpu usage.
+     * @param memUsage
+     *            the new memory usage.
+     * @param lastUpdate
+     *            time the new usage was measured.
+     * @return false if the usage was not updated because it was measured
+     *         after lastUpdate.
+     */
+    public boolean updateUsage(final double cpuUsage, final double memUsage,
+            final long lastUpdate) {
+        return this.updateUsage(cpuUsage, memUsage, lastUpdate, false, null);
+    }
+
+    /**
+     * Only to be used through the {@link PhysicalTopology} that contains this
+     * host, which needs the usage the update replaced.
+     * 
+     * @param cpuUsage
+     *            the new cpu usage.
+     * @param memUsage
+     *            the new memory usage.
+     * @param lastUpdate
+     *            time the new usage was measured.
+     * @param force
+     *            whether to update the usage even if it was measured after
+     *            lastUpdate.
+     * @param previous
+     *            to copy the usage from before the update into, or null.
+     * @return false if the usage was not updated because it was measured
+     *         after lastUpdate.
+     */
+    boolean updateUsage(final double cpuUsage, final double memUsage, final long lastUpdate,
+            final boolean force, final HostUsage previous) {
+        final long before = this.beginWrite();
+        if (previous != null) {
+            previous.set(this.cpuUsage, this.memUsage, this.lastUpdate);
+        }
+        final boolean newer = force || lastUpdate >= this.lastUpdate;
+        if (newer) {
+            this.cpuUsage = cpuUsage;
+            this.memUsage = memUsage;
+            this.lastUpdate = lastUpdate;
+        }
+        this.version = before + 2;
+        if (newer) {
+            this.record(cpuUsage, memUsage, lastUpdate);
+        }
+        return newer;
+    }
+
+    /**
+     * Starts keeping the usage of the updates from now on, replacing any
+     * history kept before. Each history takes about 24 bytes per sample.
+     * 
+     * @param capacity
+     *            number of updates to keep.
+     */
+    public void keepHistory(final int capacity) {
+        this.histories = new Histories(capacity);
+    }
+
+    /**
+     * @return the cpu usage of the most recent updates, or null if no
+     *         history is kept.
+     */
+    public UsageHistory getCpuHistory() {
+        final Histories res = this.histories;
+        return res == null ? null : res.cpu;
+    }
+
+    /**
+     * @return the memory usage of the most recent updates, or null if no
+     *         history is kept.
+     */
+    public UsageHistory getMemHistory() {
+        final Histories res = this.histories;
+        return res == null ? null : res.mem;
+    }
+
+    /**
+     * Adds an update to the history, if one is kept. This is done after the
+     * update itself, so that readers do not wait for the history. Samples of
+     * concurrent or forced updates may arrive out of order, which the history
+     * sorts by time.
+     * 
+     * @param cpuUsage
+     *            to add to the history, if one is kept.
+     * @param memUsage
+     *            to add to the history, if one is kept.
+     * @param lastUpdate
+     *            time the usage was measured.
+     */
+    private void record(final double cpuUsage, final double memUsage, final long lastUpdate) {
+        final Histories current = this.histories;
+        if (current != null) {
+            current.cpu.add(lastUpdate, cpuUsage);
+            current.mem.add(lastUpdate, memUsage);
+        }
+    }
+
+    /**
+     * Waits for other updates to finish and marks an update as started by
+     * making the version odd.
+     * 
+     * @return the even version before the update.
+     */
+    private long beginWrite() {
+        long before;
+        do {
+            before = this.version;
+        } while ((before & 1) != 0 || !PhysicalHost.VERSION.compareAndSet(this, before,
+                                                                          before + 1));
+        return before;
+    }
+
+    /**
+     * The cpu and memory history of a host, which are replaced together.
+     */
+    private static final class Histories {
+
+        private final UsageHistory cpu;
+        private final UsageHistory mem;
+
+        /**
+         * @param capacity
+         *            number of updates to keep.
+         */
+        private Histories(final int capacity) {
+            this.cpu = new UsageHistory(capacity);
+            this.mem = new UsageHistory(capacity);
+        }
+    }
+
     @Override
     public int hashCode() {
         return this.getUniqueIdentifier().hashCode();
@@ -12,6 +12,7 @@ public class PhysicalHostBuilder extends PhysicalResourceWithDisksBuilder<Physic
     private PhysicalRack parent;
     private double memUsage;
     private double cpuUsage;
+    private long lastUpdate;
 
     /**
      * Simple constructor.
@@ -29,6 +30,7 @@ public class PhysicalHostBuilder extends PhysicalResourceWithDisksBuilder<Physic
         this.parent = null;
         this.memUsage = 0;
         this.cpuUsage = 0;
+        this.lastUpdate = 0;
     }
 
     /**
@@ -61,13 +63,23 @@ public class PhysicalHostBuilder extends PhysicalResourceWithDisksBuilder<Physic
         return this;
     }
 
+    /**
+     * @param time
+     *            the usage was measured, in milliseconds since the epoch.
+     * @return this for fluency.
+     */
+    public PhysicalHostBuilder withLastUpdate(final long time) {
+        this.lastUpdate = time;
+        return this;
+    }
+
     /**
      * @return the build {@link PhysicalHost} object.
      */
     public PhysicalHost build() {
         ErrorChecker.throwIfNotSet(this.getUUID(), PhysicalResource.UUID_NAME);
         final PhysicalHost host = new PhysicalHost(this.getUUID(), this.parent, this.getDisks(),
-                this.cpuUsage, this.memUsage);
+                this.cpuUsage, this.memUsage, this.lastUpdate);
         this.reset();
         return host;
     }
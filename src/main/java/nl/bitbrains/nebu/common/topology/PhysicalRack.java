@@ -1,7 +1,10 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -72,6 +75,33 @@ public class PhysicalRack extends PhysicalResourceWithDisks {
         return new ArrayList<PhysicalHost>(this.cpus.values());
     }
 
+    /**
+     * @return an unmodifiable view of the CPUs contained in the
+     *         PhysicalRack, which reflects later changes.
+     */
+    public Collection<PhysicalHost> getCPUView() {
+        return Collections.unmodifiableCollection(this.cpus.values());
+    }
+
+    /**
+     * Iterates over the CPUs without wrapping them in a view, for use by
+     * the lazy iterators of the {@link PhysicalTopology}.
+     * 
+     * @return an iterator over the CPUs.
+     */
+    Iterator<PhysicalHost> cpuIterator() {
+        return this.cpus.values().iterator();
+    }
+
+    /**
+     * @param id
+     *            of the CPU.
+     * @return the CPU with that id, or null if there is none.
+     */
+    PhysicalHost findCPU(final String id) {
+        return this.cpus.get(id);
+    }
+
     /**
      * @param cpu
      *            the CPU to add to the PhysicalRack.
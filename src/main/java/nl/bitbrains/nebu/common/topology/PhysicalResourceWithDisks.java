@@ -1,7 +1,10 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -47,6 +50,33 @@ public abstract class PhysicalResourceWithDisks extends PhysicalResource {
         return new ArrayList<PhysicalStore>(this.disks.values());
     }
 
+    /**
+     * @return an unmodifiable view of the disks contained in the
+     *         PhysicalRack, which reflects later changes.
+     */
+    public final Collection<PhysicalStore> getDiskView() {
+        return Collections.unmodifiableCollection(this.disks.values());
+    }
+
+    /**
+     * Iterates over the disks without wrapping them in a view, for use by
+     * the lazy iterators of the {@link PhysicalTopology}.
+     * 
+     * @return an iterator over the disks.
+     */
+    final Iterator<PhysicalStore> diskIterator() {
+        return this.disks.values().iterator();
+    }
+
+    /**
+     * @param id
+     *            of the disk.
+     * @return the disk with that id, or null if there is none.
+     */
+    final PhysicalStore findDisk(final String id) {
+        return this.disks.get(id);
+    }
+
     /**
      * @param disk
      *            the Disk to add to the PhysicalRack.
@@ -1,7 +1,10 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -51,6 +54,33 @@ public class PhysicalRoot extends PhysicalResource {
         return new ArrayList<PhysicalDataCenter>(this.dataCenters.values());
     }
 
+    /**
+     * @return an unmodifiable view of the data centers part of this
+     *         PhysicalRoot, which reflects later changes.
+     */
+    public Collection<PhysicalDataCenter> getDataCenterView() {
+        return Collections.unmodifiableCollection(this.dataCenters.values());
+    }
+
+    /**
+     * Iterates over the data centers without wrapping them in a view, for use by
+     * the lazy iterators of the {@link PhysicalTopology}.
+     * 
+     * @return an iterator over the data centers.
+     */
+    Iterator<PhysicalDataCenter> dataCenterIterator() {
+        return this.dataCenters.values().iterator();
+    }
+
+    /**
+     * @param id
+     *            of the data center.
+     * @return the data center with that id, or null if there is none.
+     */
+    PhysicalDataCenter findDataCenter(final String id) {
+        return this.dataCenters.get(id);
+    }
+
     /**
      * @param dataCenter
      *            the data center to add to the PhysicalRoot.
@@ -1,17 +1,26 @@
 package nl.bitbrains.nebu.common.topology;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 /**
  * This class represents a {@link PhysicalStore} placed inside a physical rack
  * or physicalHost. Each PhysicalStore has a {@link PhysicalResource} parent and
  * has a unique identifier through the Identifiable interface.
  * 
+ * The capacity and used capacity can be read and set from several threads
+ * at once, and {@link #addUsed(long)} changes the used capacity atomically.
+ * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  */
 public class PhysicalStore extends PhysicalResource {
 
+    private static final AtomicLongFieldUpdater<PhysicalStore> USED = AtomicLongFieldUpdater
+            .newUpdater(PhysicalStore.class, "used");
+
     private PhysicalResource parent;
-    private long capacity;
-    private long used;
+    private volatile long capacity;
+    private volatile long used;
+    private volatile UsageHistory usedHistory;
 
     /**
      * @param identifier
@@ -86,6 +95,52 @@ public class PhysicalStore extends PhysicalResource {
      */
     public void setUsed(final long used) {
         this.used = used;
+        this.record(used);
+    }
+
+    /**
+     * Atomically adds to the used capacity, which is safe to call while
+     * other threads update it too.
+     * 
+     * @param delta
+     *            to add to the used capacity, negative when space is freed.
+     * @return the new used capacity.
+     */
+    public long addUsed(final long delta) {
+        final long res = PhysicalStore.USED.addAndGet(this, delta);
+        this.record(res);
+        return res;
+    }
+
+    /**
+     * Starts keeping the used capacity set from now on, with the time at
+     * which it was set, replacing any history kept before. The history takes
+     * about 24 bytes per sample.
+     * 
+     * @param capacity
+     *            number of values to keep.
+     */
+    public void keepHistory(final int capacity) {
+        this.usedHistory = new UsageHistory(capacity);
+    }
+
+    /**
+     * @return the most recent values of the used capacity, or null if no
+     *         history is kept.
+     */
+    public UsageHistory getUsedHistory() {
+        return this.usedHistory;
+    }
+
+    /**
+     * @param used
+     *            to add to the history, if one is kept.
+     */
+    private void record(final long used) {
+        final UsageHistory history = this.usedHistory;
+        if (history != null) {
+            history.add(System.currentTimeMillis(), used);
+        }
     }
 
     @Override
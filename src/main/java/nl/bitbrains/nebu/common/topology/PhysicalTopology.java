@@ -1,7 +1,11 @@
 package nl.bitbrains.nebu.common.topology;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import nl.bitbrains.nebu.common.util.ErrorChecker;
@@ -10,6 +14,29 @@ import nl.bitbrains.nebu.common.util.ErrorChecker;
  * This class provides helper functions for accessing and editing the physical
  * topology representation.
  * 
+ * The topology keeps an index of all its resources by their unique
+ * identifier, so that they can be looked up in constant time. The index is
+ * built on the first lookup and is kept up to date by the add and remove
+ * methods of this class, which is why the topology should only be changed
+ * through these methods.
+ * 
+ * In the same way, the topology can keep a {@link UsageAggregate} of the
+ * usage and capacity below every rack and data center, and below the root.
+ * The aggregates are computed when the first one is asked for, after which
+ * the add, remove and update methods keep them up to date in time
+ * proportional to the depth of the tree. The usage of all hosts and stores
+ * can also be kept in {@link MetricColumns}, which are built and kept up to
+ * date together with the index, and the hosts ordered by their usage in a
+ * {@link UtilizationIndex}, which is kept up to date like the aggregates.
+ * 
+ * The usage of hosts and stores can be updated through
+ * {@link #updateHostUsage(PhysicalHost, double, double, long)} and
+ * {@link #updateStoreUsage(PhysicalStore, long, long)} by several threads at
+ * once. These updates, and every other change to the aggregates, columns and
+ * utilization index, are serialized on the topology. The rest of the
+ * topology is not synchronized. A topology that is read and changed by
+ * several threads at once should be kept in a {@link ConcurrentTopology}.
+ * 
  * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
  */
 public class PhysicalTopology {
@@ -21,12 +48,26 @@ public class PhysicalTopology {
     private static final String ROOT_NAME = "root";
 
     private final PhysicalRoot root;
+    private final Map<String, PhysicalDataCenter> dataCenterIndex;
+    private final Map<String, PhysicalRack> rackIndex;
+    private final Map<String, PhysicalHost> cpuIndex;
+    private final Map<String, PhysicalStore> storeIndex;
+    private boolean indexed;
+    private TopologyAggregates aggregates;
+    private MetricColumns columns;
+    private UtilizationIndex utilization;
+    private final HostUsage previousUsage;
 
     /**
      * Creates a topology with a default root with id "root".
      */
     public PhysicalTopology() {
         this.root = new PhysicalRootBuilder().withUuid(PhysicalTopology.ROOT_NAME).build();
+        this.dataCenterIndex = new HashMap<String, PhysicalDataCenter>();
+        this.rackIndex = new HashMap<String, PhysicalRack>();
+        this.cpuIndex = new HashMap<String, PhysicalHost>();
+        this.storeIndex = new HashMap<String, PhysicalStore>();
+        this.previousUsage = new HostUsage();
     }
 
     /**
@@ -35,17 +76,29 @@ public class PhysicalTopology {
      */
     public PhysicalTopology(final PhysicalRoot root) {
         this.root = root;
+        this.dataCenterIndex = new HashMap<String, PhysicalDataCenter>();
+        this.rackIndex = new HashMap<String, PhysicalRack>();
+        this.cpuIndex = new HashMap<String, PhysicalHost>();
+        this.storeIndex = new HashMap<String, PhysicalStore>();
+        this.previousUsage = new HostUsage();
         this.fixme();
     }
 
     /**
-     * Copies the content of the parameter into a new PhyisicalTopology.
+     * Copies the content of the parameter into a new PhyisicalTopology. To
+     * keep many versions of a topology, use a {@link TopologySnapshot}
+     * instead, which does not copy the unchanged resources.
      * 
      * @param topology
      *            to adopt.
      */
     public PhysicalTopology(final PhysicalTopology topology) {
         this.root = new PhysicalRoot(topology.root);
+        this.dataCenterIndex = new HashMap<String, PhysicalDataCenter>();
+        this.rackIndex = new HashMap<String, PhysicalRack>();
+        this.cpuIndex = new HashMap<String, PhysicalHost>();
+        this.storeIndex = new HashMap<String, PhysicalStore>();
+        this.previousUsage = new HostUsage();
         this.fixme();
     }
 
@@ -70,6 +123,152 @@ public class PhysicalTopology {
         }
     }
 
+    /**
+     * Builds the index of all resources in the topology, if that has not
+     * been done yet.
+     */
+    private void ensureIndexed() {
+        if (!this.indexed) {
+            for (final PhysicalDataCenter dc : this.root.getDataCenters()) {
+                this.index(dc);
+            }
+            this.indexed = true;
+        }
+    }
+
+    /**
+     * Adds a data center and all resources below it to the index, replacing
+     * any data center with the same identifier.
+     * 
+     * @param dataCenter
+     *            to index.
+     */
+    private void index(final PhysicalDataCenter dataCenter) {
+        final PhysicalDataCenter previous = this.dataCenterIndex.get(dataCenter
+                .getUniqueIdentifier());
+        if (previous != null) {
+            this.unindex(previous);
+        }
+        this.dataCenterIndex.put(dataCenter.getUniqueIdentifier(), dataCenter);
+        for (final PhysicalRack rack : dataCenter.getRacks()) {
+            this.index(rack);
+        }
+    }
+
+    /**
+     * Adds a rack and all resources below it to the index, replacing any
+     * rack with the same identifier.
+     * 
+     * @param rack
+     *            to index.
+     */
+    private void index(final PhysicalRack rack) {
+        final PhysicalRack previous = this.rackIndex.get(rack.getUniqueIdentifier());
+        if (previous != null) {
+            this.unindex(previous);
+        }
+        this.rackIndex.put(rack.getUniqueIdentifier(), rack);
+        for (final PhysicalHost cpu : rack.getCPUs()) {
+            this.index(cpu);
+        }
+        for (final PhysicalStore disk : rack.getDisks()) {
+            this.index(disk);
+        }
+    }
+
+    /**
+     * Adds a host and its disks to the index, replacing any host with the
+     * same identifier.
+     * 
+     * @param cpu
+     *            to index.
+     */
+    private void index(final PhysicalHost cpu) {
+        final PhysicalHost previous = this.cpuIndex.get(cpu.getUniqueIdentifier());
+        if (previous != null) {
+            this.unindex(previous);
+        }
+        this.cpuIndex.put(cpu.getUniqueIdentifier(), cpu);
+        if (this.columns != null) {
+            this.columns.putHost(cpu);
+        }
+        for (final PhysicalStore disk : cpu.getDisks()) {
+            this.index(disk);
+        }
+    }
+
+    /**
+     * Removes a data center and all resources below it from the index.
+     * 
+     * @param dataCenter
+     *            to remove.
+     */
+    private void unindex(final PhysicalDataCenter dataCenter) {
+        this.dataCenterIndex.remove(dataCenter.getUniqueIdentifier());
+        for (final PhysicalRack rack : dataCenter.getRacks()) {
+            this.unindex(rack);
+        }
+    }
+
+    /**
+     * Removes a rack and all resources below it from the index.
+     * 
+     * @param rack
+     *            to remove.
+     */
+    private void unindex(final PhysicalRack rack) {
+        this.rackIndex.remove(rack.getUniqueIdentifier());
+        for (final PhysicalHost cpu : rack.getCPUs()) {
+            this.unindex(cpu);
+        }
+        for (final PhysicalStore disk : rack.getDisks()) {
+            this.unindex(disk);
+        }
+    }
+
+    /**
+     * Removes a host and its disks from the index.
+     * 
+     * @param cpu
+     *            to remove.
+     */
+    private void unindex(final PhysicalHost cpu) {
+        this.cpuIndex.remove(cpu.getUniqueIdentifier());
+        if (this.columns != null) {
+            this.columns.removeHost(cpu.getUniqueIdentifier());
+        }
+        for (final PhysicalStore disk : cpu.getDisks()) {
+            this.unindex(disk);
+        }
+    }
+
+    /**
+     * Adds a store to the index, replacing any store with the same
+     * identifier.
+     * 
+     * @param disk
+     *            to index.
+     */
+    private void index(final PhysicalStore disk) {
+        this.storeIndex.put(disk.getUniqueIdentifier(), disk);
+        if (this.columns != null) {
+            this.columns.putStore(disk);
+        }
+    }
+
+    /**
+     * Removes a store from the index.
+     * 
+     * @param disk
+     *            to remove.
+     */
+    private void unindex(final PhysicalStore disk) {
+        this.storeIndex.remove(disk.getUniqueIdentifier());
+        if (this.columns != null) {
+            this.columns.removeStore(disk.getUniqueIdentifier());
+        }
+    }
+
     /**
      * @return the root of the PhysicalTopology.
      */
@@ -121,26 +320,151 @@ public class PhysicalTopology {
         return stores;
     }
 
+    /**
+     * @return an unmodifiable view of all data centers in the topology, which
+     *         reflects later changes.
+     */
+    public Collection<PhysicalDataCenter> getDataCenterView() {
+        return this.root.getDataCenterView();
+    }
+
+    /**
+     * Unlike {@link #getRacks()}, the racks are not copied into a list but
+     * visited one by one while iterating. The topology should not be changed
+     * during the iteration.
+     * 
+     * @return all racks in the topology.
+     */
+    public Iterable<PhysicalRack> iterateRacks() {
+        return new Iterable<PhysicalRack>() {
+            @Override
+            public Iterator<PhysicalRack> iterator() {
+                return new FlatteningIterator<PhysicalDataCenter, PhysicalRack>(
+                        PhysicalTopology.this.root.dataCenterIterator()) {
+                    @Override
+                    protected Iterator<PhysicalRack> children(final PhysicalDataCenter parent) {
+                        return parent.rackIterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Unlike {@link #getCPUs()}, the CPUs are not copied into a list but
+     * visited one by one while iterating. The topology should not be changed
+     * during the iteration.
+     * 
+     * @return all CPUs in the topology.
+     */
+    public Iterable<PhysicalHost> iterateCPUs() {
+        return new Iterable<PhysicalHost>() {
+            @Override
+            public Iterator<PhysicalHost> iterator() {
+                return new FlatteningIterator<PhysicalRack, PhysicalHost>(PhysicalTopology.this
+                        .iterateRacks().iterator()) {
+                    @Override
+                    protected Iterator<PhysicalHost> children(final PhysicalRack parent) {
+                        return parent.cpuIterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Unlike {@link #getStores()}, the stores are not copied into a list but
+     * visited one by one while iterating. The stores of each rack are
+     * visited before those of its hosts. The topology should not be changed
+     * during the iteration.
+     * 
+     * @return all stores in the topology.
+     */
+    public Iterable<PhysicalStore> iterateStores() {
+        return new Iterable<PhysicalStore>() {
+            @Override
+            public Iterator<PhysicalStore> iterator() {
+                return new FlatteningIterator<PhysicalRack, PhysicalStore>(PhysicalTopology.this
+                        .iterateRacks().iterator()) {
+                    @Override
+                    protected Iterator<PhysicalStore> children(final PhysicalRack parent) {
+                        return PhysicalTopology.disksOf(parent);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param rack
+     *            to get the stores of.
+     * @return an iterator over the stores of the rack, followed by those of
+     *         its hosts.
+     */
+    private static Iterator<PhysicalStore> disksOf(final PhysicalRack rack) {
+        return new FlatteningIterator<PhysicalHost, PhysicalStore>(rack.diskIterator(),
+                rack.cpuIterator()) {
+            @Override
+            protected Iterator<PhysicalStore> children(final PhysicalHost parent) {
+                return parent.diskIterator();
+            }
+        };
+    }
+
+    /**
+     * @return a new query selecting hosts of this topology.
+     */
+    public TopologyQuery query() {
+        return new TopologyQuery(this);
+    }
+
     /**
      * @param dataCenter
      *            the data center to add to the topology.
      */
-    public void addDataCenter(final PhysicalDataCenter dataCenter) {
+    public synchronized void addDataCenter(final PhysicalDataCenter dataCenter) {
         ErrorChecker.throwIfNullArgument(dataCenter, PhysicalTopology.DATACENTER_NAME);
 
+        final PhysicalDataCenter replaced = this.isObserved() ? this.root
+                .findDataCenter(dataCenter.getUniqueIdentifier()) : null;
+        if (this.indexed) {
+            this.index(dataCenter);
+        }
         this.root.addDataCenter(dataCenter);
         dataCenter.setParent(this.root);
+        if (this.aggregates != null) {
+            this.aggregates.dataCenterAdded(dataCenter, replaced);
+        }
+        if (this.utilization != null) {
+            this.utilization.dataCenterAdded(dataCenter, replaced);
+        }
     }
 
     /**
+     * Removes the data center with the same identifier that the topology holds, which need
+     * not be the same instance. Does nothing if the topology holds no such data center.
+     * 
      * @param dataCenter
      *            the data center to remove from the topology.
      */
-    public void removeDataCenter(final PhysicalDataCenter dataCenter) {
+    public synchronized void removeDataCenter(final PhysicalDataCenter dataCenter) {
         ErrorChecker.throwIfNullArgument(dataCenter, PhysicalTopology.DATACENTER_NAME);
 
-        this.root.removeDataCenter(dataCenter);
-        dataCenter.setParent(null);
+        final PhysicalDataCenter held = this.root.findDataCenter(dataCenter.getUniqueIdentifier());
+        if (held == null) {
+            return;
+        }
+        if (this.indexed) {
+            this.unindex(held);
+        }
+        this.root.removeDataCenter(held);
+        held.setParent(null);
+        if (this.aggregates != null) {
+            this.aggregates.dataCenterRemoved(held);
+        }
+        if (this.utilization != null) {
+            this.utilization.dataCenterRemoved(held);
+        }
     }
 
     /**
@@ -149,27 +473,55 @@ public class PhysicalTopology {
      * @param dataCenter
      *            the data center to use as the parent of rack.
      */
-    public void addRackToDataCenter(final PhysicalRack rack, final PhysicalDataCenter dataCenter) {
+    public synchronized void addRackToDataCenter(final PhysicalRack rack,
+            final PhysicalDataCenter dataCenter) {
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
         ErrorChecker.throwIfNullArgument(dataCenter, PhysicalTopology.DATACENTER_NAME);
 
+        final PhysicalRack replaced = this.isObserved() ? dataCenter.findRack(rack
+                .getUniqueIdentifier()) : null;
+        if (this.indexed) {
+            this.index(rack);
+        }
         dataCenter.addRack(rack);
         rack.setParent(dataCenter);
+        if (this.aggregates != null) {
+            this.aggregates.rackAdded(rack, dataCenter, replaced);
+        }
+        if (this.utilization != null) {
+            this.utilization.rackAdded(rack, dataCenter, replaced);
+        }
     }
 
     /**
+     * Removes the rack with the same identifier that the data center holds, which need
+     * not be the same instance. Does nothing if the data center holds no such rack.
+     * 
      * @param rack
      *            the rack to remove from the topology.
      * @param dataCenter
      *            the data center the rack was placed under.
      */
-    public void removeRackFromDataCenter(final PhysicalRack rack,
+    public synchronized void removeRackFromDataCenter(final PhysicalRack rack,
             final PhysicalDataCenter dataCenter) {
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
         ErrorChecker.throwIfNullArgument(dataCenter, PhysicalTopology.DATACENTER_NAME);
 
-        dataCenter.removeRack(rack);
-        rack.setParent(null);
+        final PhysicalRack held = dataCenter.findRack(rack.getUniqueIdentifier());
+        if (held == null) {
+            return;
+        }
+        if (this.indexed) {
+            this.unindex(held);
+        }
+        dataCenter.removeRack(held);
+        held.setParent(null);
+        if (this.aggregates != null) {
+            this.aggregates.rackRemoved(held, dataCenter);
+        }
+        if (this.utilization != null) {
+            this.utilization.rackRemoved(held, dataCenter);
+        }
     }
 
     /**
@@ -178,26 +530,53 @@ public class PhysicalTopology {
      * @param rack
      *            the rack to use as the parent of cpu.
      */
-    public void addCPUToRack(final PhysicalHost cpu, final PhysicalRack rack) {
+    public synchronized void addCPUToRack(final PhysicalHost cpu, final PhysicalRack rack) {
         ErrorChecker.throwIfNullArgument(cpu, PhysicalTopology.HOST_NAME);
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.HOST_NAME);
 
+        final PhysicalHost replaced = this.isObserved() ? rack.findCPU(cpu
+                .getUniqueIdentifier()) : null;
+        if (this.indexed) {
+            this.index(cpu);
+        }
         rack.addCPU(cpu);
         cpu.setParent(rack);
+        if (this.aggregates != null) {
+            this.aggregates.hostAdded(cpu, rack, replaced);
+        }
+        if (this.utilization != null) {
+            this.utilization.hostAdded(cpu, rack, replaced);
+        }
     }
 
     /**
+     * Removes the cpu with the same identifier that the rack holds, which need
+     * not be the same instance. Does nothing if the rack holds no such cpu.
+     * 
      * @param cpu
      *            the cpu to remove from the topology.
      * @param rack
      *            the rack that is the parent of cpu.
      */
-    public void removeCPUFromRack(final PhysicalHost cpu, final PhysicalRack rack) {
+    public synchronized void removeCPUFromRack(final PhysicalHost cpu, final PhysicalRack rack) {
         ErrorChecker.throwIfNullArgument(cpu, PhysicalTopology.HOST_NAME);
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
 
-        rack.removeCPU(cpu);
-        cpu.setParent(null);
+        final PhysicalHost held = rack.findCPU(cpu.getUniqueIdentifier());
+        if (held == null) {
+            return;
+        }
+        if (this.indexed) {
+            this.unindex(held);
+        }
+        rack.removeCPU(held);
+        held.setParent(null);
+        if (this.aggregates != null) {
+            this.aggregates.hostRemoved(held, rack);
+        }
+        if (this.utilization != null) {
+            this.utilization.hostRemoved(held, rack);
+        }
     }
 
     /**
@@ -206,26 +585,47 @@ public class PhysicalTopology {
      * @param rack
      *            the rack to use as the parent of disk.
      */
-    public void addDiskToRack(final PhysicalStore disk, final PhysicalRack rack) {
+    public synchronized void addDiskToRack(final PhysicalStore disk, final PhysicalRack rack) {
         ErrorChecker.throwIfNullArgument(disk, PhysicalTopology.DISK_NAME);
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
 
+        final PhysicalStore replaced = this.aggregates == null ? null : rack.findDisk(disk
+                .getUniqueIdentifier());
+        if (this.indexed) {
+            this.index(disk);
+        }
         rack.addDisk(disk);
         disk.setParent(rack);
+        if (this.aggregates != null) {
+            this.aggregates.storeAdded(disk, rack, replaced);
+        }
     }
 
     /**
+     * Removes the disk with the same identifier that the rack holds, which need
+     * not be the same instance. Does nothing if the rack holds no such disk.
+     * 
      * @param disk
      *            the disk to remove from the topology.
      * @param rack
      *            the rack that is the parent of disk.
      */
-    public void removeDiskFromRack(final PhysicalStore disk, final PhysicalRack rack) {
+    public synchronized void removeDiskFromRack(final PhysicalStore disk, final PhysicalRack rack) {
         ErrorChecker.throwIfNullArgument(disk, PhysicalTopology.DISK_NAME);
         ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
 
-        rack.removeDisk(disk);
-        disk.setParent(null);
+        final PhysicalStore held = rack.findDisk(disk.getUniqueIdentifier());
+        if (held == null) {
+            return;
+        }
+        if (this.indexed) {
+            this.unindex(held);
+        }
+        rack.removeDisk(held);
+        held.setParent(null);
+        if (this.aggregates != null) {
+            this.aggregates.storeRemoved(held, rack);
+        }
     }
 
     /**
@@ -234,31 +634,278 @@ public class PhysicalTopology {
      * @param host
      *            the rack to use as the parent of disk.
      */
-    public void addDiskToHost(final PhysicalStore disk, final PhysicalHost host) {
+    public synchronized void addDiskToHost(final PhysicalStore disk, final PhysicalHost host) {
         ErrorChecker.throwIfNullArgument(disk, PhysicalTopology.DISK_NAME);
         ErrorChecker.throwIfNullArgument(host, PhysicalTopology.RACK_NAME);
 
+        final PhysicalStore replaced = this.aggregates == null ? null : host.findDisk(disk
+                .getUniqueIdentifier());
+        if (this.indexed) {
+            this.index(disk);
+        }
         host.addDisk(disk);
         disk.setParent(host);
+        if (this.aggregates != null) {
+            this.aggregates.storeAdded(disk, host.getParent(), replaced);
+        }
     }
 
     /**
+     * Removes the disk with the same identifier that the host holds, which need
+     * not be the same instance. Does nothing if the host holds no such disk.
+     * 
      * @param disk
      *            the disk to remove from the topology.
      * @param host
      *            the rack that is the parent of disk.
      */
-    public void removeDiskFromHost(final PhysicalStore disk, final PhysicalHost host) {
+    public synchronized void removeDiskFromHost(final PhysicalStore disk, final PhysicalHost host) {
         ErrorChecker.throwIfNullArgument(disk, PhysicalTopology.DISK_NAME);
         ErrorChecker.throwIfNullArgument(host, PhysicalTopology.RACK_NAME);
 
-        host.removeDisk(disk);
-        disk.setParent(null);
+        final PhysicalStore held = host.findDisk(disk.getUniqueIdentifier());
+        if (held == null) {
+            return;
+        }
+        if (this.indexed) {
+            this.unindex(held);
+        }
+        host.removeDisk(held);
+        held.setParent(null);
+        if (this.aggregates != null) {
+            this.aggregates.storeRemoved(held, host.getParent());
+        }
+    }
+
+    /**
+     * Updates the usage of a host in place, measured at the current time.
+     * 
+     * @param host
+     *            the host to update.
+     * @param cpuUsage
+     *            the new cpu usage of the host.
+     * @param memUsage
+     *            the new memory usage of the host.
+     * @return false if the usage was not updated because the host already
+     *         holds a newer measurement.
+     */
+    public boolean updateHostUsage(final PhysicalHost host, final double cpuUsage,
+            final double memUsage) {
+        return this.updateHostUsage(host, cpuUsage, memUsage, System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the usage of a host in place, unless it already holds a newer
+     * measurement. Can be called by several threads at once.
+     * 
+     * @param host
+     *            the host to update.
+     * @param cpuUsage
+     *            the new cpu usage of the host.
+     * @param memUsage
+     *            the new memory usage of the host.
+     * @param lastUpdate
+     *            time the usage was measured, in milliseconds since the
+     *            epoch.
+     * @return false if the usage was not updated because the host already
+     *         holds a newer measurement.
+     */
+    public boolean updateHostUsage(final PhysicalHost host, final double cpuUsage,
+            final double memUsage, final long lastUpdate) {
+        return this.updateHostUsage(host, cpuUsage, memUsage, lastUpdate, false);
+    }
+
+    /**
+     * Updates the usage of a host in place, also when merging or applying a
+     * diff replaces a newer measurement with an older one.
+     * 
+     * @param host
+     *            the host to update.
+     * @param cpuUsage
+     *            the new cpu usage of the host.
+     * @param memUsage
+     *            the new memory usage of the host.
+     * @param lastUpdate
+     *            time the usage was measured, in milliseconds since the
+     *            epoch.
+     * @param force
+     *            whether to update the usage even if the host holds a newer
+     *            measurement.
+     * @return false if the usage was not updated.
+     */
+    synchronized boolean updateHostUsage(final PhysicalHost host, final double cpuUsage,
+            final double memUsage, final long lastUpdate, final boolean force) {
+        ErrorChecker.throwIfNullArgument(host, PhysicalTopology.HOST_NAME);
+
+        if (!host.updateUsage(cpuUsage, memUsage, lastUpdate, force, this.previousUsage)) {
+            return false;
+        }
+        if (this.aggregates != null) {
+            this.aggregates.hostChanged(host, this.previousUsage.getCpuUsage(),
+                                        this.previousUsage.getMemUsage());
+        }
+        if (this.utilization != null) {
+            this.utilization.hostChanged(host);
+        }
+        if (this.columns != null) {
+            this.columns.updateHost(host);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the capacity and usage of a store in place. Unlike the setters
+     * of the store, this keeps the aggregates of the topology up to date.
+     * 
+     * @param store
+     *            the store to update.
+     * @param capacity
+     *            the new capacity of the store.
+     * @param used
+     *            the new used capacity of the store.
+     */
+    public synchronized void updateStoreUsage(final PhysicalStore store, final long capacity,
+            final long used) {
+        ErrorChecker.throwIfNullArgument(store, PhysicalTopology.DISK_NAME);
+
+        final long oldCapacity = store.getCapacity();
+        final long oldUsed = store.getUsed();
+        store.setCapacity(capacity);
+        store.setUsed(used);
+        if (this.aggregates != null) {
+            this.aggregates.storeChanged(PhysicalTopology.rackOf(store), capacity - oldCapacity,
+                                         used - oldUsed);
+        }
+        if (this.columns != null) {
+            this.columns.updateStore(store);
+        }
+    }
+
+    /**
+     * @param store
+     *            to find the rack of.
+     * @return the rack the store is in, directly or through a host, or null
+     *         if it is in neither.
+     */
+    private static PhysicalRack rackOf(final PhysicalStore store) {
+        final PhysicalResource parent = store.getParent();
+        if (parent instanceof PhysicalRack) {
+            return (PhysicalRack) parent;
+        } else if (parent instanceof PhysicalHost) {
+            return ((PhysicalHost) parent).getParent();
+        }
+        return null;
+    }
+
+    /**
+     * The columns are built on the first call, after which the add, remove
+     * and update methods of this topology keep them up to date. Like the
+     * aggregates, they do not see changes made directly to the resources.
+     * Their reads take the lock of this topology.
+     * 
+     * @return the usage of all hosts and stores in the topology, kept in one
+     *         array per metric.
+     */
+    public synchronized MetricColumns getColumns() {
+        if (this.columns == null) {
+            this.ensureIndexed();
+            final MetricColumns res = new MetricColumns(this);
+            for (final PhysicalHost cpu : this.cpuIndex.values()) {
+                res.putHost(cpu);
+            }
+            for (final PhysicalStore disk : this.storeIndex.values()) {
+                res.putStore(disk);
+            }
+            this.columns = res;
+        }
+        return this.columns;
+    }
+
+    /**
+     * The index is built on the first call, after which the add, remove and
+     * update methods of this topology keep it up to date. Like the
+     * aggregates, it does not see changes made directly to the resources.
+     * 
+     * @return the hosts of the topology ordered by their usage.
+     */
+    public synchronized UtilizationIndex getUtilizationIndex() {
+        if (this.utilization == null) {
+            this.utilization = new UtilizationIndex(this.root);
+        }
+        return this.utilization;
+    }
+
+    /**
+     * @return true iff the aggregates or the utilization index are kept,
+     *         which need to know which resources are replaced or removed.
+     */
+    private boolean isObserved() {
+        return this.aggregates != null || this.utilization != null;
+    }
+
+    /**
+     * Computes the aggregates of the topology, if that has not been done
+     * yet.
+     * 
+     * @return the aggregates.
+     */
+    private synchronized TopologyAggregates ensureAggregated() {
+        if (this.aggregates == null) {
+            this.aggregates = new TopologyAggregates(this.root, this);
+        }
+        return this.aggregates;
+    }
+
+    /**
+     * The aggregate is updated by later changes made through this topology.
+     * Changes made directly to the resources, such as through
+     * {@link PhysicalStore#setUsed(long)}, are not seen.
+     * 
+     * @return the aggregate of all resources in the topology.
+     */
+    public UsageAggregate getAggregate() {
+        return this.ensureAggregated().getRoot();
+    }
+
+    /**
+     * @param dataCenter
+     *            to get the aggregate of.
+     * @return the aggregate of all resources in the data center, which is
+     *         updated like {@link #getAggregate()}.
+     * @throws NoSuchElementException
+     *             if the data center is not in the topology.
+     */
+    public synchronized UsageAggregate getAggregate(final PhysicalDataCenter dataCenter) {
+        ErrorChecker.throwIfNullArgument(dataCenter, PhysicalTopology.DATACENTER_NAME);
+        final UsageAggregate res = this.ensureAggregated().getDataCenter(dataCenter
+                .getUniqueIdentifier());
+        if (res == null) {
+            throw new NoSuchElementException();
+        }
+        return res;
+    }
+
+    /**
+     * @param rack
+     *            to get the aggregate of.
+     * @return the aggregate of all resources in the rack, which is updated
+     *         like {@link #getAggregate()}.
+     * @throws NoSuchElementException
+     *             if the rack is not in the topology.
+     */
+    public synchronized UsageAggregate getAggregate(final PhysicalRack rack) {
+        ErrorChecker.throwIfNullArgument(rack, PhysicalTopology.RACK_NAME);
+        final UsageAggregate res = this.ensureAggregated().getRack(rack.getUniqueIdentifier());
+        if (res == null) {
+            throw new NoSuchElementException();
+        }
+        return res;
     }
 
     /**
      * Merges one {@link PhysicalTopology} with another, resulting in a new
-     * {@link PhysicalTopology} object.
+     * {@link PhysicalTopology} object. Hosts and stores found in both
+     * topologies keep the values of the first one.
      * 
      * @param one
      *            first tree.
@@ -267,108 +914,204 @@ public class PhysicalTopology {
      * @return a new tree object.
      */
     public static PhysicalTopology mergeTree(final PhysicalTopology one, final PhysicalTopology two) {
+        return PhysicalTopology.mergeTree(one, two, MergePolicy.PREFER_LEFT);
+    }
+
+    /**
+     * Merges one {@link PhysicalTopology} with another, resulting in a new
+     * {@link PhysicalTopology} object. Neither topology is modified.
+     * 
+     * The first topology is copied once, after which every resource of the
+     * second is looked up by its identifier in the index of the copy, so the
+     * merge takes time linear in the size of both topologies. Resources that
+     * are not in the first topology are copied into place, but anything
+     * below them that the first topology does contain stays where it is. For
+     * hosts and stores that are in both, the policy decides which values are
+     * kept.
+     * 
+     * @param one
+     *            first tree.
+     * @param two
+     *            tree to merge with.
+     * @param policy
+     *            deciding between the values of resources in both trees.
+     * @return a new tree object.
+     */
+    public static PhysicalTopology mergeTree(final PhysicalTopology one,
+            final PhysicalTopology two, final MergePolicy policy) {
         ErrorChecker.throwIfNullArgument(one, "First Argument");
         ErrorChecker.throwIfNullArgument(two, "Second Argument");
+        ErrorChecker.throwIfNullArgument(policy, "policy");
         if (!one.getRoot().equals(two.getRoot())) {
             return new PhysicalTopology(one);
         }
         final PhysicalTopology res = new PhysicalTopology(one);
 
         for (final PhysicalDataCenter datacenter : two.getDataCenters()) {
-            final int index = one.getDataCenters().indexOf(datacenter);
-            PhysicalDataCenter clone;
-            if (index >= 0) {
-                clone = PhysicalTopology.mergeDatacenter(one.getDataCenters().get(index),
-                                                         datacenter);
+            final String id = datacenter.getUniqueIdentifier();
+            if (res.hasDataCenterByID(id)) {
+                res.mergeDatacenter(res.getDataCenterByID(id), datacenter, policy);
+            } else if (!res.containsAnyBelow(datacenter)) {
+                res.addDataCenter(new PhysicalDataCenter(datacenter));
             } else {
-                clone = new PhysicalDataCenter(datacenter);
+                final PhysicalDataCenter clone = new PhysicalDataCenterBuilder().withUuid(id)
+                        .build();
+                res.addDataCenter(clone);
+                res.mergeDatacenter(clone, datacenter, policy);
             }
-            clone.setParent(res.getRoot());
-            res.getRoot().addDataCenter(clone);
         }
 
         return res;
     }
 
     /**
-     * Merges two datacenters, whilst leaving them unmodified.
+     * Merges a datacenter into one of this topology, leaving the other
+     * unmodified.
      * 
-     * @param one
-     *            First datacenter.
-     * @param two
-     *            Second datacenter.
-     * @return the merged new object.
-     */
-    private static PhysicalDataCenter mergeDatacenter(final PhysicalDataCenter one,
-            final PhysicalDataCenter two) {
-        final PhysicalDataCenter res = new PhysicalDataCenter(one);
-        for (final PhysicalRack rack : two.getRacks()) {
-            final int index = one.getRacks().indexOf(rack);
-            PhysicalRack clone;
-            if (index >= 0) {
-                clone = PhysicalTopology.mergeRack(one.getRacks().get(index), rack);
+     * @param datacenter
+     *            datacenter of this topology.
+     * @param other
+     *            datacenter with the same identifier to merge.
+     * @param policy
+     *            deciding between the values of resources in both.
+     */
+    private void mergeDatacenter(final PhysicalDataCenter datacenter,
+            final PhysicalDataCenter other, final MergePolicy policy) {
+        for (final PhysicalRack rack : other.getRackView()) {
+            final String id = rack.getUniqueIdentifier();
+            if (this.hasRackByID(id)) {
+                this.mergeRack(this.getRackByID(id), rack, policy);
+            } else if (!this.containsAnyBelow(rack)) {
+                this.addRackToDataCenter(new PhysicalRack(rack), datacenter);
             } else {
-                clone = new PhysicalRack(rack);
+                final PhysicalRack clone = new PhysicalRackBuilder().withUuid(id).build();
+                this.addRackToDataCenter(clone, datacenter);
+                this.mergeRack(clone, rack, policy);
             }
-            clone.setParent(res);
-            res.addRack(clone);
         }
-        return res;
     }
 
     /**
-     * Merges two PhysicalRacks, whilst leaving them unmodified.
+     * Merges a PhysicalRack into one of this topology, leaving the other
+     * unmodified.
      * 
-     * @param one
-     *            First PhysicalRack.
-     * @param two
-     *            Second PhysicalRack.
-     * @return the merged new object.
-     */
-    private static PhysicalRack mergeRack(final PhysicalRack one, final PhysicalRack two) {
-        final PhysicalRack res = new PhysicalRack(one);
-        for (final PhysicalHost cpu : two.getCPUs()) {
-            final int index = one.getCPUs().indexOf(cpu);
-            PhysicalHost clone;
-            if (index < 0) {
-                clone = new PhysicalHost(cpu);
+     * @param rack
+     *            PhysicalRack of this topology.
+     * @param other
+     *            PhysicalRack with the same identifier to merge.
+     * @param policy
+     *            deciding between the values of resources in both.
+     */
+    private void mergeRack(final PhysicalRack rack, final PhysicalRack other,
+            final MergePolicy policy) {
+        for (final PhysicalHost cpu : other.getCPUView()) {
+            final String id = cpu.getUniqueIdentifier();
+            if (this.hasCPUByID(id)) {
+                this.mergeHost(this.getCPUByID(id), cpu, policy);
+            } else if (!this.containsAnyDisk(cpu)) {
+                this.addCPUToRack(new PhysicalHost(cpu), rack);
             } else {
-                clone = PhysicalTopology.mergeHost(one.getCPUs().get(index), cpu);
+                final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+                builder.withCpuUsage(cpu.getCpuUsage()).withMemUsage(cpu.getMemUsage())
+                        .withLastUpdate(cpu.getLastUpdate());
+                final PhysicalHost clone = builder.withUuid(id).build();
+                this.addCPUToRack(clone, rack);
+                this.mergeHost(clone, cpu, policy);
             }
-            clone.setParent(res);
-            res.addCPU(clone);
-        }
-        for (final PhysicalStore disk : two.getDisks()) {
-            final int index = one.getDisks().indexOf(disk);
-            if (index < 0) {
-                final PhysicalStore clone = new PhysicalStore(disk);
-                clone.setParent(res);
-                res.addDisk(clone);
+        }
+        for (final PhysicalStore disk : other.getDiskView()) {
+            if (!this.mergeStore(disk, policy)) {
+                this.addDiskToRack(new PhysicalStore(disk), rack);
             }
         }
-        return res;
     }
 
     /**
-     * Merges two PhysicalHosts, whilst leaving them unmodified.
+     * Merges a PhysicalHost into one of this topology, leaving the other
+     * unmodified.
      * 
-     * @param one
-     *            First PhysicalHost.
-     * @param two
-     *            Second PhysicalHost.
-     * @return the merged new object.
-     */
-    private static PhysicalHost mergeHost(final PhysicalHost one, final PhysicalHost two) {
-        final PhysicalHost res = new PhysicalHost(one);
-        for (final PhysicalStore disk : two.getDisks()) {
-            final int index = one.getDisks().indexOf(disk);
-            if (index < 0) {
-                final PhysicalStore clone = new PhysicalStore(disk);
-                clone.setParent(res);
-                res.addDisk(clone);
+     * @param cpu
+     *            PhysicalHost of this topology.
+     * @param other
+     *            PhysicalHost with the same identifier to merge.
+     * @param policy
+     *            deciding between the values of resources in both.
+     */
+    private void mergeHost(final PhysicalHost cpu, final PhysicalHost other,
+            final MergePolicy policy) {
+        if (policy.preferRight(cpu, other)) {
+            this.updateHostUsage(cpu, other.getCpuUsage(), other.getMemUsage(),
+                                 other.getLastUpdate(), true);
+        }
+        for (final PhysicalStore disk : other.getDiskView()) {
+            if (!this.mergeStore(disk, policy)) {
+                this.addDiskToHost(new PhysicalStore(disk), cpu);
             }
         }
-        return res;
+    }
+
+    /**
+     * Merges a PhysicalStore into the store with the same identifier in this
+     * topology, if there is one.
+     * 
+     * @param other
+     *            PhysicalStore to merge.
+     * @param policy
+     *            deciding between the values of both stores.
+     * @return false iff this topology has no store with the same identifier.
+     */
+    private boolean mergeStore(final PhysicalStore other, final MergePolicy policy) {
+        this.ensureIndexed();
+        final PhysicalStore disk = this.storeIndex.get(other.getUniqueIdentifier());
+        if (disk == null) {
+            return false;
+        }
+        if (policy.preferRight(disk, other)) {
+            this.updateStoreUsage(disk, other.getCapacity(), other.getUsed());
+        }
+        return true;
+    }
+
+    /**
+     * @param datacenter
+     *            datacenter of another topology.
+     * @return true iff this topology contains any of the resources below it.
+     */
+    private boolean containsAnyBelow(final PhysicalDataCenter datacenter) {
+        for (final PhysicalRack rack : datacenter.getRackView()) {
+            if (this.hasRackByID(rack.getUniqueIdentifier()) || this.containsAnyBelow(rack)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param rack
+     *            PhysicalRack of another topology.
+     * @return true iff this topology contains any of the resources below it.
+     */
+    private boolean containsAnyBelow(final PhysicalRack rack) {
+        for (final PhysicalHost cpu : rack.getCPUView()) {
+            if (this.hasCPUByID(cpu.getUniqueIdentifier()) || this.containsAnyDisk(cpu)) {
+                return true;
+            }
+        }
+        return this.containsAnyDisk(rack);
+    }
+
+    /**
+     * @param resource
+     *            resource of another topology.
+     * @return true iff this topology contains any of its disks.
+     */
+    private boolean containsAnyDisk(final PhysicalResourceWithDisks resource) {
+        for (final PhysicalStore disk : resource.getDiskView()) {
+            if (this.hasStoreByID(disk.getUniqueIdentifier())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -385,19 +1128,54 @@ public class PhysicalTopology {
         return false;
     }
 
+    /**
+     * @param dataCenterID
+     *            to look for.
+     * @return true iff there is a data center with that dataCenterID.
+     */
+    public boolean hasDataCenterByID(final String dataCenterID) {
+        this.ensureIndexed();
+        return this.dataCenterIndex.containsKey(dataCenterID);
+    }
+
+    /**
+     * @param dataCenterID
+     *            to look for.
+     * @return the data center if it is found.
+     */
+    public PhysicalDataCenter getDataCenterByID(final String dataCenterID) {
+        this.ensureIndexed();
+        return PhysicalTopology.getFromIndex(this.dataCenterIndex, dataCenterID);
+    }
+
+    /**
+     * @param rackID
+     *            to look for.
+     * @return true iff there is a rack with that rackID.
+     */
+    public boolean hasRackByID(final String rackID) {
+        this.ensureIndexed();
+        return this.rackIndex.containsKey(rackID);
+    }
+
+    /**
+     * @param rackID
+     *            to look for.
+     * @return the rack if it is found.
+     */
+    public PhysicalRack getRackByID(final String rackID) {
+        this.ensureIndexed();
+        return PhysicalTopology.getFromIndex(this.rackIndex, rackID);
+    }
+
     /**
      * @param cpuID
      *            to look for.
-     * @return true iff there is a host without that cpuID
+     * @return true iff there is a host with that cpuID.
      */
     public boolean hasCPUByID(final String cpuID) {
-        final List<PhysicalHost> cpus = this.getCPUs();
-        for (final PhysicalHost host : cpus) {
-            if (host.getUniqueIdentifier().equals(cpuID)) {
-                return true;
-            }
-        }
-        return false;
+        this.ensureIndexed();
+        return this.cpuIndex.containsKey(cpuID);
     }
 
     /**
@@ -406,12 +1184,47 @@ public class PhysicalTopology {
      * @return the cpu if it is found.
      */
     public PhysicalHost getCPUByID(final String cpuID) {
-        final List<PhysicalHost> cpus = this.getCPUs();
-        for (final PhysicalHost host : cpus) {
-            if (host.getUniqueIdentifier().equals(cpuID)) {
-                return host;
-            }
+        this.ensureIndexed();
+        return PhysicalTopology.getFromIndex(this.cpuIndex, cpuID);
+    }
+
+    /**
+     * @param storeID
+     *            to look for.
+     * @return true iff there is a store with that storeID, attached to
+     *         either a rack or a host.
+     */
+    public boolean hasStoreByID(final String storeID) {
+        this.ensureIndexed();
+        return this.storeIndex.containsKey(storeID);
+    }
+
+    /**
+     * @param storeID
+     *            to look for.
+     * @return the store if it is found.
+     */
+    public PhysicalStore getStoreByID(final String storeID) {
+        this.ensureIndexed();
+        return PhysicalTopology.getFromIndex(this.storeIndex, storeID);
+    }
+
+    /**
+     * @param index
+     *            to look in.
+     * @param id
+     *            to look for.
+     * @param <T>
+     *            type of the indexed resources.
+     * @return the resource with the given id.
+     * @throws NoSuchElementException
+     *             if the index does not contain the id.
+     */
+    private static <T> T getFromIndex(final Map<String, T> index, final String id) {
+        final T res = index.get(id);
+        if (res == null) {
+            throw new NoSuchElementException();
         }
-        throw new NoSuchElementException();
+        return res;
     }
 }
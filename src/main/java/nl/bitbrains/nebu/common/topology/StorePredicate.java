@@ -0,0 +1,18 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * Condition on a store, used to select hosts by their stores with
+ * {@link TopologyPredicates#hasStore(StorePredicate)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface StorePredicate {
+
+    /**
+     * @param store
+     *            to test.
+     * @return true iff the store meets the condition.
+     */
+    boolean matches(PhysicalStore store);
+}
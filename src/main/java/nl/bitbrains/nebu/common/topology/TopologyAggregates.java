@@ -0,0 +1,472 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps a {@link UsageAggregate} for every rack and data center of a
+ * {@link PhysicalTopology}, and one for its root. The topology reports every
+ * change it makes, after making it, and the aggregates of the rack, data
+ * center and root above the change are updated by the difference. This
+ * takes constant time per level, except when the resource with the highest
+ * usage lowers it or leaves: then the highest usage of that level is found
+ * again among its children.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+final class TopologyAggregates {
+
+    private final PhysicalRoot root;
+    private final Object lock;
+    private final UsageAggregate rootAggregate;
+    private final Map<String, UsageAggregate> dataCenters;
+    private final Map<String, UsageAggregate> racks;
+    /** Difference to apply, reused to avoid creating one per change. */
+    private final UsageAggregate delta;
+
+    /**
+     * Computes the aggregates of all resources below the root.
+     * 
+     * @param root
+     *            of the topology.
+     * @param lock
+     *            under which the topology reports its changes.
+     */
+    TopologyAggregates(final PhysicalRoot root, final Object lock) {
+        this.root = root;
+        this.lock = lock;
+        this.rootAggregate = new UsageAggregate(lock);
+        this.dataCenters = new HashMap<String, UsageAggregate>();
+        this.racks = new HashMap<String, UsageAggregate>();
+        this.delta = new UsageAggregate(lock);
+        final Iterator<PhysicalDataCenter> it = root.dataCenterIterator();
+        while (it.hasNext()) {
+            this.rootAggregate.add(this.fill(it.next()), 1);
+        }
+        this.maxOfDataCenters();
+    }
+
+    /**
+     * @return the aggregate of the whole topology.
+     */
+    UsageAggregate getRoot() {
+        return this.rootAggregate;
+    }
+
+    /**
+     * @param id
+     *            of the data center.
+     * @return its aggregate, or null if it is not in the topology.
+     */
+    UsageAggregate getDataCenter(final String id) {
+        return this.dataCenters.get(id);
+    }
+
+    /**
+     * @param id
+     *            of the rack.
+     * @return its aggregate, or null if it is not in the topology.
+     */
+    UsageAggregate getRack(final String id) {
+        return this.racks.get(id);
+    }
+
+    /**
+     * @param dataCenter
+     *            that was added to the root.
+     * @param replaced
+     *            data center with the same identifier that it replaced, or
+     *            null.
+     */
+    void dataCenterAdded(final PhysicalDataCenter dataCenter, final PhysicalDataCenter replaced) {
+        if (replaced != null) {
+            this.dataCenterRemoved(replaced);
+        }
+        final UsageAggregate added = this.fill(dataCenter);
+        this.delta.clear();
+        this.delta.add(added, 1);
+        this.propagate(0, added.getMaxCpuUsage(), 0, added.getMaxMemUsage());
+    }
+
+    /**
+     * @param dataCenter
+     *            that was removed from the root.
+     */
+    void dataCenterRemoved(final PhysicalDataCenter dataCenter) {
+        final UsageAggregate removed = this.dataCenters.remove(dataCenter.getUniqueIdentifier());
+        if (removed == null) {
+            return;
+        }
+        final Iterator<PhysicalRack> it = dataCenter.rackIterator();
+        while (it.hasNext()) {
+            this.racks.remove(it.next().getUniqueIdentifier());
+        }
+        this.delta.clear();
+        this.delta.add(removed, -1);
+        this.propagate(removed.getMaxCpuUsage(), 0, removed.getMaxMemUsage(), 0);
+    }
+
+    /**
+     * @param rack
+     *            that was added to the data center.
+     * @param dataCenter
+     *            the rack was added to.
+     * @param replaced
+     *            rack with the same identifier that it replaced, or null.
+     */
+    void rackAdded(final PhysicalRack rack, final PhysicalDataCenter dataCenter,
+            final PhysicalRack replaced) {
+        if (replaced != null) {
+            this.rackRemoved(replaced, dataCenter);
+        }
+        if (!this.dataCenters.containsKey(dataCenter.getUniqueIdentifier())) {
+            return;
+        }
+        final UsageAggregate added = this.fill(rack);
+        this.delta.clear();
+        this.delta.add(added, 1);
+        this.propagate(dataCenter, 0, added.getMaxCpuUsage(), 0, added.getMaxMemUsage());
+    }
+
+    /**
+     * @param rack
+     *            that was removed from the data center.
+     * @param dataCenter
+     *            the rack was removed from.
+     */
+    void rackRemoved(final PhysicalRack rack, final PhysicalDataCenter dataCenter) {
+        final UsageAggregate removed = this.racks.remove(rack.getUniqueIdentifier());
+        if (removed == null) {
+            return;
+        }
+        this.delta.clear();
+        this.delta.add(removed, -1);
+        this.propagate(dataCenter, removed.getMaxCpuUsage(), 0, removed.getMaxMemUsage(), 0);
+    }
+
+    /**
+     * @param host
+     *            that was added to the rack.
+     * @param rack
+     *            the host was added to.
+     * @param replaced
+     *            host with the same identifier that it replaced, or null.
+     */
+    void hostAdded(final PhysicalHost host, final PhysicalRack rack, final PhysicalHost replaced) {
+        if (replaced != null) {
+            this.hostRemoved(replaced, rack);
+        }
+        this.setToHost(host, 1);
+        this.propagate(rack, 0, host.getCpuUsage(), 0, host.getMemUsage());
+    }
+
+    /**
+     * @param host
+     *            that was removed from the rack.
+     * @param rack
+     *            the host was removed from.
+     */
+    void hostRemoved(final PhysicalHost host, final PhysicalRack rack) {
+        this.setToHost(host, -1);
+        this.propagate(rack, host.getCpuUsage(), 0, host.getMemUsage(), 0);
+    }
+
+    /**
+     * @param host
+     *            of which the usage was changed.
+     * @param oldCpu
+     *            cpu usage before the change.
+     * @param oldMem
+     *            memory usage before the change.
+     */
+    void hostChanged(final PhysicalHost host, final double oldCpu, final double oldMem) {
+        if (host.getParent() == null) {
+            return;
+        }
+        this.delta.clear();
+        this.delta.add(0, host.getCpuUsage() - oldCpu, host.getMemUsage() - oldMem, 0, 0);
+        this.propagate(host.getParent(), oldCpu, host.getCpuUsage(), oldMem, host.getMemUsage());
+    }
+
+    /**
+     * @param store
+     *            that was added.
+     * @param rack
+     *            the store is in, directly or through a host, or null.
+     * @param replaced
+     *            store with the same identifier that it replaced, or null.
+     */
+    void storeAdded(final PhysicalStore store, final PhysicalRack rack,
+            final PhysicalStore replaced) {
+        if (replaced != null) {
+            this.storeRemoved(replaced, rack);
+        }
+        this.storeChanged(rack, store.getCapacity(), store.getUsed());
+    }
+
+    /**
+     * @param store
+     *            that was removed.
+     * @param rack
+     *            the store was in, directly or through a host, or null.
+     */
+    void storeRemoved(final PhysicalStore store, final PhysicalRack rack) {
+        this.storeChanged(rack, -store.getCapacity(), -store.getUsed());
+    }
+
+    /**
+     * @param rack
+     *            the store is in, directly or through a host, or null.
+     * @param capacity
+     *            change of its capacity.
+     * @param used
+     *            change of its used capacity.
+     */
+    void storeChanged(final PhysicalRack rack, final long capacity, final long used) {
+        if (rack == null) {
+            return;
+        }
+        this.delta.clear();
+        this.delta.add(0, 0, 0, capacity, used);
+        this.propagate(rack, 0, 0, 0, 0);
+    }
+
+    /**
+     * Sets the difference to everything a host contributes.
+     * 
+     * @param host
+     *            to add or subtract.
+     * @param sign
+     *            1 to add the host, -1 to subtract it.
+     */
+    private void setToHost(final PhysicalHost host, final int sign) {
+        this.delta.clear();
+        this.delta.add(sign, sign * host.getCpuUsage(), sign * host.getMemUsage(), 0, 0);
+        final Iterator<PhysicalStore> it = host.diskIterator();
+        while (it.hasNext()) {
+            final PhysicalStore disk = it.next();
+            this.delta.add(0, 0, 0, sign * disk.getCapacity(), sign * disk.getUsed());
+        }
+    }
+
+    /**
+     * Applies the difference to a rack and everything above it.
+     * 
+     * @param rack
+     *            of which a child changed.
+     * @param oldCpu
+     *            highest cpu usage of the child before the change, 0 if it
+     *            was not there.
+     * @param newCpu
+     *            highest cpu usage of the child after the change, 0 if it is
+     *            no longer there.
+     * @param oldMem
+     *            highest memory usage of the child before the change.
+     * @param newMem
+     *            highest memory usage of the child after the change.
+     */
+    private void propagate(final PhysicalRack rack, final double oldCpu, final double newCpu,
+            final double oldMem, final double newMem) {
+        final UsageAggregate aggregate = this.racks.get(rack.getUniqueIdentifier());
+        if (aggregate == null) {
+            return;
+        }
+        final double cpu = aggregate.getMaxCpuUsage();
+        final double mem = aggregate.getMaxMemUsage();
+        if (this.apply(aggregate, oldCpu, newCpu, oldMem, newMem)) {
+            TopologyAggregates.maxOfHosts(aggregate, rack);
+        }
+        this.propagate(rack.getParent(), cpu, aggregate.getMaxCpuUsage(), mem,
+                       aggregate.getMaxMemUsage());
+    }
+
+    /**
+     * Applies the difference to a data center and the root.
+     * 
+     * @param dataCenter
+     *            of which a child changed.
+     * @param oldCpu
+     *            highest cpu usage of the child before the change.
+     * @param newCpu
+     *            highest cpu usage of the child after the change.
+     * @param oldMem
+     *            highest memory usage of the child before the change.
+     * @param newMem
+     *            highest memory usage of the child after the change.
+     */
+    private void propagate(final PhysicalDataCenter dataCenter, final double oldCpu,
+            final double newCpu, final double oldMem, final double newMem) {
+        if (dataCenter == null) {
+            return;
+        }
+        final UsageAggregate aggregate = this.dataCenters.get(dataCenter.getUniqueIdentifier());
+        if (aggregate == null) {
+            return;
+        }
+        final double cpu = aggregate.getMaxCpuUsage();
+        final double mem = aggregate.getMaxMemUsage();
+        if (this.apply(aggregate, oldCpu, newCpu, oldMem, newMem)) {
+            this.maxOfRacks(aggregate, dataCenter);
+        }
+        this.propagate(cpu, aggregate.getMaxCpuUsage(), mem, aggregate.getMaxMemUsage());
+    }
+
+    /**
+     * Applies the difference to the root.
+     * 
+     * @param oldCpu
+     *            highest cpu usage of the child before the change.
+     * @param newCpu
+     *            highest cpu usage of the child after the change.
+     * @param oldMem
+     *            highest memory usage of the child before the change.
+     * @param newMem
+     *            highest memory usage of the child after the change.
+     */
+    private void propagate(final double oldCpu, final double newCpu, final double oldMem,
+            final double newMem) {
+        if (this.apply(this.rootAggregate, oldCpu, newCpu, oldMem, newMem)) {
+            this.maxOfDataCenters();
+        }
+    }
+
+    /**
+     * Adds the difference to an aggregate and updates its maxima if that can
+     * be done without looking at the other children.
+     * 
+     * @param aggregate
+     *            to update.
+     * @param oldCpu
+     *            highest cpu usage of the changed child before the change.
+     * @param newCpu
+     *            highest cpu usage of the changed child after the change.
+     * @param oldMem
+     *            highest memory usage of the changed child before the change.
+     * @param newMem
+     *            highest memory usage of the changed child after the change.
+     * @return true iff the child held a maximum and lowered it, so the maxima
+     *         have to be computed again from all children.
+     */
+    private boolean apply(final UsageAggregate aggregate, final double oldCpu,
+            final double newCpu, final double oldMem, final double newMem) {
+        aggregate.add(this.delta, 1);
+        final double cpu = aggregate.getMaxCpuUsage();
+        final double mem = aggregate.getMaxMemUsage();
+        if (newCpu < cpu && oldCpu >= cpu || newMem < mem && oldMem >= mem) {
+            return true;
+        }
+        aggregate.setMax(Math.max(cpu, newCpu), Math.max(mem, newMem));
+        return false;
+    }
+
+    /**
+     * Computes the aggregate of a data center and its racks from scratch.
+     * 
+     * @param dataCenter
+     *            to compute the aggregate of.
+     * @return the aggregate.
+     */
+    private UsageAggregate fill(final PhysicalDataCenter dataCenter) {
+        final UsageAggregate aggregate = new UsageAggregate(this.lock);
+        final Iterator<PhysicalRack> it = dataCenter.rackIterator();
+        while (it.hasNext()) {
+            aggregate.add(this.fill(it.next()), 1);
+        }
+        this.dataCenters.put(dataCenter.getUniqueIdentifier(), aggregate);
+        this.maxOfRacks(aggregate, dataCenter);
+        return aggregate;
+    }
+
+    /**
+     * Computes the aggregate of a rack from scratch.
+     * 
+     * @param rack
+     *            to compute the aggregate of.
+     * @return the aggregate.
+     */
+    private UsageAggregate fill(final PhysicalRack rack) {
+        final UsageAggregate aggregate = new UsageAggregate(this.lock);
+        final Iterator<PhysicalHost> hosts = rack.cpuIterator();
+        while (hosts.hasNext()) {
+            final PhysicalHost host = hosts.next();
+            aggregate.add(1, host.getCpuUsage(), host.getMemUsage(), 0, 0);
+            TopologyAggregates.addDisks(aggregate, host.diskIterator());
+        }
+        TopologyAggregates.addDisks(aggregate, rack.diskIterator());
+        TopologyAggregates.maxOfHosts(aggregate, rack);
+        this.racks.put(rack.getUniqueIdentifier(), aggregate);
+        return aggregate;
+    }
+
+    /**
+     * @param aggregate
+     *            to add the disks to.
+     * @param disks
+     *            to add.
+     */
+    private static void addDisks(final UsageAggregate aggregate,
+            final Iterator<PhysicalStore> disks) {
+        while (disks.hasNext()) {
+            final PhysicalStore disk = disks.next();
+            aggregate.add(0, 0, 0, disk.getCapacity(), disk.getUsed());
+        }
+    }
+
+    /**
+     * @param aggregate
+     *            of the rack.
+     * @param rack
+     *            to find the highest usage of its hosts in.
+     */
+    private static void maxOfHosts(final UsageAggregate aggregate, final PhysicalRack rack) {
+        double cpu = 0;
+        double mem = 0;
+        final Iterator<PhysicalHost> it = rack.cpuIterator();
+        while (it.hasNext()) {
+            final PhysicalHost host = it.next();
+            cpu = Math.max(cpu, host.getCpuUsage());
+            mem = Math.max(mem, host.getMemUsage());
+        }
+        aggregate.setMax(cpu, mem);
+    }
+
+    /**
+     * @param aggregate
+     *            of the data center.
+     * @param dataCenter
+     *            to find the highest usage of its racks in.
+     */
+    private void maxOfRacks(final UsageAggregate aggregate, final PhysicalDataCenter dataCenter) {
+        double cpu = 0;
+        double mem = 0;
+        final Iterator<PhysicalRack> it = dataCenter.rackIterator();
+        while (it.hasNext()) {
+            final UsageAggregate rack = this.racks.get(it.next().getUniqueIdentifier());
+            if (rack != null) {
+                cpu = Math.max(cpu, rack.getMaxCpuUsage());
+                mem = Math.max(mem, rack.getMaxMemUsage());
+            }
+        }
+        aggregate.setMax(cpu, mem);
+    }
+
+    /**
+     * Finds the highest usage of the data centers for the root.
+     */
+    private void maxOfDataCenters() {
+        double cpu = 0;
+        double mem = 0;
+        final Iterator<PhysicalDataCenter> it = this.root.dataCenterIterator();
+        while (it.hasNext()) {
+            final UsageAggregate dataCenter = this.dataCenters.get(it.next()
+                    .getUniqueIdentifier());
+            if (dataCenter != null) {
+                cpu = Math.max(cpu, dataCenter.getMaxCpuUsage());
+                mem = Math.max(mem, dataCenter.getMaxMemUsage());
+            }
+        }
+        this.rootAggregate.setMax(cpu, mem);
+    }
+}
@@ -0,0 +1,575 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Collections;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * The difference between two states of a {@link PhysicalTopology}, which can
+ * be sent instead of the complete topology and applied to the older state to
+ * bring it up to date.
+ * 
+ * Resources are matched by their identifier, level by level. The diff lists
+ * every resource that was added, moved to another parent or whose values
+ * changed, together with its new state, followed by the resources that were
+ * removed. Only the topmost removed resources are listed, as removing a
+ * resource also removes everything below it. The root itself is not
+ * compared.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class TopologyDiff {
+
+    /**
+     * New state of a rack: the data center it is placed in.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class RackState {
+        private final String id;
+        private final String dataCenter;
+
+        /**
+         * @param id
+         *            of the rack.
+         * @param dataCenter
+         *            identifier of the data center containing the rack.
+         */
+        RackState(final String id, final String dataCenter) {
+            this.id = id;
+            this.dataCenter = dataCenter;
+        }
+
+        /**
+         * @return the identifier of the rack.
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the identifier of the data center containing the rack.
+         */
+        public String getDataCenter() {
+            return this.dataCenter;
+        }
+    }
+
+    /**
+     * New state of a host: the rack it is placed in and its usage.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class HostState {
+        private final String id;
+        private final String rack;
+        private final double cpuUsage;
+        private final double memUsage;
+        private final long lastUpdate;
+
+        /**
+         * @param id
+         *            of the host.
+         * @param rack
+         *            identifier of the rack containing the host.
+         * @param cpuUsage
+         *            of the host.
+         * @param memUsage
+         *            of the host.
+         * @param lastUpdate
+         *            time the usage was measured.
+         */
+        HostState(final String id, final String rack, final double cpuUsage,
+                final double memUsage, final long lastUpdate) {
+            this.id = id;
+            this.rack = rack;
+            this.cpuUsage = cpuUsage;
+            this.memUsage = memUsage;
+            this.lastUpdate = lastUpdate;
+        }
+
+        /**
+         * @return the identifier of the host.
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the identifier of the rack containing the host.
+         */
+        public String getRack() {
+            return this.rack;
+        }
+
+        /**
+         * @return the cpu usage of the host.
+         */
+        public double getCpuUsage() {
+            return this.cpuUsage;
+        }
+
+        /**
+         * @return the memory usage of the host.
+         */
+        public double getMemUsage() {
+            return this.memUsage;
+        }
+
+        /**
+         * @return the time the usage of the host was measured.
+         */
+        public long getLastUpdate() {
+            return this.lastUpdate;
+        }
+    }
+
+    /**
+     * New state of a store: the host or rack it is placed in, its capacity
+     * and its usage.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class StoreState {
+        private final String id;
+        private final String parent;
+        private final boolean onHost;
+        private final long capacity;
+        private final long used;
+
+        /**
+         * @param id
+         *            of the store.
+         * @param parent
+         *            identifier of the host or rack containing the store.
+         * @param onHost
+         *            true iff the parent is a host.
+         * @param capacity
+         *            of the store.
+         * @param used
+         *            capacity of the store.
+         */
+        StoreState(final String id, final String parent, final boolean onHost,
+                final long capacity, final long used) {
+            this.id = id;
+            this.parent = parent;
+            this.onHost = onHost;
+            this.capacity = capacity;
+            this.used = used;
+        }
+
+        /**
+         * @return the identifier of the store.
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the identifier of the host or rack containing the store.
+         */
+        public String getParent() {
+            return this.parent;
+        }
+
+        /**
+         * @return true iff the store is placed in a host, false if it is
+         *         placed in a rack.
+         */
+        public boolean isOnHost() {
+            return this.onHost;
+        }
+
+        /**
+         * @return the capacity of the store.
+         */
+        public long getCapacity() {
+            return this.capacity;
+        }
+
+        /**
+         * @return the used capacity of the store.
+         */
+        public long getUsed() {
+            return this.used;
+        }
+    }
+
+    private final List<String> dataCenters;
+    private final List<RackState> racks;
+    private final List<HostState> hosts;
+    private final List<StoreState> stores;
+    private final List<String> removedDataCenters;
+    private final List<String> removedRacks;
+    private final List<String> removedHosts;
+    private final List<String> removedStores;
+
+    /**
+     * Use the {@link TopologyDiffBuilder} or
+     * {@link #between(PhysicalTopology, PhysicalTopology)}.
+     * 
+     * @param dataCenters
+     *            identifiers of the added data centers.
+     * @param racks
+     *            added or moved racks.
+     * @param hosts
+     *            added, moved or changed hosts.
+     * @param stores
+     *            added, moved or changed stores.
+     * @param removedDataCenters
+     *            identifiers of the removed data centers.
+     * @param removedRacks
+     *            identifiers of the removed racks.
+     * @param removedHosts
+     *            identifiers of the removed hosts.
+     * @param removedStores
+     *            identifiers of the removed stores.
+     */
+    TopologyDiff(final List<String> dataCenters, final List<RackState> racks,
+            final List<HostState> hosts, final List<StoreState> stores,
+            final List<String> removedDataCenters, final List<String> removedRacks,
+            final List<String> removedHosts, final List<String> removedStores) {
+        this.dataCenters = Collections.unmodifiableList(dataCenters);
+        this.racks = Collections.unmodifiableList(racks);
+        this.hosts = Collections.unmodifiableList(hosts);
+        this.stores = Collections.unmodifiableList(stores);
+        this.removedDataCenters = Collections.unmodifiableList(removedDataCenters);
+        this.removedRacks = Collections.unmodifiableList(removedRacks);
+        this.removedHosts = Collections.unmodifiableList(removedHosts);
+        this.removedStores = Collections.unmodifiableList(removedStores);
+    }
+
+    /**
+     * Computes the changes that turn one topology into another. Neither
+     * topology is modified.
+     * 
+     * @param from
+     *            the old state of the topology.
+     * @param to
+     *            the new state of the topology.
+     * @return the diff from the old to the new state.
+     */
+    public static TopologyDiff between(final PhysicalTopology from, final PhysicalTopology to) {
+        ErrorChecker.throwIfNullArgument(from, "from");
+        ErrorChecker.throwIfNullArgument(to, "to");
+        final TopologyDiffBuilder builder = new TopologyDiffBuilder();
+        for (final PhysicalDataCenter dataCenter : to.getDataCenterView()) {
+            if (!from.hasDataCenterByID(dataCenter.getUniqueIdentifier())) {
+                builder.withDataCenter(dataCenter.getUniqueIdentifier());
+            }
+        }
+        for (final PhysicalRack rack : to.iterateRacks()) {
+            final String id = rack.getUniqueIdentifier();
+            if (!from.hasRackByID(id)
+                    || !TopologyDiff.sameParent(from.getRackByID(id).getParent(),
+                                                rack.getParent())) {
+                builder.withRack(id, rack.getParent().getUniqueIdentifier());
+            }
+        }
+        for (final PhysicalHost host : to.iterateCPUs()) {
+            final String id = host.getUniqueIdentifier();
+            if (!from.hasCPUByID(id) || TopologyDiff.changed(from.getCPUByID(id), host)) {
+                builder.withHost(id, host.getParent().getUniqueIdentifier(), host.getCpuUsage(),
+                                 host.getMemUsage(), host.getLastUpdate());
+            }
+        }
+        for (final PhysicalStore store : to.iterateStores()) {
+            final String id = store.getUniqueIdentifier();
+            if (!from.hasStoreByID(id) || TopologyDiff.changed(from.getStoreByID(id), store)) {
+                builder.withStore(id, store.getParent().getUniqueIdentifier(),
+                                  store.getParent() instanceof PhysicalHost,
+                                  store.getCapacity(), store.getUsed());
+            }
+        }
+        TopologyDiff.addRemoved(from, to, builder);
+        return builder.build();
+    }
+
+    /**
+     * Adds the topmost resources of one topology that are not in the other
+     * to the builder.
+     * 
+     * @param from
+     *            the old state of the topology.
+     * @param to
+     *            the new state of the topology.
+     * @param builder
+     *            to add the removed resources to.
+     */
+    private static void addRemoved(final PhysicalTopology from, final PhysicalTopology to,
+            final TopologyDiffBuilder builder) {
+        for (final PhysicalDataCenter dataCenter : from.getDataCenterView()) {
+            if (!to.hasDataCenterByID(dataCenter.getUniqueIdentifier())) {
+                builder.withRemovedDataCenter(dataCenter.getUniqueIdentifier());
+            }
+        }
+        for (final PhysicalRack rack : from.iterateRacks()) {
+            if (!to.hasRackByID(rack.getUniqueIdentifier())
+                    && to.hasDataCenterByID(rack.getParent().getUniqueIdentifier())) {
+                builder.withRemovedRack(rack.getUniqueIdentifier());
+            }
+        }
+        for (final PhysicalHost host : from.iterateCPUs()) {
+            if (!to.hasCPUByID(host.getUniqueIdentifier())
+                    && to.hasRackByID(host.getParent().getUniqueIdentifier())) {
+                builder.withRemovedHost(host.getUniqueIdentifier());
+            }
+        }
+        for (final PhysicalStore store : from.iterateStores()) {
+            if (!to.hasStoreByID(store.getUniqueIdentifier())
+                    && TopologyDiff.contains(to, store.getParent())) {
+                builder.withRemovedStore(store.getUniqueIdentifier());
+            }
+        }
+    }
+
+    /**
+     * Applies the diff to a topology in the old state, bringing it to the new
+     * state. Existing resources are updated in place.
+     * 
+     * @param topology
+     *            to update.
+     * @throws java.util.NoSuchElementException
+     *             if the topology does not contain a resource the diff
+     *             refers to.
+     */
+    public void apply(final PhysicalTopology topology) {
+        ErrorChecker.throwIfNullArgument(topology, "topology");
+        for (final String id : this.dataCenters) {
+            if (!topology.hasDataCenterByID(id)) {
+                topology.addDataCenter(new PhysicalDataCenterBuilder().withUuid(id).build());
+            }
+        }
+        for (final RackState state : this.racks) {
+            TopologyDiff.apply(topology, state);
+        }
+        for (final HostState state : this.hosts) {
+            TopologyDiff.apply(topology, state);
+        }
+        for (final StoreState state : this.stores) {
+            TopologyDiff.apply(topology, state);
+        }
+        for (final String id : this.removedStores) {
+            TopologyDiff.detach(topology, topology.getStoreByID(id));
+        }
+        for (final String id : this.removedHosts) {
+            final PhysicalHost host = topology.getCPUByID(id);
+            topology.removeCPUFromRack(host, host.getParent());
+        }
+        for (final String id : this.removedRacks) {
+            final PhysicalRack rack = topology.getRackByID(id);
+            topology.removeRackFromDataCenter(rack, rack.getParent());
+        }
+        for (final String id : this.removedDataCenters) {
+            topology.removeDataCenter(topology.getDataCenterByID(id));
+        }
+    }
+
+    /**
+     * @param topology
+     *            to add or move the rack in.
+     * @param state
+     *            new state of the rack.
+     */
+    private static void apply(final PhysicalTopology topology, final RackState state) {
+        final PhysicalDataCenter dataCenter = topology.getDataCenterByID(state.getDataCenter());
+        PhysicalRack rack;
+        if (topology.hasRackByID(state.getId())) {
+            rack = topology.getRackByID(state.getId());
+            topology.removeRackFromDataCenter(rack, rack.getParent());
+        } else {
+            rack = new PhysicalRackBuilder().withUuid(state.getId()).build();
+        }
+        topology.addRackToDataCenter(rack, dataCenter);
+    }
+
+    /**
+     * @param topology
+     *            to add, move or update the host in.
+     * @param state
+     *            new state of the host.
+     */
+    private static void apply(final PhysicalTopology topology, final HostState state) {
+        final PhysicalRack rack = topology.getRackByID(state.getRack());
+        if (topology.hasCPUByID(state.getId())) {
+            final PhysicalHost host = topology.getCPUByID(state.getId());
+            if (host.getParent() != rack) {
+                topology.removeCPUFromRack(host, host.getParent());
+                topology.addCPUToRack(host, rack);
+            }
+            topology.updateHostUsage(host, state.getCpuUsage(), state.getMemUsage(),
+                                     state.getLastUpdate(), true);
+        } else {
+            final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+            builder.withCpuUsage(state.getCpuUsage()).withMemUsage(state.getMemUsage())
+                    .withLastUpdate(state.getLastUpdate());
+            topology.addCPUToRack(builder.withUuid(state.getId()).build(), rack);
+        }
+    }
+
+    /**
+     * @param topology
+     *            to add, move or update the store in.
+     * @param state
+     *            new state of the store.
+     */
+    private static void apply(final PhysicalTopology topology, final StoreState state) {
+        PhysicalStore store;
+        if (topology.hasStoreByID(state.getId())) {
+            store = topology.getStoreByID(state.getId());
+            TopologyDiff.detach(topology, store);
+            store.setCapacity(state.getCapacity());
+            store.setUsed(state.getUsed());
+        } else {
+            final PhysicalStoreBuilder builder = new PhysicalStoreBuilder();
+            builder.withCapacity(state.getCapacity()).withUsed(state.getUsed());
+            store = builder.withUuid(state.getId()).build();
+        }
+        if (state.isOnHost()) {
+            topology.addDiskToHost(store, topology.getCPUByID(state.getParent()));
+        } else {
+            topology.addDiskToRack(store, topology.getRackByID(state.getParent()));
+        }
+    }
+
+    /**
+     * Removes a store from its parent.
+     * 
+     * @param topology
+     *            containing the store.
+     * @param store
+     *            to remove.
+     */
+    private static void detach(final PhysicalTopology topology, final PhysicalStore store) {
+        if (store.getParent() instanceof PhysicalHost) {
+            topology.removeDiskFromHost(store, (PhysicalHost) store.getParent());
+        } else {
+            topology.removeDiskFromRack(store, (PhysicalRack) store.getParent());
+        }
+    }
+
+    /**
+     * @param one
+     *            a resource.
+     * @param two
+     *            another resource.
+     * @return true iff both have the same identifier.
+     */
+    private static boolean sameParent(final PhysicalResource one, final PhysicalResource two) {
+        return one.getUniqueIdentifier().equals(two.getUniqueIdentifier());
+    }
+
+    /**
+     * @param from
+     *            old state of a host.
+     * @param to
+     *            new state of the host.
+     * @return true iff the host was moved or its usage changed.
+     */
+    private static boolean changed(final PhysicalHost from, final PhysicalHost to) {
+        return !TopologyDiff.sameParent(from.getParent(), to.getParent())
+                || Double.compare(from.getCpuUsage(), to.getCpuUsage()) != 0
+                || Double.compare(from.getMemUsage(), to.getMemUsage()) != 0
+                || from.getLastUpdate() != to.getLastUpdate();
+    }
+
+    /**
+     * @param from
+     *            old state of a store.
+     * @param to
+     *            new state of the store.
+     * @return true iff the store was moved or its values changed.
+     */
+    private static boolean changed(final PhysicalStore from, final PhysicalStore to) {
+        return !TopologyDiff.sameParent(from.getParent(), to.getParent())
+                || from.getParent().getClass() != to.getParent().getClass()
+                || from.getCapacity() != to.getCapacity() || from.getUsed() != to.getUsed();
+    }
+
+    /**
+     * @param topology
+     *            to look in.
+     * @param parent
+     *            of a store.
+     * @return true iff the topology contains a resource of the same kind and
+     *         identifier as the parent.
+     */
+    private static boolean contains(final PhysicalTopology topology,
+            final PhysicalResource parent) {
+        if (parent instanceof PhysicalHost) {
+            return topology.hasCPUByID(parent.getUniqueIdentifier());
+        }
+        return topology.hasRackByID(parent.getUniqueIdentifier());
+    }
+
+    /**
+     * @return true iff applying the diff does not change anything.
+     */
+    public boolean isEmpty() {
+        return this.dataCenters.isEmpty() && this.racks.isEmpty() && this.hosts.isEmpty()
+                && this.stores.isEmpty() && this.removedDataCenters.isEmpty()
+                && this.removedRacks.isEmpty() && this.removedHosts.isEmpty()
+                && this.removedStores.isEmpty();
+    }
+
+    /**
+     * @return the identifiers of the added data centers.
+     */
+    public List<String> getDataCenters() {
+        return this.dataCenters;
+    }
+
+    /**
+     * @return the added and moved racks.
+     */
+    public List<RackState> getRacks() {
+        return this.racks;
+    }
+
+    /**
+     * @return the added, moved and changed hosts.
+     */
+    public List<HostState> getHosts() {
+        return this.hosts;
+    }
+
+    /**
+     * @return the added, moved and changed stores.
+     */
+    public List<StoreState> getStores() {
+        return this.stores;
+    }
+
+    /**
+     * @return the identifiers of the removed data centers.
+     */
+    public List<String> getRemovedDataCenters() {
+        return this.removedDataCenters;
+    }
+
+    /**
+     * @return the identifiers of the removed racks.
+     */
+    public List<String> getRemovedRacks() {
+        return this.removedRacks;
+    }
+
+    /**
+     * @return the identifiers of the removed hosts.
+     */
+    public List<String> getRemovedHosts() {
+        return this.removedHosts;
+    }
+
+    /**
+     * @return the identifiers of the removed stores.
+     */
+    public List<String> getRemovedStores() {
+        return this.removedStores;
+    }
+}
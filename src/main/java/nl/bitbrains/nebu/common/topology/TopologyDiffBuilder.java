@@ -0,0 +1,172 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.HostState;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.RackState;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.StoreState;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Builder class for the {@link TopologyDiff}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyDiffBuilder implements IBuilder<TopologyDiff> {
+
+    private static final String ID_NAME = "id";
+    private static final String PARENT_NAME = "parent";
+
+    private List<String> dataCenters;
+    private List<RackState> racks;
+    private List<HostState> hosts;
+    private List<StoreState> stores;
+    private List<String> removedDataCenters;
+    private List<String> removedRacks;
+    private List<String> removedHosts;
+    private List<String> removedStores;
+
+    /**
+     * Simple constructor.
+     */
+    public TopologyDiffBuilder() {
+        this.reset();
+    }
+
+    @Override
+    public final void reset() {
+        this.dataCenters = new ArrayList<String>();
+        this.racks = new ArrayList<RackState>();
+        this.hosts = new ArrayList<HostState>();
+        this.stores = new ArrayList<StoreState>();
+        this.removedDataCenters = new ArrayList<String>();
+        this.removedRacks = new ArrayList<String>();
+        this.removedHosts = new ArrayList<String>();
+        this.removedStores = new ArrayList<String>();
+    }
+
+    /**
+     * @param id
+     *            of an added data center.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withDataCenter(final String id) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        this.dataCenters.add(id);
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of an added or moved rack.
+     * @param dataCenter
+     *            identifier of the data center containing the rack.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withRack(final String id, final String dataCenter) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        ErrorChecker.throwIfNullArgument(dataCenter, TopologyDiffBuilder.PARENT_NAME);
+        this.racks.add(new RackState(id, dataCenter));
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of an added, moved or changed host.
+     * @param rack
+     *            identifier of the rack containing the host.
+     * @param cpuUsage
+     *            of the host.
+     * @param memUsage
+     *            of the host.
+     * @param lastUpdate
+     *            time the usage of the host was measured.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withHost(final String id, final String rack,
+            final double cpuUsage, final double memUsage, final long lastUpdate) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        ErrorChecker.throwIfNullArgument(rack, TopologyDiffBuilder.PARENT_NAME);
+        this.hosts.add(new HostState(id, rack, cpuUsage, memUsage, lastUpdate));
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of an added, moved or changed store.
+     * @param parent
+     *            identifier of the host or rack containing the store.
+     * @param onHost
+     *            true iff the parent is a host.
+     * @param capacity
+     *            of the store.
+     * @param used
+     *            capacity of the store.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withStore(final String id, final String parent,
+            final boolean onHost, final long capacity, final long used) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        ErrorChecker.throwIfNullArgument(parent, TopologyDiffBuilder.PARENT_NAME);
+        this.stores.add(new StoreState(id, parent, onHost, capacity, used));
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of a removed data center.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withRemovedDataCenter(final String id) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        this.removedDataCenters.add(id);
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of a removed rack.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withRemovedRack(final String id) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        this.removedRacks.add(id);
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of a removed host.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withRemovedHost(final String id) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        this.removedHosts.add(id);
+        return this;
+    }
+
+    /**
+     * @param id
+     *            of a removed store.
+     * @return this for fluency.
+     */
+    public TopologyDiffBuilder withRemovedStore(final String id) {
+        ErrorChecker.throwIfNullArgument(id, TopologyDiffBuilder.ID_NAME);
+        this.removedStores.add(id);
+        return this;
+    }
+
+    /**
+     * @return the built {@link TopologyDiff}.
+     */
+    public TopologyDiff build() {
+        final TopologyDiff diff = new TopologyDiff(this.dataCenters, this.racks, this.hosts,
+                this.stores, this.removedDataCenters, this.removedRacks, this.removedHosts,
+                this.removedStores);
+        this.reset();
+        return diff;
+    }
+}
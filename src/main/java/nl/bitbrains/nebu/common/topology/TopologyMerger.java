@@ -0,0 +1,369 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Merges any number of partial topologies, such as those reported by one
+ * collector per data center, into a single new {@link PhysicalTopology}.
+ * 
+ * The result is the same as merging the topologies one by one with
+ * {@link PhysicalTopology#mergeTree(PhysicalTopology, PhysicalTopology, MergePolicy)},
+ * but without copying the intermediate results. The resources of all
+ * topologies are first grouped by their identifier, placing every resource
+ * where the first topology containing it placed it. This only visits each
+ * resource once. The data centers and racks are then built in parallel on a
+ * {@link ForkJoinPool}, copying each resource exactly once.
+ * 
+ * The topologies should not be changed while they are merged.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyMerger {
+
+    private final MergePolicy policy;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a merger that runs on a shared pool with one thread per
+     * processor.
+     * 
+     * @param policy
+     *            deciding between the values of resources in several
+     *            topologies.
+     */
+    public TopologyMerger(final MergePolicy policy) {
+        this(policy, DefaultPoolHolder.POOL);
+    }
+
+    /**
+     * @param policy
+     *            deciding between the values of resources in several
+     *            topologies.
+     * @param pool
+     *            to build the merged topology on.
+     */
+    public TopologyMerger(final MergePolicy policy, final ForkJoinPool pool) {
+        ErrorChecker.throwIfNullArgument(policy, "policy");
+        ErrorChecker.throwIfNullArgument(pool, "pool");
+        this.policy = policy;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the policy deciding between the values of resources in several
+     *         topologies.
+     */
+    public MergePolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Merges the topologies, leaving them unmodified. Like
+     * {@link PhysicalTopology#mergeTree(PhysicalTopology, PhysicalTopology, MergePolicy)}
+     * does, topologies with a different root than the first are ignored.
+     * 
+     * @param topologies
+     *            to merge, in the order in which the policy sees them.
+     * @return a new topology containing the resources of all topologies.
+     */
+    public PhysicalTopology merge(final List<PhysicalTopology> topologies) {
+        ErrorChecker.throwIfNullArgument(topologies, "topologies");
+        if (topologies.isEmpty()) {
+            throw new IllegalArgumentException("There should be at least one topology to merge.");
+        }
+        final Grouping grouping = new Grouping();
+        final PhysicalRoot root = topologies.get(0).getRoot();
+        for (final PhysicalTopology topology : topologies) {
+            ErrorChecker.throwIfNullArgument(topology, "topology");
+            if (root.equals(topology.getRoot())) {
+                grouping.add(topology);
+            }
+        }
+        final List<DataCenterTask> tasks = new ArrayList<DataCenterTask>();
+        for (final DataCenterGroup group : grouping.dataCenters.values()) {
+            tasks.add(new DataCenterTask(group));
+        }
+        final List<PhysicalDataCenter> dataCenters = this.pool.invoke(new MergeTask(tasks));
+
+        final PhysicalTopology res = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid(root.getUniqueIdentifier()).build());
+        for (final PhysicalDataCenter dataCenter : dataCenters) {
+            res.addDataCenter(dataCenter);
+        }
+        return res;
+    }
+
+    /**
+     * @param group
+     *            occurrences of a host.
+     * @return a copy of the host chosen by the policy, with the disks of all
+     *         occurrences.
+     */
+    private PhysicalHost buildHost(final HostGroup group) {
+        PhysicalHost chosen = group.resources.get(0);
+        for (int i = 1; i < group.resources.size(); i++) {
+            if (this.policy.preferRight(chosen, group.resources.get(i))) {
+                chosen = group.resources.get(i);
+            }
+        }
+        final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+        builder.withCpuUsage(chosen.getCpuUsage()).withMemUsage(chosen.getMemUsage())
+                .withLastUpdate(chosen.getLastUpdate());
+        final PhysicalHost host = builder.withUuid(chosen.getUniqueIdentifier()).build();
+        for (final Occurrences<PhysicalStore> disk : group.disks) {
+            final PhysicalStore store = this.buildStore(disk);
+            host.addDisk(store);
+            store.setParent(host);
+        }
+        return host;
+    }
+
+    /**
+     * @param group
+     *            occurrences of a store.
+     * @return a copy of the store chosen by the policy.
+     */
+    private PhysicalStore buildStore(final Occurrences<PhysicalStore> group) {
+        PhysicalStore chosen = group.resources.get(0);
+        for (int i = 1; i < group.resources.size(); i++) {
+            if (this.policy.preferRight(chosen, group.resources.get(i))) {
+                chosen = group.resources.get(i);
+            }
+        }
+        return new PhysicalStore(chosen);
+    }
+
+    /**
+     * All occurrences of a resource with the same identifier, in the order
+     * of the topologies.
+     * 
+     * @param <T>
+     *            type of the resource.
+     */
+    private static class Occurrences<T extends PhysicalResource> {
+        protected final List<T> resources = new ArrayList<T>(2);
+    }
+
+    /**
+     * Occurrences of a data center and the racks placed in it.
+     */
+    private static final class DataCenterGroup extends Occurrences<PhysicalDataCenter> {
+        private final List<RackGroup> racks = new ArrayList<RackGroup>();
+    }
+
+    /**
+     * Occurrences of a rack and the hosts and disks placed in it.
+     */
+    private static final class RackGroup extends Occurrences<PhysicalRack> {
+        private final List<HostGroup> hosts = new ArrayList<HostGroup>();
+        private final List<Occurrences<PhysicalStore>> disks =
+                new ArrayList<Occurrences<PhysicalStore>>();
+    }
+
+    /**
+     * Occurrences of a host and the disks placed in it.
+     */
+    private static final class HostGroup extends Occurrences<PhysicalHost> {
+        private final List<Occurrences<PhysicalStore>> disks =
+                new ArrayList<Occurrences<PhysicalStore>>();
+    }
+
+    /**
+     * Groups the resources of topologies by their identifier. A resource is
+     * placed under the parent it has in the first topology that contains it.
+     */
+    private static final class Grouping {
+        private final Map<String, DataCenterGroup> dataCenters =
+                new LinkedHashMap<String, DataCenterGroup>();
+        private final Map<String, RackGroup> racks = new HashMap<String, RackGroup>();
+        private final Map<String, HostGroup> hosts = new HashMap<String, HostGroup>();
+        private final Map<String, Occurrences<PhysicalStore>> stores =
+                new HashMap<String, Occurrences<PhysicalStore>>();
+
+        /**
+         * @param topology
+         *            to add the resources of.
+         */
+        private void add(final PhysicalTopology topology) {
+            for (final PhysicalDataCenter dataCenter : topology.getDataCenterView()) {
+                DataCenterGroup group = this.dataCenters.get(dataCenter.getUniqueIdentifier());
+                if (group == null) {
+                    group = new DataCenterGroup();
+                    this.dataCenters.put(dataCenter.getUniqueIdentifier(), group);
+                }
+                group.resources.add(dataCenter);
+                for (final PhysicalRack rack : dataCenter.getRackView()) {
+                    this.add(rack, group);
+                }
+            }
+        }
+
+        /**
+         * @param rack
+         *            to add.
+         * @param parent
+         *            group of the data center containing the rack.
+         */
+        private void add(final PhysicalRack rack, final DataCenterGroup parent) {
+            RackGroup group = this.racks.get(rack.getUniqueIdentifier());
+            if (group == null) {
+                group = new RackGroup();
+                this.racks.put(rack.getUniqueIdentifier(), group);
+                parent.racks.add(group);
+            }
+            group.resources.add(rack);
+            for (final PhysicalHost host : rack.getCPUView()) {
+                this.add(host, group);
+            }
+            for (final PhysicalStore disk : rack.getDiskView()) {
+                this.add(disk, group.disks);
+            }
+        }
+
+        /**
+         * @param host
+         *            to add.
+         * @param parent
+         *            group of the rack containing the host.
+         */
+        private void add(final PhysicalHost host, final RackGroup parent) {
+            HostGroup group = this.hosts.get(host.getUniqueIdentifier());
+            if (group == null) {
+                group = new HostGroup();
+                this.hosts.put(host.getUniqueIdentifier(), group);
+                parent.hosts.add(group);
+            }
+            group.resources.add(host);
+            for (final PhysicalStore disk : host.getDiskView()) {
+                this.add(disk, group.disks);
+            }
+        }
+
+        /**
+         * @param disk
+         *            to add.
+         * @param parent
+         *            disks of the group of the host or rack containing the
+         *            disk.
+         */
+        private void add(final PhysicalStore disk,
+                final List<Occurrences<PhysicalStore>> parent) {
+            Occurrences<PhysicalStore> group = this.stores.get(disk.getUniqueIdentifier());
+            if (group == null) {
+                group = new Occurrences<PhysicalStore>();
+                this.stores.put(disk.getUniqueIdentifier(), group);
+                parent.add(group);
+            }
+            group.resources.add(disk);
+        }
+    }
+
+    /**
+     * Builds all data centers in parallel.
+     */
+    private static final class MergeTask extends RecursiveTask<List<PhysicalDataCenter>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<DataCenterTask> tasks;
+
+        /**
+         * @param tasks
+         *            building the data centers.
+         */
+        private MergeTask(final List<DataCenterTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected List<PhysicalDataCenter> compute() {
+            ForkJoinTask.invokeAll(this.tasks);
+            final List<PhysicalDataCenter> res = new ArrayList<PhysicalDataCenter>(
+                    this.tasks.size());
+            for (final DataCenterTask task : this.tasks) {
+                res.add(task.join());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Builds a data center, building its racks in parallel.
+     */
+    private final class DataCenterTask extends RecursiveTask<PhysicalDataCenter> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DataCenterGroup group;
+
+        /**
+         * @param group
+         *            occurrences of the data center.
+         */
+        private DataCenterTask(final DataCenterGroup group) {
+            this.group = group;
+        }
+
+        @Override
+        protected PhysicalDataCenter compute() {
+            final List<RackTask> tasks = new ArrayList<RackTask>(this.group.racks.size());
+            for (final RackGroup rack : this.group.racks) {
+                tasks.add(new RackTask(rack));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            final PhysicalDataCenter dataCenter = new PhysicalDataCenterBuilder().withUuid(
+                    this.group.resources.get(0).getUniqueIdentifier()).build();
+            for (final RackTask task : tasks) {
+                final PhysicalRack rack = task.join();
+                dataCenter.addRack(rack);
+                rack.setParent(dataCenter);
+            }
+            return dataCenter;
+        }
+    }
+
+    /**
+     * Builds a rack with its hosts and disks.
+     */
+    private final class RackTask extends RecursiveTask<PhysicalRack> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RackGroup group;
+
+        /**
+         * @param group
+         *            occurrences of the rack.
+         */
+        private RackTask(final RackGroup group) {
+            this.group = group;
+        }
+
+        @Override
+        protected PhysicalRack compute() {
+            final PhysicalRack rack = new PhysicalRackBuilder().withUuid(
+                    this.group.resources.get(0).getUniqueIdentifier()).build();
+            for (final HostGroup hostGroup : this.group.hosts) {
+                final PhysicalHost host = TopologyMerger.this.buildHost(hostGroup);
+                rack.addCPU(host);
+                host.setParent(rack);
+            }
+            for (final Occurrences<PhysicalStore> disk : this.group.disks) {
+                final PhysicalStore store = TopologyMerger.this.buildStore(disk);
+                rack.addDisk(store);
+                store.setParent(rack);
+            }
+            return rack;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Iterator;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Creates the conditions on hosts and stores that placement decisions
+ * commonly use.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public abstract class TopologyPredicates {
+
+    /**
+     * @param max
+     *            highest cpu usage to accept.
+     * @return a predicate matching hosts with at most that cpu usage.
+     */
+    public static HostPredicate cpuUsageAtMost(final double max) {
+        return new HostPredicate() {
+            @Override
+            public boolean matches(final PhysicalHost host) {
+                return host.getCpuUsage() <= max;
+            }
+        };
+    }
+
+    /**
+     * @param max
+     *            highest memory usage to accept.
+     * @return a predicate matching hosts with at most that memory usage.
+     */
+    public static HostPredicate memUsageAtMost(final double max) {
+        return new HostPredicate() {
+            @Override
+            public boolean matches(final PhysicalHost host) {
+                return host.getMemUsage() <= max;
+            }
+        };
+    }
+
+    /**
+     * @param time
+     *            in milliseconds since the epoch.
+     * @return a predicate matching hosts of which the usage was measured at or
+     *         after that time.
+     */
+    public static HostPredicate updatedSince(final long time) {
+        return new HostPredicate() {
+            @Override
+            public boolean matches(final PhysicalHost host) {
+                return host.getLastUpdate() >= time;
+            }
+        };
+    }
+
+    /**
+     * @param predicate
+     *            to test the stores of a host with.
+     * @return a predicate matching hosts with at least one store of their
+     *         own that matches the given predicate.
+     */
+    public static HostPredicate hasStore(final StorePredicate predicate) {
+        ErrorChecker.throwIfNullArgument(predicate, "predicate");
+        return new HostPredicate() {
+            @Override
+            public boolean matches(final PhysicalHost host) {
+                final Iterator<PhysicalStore> it = host.diskIterator();
+                while (it.hasNext()) {
+                    if (predicate.matches(it.next())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param predicate
+     *            to negate.
+     * @return a predicate matching the hosts the given one does not match.
+     */
+    public static HostPredicate not(final HostPredicate predicate) {
+        ErrorChecker.throwIfNullArgument(predicate, "predicate");
+        return new HostPredicate() {
+            @Override
+            public boolean matches(final PhysicalHost host) {
+                return !predicate.matches(host);
+            }
+        };
+    }
+
+    /**
+     * @param min
+     *            lowest capacity to accept.
+     * @return a predicate matching stores with at least that capacity.
+     */
+    public static StorePredicate capacityAtLeast(final long min) {
+        return new StorePredicate() {
+            @Override
+            public boolean matches(final PhysicalStore store) {
+                return store.getCapacity() >= min;
+            }
+        };
+    }
+
+    /**
+     * @param min
+     *            lowest free capacity to accept.
+     * @return a predicate matching stores of which at least that much
+     *         capacity is not used.
+     */
+    public static StorePredicate freeCapacityAtLeast(final long min) {
+        return new StorePredicate() {
+            @Override
+            public boolean matches(final PhysicalStore store) {
+                return store.getCapacity() - store.getUsed() >= min;
+            }
+        };
+    }
+}
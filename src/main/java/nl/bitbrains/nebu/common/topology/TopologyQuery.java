@@ -0,0 +1,401 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Selects hosts of a {@link PhysicalTopology}, such as "the k hosts with the
+ * lowest cpu usage in data center X that have a store with N bytes free":
+ * 
+ * <pre>
+ * topology.query().inDataCenter(&quot;X&quot;)
+ *         .where(TopologyPredicates.hasStore(TopologyPredicates.freeCapacityAtLeast(N)))
+ *         .top(k, HostOrder.LOWEST_CPU_USAGE);
+ * </pre>
+ * 
+ * The hosts are visited one by one without copying them into a list. The k
+ * best hosts are kept in a heap of at most k hosts, so selecting them takes
+ * time linear in the number of hosts, and hosts that cannot be among the k
+ * best are skipped before the predicates are tested. A parallel query splits
+ * the racks among the threads of a {@link ForkJoinPool}, each of which keeps
+ * its own heap, and merges the heaps at the end.
+ * 
+ * The topology should not be changed while a query runs.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyQuery {
+
+    private static final int RACKS_PER_TASK = 16;
+    private static final int TASKS_PER_THREAD = 4;
+    private static final int MAX_INITIAL_HEAP = 64;
+
+    private final PhysicalTopology topology;
+    private final List<HostPredicate> predicates;
+    private List<PhysicalRack> racks;
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a sequential query over all hosts of the topology.
+     * 
+     * @param topology
+     *            to select hosts from.
+     */
+    public TopologyQuery(final PhysicalTopology topology) {
+        ErrorChecker.throwIfNullArgument(topology, "topology");
+        this.topology = topology;
+        this.predicates = new ArrayList<HostPredicate>();
+    }
+
+    /**
+     * Only selects hosts in a data center. Its racks are looked up now, so racks
+     * added to it later are not seen.
+     * 
+     * @param dataCenterID
+     *            identifier of the data center.
+     * @return this query.
+     * @throws NoSuchElementException
+     *             if the topology has no such data center.
+     */
+    public TopologyQuery inDataCenter(final String dataCenterID) {
+        this.racks = this.topology.getDataCenterByID(dataCenterID).getRacks();
+        return this;
+    }
+
+    /**
+     * Only selects hosts in a rack.
+     * 
+     * @param rackID
+     *            identifier of the rack.
+     * @return this query.
+     * @throws NoSuchElementException
+     *             if the topology has no such rack.
+     */
+    public TopologyQuery inRack(final String rackID) {
+        this.racks = Collections.singletonList(this.topology.getRackByID(rackID));
+        return this;
+    }
+
+    /**
+     * Only selects hosts that match a predicate, in addition to those given
+     * before.
+     * 
+     * @param predicate
+     *            the hosts have to match.
+     * @return this query.
+     */
+    public TopologyQuery where(final HostPredicate predicate) {
+        ErrorChecker.throwIfNullArgument(predicate, "predicate");
+        this.predicates.add(predicate);
+        return this;
+    }
+
+    /**
+     * Runs the query on a shared pool with one thread per processor.
+     * 
+     * @return this query.
+     */
+    public TopologyQuery parallel() {
+        return this.parallel(DefaultPoolHolder.POOL);
+    }
+
+    /**
+     * @param pool
+     *            to run the query on.
+     * @return this query.
+     */
+    public TopologyQuery parallel(final ForkJoinPool pool) {
+        ErrorChecker.throwIfNullArgument(pool, "pool");
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Runs the query on the calling thread, which is the default.
+     * 
+     * @return this query.
+     */
+    public TopologyQuery sequential() {
+        this.pool = null;
+        return this;
+    }
+
+    /**
+     * @return all selected hosts, in the order in which the topology
+     *         iterates them.
+     */
+    public List<PhysicalHost> list() {
+        return this.run(new All());
+    }
+
+    /**
+     * @param k
+     *            maximum number of hosts to return.
+     * @param order
+     *            in which the best hosts come first.
+     * @return the k best selected hosts in order, or all of them if fewer
+     *         are selected.
+     */
+    public List<PhysicalHost> top(final int k, final Comparator<? super PhysicalHost> order) {
+        ErrorChecker.throwIfNullArgument(order, "order");
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one host should be selected.");
+        }
+        return this.run(new Best(k, order));
+    }
+
+    /**
+     * @param selection
+     *            to add the selected hosts to.
+     * @return the result of the selection.
+     */
+    private List<PhysicalHost> run(final Selection selection) {
+        final List<PhysicalRack> scope = this.racks == null ? this.topology.getRacks()
+                : this.racks;
+        final Selection res;
+        if (this.pool == null || scope.size() <= TopologyQuery.RACKS_PER_TASK) {
+            this.scan(scope, 0, scope.size(), selection);
+            res = selection;
+        } else {
+            final int threshold = Math.max(TopologyQuery.RACKS_PER_TASK, scope.size()
+                    / (this.pool.getParallelism() * TopologyQuery.TASKS_PER_THREAD));
+            res = this.pool.invoke(new SelectTask(scope, 0, scope.size(), threshold,
+                    selection));
+        }
+        return res.result();
+    }
+
+    /**
+     * Adds the selected hosts of a range of racks to a selection.
+     * 
+     * @param scope
+     *            racks to select hosts from.
+     * @param from
+     *            index of the first rack, inclusive.
+     * @param to
+     *            index of the last rack, exclusive.
+     * @param selection
+     *            to add the hosts to.
+     */
+    private void scan(final List<PhysicalRack> scope, final int from, final int to,
+            final Selection selection) {
+        for (int i = from; i < to; i++) {
+            final Iterator<PhysicalHost> it = scope.get(i).cpuIterator();
+            while (it.hasNext()) {
+                final PhysicalHost host = it.next();
+                if (selection.wants(host) && this.matches(host)) {
+                    selection.add(host);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param host
+     *            to test.
+     * @return true iff the host matches all predicates.
+     */
+    private boolean matches(final PhysicalHost host) {
+        for (int i = 0; i < this.predicates.size(); i++) {
+            if (!this.predicates.get(i).matches(host)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hosts selected so far by (a part of) a query.
+     */
+    private abstract static class Selection {
+
+        /**
+         * @param host
+         *            that may be selected.
+         * @return false if the host cannot be part of the result, even if it
+         *         matches the predicates.
+         */
+        abstract boolean wants(PhysicalHost host);
+
+        /**
+         * @param host
+         *            that matches the predicates and is wanted.
+         */
+        abstract void add(PhysicalHost host);
+
+        /**
+         * @param other
+         *            selection of hosts of racks that come after the ones of
+         *            this selection.
+         */
+        abstract void addAll(Selection other);
+
+        /**
+         * @return an empty selection with the same parameters.
+         */
+        abstract Selection empty();
+
+        /**
+         * @return the selected hosts.
+         */
+        abstract List<PhysicalHost> result();
+    }
+
+    /**
+     * Selects all matching hosts.
+     */
+    private static final class All extends Selection {
+
+        private final List<PhysicalHost> hosts = new ArrayList<PhysicalHost>();
+
+        @Override
+        boolean wants(final PhysicalHost host) {
+            return true;
+        }
+
+        @Override
+        void add(final PhysicalHost host) {
+            this.hosts.add(host);
+        }
+
+        @Override
+        void addAll(final Selection other) {
+            this.hosts.addAll(((All) other).hosts);
+        }
+
+        @Override
+        Selection empty() {
+            return new All();
+        }
+
+        @Override
+        List<PhysicalHost> result() {
+            return this.hosts;
+        }
+    }
+
+    /**
+     * Selects the k best matching hosts, keeping them in a heap with the
+     * worst of them on top.
+     */
+    private static final class Best extends Selection {
+
+        private final int k;
+        private final Comparator<? super PhysicalHost> order;
+        private final PriorityQueue<PhysicalHost> heap;
+
+        /**
+         * @param k
+         *            number of hosts to select.
+         * @param order
+         *            in which the best hosts come first.
+         */
+        private Best(final int k, final Comparator<? super PhysicalHost> order) {
+            this.k = k;
+            this.order = order;
+            this.heap = new PriorityQueue<PhysicalHost>(
+                    Math.min(k, TopologyQuery.MAX_INITIAL_HEAP) + 1,
+                    Collections.reverseOrder(order));
+        }
+
+        @Override
+        boolean wants(final PhysicalHost host) {
+            return this.heap.size() < this.k || this.order.compare(host, this.heap.peek()) < 0;
+        }
+
+        @Override
+        void add(final PhysicalHost host) {
+            if (this.heap.size() == this.k) {
+                this.heap.poll();
+            }
+            this.heap.add(host);
+        }
+
+        @Override
+        void addAll(final Selection other) {
+            for (final PhysicalHost host : ((Best) other).heap) {
+                if (this.wants(host)) {
+                    this.add(host);
+                }
+            }
+        }
+
+        @Override
+        Selection empty() {
+            return new Best(this.k, this.order);
+        }
+
+        @Override
+        List<PhysicalHost> result() {
+            final List<PhysicalHost> res = new ArrayList<PhysicalHost>(this.heap);
+            Collections.sort(res, this.order);
+            return res;
+        }
+    }
+
+    /**
+     * Selects the hosts of a range of racks, splitting it in halves until
+     * the ranges are small enough. Every range gets its own selection, so
+     * the ranges are only made as small as needed to keep all threads busy.
+     */
+    private final class SelectTask extends RecursiveTask<Selection> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<PhysicalRack> scope;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final Selection selection;
+
+        /**
+         * @param scope
+         *            racks to select hosts from.
+         * @param from
+         *            index of the first rack, inclusive.
+         * @param to
+         *            index of the last rack, exclusive.
+         * @param threshold
+         *            highest number of racks to select from without
+         *            splitting.
+         * @param selection
+         *            empty selection to add the hosts to.
+         */
+        private SelectTask(final List<PhysicalRack> scope, final int from, final int to,
+                final int threshold, final Selection selection) {
+            this.scope = scope;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.selection = selection;
+        }
+
+        @Override
+        protected Selection compute() {
+            if (this.to - this.from <= this.threshold) {
+                TopologyQuery.this.scan(this.scope, this.from, this.to, this.selection);
+                return this.selection;
+            }
+            final int middle = (this.from + this.to) >>> 1;
+            final SelectTask left = new SelectTask(this.scope, this.from, middle,
+                    this.threshold, this.selection);
+            final SelectTask right = new SelectTask(this.scope, middle, this.to,
+                    this.threshold, this.selection.empty());
+            left.fork();
+            final Selection res = right.compute();
+            final Selection joined = left.join();
+            joined.addAll(res);
+            return joined;
+        }
+    }
+}
@@ -0,0 +1,884 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import nl.bitbrains.nebu.common.interfaces.Identifiable;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Immutable version of a {@link PhysicalTopology}. Snapshots can be shared
+ * freely between threads: a reader holding a snapshot always sees the same,
+ * consistent topology, while writers derive new versions from it.
+ * 
+ * Every change returns a new snapshot that shares all unchanged resources
+ * with the old one. Only the nodes on the path from the root to the changed
+ * resource are copied, so changing the usage of a single host takes time
+ * proportional to the depth of the tree instead of copying the whole
+ * topology like {@link PhysicalTopology#PhysicalTopology(PhysicalTopology)}
+ * does. To make this possible, the nodes of a snapshot do not refer to their
+ * parents; the snapshot keeps the identifier of the parent of each resource
+ * instead.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class TopologySnapshot {
+
+    private static final String ROOT_NAME = "root";
+
+    /**
+     * Immutable state of a store.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class StoreNode implements Identifiable {
+        private final String id;
+        private final long capacity;
+        private final long used;
+
+        /**
+         * @param id
+         *            of the store.
+         * @param capacity
+         *            of the store.
+         * @param used
+         *            capacity of the store.
+         */
+        private StoreNode(final String id, final long capacity, final long used) {
+            this.id = id;
+            this.capacity = capacity;
+            this.used = used;
+        }
+
+        @Override
+        public String getUniqueIdentifier() {
+            return this.id;
+        }
+
+        /**
+         * @return the capacity of the store.
+         */
+        public long getCapacity() {
+            return this.capacity;
+        }
+
+        /**
+         * @return the used capacity of the store.
+         */
+        public long getUsed() {
+            return this.used;
+        }
+    }
+
+    /**
+     * Immutable state of a host and its disks.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class HostNode implements Identifiable {
+        private final String id;
+        private final double cpuUsage;
+        private final double memUsage;
+        private final long lastUpdate;
+        private final PersistentMap<String, StoreNode> disks;
+
+        /**
+         * @param id
+         *            of the host.
+         * @param cpuUsage
+         *            of the host.
+         * @param memUsage
+         *            of the host.
+         * @param lastUpdate
+         *            time the usage was measured.
+         * @param disks
+         *            of the host.
+         */
+        private HostNode(final String id, final double cpuUsage, final double memUsage,
+                final long lastUpdate, final PersistentMap<String, StoreNode> disks) {
+            this.id = id;
+            this.cpuUsage = cpuUsage;
+            this.memUsage = memUsage;
+            this.lastUpdate = lastUpdate;
+            this.disks = disks;
+        }
+
+        @Override
+        public String getUniqueIdentifier() {
+            return this.id;
+        }
+
+        /**
+         * @return the cpu usage. Number between 0 and 1.
+         */
+        public double getCpuUsage() {
+            return this.cpuUsage;
+        }
+
+        /**
+         * @return the memory usage. Number between 0 and 1.
+         */
+        public double getMemUsage() {
+            return this.memUsage;
+        }
+
+        /**
+         * @return the time the usage was measured, in milliseconds since the
+         *         epoch, or 0 if it is unknown.
+         */
+        public long getLastUpdate() {
+            return this.lastUpdate;
+        }
+
+        /**
+         * @return an unmodifiable collection of the disks of the host.
+         */
+        public Collection<StoreNode> getDisks() {
+            return this.disks.values();
+        }
+
+        /**
+         * @param newDisks
+         *            to replace the disks with.
+         * @return a copy of this host with the new disks.
+         */
+        private HostNode withDisks(final PersistentMap<String, StoreNode> newDisks) {
+            return new HostNode(this.id, this.cpuUsage, this.memUsage, this.lastUpdate,
+                    newDisks);
+        }
+    }
+
+    /**
+     * Immutable state of a rack with its hosts and disks.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class RackNode implements Identifiable {
+        private final String id;
+        private final PersistentMap<String, HostNode> hosts;
+        private final PersistentMap<String, StoreNode> disks;
+
+        /**
+         * @param id
+         *            of the rack.
+         * @param hosts
+         *            in the rack.
+         * @param disks
+         *            in the rack.
+         */
+        private RackNode(final String id, final PersistentMap<String, HostNode> hosts,
+                final PersistentMap<String, StoreNode> disks) {
+            this.id = id;
+            this.hosts = hosts;
+            this.disks = disks;
+        }
+
+        @Override
+        public String getUniqueIdentifier() {
+            return this.id;
+        }
+
+        /**
+         * @return an unmodifiable collection of the hosts in the rack.
+         */
+        public Collection<HostNode> getHosts() {
+            return this.hosts.values();
+        }
+
+        /**
+         * @return an unmodifiable collection of the disks in the rack.
+         */
+        public Collection<StoreNode> getDisks() {
+            return this.disks.values();
+        }
+    }
+
+    /**
+     * Immutable state of a data center with its racks.
+     * 
+     * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+     * 
+     */
+    public static final class DataCenterNode implements Identifiable {
+        private final String id;
+        private final PersistentMap<String, RackNode> racks;
+
+        /**
+         * @param id
+         *            of the data center.
+         * @param racks
+         *            in the data center.
+         */
+        private DataCenterNode(final String id, final PersistentMap<String, RackNode> racks) {
+            this.id = id;
+            this.racks = racks;
+        }
+
+        @Override
+        public String getUniqueIdentifier() {
+            return this.id;
+        }
+
+        /**
+         * @return an unmodifiable collection of the racks in the data center.
+         */
+        public Collection<RackNode> getRacks() {
+            return this.racks.values();
+        }
+    }
+
+    private final String rootID;
+    private final PersistentMap<String, DataCenterNode> dataCenters;
+    private final PersistentMap<String, String> rackParents;
+    private final PersistentMap<String, String> hostParents;
+    private final PersistentMap<String, String> rackDiskParents;
+    private final PersistentMap<String, String> hostDiskParents;
+
+    /**
+     * @param rootID
+     *            identifier of the root.
+     * @param dataCenters
+     *            of the topology.
+     * @param rackParents
+     *            data center of each rack.
+     * @param hostParents
+     *            rack of each host.
+     * @param rackDiskParents
+     *            rack of each disk placed in a rack.
+     * @param hostDiskParents
+     *            host of each disk placed in a host.
+     */
+    private TopologySnapshot(final String rootID,
+            final PersistentMap<String, DataCenterNode> dataCenters,
+            final PersistentMap<String, String> rackParents,
+            final PersistentMap<String, String> hostParents,
+            final PersistentMap<String, String> rackDiskParents,
+            final PersistentMap<String, String> hostDiskParents) {
+        this.rootID = rootID;
+        this.dataCenters = dataCenters;
+        this.rackParents = rackParents;
+        this.hostParents = hostParents;
+        this.rackDiskParents = rackDiskParents;
+        this.hostDiskParents = hostDiskParents;
+    }
+
+    /**
+     * @return an empty snapshot with a root with id "root", like a new
+     *         {@link PhysicalTopology}.
+     */
+    public static TopologySnapshot empty() {
+        return TopologySnapshot.empty(TopologySnapshot.ROOT_NAME);
+    }
+
+    /**
+     * @param rootID
+     *            identifier of the root.
+     * @return an empty snapshot.
+     */
+    public static TopologySnapshot empty(final String rootID) {
+        ErrorChecker.throwIfNullArgument(rootID, "rootID");
+        return new TopologySnapshot(rootID, PersistentMap.<String, DataCenterNode> empty(),
+                PersistentMap.<String, String> empty(), PersistentMap.<String, String> empty(),
+                PersistentMap.<String, String> empty(), PersistentMap.<String, String> empty());
+    }
+
+    /**
+     * Takes a snapshot of the current state of a topology. This copies the
+     * whole topology once; later versions are derived from the snapshot.
+     * 
+     * @param topology
+     *            to take a snapshot of.
+     * @return a snapshot with the resources and values of the topology.
+     */
+    public static TopologySnapshot of(final PhysicalTopology topology) {
+        ErrorChecker.throwIfNullArgument(topology, "topology");
+        PersistentMap<String, DataCenterNode> dataCenters = PersistentMap.empty();
+        PersistentMap<String, String> rackParents = PersistentMap.empty();
+        PersistentMap<String, String> hostParents = PersistentMap.empty();
+        PersistentMap<String, String> rackDiskParents = PersistentMap.empty();
+        PersistentMap<String, String> hostDiskParents = PersistentMap.empty();
+        for (final PhysicalDataCenter dc : topology.getDataCenterView()) {
+            PersistentMap<String, RackNode> racks = PersistentMap.empty();
+            for (final PhysicalRack rack : dc.getRackView()) {
+                PersistentMap<String, HostNode> hosts = PersistentMap.empty();
+                for (final PhysicalHost host : rack.getCPUView()) {
+                    PersistentMap<String, StoreNode> disks = PersistentMap.empty();
+                    for (final PhysicalStore disk : host.getDiskView()) {
+                        disks = disks.plus(disk.getUniqueIdentifier(), TopologySnapshot
+                                .node(disk));
+                        hostDiskParents = hostDiskParents.plus(disk.getUniqueIdentifier(),
+                                                               host.getUniqueIdentifier());
+                    }
+                    hosts = hosts.plus(host.getUniqueIdentifier(), new HostNode(host
+                            .getUniqueIdentifier(), host.getCpuUsage(), host.getMemUsage(), host
+                            .getLastUpdate(), disks));
+                    hostParents = hostParents.plus(host.getUniqueIdentifier(),
+                                                   rack.getUniqueIdentifier());
+                }
+                PersistentMap<String, StoreNode> disks = PersistentMap.empty();
+                for (final PhysicalStore disk : rack.getDiskView()) {
+                    disks = disks.plus(disk.getUniqueIdentifier(), TopologySnapshot.node(disk));
+                    rackDiskParents = rackDiskParents.plus(disk.getUniqueIdentifier(),
+                                                           rack.getUniqueIdentifier());
+                }
+                racks = racks.plus(rack.getUniqueIdentifier(),
+                                   new RackNode(rack.getUniqueIdentifier(), hosts, disks));
+                rackParents = rackParents.plus(rack.getUniqueIdentifier(),
+                                               dc.getUniqueIdentifier());
+            }
+            dataCenters = dataCenters.plus(dc.getUniqueIdentifier(),
+                                           new DataCenterNode(dc.getUniqueIdentifier(), racks));
+        }
+        return new TopologySnapshot(topology.getRoot().getUniqueIdentifier(), dataCenters,
+                rackParents, hostParents, rackDiskParents, hostDiskParents);
+    }
+
+    /**
+     * @param disk
+     *            to take a snapshot of.
+     * @return the state of the disk.
+     */
+    private static StoreNode node(final PhysicalStore disk) {
+        return new StoreNode(disk.getUniqueIdentifier(), disk.getCapacity(), disk.getUsed());
+    }
+
+    /**
+     * Builds a new, mutable topology with the resources and values of this
+     * snapshot.
+     * 
+     * @return the new topology.
+     */
+    public PhysicalTopology toTopology() {
+        final PhysicalTopology res = new PhysicalTopology(new PhysicalRootBuilder().withUuid(
+                this.rootID).build());
+        for (final DataCenterNode dcNode : this.dataCenters.values()) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid(dcNode.id)
+                    .build();
+            res.addDataCenter(dc);
+            for (final RackNode rackNode : dcNode.racks.values()) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid(rackNode.id)
+                        .build();
+                res.addRackToDataCenter(rack, dc);
+                for (final HostNode hostNode : rackNode.hosts.values()) {
+                    final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+                    builder.withCpuUsage(hostNode.cpuUsage).withMemUsage(hostNode.memUsage)
+                            .withLastUpdate(hostNode.lastUpdate);
+                    final PhysicalHost host = builder.withUuid(hostNode.id).build();
+                    res.addCPUToRack(host, rack);
+                    for (final StoreNode disk : hostNode.disks.values()) {
+                        res.addDiskToHost(TopologySnapshot.store(disk), host);
+                    }
+                }
+                for (final StoreNode disk : rackNode.disks.values()) {
+                    res.addDiskToRack(TopologySnapshot.store(disk), rack);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param node
+     *            state of a store.
+     * @return a new store with the state.
+     */
+    private static PhysicalStore store(final StoreNode node) {
+        return new PhysicalStoreBuilder().withCapacity(node.capacity).withUsed(node.used)
+                .withUuid(node.id).build();
+    }
+
+    /**
+     * @return the identifier of the root.
+     */
+    public String getRootID() {
+        return this.rootID;
+    }
+
+    /**
+     * @return an unmodifiable collection of the data centers.
+     */
+    public Collection<DataCenterNode> getDataCenters() {
+        return this.dataCenters.values();
+    }
+
+    /**
+     * @return all racks in the snapshot.
+     */
+    public Iterable<RackNode> iterateRacks() {
+        return new Iterable<RackNode>() {
+            @Override
+            public Iterator<RackNode> iterator() {
+                return new FlatteningIterator<DataCenterNode, RackNode>(
+                        TopologySnapshot.this.dataCenters.values().iterator()) {
+                    @Override
+                    protected Iterator<RackNode> children(final DataCenterNode parent) {
+                        return parent.racks.values().iterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return all hosts in the snapshot.
+     */
+    public Iterable<HostNode> iterateHosts() {
+        return new Iterable<HostNode>() {
+            @Override
+            public Iterator<HostNode> iterator() {
+                return new FlatteningIterator<RackNode, HostNode>(TopologySnapshot.this
+                        .iterateRacks().iterator()) {
+                    @Override
+                    protected Iterator<HostNode> children(final RackNode parent) {
+                        return parent.hosts.values().iterator();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param id
+     *            of the data center.
+     * @return true iff the snapshot contains the data center.
+     */
+    public boolean hasDataCenterByID(final String id) {
+        return this.dataCenters.containsKey(id);
+    }
+
+    /**
+     * @param id
+     *            of the data center.
+     * @return the data center.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the data center.
+     */
+    public DataCenterNode getDataCenterByID(final String id) {
+        final DataCenterNode res = this.dataCenters.get(id);
+        if (res == null) {
+            throw new NoSuchElementException("No data center with id '" + id + "'.");
+        }
+        return res;
+    }
+
+    /**
+     * @param id
+     *            of the rack.
+     * @return true iff the snapshot contains the rack.
+     */
+    public boolean hasRackByID(final String id) {
+        return this.rackParents.containsKey(id);
+    }
+
+    /**
+     * @param id
+     *            of the rack.
+     * @return the rack.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the rack.
+     */
+    public RackNode getRackByID(final String id) {
+        final String parent = this.rackParents.get(id);
+        if (parent == null) {
+            throw new NoSuchElementException("No rack with id '" + id + "'.");
+        }
+        return this.dataCenters.get(parent).racks.get(id);
+    }
+
+    /**
+     * @param id
+     *            of the rack.
+     * @return the identifier of the data center containing the rack.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the rack.
+     */
+    public String getDataCenterOfRack(final String id) {
+        final String parent = this.rackParents.get(id);
+        if (parent == null) {
+            throw new NoSuchElementException("No rack with id '" + id + "'.");
+        }
+        return parent;
+    }
+
+    /**
+     * @param id
+     *            of the host.
+     * @return true iff the snapshot contains the host.
+     */
+    public boolean hasHostByID(final String id) {
+        return this.hostParents.containsKey(id);
+    }
+
+    /**
+     * @param id
+     *            of the host.
+     * @return the host.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the host.
+     */
+    public HostNode getHostByID(final String id) {
+        return this.getRackByID(this.getRackOfHost(id)).hosts.get(id);
+    }
+
+    /**
+     * @param id
+     *            of the host.
+     * @return the identifier of the rack containing the host.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the host.
+     */
+    public String getRackOfHost(final String id) {
+        final String parent = this.hostParents.get(id);
+        if (parent == null) {
+            throw new NoSuchElementException("No host with id '" + id + "'.");
+        }
+        return parent;
+    }
+
+    /**
+     * @param id
+     *            of the store.
+     * @return true iff the snapshot contains the store.
+     */
+    public boolean hasStoreByID(final String id) {
+        return this.rackDiskParents.containsKey(id) || this.hostDiskParents.containsKey(id);
+    }
+
+    /**
+     * @param id
+     *            of the store.
+     * @return the store.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the store.
+     */
+    public StoreNode getStoreByID(final String id) {
+        final String rack = this.rackDiskParents.get(id);
+        if (rack != null) {
+            return this.getRackByID(rack).disks.get(id);
+        }
+        final String host = this.hostDiskParents.get(id);
+        if (host != null) {
+            return this.getHostByID(host).disks.get(id);
+        }
+        throw new NoSuchElementException("No store with id '" + id + "'.");
+    }
+
+    /**
+     * @param id
+     *            of the new data center.
+     * @return a snapshot that also contains an empty data center.
+     * @throws IllegalArgumentException
+     *             if the snapshot already contains the data center.
+     */
+    public TopologySnapshot withDataCenter(final String id) {
+        ErrorChecker.throwIfNullArgument(id, "id");
+        if (this.dataCenters.containsKey(id)) {
+            throw new IllegalArgumentException("Data center '" + id + "' already exists.");
+        }
+        return new TopologySnapshot(this.rootID, this.dataCenters.plus(id, new DataCenterNode(
+                id, PersistentMap.<String, RackNode> empty())), this.rackParents,
+                this.hostParents, this.rackDiskParents, this.hostDiskParents);
+    }
+
+    /**
+     * @param id
+     *            of the new rack.
+     * @param dataCenterID
+     *            identifier of the data center to place the rack in.
+     * @return a snapshot that also contains an empty rack.
+     * @throws IllegalArgumentException
+     *             if the snapshot already contains the rack.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the data center.
+     */
+    public TopologySnapshot withRack(final String id, final String dataCenterID) {
+        ErrorChecker.throwIfNullArgument(id, "id");
+        if (this.rackParents.containsKey(id)) {
+            throw new IllegalArgumentException("Rack '" + id + "' already exists.");
+        }
+        final DataCenterNode dc = this.getDataCenterByID(dataCenterID);
+        final RackNode rack = new RackNode(id, PersistentMap.<String, HostNode> empty(),
+                PersistentMap.<String, StoreNode> empty());
+        return new TopologySnapshot(this.rootID, this.dataCenters.plus(dc.id,
+                new DataCenterNode(dc.id, dc.racks.plus(id, rack))), this.rackParents.plus(id,
+                dc.id), this.hostParents, this.rackDiskParents, this.hostDiskParents);
+    }
+
+    /**
+     * @param id
+     *            of the new host.
+     * @param rackID
+     *            identifier of the rack to place the host in.
+     * @return a snapshot that also contains a host without disks or usage.
+     * @throws IllegalArgumentException
+     *             if the snapshot already contains the host.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the rack.
+     */
+    public TopologySnapshot withHost(final String id, final String rackID) {
+        ErrorChecker.throwIfNullArgument(id, "id");
+        if (this.hostParents.containsKey(id)) {
+            throw new IllegalArgumentException("Host '" + id + "' already exists.");
+        }
+        final RackNode rack = this.getRackByID(rackID);
+        final HostNode host = new HostNode(id, 0, 0, 0, PersistentMap.<String, StoreNode> empty());
+        return new TopologySnapshot(this.rootID, this.replace(new RackNode(rack.id, rack.hosts
+                .plus(id, host), rack.disks)), this.rackParents, this.hostParents.plus(id,
+                rack.id), this.rackDiskParents, this.hostDiskParents);
+    }
+
+    /**
+     * @param id
+     *            of the new store.
+     * @param rackID
+     *            identifier of the rack to place the store in.
+     * @param capacity
+     *            of the store.
+     * @param used
+     *            capacity of the store.
+     * @return a snapshot that also contains the store.
+     * @throws IllegalArgumentException
+     *             if the snapshot already contains the store.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the rack.
+     */
+    public TopologySnapshot withRackDisk(final String id, final String rackID,
+            final long capacity, final long used) {
+        this.checkNewStore(id);
+        final RackNode rack = this.getRackByID(rackID);
+        return new TopologySnapshot(this.rootID, this.replace(new RackNode(rack.id, rack.hosts,
+                rack.disks.plus(id, new StoreNode(id, capacity, used)))), this.rackParents,
+                this.hostParents, this.rackDiskParents.plus(id, rack.id), this.hostDiskParents);
+    }
+
+    /**
+     * @param id
+     *            of the new store.
+     * @param hostID
+     *            identifier of the host to place the store in.
+     * @param capacity
+     *            of the store.
+     * @param used
+     *            capacity of the store.
+     * @return a snapshot that also contains the store.
+     * @throws IllegalArgumentException
+     *             if the snapshot already contains the store.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the host.
+     */
+    public TopologySnapshot withHostDisk(final String id, final String hostID,
+            final long capacity, final long used) {
+        this.checkNewStore(id);
+        final String rackID = this.getRackOfHost(hostID);
+        final HostNode host = this.getHostByID(hostID);
+        return new TopologySnapshot(this.rootID, this.replace(host.withDisks(host.disks
+                .plus(id, new StoreNode(id, capacity, used))), rackID), this.rackParents,
+                this.hostParents, this.rackDiskParents, this.hostDiskParents.plus(id, host.id));
+    }
+
+    /**
+     * @param id
+     *            of a new store.
+     * @throws IllegalArgumentException
+     *             if the id is null or the snapshot already contains the
+     *             store.
+     */
+    private void checkNewStore(final String id) {
+        ErrorChecker.throwIfNullArgument(id, "id");
+        if (this.hasStoreByID(id)) {
+            throw new IllegalArgumentException("Store '" + id + "' already exists.");
+        }
+    }
+
+    /**
+     * @param id
+     *            of the host.
+     * @param cpuUsage
+     *            the new cpu usage of the host.
+     * @param memUsage
+     *            the new memory usage of the host.
+     * @param lastUpdate
+     *            time the usage was measured, in milliseconds since the
+     *            epoch.
+     * @return a snapshot in which the host has the new usage.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the host.
+     */
+    public TopologySnapshot withHostUsage(final String id, final double cpuUsage,
+            final double memUsage, final long lastUpdate) {
+        final String rackID = this.getRackOfHost(id);
+        final HostNode host = this.getHostByID(id);
+        return this.withDataCenters(this.replace(new HostNode(id, cpuUsage, memUsage,
+                lastUpdate, host.disks), rackID));
+    }
+
+    /**
+     * @param id
+     *            of the store.
+     * @param capacity
+     *            the new capacity of the store.
+     * @param used
+     *            the new used capacity of the store.
+     * @return a snapshot in which the store has the new values.
+     * @throws NoSuchElementException
+     *             if the snapshot does not contain the store.
+     */
+    public TopologySnapshot withStoreUsage(final String id, final long capacity,
+            final long used) {
+        final StoreNode store = new StoreNode(id, capacity, used);
+        final String rackID = this.rackDiskParents.get(id);
+        if (rackID != null) {
+            final RackNode rack = this.getRackByID(rackID);
+            return this.withDataCenters(this.replace(new RackNode(rack.id, rack.hosts,
+                    rack.disks.plus(id, store))));
+        }
+        final String hostID = this.hostDiskParents.get(id);
+        if (hostID != null) {
+            final HostNode host = this.getHostByID(hostID);
+            return this.withDataCenters(this.replace(host.withDisks(host.disks.plus(id, store)),
+                                                     this.getRackOfHost(hostID)));
+        }
+        throw new NoSuchElementException("No store with id '" + id + "'.");
+    }
+
+    /**
+     * Removes a data center and everything below it.
+     * 
+     * @param id
+     *            of the data center.
+     * @return a snapshot without the data center, or this snapshot if it
+     *         does not contain it.
+     */
+    public TopologySnapshot withoutDataCenter(final String id) {
+        final DataCenterNode dc = this.dataCenters.get(id);
+        if (dc == null) {
+            return this;
+        }
+        TopologySnapshot res = this;
+        for (final RackNode rack : dc.racks.values()) {
+            res = res.withoutRack(rack.id);
+        }
+        return new TopologySnapshot(res.rootID, res.dataCenters.minus(id), res.rackParents,
+                res.hostParents, res.rackDiskParents, res.hostDiskParents);
+    }
+
+    /**
+     * Removes a rack and everything below it.
+     * 
+     * @param id
+     *            of the rack.
+     * @return a snapshot without the rack, or this snapshot if it does not
+     *         contain it.
+     */
+    public TopologySnapshot withoutRack(final String id) {
+        final String dcID = this.rackParents.get(id);
+        if (dcID == null) {
+            return this;
+        }
+        final DataCenterNode dc = this.dataCenters.get(dcID);
+        final RackNode rack = dc.racks.get(id);
+        PersistentMap<String, String> hosts = this.hostParents;
+        PersistentMap<String, String> hostDisks = this.hostDiskParents;
+        for (final HostNode host : rack.hosts.values()) {
+            hosts = hosts.minus(host.id);
+            for (final StoreNode disk : host.disks.values()) {
+                hostDisks = hostDisks.minus(disk.id);
+            }
+        }
+        PersistentMap<String, String> rackDisks = this.rackDiskParents;
+        for (final StoreNode disk : rack.disks.values()) {
+            rackDisks = rackDisks.minus(disk.id);
+        }
+        return new TopologySnapshot(this.rootID, this.dataCenters.plus(dcID,
+                new DataCenterNode(dcID, dc.racks.minus(id))), this.rackParents.minus(id), hosts,
+                rackDisks, hostDisks);
+    }
+
+    /**
+     * Removes a host and its disks.
+     * 
+     * @param id
+     *            of the host.
+     * @return a snapshot without the host, or this snapshot if it does not
+     *         contain it.
+     */
+    public TopologySnapshot withoutHost(final String id) {
+        if (!this.hostParents.containsKey(id)) {
+            return this;
+        }
+        final RackNode rack = this.getRackByID(this.hostParents.get(id));
+        final HostNode host = rack.hosts.get(id);
+        PersistentMap<String, String> hostDisks = this.hostDiskParents;
+        for (final StoreNode disk : host.disks.values()) {
+            hostDisks = hostDisks.minus(disk.id);
+        }
+        return new TopologySnapshot(this.rootID, this.replace(new RackNode(rack.id, rack.hosts
+                .minus(id), rack.disks)), this.rackParents, this.hostParents.minus(id),
+                this.rackDiskParents, hostDisks);
+    }
+
+    /**
+     * @param id
+     *            of the store.
+     * @return a snapshot without the store, or this snapshot if it does not
+     *         contain it.
+     */
+    public TopologySnapshot withoutStore(final String id) {
+        final String rackID = this.rackDiskParents.get(id);
+        if (rackID != null) {
+            final RackNode rack = this.getRackByID(rackID);
+            return new TopologySnapshot(this.rootID, this.replace(new RackNode(rack.id,
+                    rack.hosts, rack.disks.minus(id))), this.rackParents, this.hostParents,
+                    this.rackDiskParents.minus(id), this.hostDiskParents);
+        }
+        final String hostID = this.hostDiskParents.get(id);
+        if (hostID != null) {
+            final HostNode host = this.getHostByID(hostID);
+            return new TopologySnapshot(this.rootID, this.replace(host.withDisks(host.disks
+                    .minus(id)), this.getRackOfHost(hostID)), this.rackParents,
+                    this.hostParents, this.rackDiskParents, this.hostDiskParents.minus(id));
+        }
+        return this;
+    }
+
+    /**
+     * @param newDataCenters
+     *            to replace the data centers with.
+     * @return a snapshot with the same resources in other states.
+     */
+    private TopologySnapshot withDataCenters(
+            final PersistentMap<String, DataCenterNode> newDataCenters) {
+        return new TopologySnapshot(this.rootID, newDataCenters, this.rackParents,
+                this.hostParents, this.rackDiskParents, this.hostDiskParents);
+    }
+
+    /**
+     * @param rack
+     *            new state of a rack in the snapshot.
+     * @return the data centers with the rack replaced.
+     */
+    private PersistentMap<String, DataCenterNode> replace(final RackNode rack) {
+        final String dcID = this.rackParents.get(rack.id);
+        final DataCenterNode dc = this.dataCenters.get(dcID);
+        return this.dataCenters.plus(dcID, new DataCenterNode(dcID, dc.racks.plus(rack.id,
+                                                                                  rack)));
+    }
+
+    /**
+     * @param host
+     *            new state of a host in the snapshot.
+     * @param rackID
+     *            identifier of the rack containing the host.
+     * @return the data centers with the host replaced.
+     */
+    private PersistentMap<String, DataCenterNode> replace(final HostNode host,
+            final String rackID) {
+        final RackNode rack = this.getRackByID(rackID);
+        return this.replace(new RackNode(rackID, rack.hosts.plus(host.id, host), rack.disks));
+    }
+}
@@ -0,0 +1,20 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * A change to a topology, applied to a {@link TopologySnapshot} by a
+ * {@link ConcurrentTopology}. An update may be applied more than once, to
+ * newer versions of the topology, if other writers published in the
+ * meantime, so it should not have side effects.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public interface TopologyUpdate {
+
+    /**
+     * @param snapshot
+     *            current version of the topology.
+     * @return the new version of the topology.
+     */
+    TopologySnapshot apply(TopologySnapshot snapshot);
+}
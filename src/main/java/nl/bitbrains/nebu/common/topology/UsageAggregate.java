@@ -0,0 +1,161 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * Totals of the hosts and stores below a rack, data center or root of a
+ * {@link PhysicalTopology}. The topology keeps the aggregates up to date as it
+ * is changed, so reading them takes constant time. Reading an aggregate
+ * takes the lock of the topology, under which the topology updates it, so
+ * each value read belongs to a single state of the topology.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class UsageAggregate {
+
+    private final Object lock;
+    private int hostCount;
+    private double cpuSum;
+    private double memSum;
+    private double maxCpu;
+    private double maxMem;
+    private long capacity;
+    private long used;
+
+    /**
+     * Only created by the topology.
+     * 
+     * @param lock
+     *            under which the topology changes the aggregate.
+     */
+    UsageAggregate(final Object lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * @return the number of hosts.
+     */
+    public int getHostCount() {
+        synchronized (this.lock) {
+            return this.hostCount;
+        }
+    }
+
+    /**
+     * @return the mean cpu usage of the hosts, or 0 if there are none.
+     */
+    public double getMeanCpuUsage() {
+        synchronized (this.lock) {
+            return this.hostCount == 0 ? 0 : this.cpuSum / this.hostCount;
+        }
+    }
+
+    /**
+     * @return the highest cpu usage of the hosts, or 0 if there are none.
+     */
+    public double getMaxCpuUsage() {
+        synchronized (this.lock) {
+            return this.maxCpu;
+        }
+    }
+
+    /**
+     * @return the mean memory usage of the hosts, or 0 if there are none.
+     */
+    public double getMeanMemUsage() {
+        synchronized (this.lock) {
+            return this.hostCount == 0 ? 0 : this.memSum / this.hostCount;
+        }
+    }
+
+    /**
+     * @return the highest memory usage of the hosts, or 0 if there are none.
+     */
+    public double getMaxMemUsage() {
+        synchronized (this.lock) {
+            return this.maxMem;
+        }
+    }
+
+    /**
+     * @return the total capacity of the stores, both those in racks and
+     *         those in hosts.
+     */
+    public long getTotalCapacity() {
+        synchronized (this.lock) {
+            return this.capacity;
+        }
+    }
+
+    /**
+     * @return the total used capacity of the stores.
+     */
+    public long getUsedCapacity() {
+        synchronized (this.lock) {
+            return this.used;
+        }
+    }
+
+    /**
+     * @return the total capacity of the stores that is not used.
+     */
+    public long getFreeCapacity() {
+        synchronized (this.lock) {
+            return this.capacity - this.used;
+        }
+    }
+
+    /**
+     * Adds to the counts and sums.
+     * 
+     * @param hosts
+     *            number of hosts to add.
+     * @param cpu
+     *            sum of the cpu usage to add.
+     * @param mem
+     *            sum of the memory usage to add.
+     * @param storeCapacity
+     *            capacity to add.
+     * @param storeUsed
+     *            used capacity to add.
+     */
+    void add(final int hosts, final double cpu, final double mem, final long storeCapacity,
+            final long storeUsed) {
+        this.hostCount += hosts;
+        this.cpuSum += cpu;
+        this.memSum += mem;
+        this.capacity += storeCapacity;
+        this.used += storeUsed;
+    }
+
+    /**
+     * Adds all counts and sums of another aggregate, with the given sign.
+     * 
+     * @param other
+     *            aggregate to add.
+     * @param sign
+     *            1 to add the other aggregate, -1 to subtract it.
+     */
+    void add(final UsageAggregate other, final int sign) {
+        this.add(sign * other.hostCount, sign * other.cpuSum, sign * other.memSum, sign
+                * other.capacity, sign * other.used);
+    }
+
+    /**
+     * Resets all counts, sums and maxima to 0.
+     */
+    void clear() {
+        this.add(this, -1);
+        this.setMax(0, 0);
+    }
+
+    /**
+     * @param cpu
+     *            the new highest cpu usage.
+     * @param mem
+     *            the new highest memory usage.
+     */
+    void setMax(final double cpu, final double mem) {
+        this.maxCpu = cpu;
+        this.maxMem = mem;
+    }
+}
@@ -0,0 +1,231 @@
+package nl.bitbrains.nebu.common.topology;
+
+/**
+ * The most recent samples of one metric of a resource, such as the cpu usage
+ * of a host, kept in a ring buffer of a fixed capacity. Adding a sample takes
+ * constant time, and once the buffer is full it replaces the oldest sample,
+ * so the memory used does not grow with the number of samples.
+ * 
+ * The aggregates are computed over a window of the most recent samples,
+ * given by the time of its oldest sample. The samples are kept in the order
+ * in which they were measured, even if they are added in a different order,
+ * as happens when several threads update a resource at once. All methods can
+ * be called from several threads at once, and no method creates objects.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class UsageHistory {
+
+    private final long[] times;
+    private final double[] values;
+    private final double[] scratch;
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity
+     *            highest number of samples to keep.
+     */
+    public UsageHistory(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("At least one sample should be kept.");
+        }
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+        this.scratch = new double[capacity];
+    }
+
+    /**
+     * @return the highest number of samples that are kept.
+     */
+    public int getCapacity() {
+        return this.values.length;
+    }
+
+    /**
+     * @return the number of samples kept now.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a sample, replacing the oldest one if the history is full. A
+     * sample that was measured before the most recent one is moved to its
+     * place in time, which takes time linear in the number of newer samples.
+     * A sample older than all samples of a full history is ignored.
+     * 
+     * @param time
+     *            the sample was measured, in milliseconds since the epoch.
+     * @param value
+     *            of the sample.
+     */
+    public synchronized void add(final long time, final double value) {
+        if (this.size == this.values.length && time < this.times[this.index(this.size - 1)]) {
+            return;
+        }
+        this.next = this.next + 1 == this.values.length ? 0 : this.next + 1;
+        if (this.size < this.values.length) {
+            this.size++;
+        }
+        int age = 0;
+        while (age + 1 < this.size && this.times[this.index(age + 1)] > time) {
+            this.times[this.index(age)] = this.times[this.index(age + 1)];
+            this.values[this.index(age)] = this.values[this.index(age + 1)];
+            age++;
+        }
+        this.times[this.index(age)] = time;
+        this.values[this.index(age)] = value;
+    }
+
+    /**
+     * @param age
+     *            of the sample, 0 being the most recent one.
+     * @return the time of the sample.
+     * @throws IndexOutOfBoundsException
+     *             if there are not that many samples.
+     */
+    public synchronized long getTime(final int age) {
+        return this.times[this.index(age)];
+    }
+
+    /**
+     * @param age
+     *            of the sample, 0 being the most recent one.
+     * @return the value of the sample.
+     * @throws IndexOutOfBoundsException
+     *             if there are not that many samples.
+     */
+    public synchronized double getValue(final int age) {
+        return this.values[this.index(age)];
+    }
+
+    /**
+     * @param since
+     *            time of the oldest sample to include.
+     * @return the mean of the samples measured since then, or 0 if there are
+     *         none.
+     */
+    public synchronized double getMean(final long since) {
+        final int count = this.count(since);
+        double sum = 0;
+        for (int age = 0; age < count; age++) {
+            sum += this.values[this.index(age)];
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param since
+     *            time of the oldest sample to include.
+     * @return the highest value of the samples measured since then, or 0 if
+     *         there are none.
+     */
+    public synchronized double getMax(final long since) {
+        final int count = this.count(since);
+        double max = count == 0 ? 0 : Double.NEGATIVE_INFINITY;
+        for (int age = 0; age < count; age++) {
+            max = Math.max(max, this.values[this.index(age)]);
+        }
+        return max;
+    }
+
+    /**
+     * Selects the percentile with the nearest-rank method, in time linear in
+     * the number of samples.
+     * 
+     * @param fraction
+     *            of the samples that are at most the result, such as 0.95.
+     * @param since
+     *            time of the oldest sample to include.
+     * @return the smallest value of the samples measured since then that is
+     *         at least as large as the given fraction of them, or 0 if there
+     *         are none.
+     */
+    public synchronized double getPercentile(final double fraction, final long since) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("The fraction should be between 0 and 1.");
+        }
+        final int count = this.count(since);
+        if (count == 0) {
+            return 0;
+        }
+        for (int age = 0; age < count; age++) {
+            this.scratch[age] = this.values[this.index(age)];
+        }
+        final int rank = Math.max(1, (int) Math.ceil(fraction * count));
+        return UsageHistory.select(this.scratch, count, rank - 1);
+    }
+
+    /**
+     * @param since
+     *            time of the oldest sample to count.
+     * @return the number of most recent samples measured at or after since.
+     */
+    private int count(final long since) {
+        int count = 0;
+        while (count < this.size && this.times[this.index(count)] >= since) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param age
+     *            of the sample, 0 being the most recent one.
+     * @return the position of the sample in the arrays.
+     */
+    private int index(final int age) {
+        if (age < 0 || age >= this.size) {
+            throw new IndexOutOfBoundsException("No sample of age " + age + ".");
+        }
+        final int res = this.next - 1 - age;
+        return res < 0 ? res + this.values.length : res;
+    }
+
+    /**
+     * Finds the k-th smallest value by partitioning the values around a
+     * pivot and continuing in the part that holds it.
+     * 
+     * @param values
+     *            to select from, which are reordered.
+     * @param length
+     *            number of values.
+     * @param k
+     *            rank of the value to find, from 0.
+     * @return the k-th smallest value.
+     */
+    private static double select(final double[] values, final int length, final int k) {
+        int from = 0;
+        int to = length - 1;
+        while (from < to) {
+            final double pivot = values[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final double swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                to = j;
+            } else if (k >= i) {
+                from = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+}
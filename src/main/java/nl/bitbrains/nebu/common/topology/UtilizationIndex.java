@@ -0,0 +1,502 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * The hosts of a {@link PhysicalTopology} ordered by each {@link HostMetric},
+ * within every rack, every data center and the whole topology. The least
+ * loaded host of any of these is found in logarithmic time, and the hosts
+ * with a usage of at most some value in time logarithmic plus linear in the
+ * number of hosts returned.
+ * 
+ * The topology reports every change it makes, like it does to its
+ * aggregates, and a host that changes is moved to its new place in the
+ * order of its rack, data center and the root, which takes logarithmic
+ * time. Hosts with the same usage are ordered by their identifier. The
+ * index is synchronized, so it can be queried while other threads update the
+ * usage of hosts through the topology.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public final class UtilizationIndex {
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry one, final Entry two) {
+            final int res = Double.compare(one.value, two.value);
+            if (res != 0) {
+                return res;
+            }
+            return one.host.getUniqueIdentifier().compareTo(two.host.getUniqueIdentifier());
+        }
+    };
+
+    private final Ranking[] rankings;
+
+    /**
+     * Orders all hosts below the root.
+     * 
+     * @param root
+     *            of the topology.
+     */
+    UtilizationIndex(final PhysicalRoot root) {
+        this.rankings = new Ranking[HostMetric.values().length];
+        for (final HostMetric metric : HostMetric.values()) {
+            this.rankings[metric.ordinal()] = new Ranking(metric);
+        }
+        final Iterator<PhysicalDataCenter> it = root.dataCenterIterator();
+        while (it.hasNext()) {
+            this.dataCenterAdded(it.next(), null);
+        }
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @return the host with the lowest value of the metric, or null if there
+     *         are no hosts.
+     */
+    public synchronized PhysicalHost getLeastLoaded(final HostMetric metric) {
+        return UtilizationIndex.first(this.ranking(metric).root);
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @param dataCenter
+     *            to look in.
+     * @return the host of the data center with the lowest value of the
+     *         metric, or null if it has no hosts.
+     * @throws NoSuchElementException
+     *             if the data center is not in the topology.
+     */
+    public synchronized PhysicalHost getLeastLoaded(final HostMetric metric,
+            final PhysicalDataCenter dataCenter) {
+        return UtilizationIndex.first(this.ranking(metric).dataCenter(dataCenter));
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @param rack
+     *            to look in.
+     * @return the host of the rack with the lowest value of the metric, or
+     *         null if it has no hosts.
+     * @throws NoSuchElementException
+     *             if the rack is not in the topology.
+     */
+    public synchronized PhysicalHost getLeastLoaded(final HostMetric metric,
+            final PhysicalRack rack) {
+        return UtilizationIndex.first(this.ranking(metric).rack(rack));
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @return the host with the highest value of the metric, or null if there
+     *         are no hosts.
+     */
+    public synchronized PhysicalHost getMostLoaded(final HostMetric metric) {
+        final NavigableSet<Entry> hosts = this.ranking(metric).root.hosts;
+        return hosts.isEmpty() ? null : hosts.last().host;
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @param max
+     *            highest value of the metric to include.
+     * @return the hosts with at most the given value of the metric, least
+     *         loaded first.
+     */
+    public synchronized List<PhysicalHost> getHostsAtMost(final HostMetric metric,
+            final double max) {
+        return UtilizationIndex.atMost(this.ranking(metric).root, max);
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @param max
+     *            highest value of the metric to include.
+     * @param dataCenter
+     *            to look in.
+     * @return the hosts of the data center with at most the given value of
+     *         the metric, least loaded first.
+     * @throws NoSuchElementException
+     *             if the data center is not in the topology.
+     */
+    public synchronized List<PhysicalHost> getHostsAtMost(final HostMetric metric, final double max,
+            final PhysicalDataCenter dataCenter) {
+        return UtilizationIndex.atMost(this.ranking(metric).dataCenter(dataCenter), max);
+    }
+
+    /**
+     * @param metric
+     *            to order the hosts by.
+     * @param max
+     *            highest value of the metric to include.
+     * @param rack
+     *            to look in.
+     * @return the hosts of the rack with at most the given value of the
+     *         metric, least loaded first.
+     * @throws NoSuchElementException
+     *             if the rack is not in the topology.
+     */
+    public synchronized List<PhysicalHost> getHostsAtMost(final HostMetric metric, final double max,
+            final PhysicalRack rack) {
+        return UtilizationIndex.atMost(this.ranking(metric).rack(rack), max);
+    }
+
+    /**
+     * @param dataCenter
+     *            that was added to the root.
+     * @param replaced
+     *            data center with the same identifier that it replaced, or
+     *            null.
+     */
+    synchronized void dataCenterAdded(final PhysicalDataCenter dataCenter,
+            final PhysicalDataCenter replaced) {
+        if (replaced != null) {
+            this.dataCenterRemoved(replaced);
+        }
+        for (final Ranking ranking : this.rankings) {
+            final Scope scope = new Scope(ranking.root);
+            ranking.dataCenters.put(dataCenter.getUniqueIdentifier(), scope);
+            final Iterator<PhysicalRack> it = dataCenter.rackIterator();
+            while (it.hasNext()) {
+                ranking.addRack(it.next(), scope);
+            }
+        }
+    }
+
+    /**
+     * @param dataCenter
+     *            that was removed from the root.
+     */
+    synchronized void dataCenterRemoved(final PhysicalDataCenter dataCenter) {
+        for (final Ranking ranking : this.rankings) {
+            final Iterator<PhysicalRack> it = dataCenter.rackIterator();
+            while (it.hasNext()) {
+                ranking.removeRack(it.next());
+            }
+            ranking.dataCenters.remove(dataCenter.getUniqueIdentifier());
+        }
+    }
+
+    /**
+     * @param rack
+     *            that was added to the data center.
+     * @param dataCenter
+     *            the rack was added to.
+     * @param replaced
+     *            rack with the same identifier that it replaced, or null.
+     */
+    synchronized void rackAdded(final PhysicalRack rack, final PhysicalDataCenter dataCenter,
+            final PhysicalRack replaced) {
+        if (replaced != null) {
+            this.rackRemoved(replaced, dataCenter);
+        }
+        for (final Ranking ranking : this.rankings) {
+            final Scope scope = ranking.dataCenters.get(dataCenter.getUniqueIdentifier());
+            if (scope != null) {
+                ranking.addRack(rack, scope);
+            }
+        }
+    }
+
+    /**
+     * @param rack
+     *            that was removed from the data center.
+     * @param dataCenter
+     *            the rack was removed from.
+     */
+    synchronized void rackRemoved(final PhysicalRack rack, final PhysicalDataCenter dataCenter) {
+        for (final Ranking ranking : this.rankings) {
+            ranking.removeRack(rack);
+        }
+    }
+
+    /**
+     * @param host
+     *            that was added to the rack.
+     * @param rack
+     *            the host was added to.
+     * @param replaced
+     *            host with the same identifier that it replaced, or null.
+     */
+    synchronized void hostAdded(final PhysicalHost host, final PhysicalRack rack,
+            final PhysicalHost replaced) {
+        if (replaced != null) {
+            this.hostRemoved(replaced, rack);
+        }
+        for (final Ranking ranking : this.rankings) {
+            final Scope scope = ranking.racks.get(rack.getUniqueIdentifier());
+            if (scope != null) {
+                ranking.addHost(host, scope);
+            }
+        }
+    }
+
+    /**
+     * @param host
+     *            that was removed from the rack.
+     * @param rack
+     *            the host was removed from.
+     */
+    synchronized void hostRemoved(final PhysicalHost host, final PhysicalRack rack) {
+        for (final Ranking ranking : this.rankings) {
+            ranking.removeHost(host);
+        }
+    }
+
+    /**
+     * @param host
+     *            of which the usage was changed.
+     */
+    synchronized void hostChanged(final PhysicalHost host) {
+        for (final Ranking ranking : this.rankings) {
+            final Entry entry = ranking.hosts.get(host.getUniqueIdentifier());
+            if (entry != null && entry.host == host) {
+                entry.scope.remove(entry);
+                entry.value = ranking.metric.of(host);
+                entry.scope.add(entry);
+            }
+        }
+    }
+
+    /**
+     * @param metric
+     *            to get the ranking of.
+     * @return the ranking.
+     */
+    private Ranking ranking(final HostMetric metric) {
+        ErrorChecker.throwIfNullArgument(metric, "metric");
+        return this.rankings[metric.ordinal()];
+    }
+
+    /**
+     * @param scope
+     *            to look in.
+     * @return the least loaded host of the scope, or null if it has none.
+     */
+    private static PhysicalHost first(final Scope scope) {
+        return scope.hosts.isEmpty() ? null : scope.hosts.first().host;
+    }
+
+    /**
+     * @param scope
+     *            to look in.
+     * @param max
+     *            highest value to include.
+     * @return the hosts of the scope with at most the value, in order.
+     */
+    private static List<PhysicalHost> atMost(final Scope scope, final double max) {
+        final List<PhysicalHost> res = new ArrayList<PhysicalHost>();
+        for (final Entry entry : scope.hosts) {
+            if (entry.value > max) {
+                break;
+            }
+            res.add(entry.host);
+        }
+        return res;
+    }
+
+    /**
+     * The order of the hosts by one metric.
+     */
+    private static final class Ranking {
+
+        private final HostMetric metric;
+        private final Scope root;
+        private final Map<String, Scope> dataCenters;
+        private final Map<String, Scope> racks;
+        private final Map<String, Entry> hosts;
+
+        /**
+         * @param metric
+         *            to order the hosts by.
+         */
+        private Ranking(final HostMetric metric) {
+            this.metric = metric;
+            this.root = new Scope(null);
+            this.dataCenters = new HashMap<String, Scope>();
+            this.racks = new HashMap<String, Scope>();
+            this.hosts = new HashMap<String, Entry>();
+        }
+
+        /**
+         * @param dataCenter
+         *            to get the scope of.
+         * @return the scope.
+         * @throws NoSuchElementException
+         *             if the data center is not in the topology.
+         */
+        private Scope dataCenter(final PhysicalDataCenter dataCenter) {
+            ErrorChecker.throwIfNullArgument(dataCenter, "dataCenter");
+            return Ranking.get(this.dataCenters, dataCenter.getUniqueIdentifier());
+        }
+
+        /**
+         * @param rack
+         *            to get the scope of.
+         * @return the scope.
+         * @throws NoSuchElementException
+         *             if the rack is not in the topology.
+         */
+        private Scope rack(final PhysicalRack rack) {
+            ErrorChecker.throwIfNullArgument(rack, "rack");
+            return Ranking.get(this.racks, rack.getUniqueIdentifier());
+        }
+
+        /**
+         * @param rack
+         *            to add with its hosts.
+         * @param dataCenter
+         *            scope of the data center of the rack.
+         */
+        private void addRack(final PhysicalRack rack, final Scope dataCenter) {
+            final Scope scope = new Scope(dataCenter);
+            this.racks.put(rack.getUniqueIdentifier(), scope);
+            final Iterator<PhysicalHost> it = rack.cpuIterator();
+            while (it.hasNext()) {
+                this.addHost(it.next(), scope);
+            }
+        }
+
+        /**
+         * @param rack
+         *            to remove with its hosts.
+         */
+        private void removeRack(final PhysicalRack rack) {
+            final Scope scope = this.racks.remove(rack.getUniqueIdentifier());
+            if (scope == null) {
+                return;
+            }
+            for (final Entry entry : scope.hosts) {
+                if (this.hosts.get(entry.host.getUniqueIdentifier()) == entry) {
+                    this.hosts.remove(entry.host.getUniqueIdentifier());
+                }
+                entry.scope.parent.remove(entry);
+            }
+        }
+
+        /**
+         * @param host
+         *            to add.
+         * @param rack
+         *            scope of the rack of the host.
+         */
+        private void addHost(final PhysicalHost host, final Scope rack) {
+            final Entry entry = new Entry(host, this.metric.of(host), rack);
+            final Entry previous = this.hosts.put(host.getUniqueIdentifier(), entry);
+            if (previous != null) {
+                previous.scope.remove(previous);
+            }
+            rack.add(entry);
+        }
+
+        /**
+         * @param host
+         *            to remove.
+         */
+        private void removeHost(final PhysicalHost host) {
+            final Entry entry = this.hosts.get(host.getUniqueIdentifier());
+            if (entry != null && entry.host == host) {
+                this.hosts.remove(host.getUniqueIdentifier());
+                entry.scope.remove(entry);
+            }
+        }
+
+        /**
+         * @param scopes
+         *            to look in.
+         * @param id
+         *            of the scope.
+         * @return the scope.
+         * @throws NoSuchElementException
+         *             if there is no scope with the id.
+         */
+        private static Scope get(final Map<String, Scope> scopes, final String id) {
+            final Scope res = scopes.get(id);
+            if (res == null) {
+                throw new NoSuchElementException();
+            }
+            return res;
+        }
+    }
+
+    /**
+     * The hosts of a rack, data center or the root, in order.
+     */
+    private static final class Scope {
+
+        private final Scope parent;
+        private final NavigableSet<Entry> hosts;
+
+        /**
+         * @param parent
+         *            scope that contains this one, or null for the root.
+         */
+        private Scope(final Scope parent) {
+            this.parent = parent;
+            this.hosts = new TreeSet<Entry>(UtilizationIndex.ORDER);
+        }
+
+        /**
+         * @param entry
+         *            to add to this scope and those containing it.
+         */
+        private void add(final Entry entry) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                scope.hosts.add(entry);
+            }
+        }
+
+        /**
+         * @param entry
+         *            to remove from this scope and those containing it.
+         */
+        private void remove(final Entry entry) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                scope.hosts.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * A host with the value of the metric it is ordered by. The value is
+     * only changed while the entry is not in any scope.
+     */
+    private static final class Entry {
+
+        private final PhysicalHost host;
+        private final Scope scope;
+        private double value;
+
+        /**
+         * @param host
+         *            of the entry.
+         * @param value
+         *            of the metric for the host.
+         * @param scope
+         *            of the rack of the host.
+         */
+        private Entry(final PhysicalHost host, final double value, final Scope scope) {
+            this.host = host;
+            this.value = value;
+            this.scope = scope;
+        }
+    }
+}
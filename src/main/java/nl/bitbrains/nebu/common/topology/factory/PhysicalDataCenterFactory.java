@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.topology.factory;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 
@@ -7,6 +8,8 @@ import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
 import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
 import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -18,7 +21,7 @@ import org.jdom2.Element;
  * 
  */
 public class PhysicalDataCenterFactory extends PhysicalResourceFactory implements
-        TopologyFactory<PhysicalDataCenter> {
+        TopologyFactory<PhysicalDataCenter>, StreamingXMLWriter<PhysicalDataCenter> {
 
     public static final String TAG_ELEMENT_ROOT = "dataCenter";
 
@@ -43,6 +46,23 @@ public class PhysicalDataCenterFactory extends PhysicalResourceFactory implement
         return dcElem;
     }
 
+    /**
+     * Writes the {@link PhysicalDataCenter} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeXML(final PhysicalDataCenter object, final XMLOutput out) throws IOException {
+        super.startRootXMLElement(object, PhysicalDataCenterFactory.TAG_ELEMENT_ROOT, out);
+        super.writeXMLElements(object.getRackView(), this.getFactories()
+                .getPhysicalRackFactory(), out);
+        out.endElement();
+    }
+
     /**
      * Creates a {@link PhysicalDataCenter} from XML.
      * 
@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.topology.factory;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 
@@ -7,6 +8,8 @@ import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
 import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -19,12 +22,13 @@ import org.jdom2.Element;
  * 
  */
 public class PhysicalHostFactory extends PhysicalResourceFactory implements
-        TopologyFactory<PhysicalHost> {
+        TopologyFactory<PhysicalHost>, StreamingXMLWriter<PhysicalHost> {
 
     public static final String TAG_ELEMENT_ROOT = "host";
     public static final String TAG_STORES = "stores";
     public static final String TAG_CPU_USAGE = "cpu-usage";
     public static final String TAG_MEM_USAGE = "mem-usage";
+    public static final String TAG_LAST_UPDATE = "last-update";
 
     /**
      * Empty default constructor.
@@ -46,6 +50,10 @@ public class PhysicalHostFactory extends PhysicalResourceFactory implements
                 .toString(object.getCpuUsage())));
         result.addContent(new Element(PhysicalHostFactory.TAG_MEM_USAGE).setText(Double
                 .toString(object.getMemUsage())));
+        if (object.getLastUpdate() != 0) {
+            result.addContent(new Element(PhysicalHostFactory.TAG_LAST_UPDATE).setText(Long
+                    .toString(object.getLastUpdate())));
+        }
         final Element stores = new Element(PhysicalHostFactory.TAG_STORES);
         super.fillXMLElement(stores, object.getDisks(), this.getFactories()
                 .getPhysicalStoreFactory());
@@ -53,6 +61,31 @@ public class PhysicalHostFactory extends PhysicalResourceFactory implements
         return result;
     }
 
+    /**
+     * Writes the {@link PhysicalHost} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeXML(final PhysicalHost object, final XMLOutput out) throws IOException {
+        super.startRootXMLElement(object, PhysicalHostFactory.TAG_ELEMENT_ROOT, out);
+        out.textElement(PhysicalHostFactory.TAG_CPU_USAGE, Double.toString(object.getCpuUsage()));
+        out.textElement(PhysicalHostFactory.TAG_MEM_USAGE, Double.toString(object.getMemUsage()));
+        if (object.getLastUpdate() != 0) {
+            out.textElement(PhysicalHostFactory.TAG_LAST_UPDATE,
+                            Long.toString(object.getLastUpdate()));
+        }
+        out.startElement(PhysicalHostFactory.TAG_STORES);
+        super.writeXMLElements(object.getDiskView(), this.getFactories()
+                .getPhysicalStoreFactory(), out);
+        out.endElement();
+        out.endElement();
+    }
+
     /**
      * Creates a {@link PhysicalHost} from XML.
      * 
@@ -78,9 +111,15 @@ public class PhysicalHostFactory extends PhysicalResourceFactory implements
         if (stringMemUsage != null) {
             memUsage = Double.parseDouble(stringMemUsage);
         }
+        final String stringLastUpdate = xml.getChildText(PhysicalHostFactory.TAG_LAST_UPDATE);
+        long lastUpdate = 0;
+        if (stringLastUpdate != null) {
+            lastUpdate = Long.parseLong(stringLastUpdate);
+        }
 
         final PhysicalHostBuilder builder = new PhysicalHostBuilder();
-        builder.withCpuUsage(cpuUsage).withMemUsage(memUsage).withDisks(disks)
+        builder.withCpuUsage(cpuUsage).withMemUsage(memUsage).withLastUpdate(lastUpdate)
+                .withDisks(disks)
                 .withUuid(idAttribute.getValue());
         return builder;
     }
@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.topology.factory;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 
@@ -8,6 +9,8 @@ import nl.bitbrains.nebu.common.topology.PhysicalHost;
 import nl.bitbrains.nebu.common.topology.PhysicalRack;
 import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -19,7 +22,7 @@ import org.jdom2.Element;
  * 
  */
 public class PhysicalRackFactory extends PhysicalResourceFactory implements
-        TopologyFactory<PhysicalRack> {
+        TopologyFactory<PhysicalRack>, StreamingXMLWriter<PhysicalRack> {
 
     public static final String TAG_ELEMENT_ROOT = "rack";
 
@@ -48,6 +51,25 @@ public class PhysicalRackFactory extends PhysicalResourceFactory implements
         return rackElem;
     }
 
+    /**
+     * Writes the {@link PhysicalRack} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeXML(final PhysicalRack object, final XMLOutput out) throws IOException {
+        super.startRootXMLElement(object, PhysicalRackFactory.TAG_ELEMENT_ROOT, out);
+        super.writeXMLElements(object.getCPUView(), this.getFactories().getPhysicalCPUFactory(),
+                               out);
+        super.writeXMLElements(object.getDiskView(), this.getFactories()
+                .getPhysicalStoreFactory(), out);
+        out.endElement();
+    }
+
     /**
      * Creates a {@link PhysicalRack} from XML.
      * 
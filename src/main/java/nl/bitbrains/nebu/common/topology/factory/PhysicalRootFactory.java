@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.topology.factory;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 
@@ -7,6 +8,8 @@ import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
 import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
 import nl.bitbrains.nebu.common.topology.PhysicalRoot;
 import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -18,7 +21,7 @@ import org.jdom2.Element;
  * 
  */
 public class PhysicalRootFactory extends PhysicalResourceFactory implements
-        TopologyFactory<PhysicalRoot> {
+        TopologyFactory<PhysicalRoot>, StreamingXMLWriter<PhysicalRoot> {
 
     public static final String TAG_ELEMENT_ROOT = "root";
 
@@ -44,6 +47,23 @@ public class PhysicalRootFactory extends PhysicalResourceFactory implements
         return rootElem;
     }
 
+    /**
+     * Writes the {@link PhysicalRoot} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeXML(final PhysicalRoot object, final XMLOutput out) throws IOException {
+        super.startRootXMLElement(object, PhysicalRootFactory.TAG_ELEMENT_ROOT, out);
+        super.writeXMLElements(object.getDataCenterView(), this.getFactories()
+                .getPhysicalDataCenterFactory(), out);
+        out.endElement();
+    }
+
     /**
      * Creates a {@link PhysicalRoot} from XML.
      * 
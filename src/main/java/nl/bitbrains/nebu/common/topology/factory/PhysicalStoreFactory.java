@@ -1,10 +1,13 @@
 package nl.bitbrains.nebu.common.topology.factory;
 
+import java.io.IOException;
 import java.text.ParseException;
 
 import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
 import nl.bitbrains.nebu.common.topology.PhysicalStore;
 import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.util.xml.StreamingXMLWriter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -17,7 +20,7 @@ import org.jdom2.Element;
  * 
  */
 public class PhysicalStoreFactory extends PhysicalResourceFactory implements
-        TopologyFactory<PhysicalStore> {
+        TopologyFactory<PhysicalStore>, StreamingXMLWriter<PhysicalStore> {
 
     public static final String TAG_ELEMENT_ROOT = "store";
     public static final String TAG_CAPACITY = "capacity";
@@ -48,6 +51,23 @@ public class PhysicalStoreFactory extends PhysicalResourceFactory implements
         return result;
     }
 
+    /**
+     * Writes the {@link PhysicalStore} as XML.
+     * 
+     * @param object
+     *            to write as XML.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeXML(final PhysicalStore object, final XMLOutput out) throws IOException {
+        super.startRootXMLElement(object, PhysicalStoreFactory.TAG_ELEMENT_ROOT, out);
+        out.textElement(PhysicalStoreFactory.TAG_CAPACITY, Long.toString(object.getCapacity()));
+        out.textElement(PhysicalStoreFactory.TAG_USED, Long.toString(object.getUsed()));
+        out.endElement();
+    }
+
     /**
      * Creates a {@link PhysicalStore} from XML.
      * 
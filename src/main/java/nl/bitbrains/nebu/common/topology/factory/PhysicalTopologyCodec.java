@@ -0,0 +1,185 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.binary.BinaryReader;
+import nl.bitbrains.nebu.common.util.binary.BinaryWriter;
+
+/**
+ * Converts a {@link PhysicalTopology} to and from the compact binary format.
+ * It stores the same information as the XML written by the
+ * {@link PhysicalRootFactory}: the tree of resources with their identifiers,
+ * the usage of the hosts with the time it was measured and the capacity and
+ * usage of the stores.
+ * 
+ * Every resource is written as its identifier followed by its values and the
+ * number of children of each kind, after which the children follow. When
+ * reading, resources are added to the topology as soon as they have been
+ * read, like the {@link PhysicalTopologyReader} does.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class PhysicalTopologyCodec implements BinaryReader<PhysicalTopology>,
+        BinaryWriter<PhysicalTopology> {
+
+    /**
+     * Empty default constructor.
+     */
+    public PhysicalTopologyCodec() {
+
+    }
+
+    @Override
+    public void toBinary(final PhysicalTopology topology, final BinaryOutput out)
+            throws IOException {
+        out.writeIdentifier(topology.getRoot().getUniqueIdentifier());
+        out.writeVarInt(topology.getDataCenterView().size());
+        for (final PhysicalDataCenter dataCenter : topology.getDataCenterView()) {
+            out.writeIdentifier(dataCenter.getUniqueIdentifier());
+            out.writeVarInt(dataCenter.getRackView().size());
+            for (final PhysicalRack rack : dataCenter.getRackView()) {
+                this.writeRack(rack, out);
+            }
+        }
+    }
+
+    /**
+     * @param rack
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void writeRack(final PhysicalRack rack, final BinaryOutput out) throws IOException {
+        out.writeIdentifier(rack.getUniqueIdentifier());
+        out.writeVarInt(rack.getCPUView().size());
+        for (final PhysicalHost host : rack.getCPUView()) {
+            out.writeIdentifier(host.getUniqueIdentifier());
+            out.writeDouble(host.getCpuUsage());
+            out.writeDouble(host.getMemUsage());
+            out.writeLong(host.getLastUpdate());
+            out.writeVarInt(host.getDiskView().size());
+            for (final PhysicalStore disk : host.getDiskView()) {
+                this.writeStore(disk, out);
+            }
+        }
+        out.writeVarInt(rack.getDiskView().size());
+        for (final PhysicalStore disk : rack.getDiskView()) {
+            this.writeStore(disk, out);
+        }
+    }
+
+    /**
+     * @param store
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void writeStore(final PhysicalStore store, final BinaryOutput out)
+            throws IOException {
+        out.writeIdentifier(store.getUniqueIdentifier());
+        out.writeLong(store.getCapacity());
+        out.writeLong(store.getUsed());
+    }
+
+    @Override
+    public PhysicalTopology fromBinary(final BinaryInput in) throws IOException, ParseException {
+        final PhysicalTopology topology = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid(PhysicalTopologyCodec.readId(in)).build());
+        final int dataCenters = in.readSize();
+        for (int i = 0; i < dataCenters; i++) {
+            final PhysicalDataCenter dataCenter = new PhysicalDataCenterBuilder().withUuid(
+                    PhysicalTopologyCodec.readId(in)).build();
+            topology.addDataCenter(dataCenter);
+            final int racks = in.readSize();
+            for (int j = 0; j < racks; j++) {
+                this.readRack(in, topology, dataCenter);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * @param in
+     *            positioned at a rack.
+     * @param topology
+     *            to add the rack to.
+     * @param dataCenter
+     *            to place the rack in.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the rack is not valid.
+     */
+    private void readRack(final BinaryInput in, final PhysicalTopology topology,
+            final PhysicalDataCenter dataCenter) throws IOException, ParseException {
+        final PhysicalRack rack = new PhysicalRackBuilder()
+                .withUuid(PhysicalTopologyCodec.readId(in)).build();
+        topology.addRackToDataCenter(rack, dataCenter);
+        final int hosts = in.readSize();
+        for (int i = 0; i < hosts; i++) {
+            final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+            builder.withUuid(PhysicalTopologyCodec.readId(in));
+            final PhysicalHost host = builder.withCpuUsage(in.readDouble())
+                    .withMemUsage(in.readDouble()).withLastUpdate(in.readLong()).build();
+            topology.addCPUToRack(host, rack);
+            final int disks = in.readSize();
+            for (int j = 0; j < disks; j++) {
+                topology.addDiskToHost(this.readStore(in), host);
+            }
+        }
+        final int disks = in.readSize();
+        for (int i = 0; i < disks; i++) {
+            topology.addDiskToRack(this.readStore(in), rack);
+        }
+    }
+
+    /**
+     * @param in
+     *            positioned at a store.
+     * @return the store.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the store is not valid.
+     */
+    private PhysicalStore readStore(final BinaryInput in) throws IOException, ParseException {
+        final PhysicalStoreBuilder builder = new PhysicalStoreBuilder();
+        builder.withUuid(PhysicalTopologyCodec.readId(in));
+        return builder.withCapacity(in.readLong()).withUsed(in.readLong()).build();
+    }
+
+    /**
+     * @param in
+     *            positioned at the identifier of a resource.
+     * @return the identifier.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the identifier is missing.
+     */
+    private static String readId(final BinaryInput in) throws IOException, ParseException {
+        final String id = in.readIdentifier();
+        if (id == null) {
+            throw in.error("Missing identifier of resource.");
+        }
+        return id;
+    }
+}
@@ -0,0 +1,376 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRootBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Reads a {@link PhysicalTopology} from the XML written by the
+ * {@link PhysicalRootFactory}, using a StAX pull parser. Unlike the factories,
+ * it does not build a JDOM tree of the document first: every resource is
+ * added to the topology as soon as it has been read, so that large topologies
+ * can be read without keeping the document in memory.
+ * 
+ * The reader accepts the same documents as the factories: unknown elements
+ * inside racks, hosts and stores are skipped, while any element other than a
+ * data center in the root, a rack in a data center or a store in the stores
+ * of a host is rejected.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class PhysicalTopologyReader {
+
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * Creates a reader that does not resolve DTDs or external entities.
+     */
+    public PhysicalTopologyReader() {
+        this.inputFactory = XMLInputFactory.newInstance();
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Reads a topology. The stream is not closed.
+     * 
+     * @param in
+     *            stream containing the XML document.
+     * @return the topology described by the document.
+     * @throws ParseException
+     *             if the document can not be read or is not a valid
+     *             topology.
+     */
+    public PhysicalTopology read(final InputStream in) throws ParseException {
+        ErrorChecker.throwIfNullArgument(in, "input stream");
+        XMLStreamReader xml = null;
+        try {
+            xml = this.inputFactory.createXMLStreamReader(in);
+            if (PhysicalTopologyReader.nextElement(xml) != XMLStreamConstants.START_ELEMENT) {
+                throw new ParseException("Document does not contain a root element.", -1);
+            }
+            return this.readRoot(xml);
+        } catch (final XMLStreamException e) {
+            throw PhysicalTopologyReader.toParseException(e);
+        } finally {
+            PhysicalTopologyReader.close(xml);
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of the root element.
+     * @return the topology.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if the root is not valid.
+     */
+    private PhysicalTopology readRoot(final XMLStreamReader xml) throws XMLStreamException,
+            ParseException {
+        PhysicalTopologyReader.throwIfInvalidElement(xml, PhysicalRootFactory.TAG_ELEMENT_ROOT);
+        final PhysicalTopology topology = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid(PhysicalTopologyReader.getId(xml)).build());
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            this.readDataCenter(xml, topology);
+        }
+        return topology;
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of a data center element.
+     * @param topology
+     *            to add the data center to.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if the data center is not valid.
+     */
+    private void readDataCenter(final XMLStreamReader xml, final PhysicalTopology topology)
+            throws XMLStreamException, ParseException {
+        PhysicalTopologyReader.throwIfInvalidElement(xml,
+                                                     PhysicalDataCenterFactory.TAG_ELEMENT_ROOT);
+        final PhysicalDataCenter dataCenter = new PhysicalDataCenterBuilder().withUuid(
+                PhysicalTopologyReader.getId(xml)).build();
+        topology.addDataCenter(dataCenter);
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            this.readRack(xml, topology, dataCenter);
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of a rack element.
+     * @param topology
+     *            to add the rack to.
+     * @param dataCenter
+     *            to place the rack in.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if the rack is not valid.
+     */
+    private void readRack(final XMLStreamReader xml, final PhysicalTopology topology,
+            final PhysicalDataCenter dataCenter) throws XMLStreamException, ParseException {
+        PhysicalTopologyReader.throwIfInvalidElement(xml, PhysicalRackFactory.TAG_ELEMENT_ROOT);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid(
+                PhysicalTopologyReader.getId(xml)).build();
+        topology.addRackToDataCenter(rack, dataCenter);
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            final String name = xml.getLocalName();
+            if (PhysicalHostFactory.TAG_ELEMENT_ROOT.equals(name)) {
+                this.readHost(xml, topology, rack);
+            } else if (PhysicalStoreFactory.TAG_ELEMENT_ROOT.equals(name)) {
+                topology.addDiskToRack(this.readStore(xml), rack);
+            } else {
+                PhysicalTopologyReader.skipElement(xml);
+            }
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of a host element.
+     * @param topology
+     *            to add the host to.
+     * @param rack
+     *            to place the host in.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if the host is not valid.
+     */
+    private void readHost(final XMLStreamReader xml, final PhysicalTopology topology,
+            final PhysicalRack rack) throws XMLStreamException, ParseException {
+        final PhysicalHostBuilder builder = new PhysicalHostBuilder();
+        builder.withUuid(PhysicalTopologyReader.getId(xml));
+        final List<PhysicalStore> disks = new ArrayList<PhysicalStore>();
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            final String name = xml.getLocalName();
+            if (PhysicalHostFactory.TAG_CPU_USAGE.equals(name)) {
+                builder.withCpuUsage(PhysicalTopologyReader.parseDouble(xml.getElementText()));
+            } else if (PhysicalHostFactory.TAG_MEM_USAGE.equals(name)) {
+                builder.withMemUsage(PhysicalTopologyReader.parseDouble(xml.getElementText()));
+            } else if (PhysicalHostFactory.TAG_LAST_UPDATE.equals(name)) {
+                builder.withLastUpdate(PhysicalTopologyReader.parseLong(xml.getElementText()));
+            } else if (PhysicalHostFactory.TAG_STORES.equals(name)) {
+                this.readStores(xml, disks);
+            } else {
+                PhysicalTopologyReader.skipElement(xml);
+            }
+        }
+        final PhysicalHost host = builder.build();
+        topology.addCPUToRack(host, rack);
+        for (final PhysicalStore disk : disks) {
+            topology.addDiskToHost(disk, host);
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of the stores element of a host.
+     * @param disks
+     *            list to add the stores to.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if a store is not valid.
+     */
+    private void readStores(final XMLStreamReader xml, final List<PhysicalStore> disks)
+            throws XMLStreamException, ParseException {
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            disks.add(this.readStore(xml));
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of a store element.
+     * @return the store.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     * @throws ParseException
+     *             if the store is not valid.
+     */
+    private PhysicalStore readStore(final XMLStreamReader xml) throws XMLStreamException,
+            ParseException {
+        PhysicalTopologyReader.throwIfInvalidElement(xml, PhysicalStoreFactory.TAG_ELEMENT_ROOT);
+        final PhysicalStoreBuilder builder = new PhysicalStoreBuilder();
+        builder.withUuid(PhysicalTopologyReader.getId(xml));
+        while (PhysicalTopologyReader.nextElement(xml) == XMLStreamConstants.START_ELEMENT) {
+            final String name = xml.getLocalName();
+            if (PhysicalStoreFactory.TAG_CAPACITY.equals(name)) {
+                builder.withCapacity(PhysicalTopologyReader.parseLong(xml.getElementText()));
+            } else if (PhysicalStoreFactory.TAG_USED.equals(name)) {
+                builder.withUsed(PhysicalTopologyReader.parseLong(xml.getElementText()));
+            } else {
+                PhysicalTopologyReader.skipElement(xml);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Moves to the next start or end tag, skipping text and comments.
+     * 
+     * @param xml
+     *            to move forward.
+     * @return the type of the event the reader is now positioned at.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     */
+    private static int nextElement(final XMLStreamReader xml) throws XMLStreamException {
+        int event = xml.next();
+        while (event != XMLStreamConstants.START_ELEMENT
+                && event != XMLStreamConstants.END_ELEMENT
+                && event != XMLStreamConstants.END_DOCUMENT) {
+            event = xml.next();
+        }
+        return event;
+    }
+
+    /**
+     * Skips the current element and all of its content.
+     * 
+     * @param xml
+     *            positioned at the start of the element to skip.
+     * @throws XMLStreamException
+     *             if the document can not be read.
+     */
+    private static void skipElement(final XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of an element.
+     * @param elementName
+     *            should match the name of the element.
+     * @throws ParseException
+     *             if they do not match.
+     */
+    private static void throwIfInvalidElement(final XMLStreamReader xml,
+            final String elementName) throws ParseException {
+        if (!xml.getLocalName().equals(elementName)) {
+            throw new ParseException("Expected element with name '" + elementName + "', got '"
+                    + xml.getLocalName() + "'.", PhysicalTopologyReader.getOffset(xml
+                    .getLocation()));
+        }
+    }
+
+    /**
+     * @param xml
+     *            positioned at the start of an element.
+     * @return the identifier of the element.
+     * @throws ParseException
+     *             if the element has no identifier.
+     */
+    private static String getId(final XMLStreamReader xml) throws ParseException {
+        final String id = xml.getAttributeValue(null, IdentifiableFactory.TAG_ID);
+        if (id == null) {
+            throw new ParseException("Missing required attribute " + IdentifiableFactory.TAG_ID
+                    + ".", PhysicalTopologyReader.getOffset(xml.getLocation()));
+        }
+        return id;
+    }
+
+    /**
+     * @param text
+     *            to parse.
+     * @return the parsed number.
+     * @throws ParseException
+     *             if the text is not a number.
+     */
+    private static double parseDouble(final String text) throws ParseException {
+        try {
+            return Double.parseDouble(text);
+        } catch (final NumberFormatException e) {
+            throw new ParseException("Invalid number '" + text + "'.", -1);
+        }
+    }
+
+    /**
+     * @param text
+     *            to parse.
+     * @return the parsed number.
+     * @throws ParseException
+     *             if the text is not a number.
+     */
+    private static long parseLong(final String text) throws ParseException {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (final NumberFormatException e) {
+            throw new ParseException("Invalid number '" + text + "'.", -1);
+        }
+    }
+
+    /**
+     * @param e
+     *            exception to convert.
+     * @return a {@link ParseException} with e as cause.
+     */
+    private static ParseException toParseException(final XMLStreamException e) {
+        final ParseException res = new ParseException(e.getMessage(),
+                PhysicalTopologyReader.getOffset(e.getLocation()));
+        res.initCause(e);
+        return res;
+    }
+
+    /**
+     * @param location
+     *            in the document, may be null.
+     * @return the character offset of the location, or -1 if it is unknown.
+     */
+    private static int getOffset(final Location location) {
+        if (location == null) {
+            return -1;
+        }
+        return location.getCharacterOffset();
+    }
+
+    /**
+     * Closes the reader, ignoring any errors.
+     * 
+     * @param xml
+     *            to close, may be null.
+     */
+    private static void close(final XMLStreamReader xml) {
+        if (xml != null) {
+            try {
+                xml.close();
+            } catch (final XMLStreamException e) {
+                // Nothing left to clean up.
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.topology.TopologyDiff;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.HostState;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.RackState;
+import nl.bitbrains.nebu.common.topology.TopologyDiff.StoreState;
+import nl.bitbrains.nebu.common.topology.TopologyDiffBuilder;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.binary.BinaryReader;
+import nl.bitbrains.nebu.common.util.binary.BinaryWriter;
+
+/**
+ * Converts a {@link TopologyDiff} to and from the compact binary format used
+ * by the {@link PhysicalTopologyCodec}.
+ * 
+ * Each list of the diff is written as its size followed by its entries. The
+ * identifiers of parents are interned like all other identifiers, so a diff
+ * touching many resources below the same rack only stores its identifier
+ * once.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TopologyDiffCodec implements BinaryReader<TopologyDiff>,
+        BinaryWriter<TopologyDiff> {
+
+    /**
+     * Empty default constructor.
+     */
+    public TopologyDiffCodec() {
+
+    }
+
+    @Override
+    public void toBinary(final TopologyDiff diff, final BinaryOutput out) throws IOException {
+        TopologyDiffCodec.writeIds(diff.getDataCenters(), out);
+        out.writeVarInt(diff.getRacks().size());
+        for (final RackState rack : diff.getRacks()) {
+            out.writeIdentifier(rack.getId());
+            out.writeIdentifier(rack.getDataCenter());
+        }
+        out.writeVarInt(diff.getHosts().size());
+        for (final HostState host : diff.getHosts()) {
+            out.writeIdentifier(host.getId());
+            out.writeIdentifier(host.getRack());
+            out.writeDouble(host.getCpuUsage());
+            out.writeDouble(host.getMemUsage());
+            out.writeLong(host.getLastUpdate());
+        }
+        out.writeVarInt(diff.getStores().size());
+        for (final StoreState store : diff.getStores()) {
+            out.writeIdentifier(store.getId());
+            out.writeIdentifier(store.getParent());
+            out.writeBoolean(store.isOnHost());
+            out.writeLong(store.getCapacity());
+            out.writeLong(store.getUsed());
+        }
+        TopologyDiffCodec.writeIds(diff.getRemovedDataCenters(), out);
+        TopologyDiffCodec.writeIds(diff.getRemovedRacks(), out);
+        TopologyDiffCodec.writeIds(diff.getRemovedHosts(), out);
+        TopologyDiffCodec.writeIds(diff.getRemovedStores(), out);
+    }
+
+    /**
+     * @param ids
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    private static void writeIds(final List<String> ids, final BinaryOutput out)
+            throws IOException {
+        out.writeVarInt(ids.size());
+        for (final String id : ids) {
+            out.writeIdentifier(id);
+        }
+    }
+
+    @Override
+    public TopologyDiff fromBinary(final BinaryInput in) throws IOException, ParseException {
+        final TopologyDiffBuilder builder = new TopologyDiffBuilder();
+        int size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withDataCenter(TopologyDiffCodec.readId(in));
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withRack(TopologyDiffCodec.readId(in), TopologyDiffCodec.readId(in));
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withHost(TopologyDiffCodec.readId(in), TopologyDiffCodec.readId(in),
+                             in.readDouble(), in.readDouble(), in.readLong());
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withStore(TopologyDiffCodec.readId(in), TopologyDiffCodec.readId(in),
+                              in.readBoolean(), in.readLong(), in.readLong());
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withRemovedDataCenter(TopologyDiffCodec.readId(in));
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withRemovedRack(TopologyDiffCodec.readId(in));
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withRemovedHost(TopologyDiffCodec.readId(in));
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            builder.withRemovedStore(TopologyDiffCodec.readId(in));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param in
+     *            positioned at the identifier of a resource.
+     * @return the identifier.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the identifier is missing.
+     */
+    private static String readId(final BinaryInput in) throws IOException, ParseException {
+        final String id = in.readIdentifier();
+        if (id == null) {
+            throw in.error("Missing identifier of resource.");
+        }
+        return id;
+    }
+}
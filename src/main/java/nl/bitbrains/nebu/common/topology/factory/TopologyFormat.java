@@ -0,0 +1,121 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
+
+/**
+ * The formats in which a complete {@link PhysicalTopology} can be exchanged.
+ * Both formats are written and read without building an intermediate
+ * representation of the whole document.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public enum TopologyFormat {
+
+    /**
+     * The XML document written by the {@link PhysicalRootFactory}.
+     */
+    XML {
+        @Override
+        void writeTopology(final PhysicalTopology topology, final OutputStream out)
+                throws IOException {
+            final XMLOutput xml = new XMLOutput(out);
+            xml.startDocument();
+            xml.write(topology.getRoot(), TopologyFactories.createDefault()
+                    .getPhysicalRootFactory());
+            xml.endDocument();
+        }
+
+        @Override
+        PhysicalTopology readTopology(final InputStream in) throws ParseException {
+            return new PhysicalTopologyReader().read(in);
+        }
+    },
+
+    /**
+     * The compact binary format written by the {@link PhysicalTopologyCodec}.
+     */
+    BINARY {
+        @Override
+        void writeTopology(final PhysicalTopology topology, final OutputStream out)
+                throws IOException {
+            final BinaryOutput binary = new BinaryOutput(out);
+            binary.writeHeader();
+            new PhysicalTopologyCodec().toBinary(topology, binary);
+            binary.flush();
+        }
+
+        @Override
+        PhysicalTopology readTopology(final InputStream in) throws IOException,
+                ParseException {
+            final BinaryInput binary = new BinaryInput(in);
+            binary.readHeader();
+            return new PhysicalTopologyCodec().fromBinary(binary);
+        }
+    };
+
+    /**
+     * Writes a topology in this format. The stream is flushed, but not
+     * closed.
+     * 
+     * @param topology
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void write(final PhysicalTopology topology, final OutputStream out)
+            throws IOException {
+        ErrorChecker.throwIfNullArgument(topology, "topology");
+        ErrorChecker.throwIfNullArgument(out, "output stream");
+        this.writeTopology(topology, out);
+    }
+
+    /**
+     * Reads a topology in this format. The stream is not closed.
+     * 
+     * @param in
+     *            to read from.
+     * @return the topology.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input is not a valid topology in this format.
+     */
+    public PhysicalTopology read(final InputStream in) throws IOException, ParseException {
+        ErrorChecker.throwIfNullArgument(in, "input stream");
+        return this.readTopology(in);
+    }
+
+    /**
+     * @param topology
+     *            to write.
+     * @param out
+     *            to write to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    abstract void writeTopology(PhysicalTopology topology, OutputStream out)
+            throws IOException;
+
+    /**
+     * @param in
+     *            to read from.
+     * @return the topology.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input is not valid.
+     */
+    abstract PhysicalTopology readTopology(InputStream in) throws IOException, ParseException;
+}
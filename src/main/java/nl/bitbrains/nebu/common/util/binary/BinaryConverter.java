@@ -0,0 +1,210 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * The binary counterpart of
+ * {@link nl.bitbrains.nebu.common.util.xml.XMLConverter}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public abstract class BinaryConverter {
+
+    /**
+     * Upper bound of the capacity that is allocated up front for a collection
+     * that is read, so that a corrupt size can not exhaust the heap before the
+     * input runs out.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    /**
+     * Converts an object to a complete binary document, including the header.
+     * 
+     * @param object
+     *            to convert.
+     * @param factory
+     *            to use in converting the object.
+     * @param <T>
+     *            type of the object.
+     * @return the binary document.
+     */
+    public static <T> byte[] toBytes(final T object, final BinaryWriter<T> factory) {
+        ErrorChecker.throwIfNullArgument(factory, "factory");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BinaryOutput out = new BinaryOutput(bytes);
+        try {
+            out.writeHeader();
+            factory.toBinary(object, out);
+            out.flush();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Writing to memory failed.", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an object from a complete binary document, as written by
+     * {@link #toBytes(Object, BinaryWriter)}.
+     * 
+     * @param bytes
+     *            the binary document.
+     * @param factory
+     *            to use in reading the object.
+     * @param <T>
+     *            type returned by the factory.
+     * @return what the factory read.
+     * @throws ParseException
+     *             if the document is not valid.
+     */
+    public static <T> T fromBytes(final byte[] bytes, final BinaryReader<T> factory)
+            throws ParseException {
+        ErrorChecker.throwIfNullArgument(bytes, "bytes");
+        ErrorChecker.throwIfNullArgument(factory, "factory");
+        final BinaryInput in = new BinaryInput(new ByteArrayInputStream(bytes));
+        try {
+            in.readHeader();
+            final T res = factory.fromBinary(in);
+            if (in.getOffset() != bytes.length) {
+                throw in.error("Unexpected data after the end of the document.");
+            }
+            return res;
+        } catch (final IOException e) {
+            throw new IllegalStateException("Reading from memory failed.", e);
+        }
+    }
+
+    /**
+     * Writes a Collection in the binary format.
+     * 
+     * @param list
+     *            to write.
+     * @param factory
+     *            to use in converting individual elements.
+     * @param out
+     *            to write to.
+     * @param <T>
+     *            type of the elements in the list.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public static <T> void writeCollection(final Collection<T> list,
+            final BinaryWriter<T> factory, final BinaryOutput out) throws IOException {
+        ErrorChecker.throwIfNullArgument(list, "list");
+        ErrorChecker.throwIfNullArgument(factory, "factory");
+        ErrorChecker.throwIfNullArgument(out, "out");
+        out.writeVarInt(list.size());
+        for (final T object : list) {
+            factory.toBinary(object, out);
+        }
+    }
+
+    /**
+     * Reads a list written by
+     * {@link #writeCollection(Collection, BinaryWriter, BinaryOutput)}.
+     * 
+     * @param in
+     *            to read from.
+     * @param factory
+     *            to use in reading individual elements.
+     * @param <T>
+     *            the type to place in the list.
+     * @return the read list.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if one element can not be parsed.
+     */
+    public static <T> List<T> readList(final BinaryInput in,
+            final BinaryReader<IBuilder<T>> factory) throws IOException, ParseException {
+        ErrorChecker.throwIfNullArgument(in, "in");
+        ErrorChecker.throwIfNullArgument(factory, "factory");
+        final int size = in.readSize();
+        final List<T> list = new ArrayList<T>(Math.min(size,
+                                                        BinaryConverter.MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            list.add(factory.fromBinary(in).build());
+        }
+        return list;
+    }
+
+    /**
+     * Writes a {@link Map} in the binary format.
+     * 
+     * @param map
+     *            The map to write.
+     * @param keyFactory
+     *            The {@link BinaryWriter} that should be used for the keys.
+     * @param valFactory
+     *            The {@link BinaryWriter} that should be used for the values.
+     * @param out
+     *            to write to.
+     * @param <K>
+     *            Key type of map.
+     * @param <V>
+     *            Value type of map.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public static <K, V> void writeMap(final Map<K, V> map, final BinaryWriter<K> keyFactory,
+            final BinaryWriter<V> valFactory, final BinaryOutput out) throws IOException {
+        ErrorChecker.throwIfNullArgument(map, "map");
+        ErrorChecker.throwIfNullArgument(keyFactory, "key factory");
+        ErrorChecker.throwIfNullArgument(valFactory, "value factory");
+        ErrorChecker.throwIfNullArgument(out, "out");
+        out.writeVarInt(map.size());
+        for (final Entry<K, V> entry : map.entrySet()) {
+            keyFactory.toBinary(entry.getKey(), out);
+            valFactory.toBinary(entry.getValue(), out);
+        }
+    }
+
+    /**
+     * Reads a {@link Map} written by
+     * {@link #writeMap(Map, BinaryWriter, BinaryWriter, BinaryOutput)}.
+     * 
+     * @param in
+     *            to read from.
+     * @param keyFactory
+     *            The {@link BinaryReader} that should be used for the keys.
+     * @param valFactory
+     *            The {@link BinaryReader} that should be used for the values.
+     * @param <K>
+     *            Key type of map.
+     * @param <V>
+     *            Value type of map.
+     * @return the read {@link Map}.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             when an entry can not be parsed.
+     */
+    public static <K, V> Map<K, V> readMap(final BinaryInput in,
+            final BinaryReader<IBuilder<K>> keyFactory,
+            final BinaryReader<IBuilder<V>> valFactory) throws IOException, ParseException {
+        ErrorChecker.throwIfNullArgument(in, "in");
+        ErrorChecker.throwIfNullArgument(keyFactory, "key factory");
+        ErrorChecker.throwIfNullArgument(valFactory, "value factory");
+        final int size = in.readSize();
+        final Map<K, V> map = new HashMap<K, V>(Math.min(size,
+                                                          BinaryConverter.MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < size; i++) {
+            final K key = keyFactory.fromBinary(in).build();
+            final V val = valFactory.fromBinary(in).build();
+            map.put(key, val);
+        }
+        return map;
+    }
+}
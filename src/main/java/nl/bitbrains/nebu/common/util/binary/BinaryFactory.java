@@ -0,0 +1,17 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import nl.bitbrains.nebu.common.interfaces.IBuilder;
+
+/**
+ * Interface for factory classes that can convert objects of a specific type to
+ * the compact binary format and vice versa, the binary counterpart of
+ * {@link nl.bitbrains.nebu.common.util.xml.XMLFactory}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ * @param <T>
+ *            Objecttype to make a factory for.
+ */
+public interface BinaryFactory<T> extends BinaryReader<IBuilder<T>>, BinaryWriter<T> {
+
+}
@@ -0,0 +1,263 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Reads the compact binary format written by {@link BinaryOutput} from an
+ * {@link InputStream}. The input is buffered, so the stream may have been
+ * read beyond the last value that was read.
+ * 
+ * Input that does not follow the format, including input that ends too
+ * early, results in a {@link ParseException} with the offset of the byte at
+ * which the problem was found.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class BinaryInput {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long offset;
+    private final List<String> identifiers;
+
+    /**
+     * @param in
+     *            stream to read from.
+     */
+    public BinaryInput(final InputStream in) {
+        ErrorChecker.throwIfNullArgument(in, "input stream");
+        this.in = in;
+        this.buffer = new byte[BinaryInput.BUFFER_SIZE];
+        this.identifiers = new ArrayList<String>();
+    }
+
+    /**
+     * Reads and checks the magic bytes and version of the format.
+     * 
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input is not in a supported version of the format.
+     */
+    public void readHeader() throws IOException, ParseException {
+        for (final byte b : BinaryOutput.MAGIC) {
+            if (this.readByte() != b) {
+                throw this.error("Input is not in the binary format.");
+            }
+        }
+        final int version = this.readVarInt();
+        if (version != BinaryOutput.VERSION) {
+            throw this.error("Unsupported version " + version + ".");
+        }
+    }
+
+    /**
+     * @return the next byte.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended.
+     */
+    public byte readByte() throws IOException, ParseException {
+        if (this.position == this.limit && !this.fill()) {
+            throw this.error("Unexpected end of input.");
+        }
+        return this.buffer[this.position++];
+    }
+
+    /**
+     * @return the next byte as a boolean.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended or the byte is not a boolean.
+     */
+    public boolean readBoolean() throws IOException, ParseException {
+        final byte value = this.readByte();
+        if (value != 0 && value != 1) {
+            throw this.error("Invalid boolean " + value + ".");
+        }
+        return value == 1;
+    }
+
+    /**
+     * @return the next integer written by
+     *         {@link BinaryOutput#writeVarInt(int)}.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended or the integer is too long.
+     */
+    public int readVarInt() throws IOException, ParseException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            final byte b = this.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw this.error("Variable length integer is too long.");
+    }
+
+    /**
+     * @return the next integer written by
+     *         {@link BinaryOutput#writeSignedVarInt(int)}.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended or the integer is too long.
+     */
+    public int readSignedVarInt() throws IOException, ParseException {
+        final int value = this.readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return the next size, which is a non-negative variable length integer.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended or the size is negative.
+     */
+    public int readSize() throws IOException, ParseException {
+        final int size = this.readVarInt();
+        if (size < 0) {
+            throw this.error("Invalid size " + (size & 0xFFFFFFFFL) + ".");
+        }
+        return size;
+    }
+
+    /**
+     * @return the next long.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended.
+     */
+    public long readLong() throws IOException, ParseException {
+        long value = 0;
+        for (int i = 0; i < Long.SIZE / Byte.SIZE; i++) {
+            value = (value << Byte.SIZE) | (this.readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return the next double.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended.
+     */
+    public double readDouble() throws IOException, ParseException {
+        return Double.longBitsToDouble(this.readLong());
+    }
+
+    /**
+     * @return the next string, which may be null.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended.
+     */
+    public String readString() throws IOException, ParseException {
+        final int size = this.readSize();
+        if (size == 0) {
+            return null;
+        }
+        final int length = size - 1;
+        if (length <= this.limit - this.position) {
+            final String res = new String(this.buffer, this.position, length,
+                    StandardCharsets.UTF_8);
+            this.position += length;
+            return res;
+        }
+        final byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (this.position == this.limit && !this.fill()) {
+                throw this.error("Unexpected end of input.");
+            }
+            final int chunk = Math.min(length - read, this.limit - this.position);
+            System.arraycopy(this.buffer, this.position, bytes, read, chunk);
+            this.position += chunk;
+            read += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the next identifier written by
+     *         {@link BinaryOutput#writeIdentifier(String)}, which may be null.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             if the input has ended or refers to an unknown identifier.
+     */
+    public String readIdentifier() throws IOException, ParseException {
+        final int reference = this.readSize();
+        if (reference == BinaryOutput.NULL_REFERENCE) {
+            return null;
+        } else if (reference == BinaryOutput.NEW_REFERENCE) {
+            final String identifier = this.readString();
+            if (identifier == null) {
+                throw this.error("Identifier is missing.");
+            }
+            this.identifiers.add(identifier);
+            return identifier;
+        }
+        final int index = reference - BinaryOutput.FIRST_REFERENCE;
+        if (index >= this.identifiers.size()) {
+            throw this.error("Unknown identifier reference " + index + ".");
+        }
+        return this.identifiers.get(index);
+    }
+
+    /**
+     * @return the number of bytes read so far.
+     */
+    public long getOffset() {
+        return this.offset + this.position;
+    }
+
+    /**
+     * @param message
+     *            describing what is wrong with the input.
+     * @return a {@link ParseException} at the current offset.
+     */
+    public ParseException error(final String message) {
+        return new ParseException(message, (int) Math.min(Integer.MAX_VALUE, this.getOffset()));
+    }
+
+    /**
+     * Refills the buffer from the underlying stream.
+     * 
+     * @return false iff the stream has ended.
+     * @throws IOException
+     *             if reading fails.
+     */
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.position = 0;
+        this.limit = 0;
+        final int read = this.in.read(this.buffer);
+        if (read <= 0) {
+            return false;
+        }
+        this.limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,230 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+/**
+ * Writes the compact binary format to an {@link OutputStream}. Sizes are
+ * written as variable length integers, numbers are written in their raw big
+ * endian form and identifiers are interned: every identifier is written in
+ * full only once, after which it is referred to by its index in the table of
+ * identifiers written so far.
+ * 
+ * The output is buffered; it is only guaranteed to have reached the
+ * underlying stream after {@link #flush()} has been called.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class BinaryOutput implements Flushable, Closeable {
+
+    static final byte[] MAGIC = { 'N', 'E', 'B', 'U' };
+    /**
+     * Version of the format, to be raised whenever any writer changes what it
+     * writes. Version 2 added the time of the last update to each host.
+     */
+    static final int VERSION = 2;
+
+    static final int NULL_REFERENCE = 0;
+    static final int NEW_REFERENCE = 1;
+    static final int FIRST_REFERENCE = 2;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private final Map<String, Integer> identifiers;
+
+    /**
+     * @param out
+     *            stream to write to.
+     */
+    public BinaryOutput(final OutputStream out) {
+        ErrorChecker.throwIfNullArgument(out, "output stream");
+        this.out = out;
+        this.buffer = new byte[BinaryOutput.BUFFER_SIZE];
+        this.identifiers = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Writes the magic bytes and version that identify the format.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeHeader() throws IOException {
+        for (final byte b : BinaryOutput.MAGIC) {
+            this.writeByte(b);
+        }
+        this.writeVarInt(BinaryOutput.VERSION);
+    }
+
+    /**
+     * @param value
+     *            to write as a single byte.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeByte(final int value) throws IOException {
+        if (this.position == this.buffer.length) {
+            this.flushBuffer();
+        }
+        this.buffer[this.position++] = (byte) value;
+    }
+
+    /**
+     * @param value
+     *            to write as a single byte.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeBoolean(final boolean value) throws IOException {
+        this.writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes an integer in 7 bit groups, so that small non-negative values,
+     * such as sizes, take a single byte. Negative values take five bytes.
+     * 
+     * @param value
+     *            to write.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeVarInt(final int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            this.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        this.writeByte(remaining);
+    }
+
+    /**
+     * Writes an integer that may be negative, so that values close to zero
+     * take a single byte.
+     * 
+     * @param value
+     *            to write.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeSignedVarInt(final int value) throws IOException {
+        this.writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * @param value
+     *            to write in eight bytes.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeLong(final long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            this.writeByte((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Writes the raw bits of a double, so that it is read back exactly.
+     * 
+     * @param value
+     *            to write in eight bytes.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeDouble(final double value) throws IOException {
+        this.writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * @param value
+     *            to write as UTF-8, may be null.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeString(final String value) throws IOException {
+        if (value == null) {
+            this.writeVarInt(0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeVarInt(bytes.length + 1);
+        this.writeBytes(bytes);
+    }
+
+    /**
+     * Writes an identifier. Only the first occurrence of an identifier is
+     * written in full, later occurrences refer back to it.
+     * 
+     * @param identifier
+     *            to write, may be null.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void writeIdentifier(final String identifier) throws IOException {
+        if (identifier == null) {
+            this.writeVarInt(BinaryOutput.NULL_REFERENCE);
+            return;
+        }
+        final Integer index = this.identifiers.get(identifier);
+        if (index != null) {
+            this.writeVarInt(BinaryOutput.FIRST_REFERENCE + index);
+        } else {
+            this.identifiers.put(identifier, this.identifiers.size());
+            this.writeVarInt(BinaryOutput.NEW_REFERENCE);
+            this.writeString(identifier);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.flushBuffer();
+        this.out.close();
+    }
+
+    /**
+     * @param bytes
+     *            to write.
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void writeBytes(final byte[] bytes) throws IOException {
+        if (bytes.length > this.buffer.length - this.position) {
+            this.flushBuffer();
+            if (bytes.length > this.buffer.length) {
+                this.out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+        this.position += bytes.length;
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying stream.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void flushBuffer() throws IOException {
+        if (this.position > 0) {
+            this.out.write(this.buffer, 0, this.position);
+            this.position = 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Interface for factory classes that can read an object of a specific type
+ * from the compact binary format.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ * @param <T>
+ *            Objecttype to make a reader for.
+ */
+public interface BinaryReader<T> {
+
+    /**
+     * @param in
+     *            positioned at the binary representation of an object.
+     * @return the object as represented in the input.
+     * @throws IOException
+     *             if reading fails.
+     * @throws ParseException
+     *             when the binary representation is invalid.
+     */
+    T fromBinary(BinaryInput in) throws IOException, ParseException;
+}
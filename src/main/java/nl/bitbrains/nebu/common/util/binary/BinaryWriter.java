@@ -0,0 +1,25 @@
+package nl.bitbrains.nebu.common.util.binary;
+
+import java.io.IOException;
+
+/**
+ * Interface for factory classes that can write an object in the compact
+ * binary format.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ * @param <T>
+ *            Objecttype to make a writer for.
+ */
+public interface BinaryWriter<T> {
+
+    /**
+     * @param object
+     *            the object to write.
+     * @param out
+     *            to write the binary representation to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    void toBinary(T object, BinaryOutput out) throws IOException;
+}
@@ -0,0 +1,27 @@
+package nl.bitbrains.nebu.common.util.xml;
+
+import java.io.IOException;
+
+/**
+ * Interface for factory classes that can write the XML representation of an
+ * object directly to an {@link XMLOutput}, instead of building an element
+ * first. The written XML must be the same as that of
+ * {@link XMLWriter#toXML(Object)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ * @param <T>
+ *            Objecttype to make a writer for.
+ */
+public interface StreamingXMLWriter<T> extends XMLWriter<T> {
+
+    /**
+     * @param object
+     *            the object to write as XML.
+     * @param out
+     *            to write the XML to.
+     * @throws IOException
+     *             if writing fails.
+     */
+    void writeXML(T object, XMLOutput out) throws IOException;
+}
@@ -1,5 +1,6 @@
 package nl.bitbrains.nebu.common.util.xml;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -101,6 +102,56 @@ public abstract class XMLConverter {
         return elem;
     }
 
+    /**
+     * Writes a Collection as XML, the streaming counterpart of
+     * {@link #convertCollectionToJDOMElement(Collection, XMLWriter)}.
+     * 
+     * @param list
+     *            to write.
+     * @param factory
+     *            to use in converting individual elements.
+     * @param out
+     *            to write to.
+     * @param <T>
+     *            type of the elements in the list.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public static <T> void writeCollection(final Collection<T> list,
+            final XMLWriter<T> factory, final XMLOutput out) throws IOException {
+        XMLConverter.writeCollection(list, factory, XMLConverter.TAG_LIST, out);
+    }
+
+    /**
+     * Writes a Collection as XML, the streaming counterpart of
+     * {@link #convertCollectionToJDOMElement(Collection, XMLWriter, String, String)}
+     * .
+     * 
+     * @param list
+     *            to write.
+     * @param factory
+     *            to use in converting individual elements.
+     * @param rootElem
+     *            name of root element.
+     * @param out
+     *            to write to.
+     * @param <T>
+     *            type of the elements in the list.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public static <T> void writeCollection(final Collection<T> list,
+            final XMLWriter<T> factory, final String rootElem, final XMLOutput out)
+            throws IOException {
+        ErrorChecker.throwIfNullArgument(list, rootElem);
+        ErrorChecker.throwIfNullArgument(out, "out");
+        out.startElement(rootElem);
+        for (final T object : list) {
+            out.write(object, factory);
+        }
+        out.endElement();
+    }
+
     /**
      * Convert a JDOM list to a Java list.
      * 
@@ -167,6 +218,48 @@ public abstract class XMLConverter {
         return root;
     }
 
+    /**
+     * Writes a {@link Map} as XML, the streaming counterpart of
+     * {@link #convertMapToJDOMElement(Map, XMLWriter, XMLWriter)}.
+     * 
+     * @param map
+     *            The map to write.
+     * @param keyFactory
+     *            The {@link XMLWriter} that should be used to convert the keys
+     *            to XML.
+     * @param valFactory
+     *            The {@link XMLWriter} that should be used to convert the
+     *            values to XML.
+     * @param out
+     *            to write to.
+     * @param <K>
+     *            Key type of map.
+     * @param <V>
+     *            Value type of map.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public static <K, V> void writeMap(final Map<K, V> map, final XMLWriter<K> keyFactory,
+            final XMLWriter<V> valFactory, final XMLOutput out) throws IOException {
+        ErrorChecker.throwIfNullArgument(map, "map");
+        ErrorChecker.throwIfNullArgument(keyFactory, "key factory");
+        ErrorChecker.throwIfNullArgument(valFactory, "value factory");
+        ErrorChecker.throwIfNullArgument(out, "out");
+
+        out.startElement(XMLConverter.TAG_MAP);
+        for (final Entry<K, V> entry : map.entrySet()) {
+            out.startElement(XMLConverter.TAG_MAP_ENTRY);
+            out.startElement(XMLConverter.TAG_MAP_ENTRY_KEY);
+            out.write(entry.getKey(), keyFactory);
+            out.endElement();
+            out.startElement(XMLConverter.TAG_MAP_ENTRY_VALUE);
+            out.write(entry.getValue(), valFactory);
+            out.endElement();
+            out.endElement();
+        }
+        out.endElement();
+    }
+
     /**
      * Convert an JDOM {@link Element} to a {@link Map}.
      * 
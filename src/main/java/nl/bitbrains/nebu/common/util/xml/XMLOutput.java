@@ -0,0 +1,312 @@
+package nl.bitbrains.nebu.common.util.xml;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import nl.bitbrains.nebu.common.util.ErrorChecker;
+
+import org.jdom2.Attribute;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.Text;
+
+/**
+ * Writes XML incrementally to a {@link Writer}, without building a JDOM tree
+ * first. The output is byte for byte the same as that of a JDOM
+ * {@link org.jdom2.output.XMLOutputter} with its default format, so that
+ * documents written by either can be used interchangeably.
+ * 
+ * Elements are written by calling {@link #startElement(String)}, followed by
+ * its attributes, its content and finally {@link #endElement()}. Attributes
+ * can only be added before any content of the element has been written.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class XMLOutput implements Flushable, Closeable {
+
+    public static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    public static final String LINE_SEPARATOR = "\r\n";
+
+    private final Writer out;
+    private final Deque<String> openElements;
+    private boolean startTagOpen;
+
+    /**
+     * @param out
+     *            stream to write UTF-8 encoded XML to.
+     */
+    public XMLOutput(final OutputStream out) {
+        this(XMLOutput.toWriter(out));
+    }
+
+    /**
+     * @param out
+     *            writer to write the XML to.
+     */
+    public XMLOutput(final Writer out) {
+        ErrorChecker.throwIfNullArgument(out, "writer");
+        this.out = out;
+        this.openElements = new ArrayDeque<String>();
+    }
+
+    /**
+     * Writes the XML declaration.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void startDocument() throws IOException {
+        this.out.write(XMLOutput.DECLARATION);
+        this.out.write(XMLOutput.LINE_SEPARATOR);
+    }
+
+    /**
+     * Ends the document and flushes the output.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void endDocument() throws IOException {
+        if (!this.openElements.isEmpty()) {
+            throw new IllegalStateException("Element '" + this.openElements.peek()
+                    + "' has not been ended.");
+        }
+        this.out.write(XMLOutput.LINE_SEPARATOR);
+        this.flush();
+    }
+
+    /**
+     * @param name
+     *            of the element to start.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void startElement(final String name) throws IOException {
+        ErrorChecker.throwIfNullArgument(name, "name");
+        this.closeStartTag();
+        this.out.write('<');
+        this.out.write(name);
+        this.openElements.push(name);
+        this.startTagOpen = true;
+    }
+
+    /**
+     * @param name
+     *            of the attribute.
+     * @param value
+     *            of the attribute.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void attribute(final String name, final String value) throws IOException {
+        ErrorChecker.throwIfNullArgument(name, "name");
+        ErrorChecker.throwIfNullArgument(value, "value");
+        if (!this.startTagOpen) {
+            throw new IllegalStateException("Attributes must be written before any content.");
+        }
+        this.out.write(' ');
+        this.out.write(name);
+        this.out.write("=\"");
+        this.escape(value, true);
+        this.out.write('"');
+    }
+
+    /**
+     * Writes text content. Null is written as empty text, so that the element
+     * is not written as an empty element.
+     * 
+     * @param text
+     *            to write.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void text(final String text) throws IOException {
+        this.currentElement();
+        this.closeStartTag();
+        if (text != null) {
+            this.escape(text, false);
+        }
+    }
+
+    /**
+     * Writes an element that only contains text.
+     * 
+     * @param name
+     *            of the element.
+     * @param text
+     *            content of the element.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void textElement(final String name, final String text) throws IOException {
+        this.startElement(name);
+        this.text(text);
+        this.endElement();
+    }
+
+    /**
+     * Ends the element that was started last.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void endElement() throws IOException {
+        final String name = this.currentElement();
+        this.openElements.pop();
+        if (this.startTagOpen) {
+            this.out.write(" />");
+            this.startTagOpen = false;
+        } else {
+            this.out.write("</");
+            this.out.write(name);
+            this.out.write('>');
+        }
+    }
+
+    /**
+     * Writes a JDOM element, including its attributes and content.
+     * 
+     * @param element
+     *            to write.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public void element(final Element element) throws IOException {
+        ErrorChecker.throwIfNullArgument(element, "element");
+        this.startElement(element.getQualifiedName());
+        for (final Attribute attribute : element.getAttributes()) {
+            this.attribute(attribute.getQualifiedName(), attribute.getValue());
+        }
+        for (final Content content : element.getContent()) {
+            if (content instanceof Element) {
+                this.element((Element) content);
+            } else if (content instanceof Text) {
+                this.text(((Text) content).getText());
+            }
+        }
+        this.endElement();
+    }
+
+    /**
+     * Writes an object with the given factory. Factories that implement
+     * {@link StreamingXMLWriter} write the object directly, other factories
+     * build a JDOM element which is then written.
+     * 
+     * @param object
+     *            to write.
+     * @param factory
+     *            to convert the object with.
+     * @param <T>
+     *            type of the object.
+     * @throws IOException
+     *             if writing fails.
+     */
+    public <T> void write(final T object, final XMLWriter<T> factory) throws IOException {
+        if (factory instanceof StreamingXMLWriter) {
+            @SuppressWarnings("unchecked")
+            final StreamingXMLWriter<T> streaming = (StreamingXMLWriter<T>) factory;
+            streaming.writeXML(object, this);
+        } else {
+            this.element(factory.toXML(object));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * @param out
+     *            stream to write to.
+     * @return a buffered writer that encodes to UTF-8.
+     */
+    private static Writer toWriter(final OutputStream out) {
+        ErrorChecker.throwIfNullArgument(out, "output stream");
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the name of the element that was started last.
+     */
+    private String currentElement() {
+        if (this.openElements.isEmpty()) {
+            throw new IllegalStateException("No element has been started.");
+        }
+        return this.openElements.peek();
+    }
+
+    /**
+     * Finishes the start tag of the current element, if it is still open.
+     * 
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void closeStartTag() throws IOException {
+        if (this.startTagOpen) {
+            this.out.write('>');
+            this.startTagOpen = false;
+        }
+    }
+
+    /**
+     * Writes text, escaping the same characters as JDOM does. Like JDOM, line
+     * feeds in text content are written as {@link #LINE_SEPARATOR}.
+     * 
+     * @param text
+     *            to write.
+     * @param attribute
+     *            true iff the text is an attribute value.
+     * @throws IOException
+     *             if writing fails.
+     */
+    private void escape(final String text, final boolean attribute) throws IOException {
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            final String replacement;
+            int skip = 0;
+            if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '\r') {
+                replacement = "&#xD;";
+            } else if (attribute && c == '"') {
+                replacement = "&quot;";
+            } else if (attribute && c == '\t') {
+                replacement = "&#x9;";
+            } else if (c == '\n') {
+                replacement = attribute ? "&#xA;" : XMLOutput.LINE_SEPARATOR;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length) {
+                replacement = "&#x"
+                        + Integer.toHexString(Character.toCodePoint(c, text.charAt(i + 1))) + ";";
+                skip = 1;
+            } else {
+                continue;
+            }
+            this.out.write(text, start, i - start);
+            this.out.write(replacement);
+            i += skip;
+            start = i + 1;
+        }
+        this.out.write(text, start, length - start);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import nl.bitbrains.nebu.common.VirtualMachine;
 import nl.bitbrains.nebu.common.factories.IdentifiableFactory;
 import nl.bitbrains.nebu.common.factories.VirtualMachineFactory;
+import nl.bitbrains.nebu.common.util.binary.BinaryConverter;
 
 import org.jdom2.Element;
 import org.junit.Assert;
@@ -141,4 +142,45 @@ public class TestVirtualMachineFactory {
         Assert.assertEquals(numDisks, vm.getStores().size());
         Assert.assertEquals(this.diskID + 1, vm.getStores().get(1));
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toBinaryNull() {
+        BinaryConverter.toBytes(null, this.extensiveFactory);
+    }
+
+    @Test
+    public void binaryRoundTripExtensive() throws ParseException {
+        final List<String> list = new ArrayList<String>();
+        list.add(this.diskID + 0);
+        list.add(this.diskID + 1);
+        this.addDisksToMock(list);
+        final VirtualMachine vm = BinaryConverter
+                .fromBytes(BinaryConverter.toBytes(this.vm, this.extensiveFactory),
+                           this.extensiveFactory).build();
+        Assert.assertEquals(this.id, vm.getUniqueIdentifier());
+        Assert.assertEquals(this.hostname, vm.getHostname());
+        Assert.assertEquals(this.status, vm.getStatus());
+        Assert.assertEquals(this.host, vm.getHost());
+        Assert.assertEquals(list, vm.getStores());
+    }
+
+    @Test
+    public void binaryRoundTripNonExtensive() throws ParseException {
+        final VirtualMachine vm = BinaryConverter
+                .fromBytes(BinaryConverter.toBytes(this.vm, this.nonExtensiveFactory),
+                           this.extensiveFactory).build();
+        Assert.assertEquals(this.id, vm.getUniqueIdentifier());
+        Assert.assertNull(vm.getHostname());
+        Assert.assertEquals(VirtualMachine.Status.UNKNOWN, vm.getStatus());
+    }
+
+    @Test
+    public void fromBinaryNonExtensiveSkipsDetails() throws ParseException {
+        this.addDisksToMock(new ArrayList<String>());
+        final VirtualMachine vm = BinaryConverter
+                .fromBytes(BinaryConverter.toBytes(this.vm, this.extensiveFactory),
+                           this.nonExtensiveFactory).build();
+        Assert.assertEquals(this.id, vm.getUniqueIdentifier());
+        Assert.assertNull(vm.getHost());
+    }
 }
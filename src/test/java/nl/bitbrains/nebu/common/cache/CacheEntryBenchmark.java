@@ -0,0 +1,149 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of reading a valid {@link CacheEntry} with the
+ * {@link Calendar} based expiry check it used to do. Run with the
+ * <code>-prof gc</code> option to compare allocations as well.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheEntryBenchmark {
+
+    private static final int EXPIRATION_TIME_SEC = 3600;
+
+    private CacheEntry entry;
+    private CalendarEntry calendarEntry;
+
+    /**
+     * Creates the entries.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final CacheLoader<Object> loader = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                return new Object();
+            }
+        };
+        this.entry = new CacheEntry(new Object(), loader,
+                CacheEntryBenchmark.EXPIRATION_TIME_SEC, null, Ticker.SYSTEM);
+        this.calendarEntry = new CalendarEntry(new Object(), loader,
+                CacheEntryBenchmark.EXPIRATION_TIME_SEC);
+    }
+
+    /**
+     * Reads a valid entry using the {@link Ticker}.
+     * 
+     * @return the cached value.
+     * @throws CacheException
+     *             never.
+     */
+    @Benchmark
+    public Object tickerHit() throws CacheException {
+        return this.entry.getValue();
+    }
+
+    /**
+     * Reads a valid entry using the former {@link Calendar} check.
+     * 
+     * @return the cached value.
+     * @throws CacheException
+     *             never.
+     */
+    @Benchmark
+    public Object calendarHit() throws CacheException {
+        return this.calendarEntry.getValue();
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(CacheEntryBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Copy of the read path of {@link CacheEntry} before it used a
+     * {@link Ticker}, kept as the baseline.
+     */
+    private static final class CalendarEntry {
+
+        private volatile Object value;
+        private volatile Calendar dt;
+        private final CacheLoader<Object> cacheLoader;
+        private final int expirationTime;
+
+        /**
+         * @param value
+         *            to cache.
+         * @param loader
+         *            to use when the entry needs refreshing.
+         * @param expirationTime
+         *            is the number of seconds until the entry is invalidated.
+         */
+        CalendarEntry(final Object value, final CacheLoader<Object> loader,
+                final int expirationTime) {
+            this.value = value;
+            this.dt = Calendar.getInstance();
+            this.cacheLoader = loader;
+            this.expirationTime = expirationTime;
+        }
+
+        /**
+         * @return the value.
+         * @throws CacheException
+         *             if the updating process failed.
+         */
+        Object getValue() throws CacheException {
+            if (!this.isValid()) {
+                this.value = this.cacheLoader.refresh();
+                this.dt = Calendar.getInstance();
+            }
+            return this.value;
+        }
+
+        /**
+         * @return true iff the entry is still valid.
+         */
+        private boolean isValid() {
+            final Date now = new Date();
+            final Calendar exp = (Calendar) this.dt.clone();
+            exp.add(Calendar.SECOND, this.expirationTime);
+            return now.before(exp.getTime());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link CacheManager} throughput under contention. Run
+ * {@link #main(String[])} to repeat the benchmark for an increasing number of
+ * threads and compare how throughput scales.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheManagerBenchmark {
+
+    private static final int NUM_KEYS = 1024;
+    private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+    private String[] keys;
+    private CacheLoader<Object> loader;
+
+    /**
+     * Fills the cache with a fixed set of keys.
+     * 
+     * @throws CacheException
+     *             never.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws CacheException {
+        CacheManager.setCache(new ConcurrentHashMap<String, CacheEntry>());
+        this.keys = new String[CacheManagerBenchmark.NUM_KEYS];
+        this.loader = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                return new Object();
+            }
+        };
+        for (int i = 0; i < this.keys.length; i++) {
+            this.keys[i] = "key" + i;
+            CacheManager.get(this.keys[i], this.loader, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * All threads read the same key.
+     * 
+     * @return the cached value.
+     * @throws CacheException
+     *             never.
+     */
+    @Benchmark
+    public Object hotKey() throws CacheException {
+        return CacheManager.get(this.keys[0], this.loader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Threads read random keys.
+     * 
+     * @return the cached value.
+     * @throws CacheException
+     *             never.
+     */
+    @Benchmark
+    public Object randomKeys() throws CacheException {
+        final int index = ThreadLocalRandom.current().nextInt(this.keys.length);
+        return CacheManager.get(this.keys[index], this.loader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Threads read random keys that are evicted every now and then, so that
+     * misses and loads are mixed in with the hits.
+     * 
+     * @return the cached value.
+     * @throws CacheException
+     *             never.
+     */
+    @Benchmark
+    public Object randomKeysWithMisses() throws CacheException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String key = this.keys[random.nextInt(this.keys.length)];
+        if (random.nextInt(CacheManagerBenchmark.NUM_KEYS) == 0) {
+            CacheManager.clearCacheEntry(key);
+        }
+        return CacheManager.get(key, this.loader, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs the benchmarks once for every thread count in
+     * {@link #THREAD_COUNTS}.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        for (final int threads : CacheManagerBenchmark.THREAD_COUNTS) {
+            final Options options = new OptionsBuilder()
+                    .include(CacheManagerBenchmark.class.getSimpleName()).threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
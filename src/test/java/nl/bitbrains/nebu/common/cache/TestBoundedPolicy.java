@@ -0,0 +1,167 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestBoundedPolicy {
+
+    private final Set<String> resident = new HashSet<String>();
+
+    private List<String> write(final BoundedPolicy<String> policy, final String key,
+            final int weight) {
+        policy.lock();
+        try {
+            this.resident.add(key);
+            final List<String> evicted = policy.recordWrite(key, weight);
+            this.resident.removeAll(evicted);
+            return evicted;
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    @Test
+    public void testNoEvictionBelowMaximum() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(this.write(policy, "key" + i, 1).isEmpty());
+        }
+        Assert.assertEquals(10, policy.getWeight());
+    }
+
+    @Test
+    public void testWeightNeverExceedsMaximum() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(100);
+        for (int i = 0; i < 1000; i++) {
+            this.write(policy, "key" + i, 1 + i % 7);
+            Assert.assertTrue(policy.getWeight() <= 100);
+        }
+        Assert.assertTrue(this.resident.size() <= 100);
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(100);
+        final List<String> hot = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            hot.add("hot" + i);
+            this.write(policy, "hot" + i, 1);
+        }
+        for (int i = 0; i < 10000; i++) {
+            if (i % 100 == 0) {
+                for (final String key : hot) {
+                    policy.recordAccess(key);
+                }
+            }
+            this.write(policy, "scan" + i, 1);
+        }
+        final Set<String> lost = new HashSet<String>(hot);
+        lost.removeAll(this.resident);
+        Assert.assertEquals(new HashSet<String>(), lost);
+    }
+
+    @Test
+    public void testRejectedCandidateEvictsNothing() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(10);
+        this.write(policy, "cold", 4);
+        this.write(policy, "hot", 4);
+        for (int i = 0; i < 10; i++) {
+            policy.recordAccess("hot");
+        }
+        policy.recordAccess("heavy");
+        policy.recordAccess("heavy");
+        // Replacing the cold entry is not enough, and the hot one is used more.
+        final List<String> evicted = this.write(policy, "heavy", 8);
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertEquals("heavy", evicted.get(0));
+        Assert.assertTrue(this.resident.contains("cold"));
+        Assert.assertTrue(this.resident.contains("hot"));
+        Assert.assertEquals(8, policy.getWeight());
+    }
+
+    @Test
+    public void testTooHeavyEntryIsRejected() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(10);
+        final List<String> evicted = this.write(policy, "heavy", 11);
+        Assert.assertEquals(1, evicted.size());
+        Assert.assertEquals("heavy", evicted.get(0));
+        Assert.assertEquals(0, policy.getWeight());
+    }
+
+    @Test
+    public void testZeroMaximumEvictsEverything() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(0);
+        Assert.assertEquals(1, this.write(policy, "key", 1).size());
+        Assert.assertEquals(0, policy.getWeight());
+    }
+
+    @Test
+    public void testRewriteReplacesWeight() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(10);
+        this.write(policy, "key", 3);
+        this.write(policy, "key", 5);
+        Assert.assertEquals(5, policy.getWeight());
+    }
+
+    @Test
+    public void testRemovalAndClear() {
+        final BoundedPolicy<String> policy = new BoundedPolicy<String>(10);
+        this.write(policy, "a", 3);
+        this.write(policy, "b", 4);
+        policy.lock();
+        try {
+            policy.recordRemoval("a");
+            Assert.assertEquals(4, policy.getWeight());
+            policy.clear();
+            Assert.assertEquals(0, policy.getWeight());
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaximum() {
+        new BoundedPolicy<String>(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        this.write(new BoundedPolicy<String>(10), "key", -1);
+    }
+
+    @Test
+    public void testSketchCountsAndCaps() {
+        final FrequencySketch sketch = new FrequencySketch(100);
+        Assert.assertEquals(0, sketch.frequency("key"));
+        sketch.increment("key");
+        sketch.increment("key");
+        Assert.assertEquals(2, sketch.frequency("key"));
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("key");
+        }
+        Assert.assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency("key"));
+        sketch.clear();
+        Assert.assertEquals(0, sketch.frequency("key"));
+    }
+
+    @Test
+    public void testSketchAges() {
+        final FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("old");
+        }
+        for (int i = 0; i < 10000; i++) {
+            sketch.increment("other" + i);
+        }
+        Assert.assertTrue(sketch.frequency("old") < 10);
+    }
+}
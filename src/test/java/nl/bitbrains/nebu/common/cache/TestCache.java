@@ -0,0 +1,151 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCache {
+
+    private long now;
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return TestCache.this.now;
+        }
+    };
+
+    private int loads;
+
+    private final CacheLoader<Integer> loader = new CacheLoader<Integer>() {
+        @Override
+        public Integer refresh() throws CacheException {
+            return ++TestCache.this.loads;
+        }
+    };
+
+    private Cache<String, Integer> first;
+    private Cache<String, Integer> second;
+
+    @Before
+    public void setUp() {
+        this.first = new CacheBuilder<String, Integer>().withName("first")
+                .withExpirationTime(10).withTicker(this.ticker).build();
+        this.second = new CacheBuilder<String, Integer>().withName("second")
+                .withExpirationTime(100).withTicker(this.ticker).build();
+    }
+
+    @Test
+    public void testTypedValue() throws CacheException {
+        this.first.put("key", 42);
+        final int value = this.first.get("key");
+        Assert.assertEquals(42, value);
+    }
+
+    @Test
+    public void testInstancesHaveOwnEntries() throws CacheException {
+        this.first.put("key", 1);
+        this.second.put("key", 2);
+        Assert.assertEquals(Integer.valueOf(1), this.first.get("key"));
+        Assert.assertEquals(Integer.valueOf(2), this.second.get("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClearOnlyAffectsOwnEntries() throws CacheException {
+        this.first.put("key", 1);
+        this.second.put("key", 2);
+        this.first.clear();
+        Assert.assertEquals(Integer.valueOf(2), this.second.get("key"));
+        this.first.get("key");
+    }
+
+    @Test
+    public void testInstancesHaveOwnExpirationTime() throws CacheException {
+        this.first.get("key", this.loader);
+        this.second.get("key", this.loader);
+        this.now += TimeUnit.SECONDS.toNanos(10);
+        Assert.assertEquals(Integer.valueOf(3), this.first.get("key", this.loader));
+        Assert.assertEquals(Integer.valueOf(2), this.second.get("key", this.loader));
+    }
+
+    @Test
+    public void testInstancesHaveOwnStatistics() throws CacheException {
+        this.first.get("key", this.loader);
+        this.first.get("key", this.loader);
+        Assert.assertEquals(1, this.first.getHitCount());
+        Assert.assertEquals(1, this.first.getMissCount());
+        Assert.assertEquals(0, this.second.getHitCount());
+        Assert.assertEquals(0, this.second.getMissCount());
+    }
+
+    @Test
+    public void testInstancesHaveOwnBounds() throws CacheException {
+        this.first.setMaximumSize(1);
+        for (int i = 0; i < 10; i++) {
+            this.first.put("key" + i, i);
+            this.second.put("key" + i, i);
+        }
+        Assert.assertTrue(this.first.getEvictionCount() > 0);
+        Assert.assertEquals(0, this.second.getEvictionCount());
+        Assert.assertEquals(1, this.first.getMaximumWeight());
+        Assert.assertEquals(Cache.UNBOUNDED, this.second.getMaximumWeight());
+    }
+
+    @Test
+    public void testWeigherSeesTypedValues() {
+        this.first.setMaximumWeight(10, new Weigher<Object, Integer>() {
+            @Override
+            public int weigh(final Object key, final Integer value) {
+                return value;
+            }
+        });
+        this.first.put("a", 6);
+        this.first.put("b", 6);
+        Assert.assertEquals(1, this.first.getEvictionCount());
+    }
+
+    @Test
+    public void testGetWhileEntryIsRemoved() throws CacheException, InterruptedException {
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    TestCache.this.first.put("key", 1);
+                    TestCache.this.first.clearEntry("key");
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 200000; i++) {
+                try {
+                    Assert.assertEquals(Integer.valueOf(1), this.first.get("key"));
+                } catch (final IllegalArgumentException e) {
+                    // Removed before the lookup.
+                }
+                try {
+                    Assert.assertEquals(Integer.valueOf(1), this.first.getNoRefresh("key"));
+                } catch (final IllegalArgumentException e) {
+                    // Removed before the lookup.
+                }
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testDefaultCacheIsNamed() {
+        Assert.assertEquals(CacheManager.DEFAULT_CACHE_NAME, CacheManager.getDefaultCache()
+                .getName());
+    }
+}
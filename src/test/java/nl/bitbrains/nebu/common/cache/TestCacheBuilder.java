@@ -0,0 +1,59 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCacheBuilder {
+
+    private CacheBuilder<String, Object> builder;
+
+    @Before
+    public void setUp() {
+        this.builder = new CacheBuilder<String, Object>();
+    }
+
+    @Test
+    public void testDefaults() {
+        final Cache<String, Object> cache = this.builder.withName("name").build();
+        Assert.assertEquals("name", cache.getName());
+        Assert.assertEquals(CacheEntry.DEFAULT_EXPIRATION_TIME_SEC, cache.getExpirationTime());
+        Assert.assertNull(cache.getRefreshPolicy());
+        Assert.assertEquals(Cache.UNBOUNDED, cache.getMaximumWeight());
+    }
+
+    @Test
+    public void testWithSettings() {
+        final RefreshAheadPolicy policy = new RefreshAheadPolicy(1, 2,
+                Mockito.mock(Executor.class));
+        final Cache<String, Object> cache = this.builder.withName("name")
+                .withExpirationTime(5).withRefreshPolicy(policy).withMaximumSize(100).build();
+        Assert.assertEquals(5, cache.getExpirationTime());
+        Assert.assertEquals(policy, cache.getRefreshPolicy());
+        Assert.assertEquals(100, cache.getMaximumWeight());
+    }
+
+    @Test
+    public void testReset() {
+        this.builder.withName("name").withMaximumSize(100).build();
+        final Cache<String, Object> cache = this.builder.withName("other").build();
+        Assert.assertEquals(Cache.UNBOUNDED, cache.getMaximumWeight());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoName() {
+        this.builder.build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoTicker() {
+        this.builder.withName("name").withTicker(null).build();
+    }
+}
@@ -1,6 +1,11 @@
 package nl.bitbrains.nebu.common.cache;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import nl.bitbrains.nebu.common.cache.CacheEntry;
 import nl.bitbrains.nebu.common.cache.CacheException;
@@ -27,10 +32,46 @@ public class TestCacheEntry {
         MockitoAnnotations.initMocks(this);
     }
 
+    private final List<Runnable> scheduled = new ArrayList<Runnable>();
+
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            TestCacheEntry.this.scheduled.add(command);
+        }
+    };
+
+    private long now;
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return TestCacheEntry.this.now;
+        }
+    };
+
+    private void advanceSeconds(final int seconds) {
+        this.now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
     private void setUpLoaderMock(final Object t) throws CacheException {
         Mockito.when(this.loader.refresh()).thenReturn(t);
     }
 
+    private static Calendar secondsAgo(final int seconds) {
+        final Calendar result = Calendar.getInstance();
+        result.add(Calendar.SECOND, -seconds);
+        return result;
+    }
+
+    private void runScheduled() {
+        final List<Runnable> toRun = new ArrayList<Runnable>(this.scheduled);
+        this.scheduled.clear();
+        for (final Runnable runnable : toRun) {
+            runnable.run();
+        }
+    }
+
     @Test
     public void testCacheEntryCachesCorrectly() throws CacheException {
         this.setUpLoaderMock("Hallo");
@@ -87,4 +128,148 @@ public class TestCacheEntry {
         testing.getValue();
         Mockito.verify(this.loader, Mockito.times(0)).refresh();
     }
+
+    @Test
+    public void testRefreshAheadFreshEntryDoesNotRefresh() throws CacheException {
+        final CacheEntry testing = new CacheEntry("hoi", Calendar.getInstance(), this.loader, 100,
+                new RefreshAheadPolicy(10, 10, this.queueingExecutor));
+        Assert.assertEquals("hoi", testing.getValue());
+        Assert.assertTrue(this.scheduled.isEmpty());
+        Mockito.verify(this.loader, Mockito.times(0)).refresh();
+    }
+
+    @Test
+    public void testRefreshAheadAlmostExpiredReturnsCurrentValue() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(95),
+                this.loader, 100, new RefreshAheadPolicy(10, 10, this.queueingExecutor));
+        Assert.assertEquals("hoi", testing.getValue());
+        Mockito.verify(this.loader, Mockito.times(0)).refresh();
+        Assert.assertEquals(1, this.scheduled.size());
+        this.runScheduled();
+        Assert.assertEquals("hallo", testing.getValue());
+        Assert.assertTrue(this.scheduled.isEmpty());
+    }
+
+    @Test
+    public void testRefreshAheadStaleReturnsCurrentValue() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(105),
+                this.loader, 100, new RefreshAheadPolicy(0, 10, this.queueingExecutor));
+        Assert.assertEquals("hoi", testing.getValue());
+        this.runScheduled();
+        Assert.assertEquals("hallo", testing.getNonRefreshedValue());
+    }
+
+    @Test
+    public void testRefreshAheadSchedulesOnlyOneRefresh() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(105),
+                this.loader, 100, new RefreshAheadPolicy(0, 10, this.queueingExecutor));
+        testing.getValue();
+        testing.getValue();
+        testing.getValue();
+        Assert.assertEquals(1, this.scheduled.size());
+    }
+
+    @Test
+    public void testRefreshAheadTooStaleBlocks() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(200),
+                this.loader, 100, new RefreshAheadPolicy(0, 10, this.queueingExecutor));
+        Assert.assertEquals("hallo", testing.getValue());
+        Assert.assertTrue(this.scheduled.isEmpty());
+        Mockito.verify(this.loader).refresh();
+    }
+
+    @Test
+    public void testRefreshAheadFailureKeepsValue() throws CacheException {
+        Mockito.when(this.loader.refresh()).thenThrow(new CacheException("failed"));
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(105),
+                this.loader, 100, new RefreshAheadPolicy(0, 10, this.queueingExecutor));
+        testing.getValue();
+        this.runScheduled();
+        Assert.assertEquals("hoi", testing.getValue());
+        Assert.assertEquals(1, this.scheduled.size());
+    }
+
+    @Test
+    public void testRefreshAheadRejectedIsRetried() throws CacheException {
+        final List<Runnable> accepted = new ArrayList<Runnable>();
+        final Executor rejectOnce = new Executor() {
+            private boolean rejected;
+
+            @Override
+            public void execute(final Runnable command) {
+                if (!this.rejected) {
+                    this.rejected = true;
+                    throw new RejectedExecutionException();
+                }
+                accepted.add(command);
+            }
+        };
+        final CacheEntry testing = new CacheEntry("hoi", TestCacheEntry.secondsAgo(105),
+                this.loader, 100, new RefreshAheadPolicy(0, 10, rejectOnce));
+        Assert.assertEquals("hoi", testing.getValue());
+        Assert.assertEquals("hoi", testing.getValue());
+        Assert.assertEquals(1, accepted.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefreshAheadPolicyNegativeTime() {
+        new RefreshAheadPolicy(-1, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRefreshAheadPolicyNullExecutor() {
+        new RefreshAheadPolicy(1, 10, null);
+    }
+
+    @Test
+    public void testTickerEntryValidUntilExpiration() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", this.loader, 10, null, this.ticker);
+        this.advanceSeconds(9);
+        Assert.assertEquals("hoi", testing.getValue());
+        this.advanceSeconds(1);
+        Assert.assertEquals("hallo", testing.getValue());
+        Mockito.verify(this.loader).refresh();
+    }
+
+    @Test
+    public void testTickerRefreshResetsAge() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", this.loader, 10, null, this.ticker);
+        this.advanceSeconds(10);
+        testing.getValue();
+        this.advanceSeconds(9);
+        testing.getValue();
+        Mockito.verify(this.loader).refresh();
+    }
+
+    @Test
+    public void testTickerNegativeStartTime() throws CacheException {
+        this.now = Long.MIN_VALUE + 1;
+        final CacheEntry testing = new CacheEntry("hoi", this.loader, 10, null, this.ticker);
+        this.advanceSeconds(5);
+        Assert.assertEquals("hoi", testing.getValue());
+        Mockito.verify(this.loader, Mockito.times(0)).refresh();
+    }
+
+    @Test
+    public void testTickerRefreshAhead() throws CacheException {
+        this.setUpLoaderMock("hallo");
+        final CacheEntry testing = new CacheEntry("hoi", this.loader, 100,
+                new RefreshAheadPolicy(10, 10, this.queueingExecutor), this.ticker);
+        this.advanceSeconds(89);
+        testing.getValue();
+        Assert.assertTrue(this.scheduled.isEmpty());
+        this.advanceSeconds(1);
+        Assert.assertEquals("hoi", testing.getValue());
+        this.runScheduled();
+        Assert.assertEquals("hallo", testing.getValue());
+        this.advanceSeconds(89);
+        testing.getValue();
+        Assert.assertTrue(this.scheduled.isEmpty());
+    }
 }
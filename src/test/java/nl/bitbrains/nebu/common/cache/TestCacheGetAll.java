@@ -0,0 +1,211 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link Cache#getAll(java.util.Collection, BatchCacheLoader)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCacheGetAll {
+
+    private static final int TIMEOUT_SEC = 10;
+
+    private long now;
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return TestCacheGetAll.this.now;
+        }
+    };
+
+    private final List<Set<String>> requests = new ArrayList<Set<String>>();
+
+    private final BatchCacheLoader<String, Integer> loader = new BatchCacheLoader<String, Integer>() {
+        @Override
+        public Map<String, Integer> refreshAll(final Set<String> keys) throws CacheException {
+            TestCacheGetAll.this.requests.add(keys);
+            final Map<String, Integer> values = new HashMap<String, Integer>();
+            for (final String key : keys) {
+                if (!key.startsWith("missing")) {
+                    values.put(key, key.length() + TestCacheGetAll.this.requests.size());
+                }
+            }
+            return values;
+        }
+    };
+
+    private Cache<String, Integer> cache;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        this.cache = new CacheBuilder<String, Integer>().withName("test").withExpirationTime(10)
+                .withTicker(this.ticker).build();
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testMissesLoadedInOneCall() throws CacheException {
+        final Map<String, Integer> values = this.cache.getAll(Arrays.asList("a", "bb", "ccc"),
+                                                               this.loader);
+        Assert.assertEquals(1, this.requests.size());
+        Assert.assertEquals(3, this.requests.get(0).size());
+        Assert.assertEquals(Arrays.asList("a", "bb", "ccc"),
+                            new ArrayList<String>(values.keySet()));
+        Assert.assertEquals(Integer.valueOf(2), values.get("a"));
+        Assert.assertEquals(Integer.valueOf(2), this.cache.get("a"));
+    }
+
+    @Test
+    public void testHitsServedFromMemory() throws CacheException {
+        this.cache.put("a", 100);
+        final Map<String, Integer> values = this.cache.getAll(Arrays.asList("a", "bb"),
+                                                               this.loader);
+        Assert.assertEquals(Integer.valueOf(100), values.get("a"));
+        Assert.assertEquals(1, this.requests.size());
+        Assert.assertEquals(1, this.requests.get(0).size());
+        Assert.assertTrue(this.requests.get(0).contains("bb"));
+        Assert.assertEquals(1, this.cache.getHitCount());
+        Assert.assertEquals(1, this.cache.getMissCount());
+    }
+
+    @Test
+    public void testAllHitsDoNotCallLoader() throws CacheException {
+        this.cache.put("a", 1);
+        this.cache.put("b", 2);
+        this.cache.getAll(Arrays.asList("a", "b", "a"), this.loader);
+        Assert.assertTrue(this.requests.isEmpty());
+    }
+
+    @Test
+    public void testExpiredEntriesReloadedInBatch() throws CacheException {
+        this.cache.getAll(Arrays.asList("a", "b"), this.loader);
+        this.now += TimeUnit.SECONDS.toNanos(10);
+        final Map<String, Integer> values = this.cache.getAll(Arrays.asList("a", "b"),
+                                                               this.loader);
+        Assert.assertEquals(2, this.requests.size());
+        Assert.assertEquals(2, this.requests.get(1).size());
+        Assert.assertEquals(Integer.valueOf(3), values.get("a"));
+    }
+
+    @Test
+    public void testLoadedEntryRefreshesOnItsOwn() throws CacheException {
+        this.cache.getAll(Arrays.asList("a", "b"), this.loader);
+        this.now += TimeUnit.SECONDS.toNanos(10);
+        Assert.assertEquals(Integer.valueOf(3), this.cache.get("a"));
+        Assert.assertEquals(1, this.requests.get(1).size());
+    }
+
+    @Test
+    public void testMissingValueFails() {
+        try {
+            this.cache.getAll(Arrays.asList("a", "missing"), this.loader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(Integer.valueOf(2), this.cache.getNoRefresh("a"));
+        }
+    }
+
+    @Test
+    public void testFailureRemovesEntries() throws CacheException {
+        this.cache.getAll(Arrays.asList("a"), this.loader);
+        this.now += TimeUnit.SECONDS.toNanos(10);
+        try {
+            this.cache.getAll(Arrays.asList("a"), new BatchCacheLoader<String, Integer>() {
+                @Override
+                public Map<String, Integer> refreshAll(final Set<String> keys)
+                        throws CacheException {
+                    throw new CacheException("failed");
+                }
+            });
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        this.cache.getAll(Arrays.asList("a"), this.loader);
+        Assert.assertEquals(2, this.requests.size());
+    }
+
+    @Test
+    public void testSingleKeyLoadersAdapted() throws CacheException {
+        final Map<String, CacheLoader<Integer>> loaders = new HashMap<String, CacheLoader<Integer>>();
+        loaders.put("a", new CacheLoader<Integer>() {
+            @Override
+            public Integer refresh() throws CacheException {
+                return 1;
+            }
+        });
+        final Map<String, Integer> values = this.cache.getAll(loaders.keySet(),
+                new SingleKeyLoaderAdapter<String, Integer>(loaders));
+        Assert.assertEquals(Integer.valueOf(1), values.get("a"));
+    }
+
+    @Test
+    public void testConcurrentGetWaitsForBatch() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BatchCacheLoader<String, Integer> slowLoader = new BatchCacheLoader<String, Integer>() {
+            @Override
+            public Map<String, Integer> refreshAll(final Set<String> keys)
+                    throws CacheException {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new CacheException(e);
+                }
+                return TestCacheGetAll.this.loader.refreshAll(keys);
+            }
+        };
+        final Future<Map<String, Integer>> batch = this.executor
+                .submit(new Callable<Map<String, Integer>>() {
+                    @Override
+                    public Map<String, Integer> call() throws CacheException {
+                        return TestCacheGetAll.this.cache.getAll(Arrays.asList("a", "b"),
+                                                                 slowLoader);
+                    }
+                });
+        Assert.assertTrue(loading.await(TestCacheGetAll.TIMEOUT_SEC, TimeUnit.SECONDS));
+        final Future<Integer> single = this.executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws CacheException {
+                return TestCacheGetAll.this.cache.get("a", new CacheLoader<Integer>() {
+                    @Override
+                    public Integer refresh() throws CacheException {
+                        return -1;
+                    }
+                });
+            }
+        });
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(2),
+                            single.get(TestCacheGetAll.TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(2),
+                            batch.get(TestCacheGetAll.TIMEOUT_SEC, TimeUnit.SECONDS).get("a"));
+        Assert.assertEquals(1, this.requests.size());
+    }
+}
@@ -86,7 +86,7 @@ public class TestCacheManager {
     }
 
     private void setUpCacheKeyNotFoundLaterFound(final String key) {
-        Mockito.when(this.cache.containsKey(key)).thenReturn(false, true);
+        Mockito.when(this.cache.containsKey(key)).thenReturn(false, false, true);
         Mockito.when(this.cache.get(key)).thenReturn(this.mockedEntry);
     }
 
@@ -227,4 +227,9 @@ public class TestCacheManager {
         Mockito.verify(this.cache, Mockito.times(0)).remove(this.key);
     }
 
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetTickerNull() {
+        CacheManager.setTicker(null);
+    }
 }
@@ -0,0 +1,117 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the size bounds and statistics of the {@link CacheManager}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCacheManagerBounds {
+
+    private final CacheLoader<Object> loader = new CacheLoader<Object>() {
+        @Override
+        public Object refresh() throws CacheException {
+            return "value";
+        }
+    };
+
+    @Before
+    public void setUp() {
+        CacheManager.setCache(new ConcurrentHashMap<String, CacheEntry>());
+        CacheManager.resetStatistics();
+    }
+
+    @After
+    public void tearDown() {
+        CacheManager.setMaximumSize(CacheManager.UNBOUNDED);
+        CacheManager.resetCache();
+        CacheManager.resetStatistics();
+    }
+
+    private int countPresent(final int numKeys) {
+        int present = 0;
+        for (int i = 0; i < numKeys; i++) {
+            try {
+                CacheManager.getNoRefresh("key" + i);
+                present++;
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+        }
+        return present;
+    }
+
+    @Test
+    public void testUnboundedByDefault() throws CacheException {
+        for (int i = 0; i < 1000; i++) {
+            CacheManager.get("key" + i, this.loader);
+        }
+        Assert.assertEquals(1000, this.countPresent(1000));
+        Assert.assertEquals(0, CacheManager.getEvictionCount());
+    }
+
+    @Test
+    public void testMaximumSize() throws CacheException {
+        CacheManager.setMaximumSize(100);
+        for (int i = 0; i < 1000; i++) {
+            CacheManager.get("key" + i, this.loader);
+        }
+        Assert.assertTrue(this.countPresent(1000) <= 100);
+        Assert.assertTrue(CacheManager.getEvictionCount() >= 900);
+    }
+
+    @Test
+    public void testMaximumSizeAppliedToExistingEntries() {
+        for (int i = 0; i < 100; i++) {
+            CacheManager.put("key" + i, "value");
+        }
+        CacheManager.setMaximumSize(10);
+        Assert.assertTrue(this.countPresent(100) <= 10);
+    }
+
+    @Test
+    public void testMaximumWeight() throws CacheException {
+        CacheManager.setMaximumWeight(100, new Weigher<String, Object>() {
+            @Override
+            public int weigh(final String key, final Object value) {
+                return 10;
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            CacheManager.get("key" + i, this.loader);
+        }
+        Assert.assertTrue(this.countPresent(100) <= 10);
+    }
+
+    @Test
+    public void testLoadedValueReturnedEvenIfNotAdmitted() throws CacheException {
+        CacheManager.setMaximumSize(0);
+        Assert.assertEquals("value", CacheManager.get("key", this.loader));
+        Assert.assertEquals(0, this.countPresent(1));
+    }
+
+    @Test
+    public void testHitAndMissCounts() throws CacheException {
+        CacheManager.get("key0", this.loader);
+        CacheManager.get("key0", this.loader);
+        CacheManager.get("key0");
+        CacheManager.get("key1", this.loader);
+        Assert.assertEquals(2, CacheManager.getHitCount());
+        Assert.assertEquals(2, CacheManager.getMissCount());
+    }
+
+    @Test
+    public void testClearEntryWhenBounded() throws CacheException {
+        CacheManager.setMaximumSize(10);
+        CacheManager.get("key0", this.loader);
+        CacheManager.clearCacheEntry("key0");
+        Assert.assertEquals(0, this.countPresent(1));
+    }
+}
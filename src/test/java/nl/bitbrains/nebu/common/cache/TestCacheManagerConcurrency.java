@@ -0,0 +1,187 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CacheManager} with a real map and multiple threads.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCacheManagerConcurrency {
+
+    private static final int THREADS = 8;
+    private static final long TIMEOUT_SEC = 10;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        CacheManager.setCache(new ConcurrentHashMap<String, CacheEntry>());
+        this.executor = Executors.newFixedThreadPool(TestCacheManagerConcurrency.THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+        CacheManager.resetCache();
+    }
+
+    private List<Future<Object>> submitGets(final String key, final CacheLoader<Object> loader,
+            final CountDownLatch start) {
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < TestCacheManagerConcurrency.THREADS; i++) {
+            futures.add(this.executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    start.await();
+                    return CacheManager.get(key, loader);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    @Test
+    public void testConcurrentMissesCallLoaderOnce() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CacheLoader<Object> loader = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    throw new CacheException(e);
+                }
+                return "value";
+            }
+        };
+        final List<Future<Object>> futures = this.submitGets("hot", loader, start);
+        start.countDown();
+        for (final Future<Object> future : futures) {
+            Assert.assertEquals("value",
+                                future.get(TestCacheManagerConcurrency.TIMEOUT_SEC,
+                                           TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testConcurrentMissesShareFailure() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CacheLoader<Object> loader = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    throw new CacheException(e);
+                }
+                throw new CacheException("failed");
+            }
+        };
+        final List<Future<Object>> futures = this.submitGets("failing", loader, start);
+        start.countDown();
+        int failures = 0;
+        for (final Future<Object> future : futures) {
+            try {
+                future.get(TestCacheManagerConcurrency.TIMEOUT_SEC, TimeUnit.SECONDS);
+            } catch (final ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof CacheException);
+                failures++;
+            }
+        }
+        Assert.assertEquals(TestCacheManagerConcurrency.THREADS, failures);
+        Assert.assertTrue(calls.get() < TestCacheManagerConcurrency.THREADS);
+    }
+
+    @Test
+    public void testDifferentKeysLoadIndependently() throws Exception {
+        final CountDownLatch otherLoaded = new CountDownLatch(1);
+        final CacheLoader<Object> blocking = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                try {
+                    if (!otherLoaded.await(TestCacheManagerConcurrency.TIMEOUT_SEC,
+                                           TimeUnit.SECONDS)) {
+                        throw new CacheException("other key was blocked");
+                    }
+                } catch (final InterruptedException e) {
+                    throw new CacheException(e);
+                }
+                return "a";
+            }
+        };
+        final CacheLoader<Object> releasing = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                otherLoaded.countDown();
+                return "b";
+            }
+        };
+        final Future<Object> first = this.executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return CacheManager.get("a", blocking);
+            }
+        });
+        Assert.assertEquals("b", CacheManager.get("b", releasing));
+        Assert.assertEquals("a", first.get(TestCacheManagerConcurrency.TIMEOUT_SEC,
+                                           TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExpiredEntryRefreshedOnce() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CacheLoader<Object> loader = new CacheLoader<Object>() {
+            @Override
+            public Object refresh() throws CacheException {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    throw new CacheException(e);
+                }
+                return "value";
+            }
+        };
+        CacheManager.get("expiring", loader, 1);
+        Thread.sleep(1100);
+        calls.set(0);
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < TestCacheManagerConcurrency.THREADS; i++) {
+            futures.add(this.executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    start.await();
+                    return CacheManager.get("expiring");
+                }
+            }));
+        }
+        start.countDown();
+        for (final Future<Object> future : futures) {
+            future.get(TestCacheManagerConcurrency.TIMEOUT_SEC, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+}
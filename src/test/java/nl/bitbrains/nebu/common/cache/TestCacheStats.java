@@ -0,0 +1,217 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the statistics of a {@link Cache}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestCacheStats {
+
+    private static final long LOAD_TIME = 5;
+
+    private long now;
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return TestCacheStats.this.now;
+        }
+    };
+
+    private boolean fail;
+
+    private final CacheLoader<String> loader = new CacheLoader<String>() {
+        @Override
+        public String refresh() throws CacheException {
+            TestCacheStats.this.now += TestCacheStats.LOAD_TIME;
+            if (TestCacheStats.this.fail) {
+                throw new CacheException("failed");
+            }
+            return "value";
+        }
+    };
+
+    private final List<Runnable> scheduled = new ArrayList<Runnable>();
+
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            TestCacheStats.this.scheduled.add(command);
+        }
+    };
+
+    private Cache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new CacheBuilder<String, String>().withName("stats").withExpirationTime(10)
+                .withTicker(this.ticker).build();
+    }
+
+    @Test
+    public void testInitiallyEmpty() {
+        final CacheStats stats = this.cache.getStatistics();
+        Assert.assertEquals(0, stats.getRequestCount());
+        Assert.assertEquals(0, stats.getLoadCount());
+        Assert.assertEquals(1.0, stats.getHitRate(), 0.0);
+        Assert.assertEquals(0.0, stats.getAverageLoadPenalty(), 0.0);
+    }
+
+    @Test
+    public void testHitsMissesAndLoads() throws CacheException {
+        this.cache.get("a", this.loader);
+        this.cache.get("a", this.loader);
+        this.cache.get("a", this.loader);
+        this.cache.get("b", this.loader);
+        final CacheStats stats = this.cache.getStatistics();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(2, stats.getMissCount());
+        Assert.assertEquals(0.5, stats.getHitRate(), 0.0);
+        Assert.assertEquals(2, stats.getLoadSuccessCount());
+        Assert.assertEquals(2 * TestCacheStats.LOAD_TIME, stats.getTotalLoadTime());
+        Assert.assertEquals(TestCacheStats.LOAD_TIME, stats.getAverageLoadPenalty(), 0.0);
+    }
+
+    @Test
+    public void testNoRefreshHitsAndMisses() {
+        this.cache.put("a", "a");
+        this.cache.getNoRefresh("a");
+        try {
+            this.cache.getNoRefresh("b");
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            final CacheStats stats = this.cache.getStatistics();
+            Assert.assertEquals(1, stats.getHitCount());
+            Assert.assertEquals(1, stats.getMissCount());
+            Assert.assertEquals(0.5, stats.getHitRate(), 0.0);
+        }
+    }
+
+    @Test
+    public void testLoadFailure() {
+        this.fail = true;
+        try {
+            this.cache.get("a", this.loader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(1, this.cache.getStatistics().getLoadFailureCount());
+            Assert.assertEquals(0, this.cache.getStatistics().getLoadSuccessCount());
+        }
+    }
+
+    @Test
+    public void testRefreshCounted() throws CacheException {
+        this.cache.get("a", this.loader);
+        this.now += TimeUnit.SECONDS.toNanos(10);
+        this.cache.get("a", this.loader);
+        Assert.assertEquals(2, this.cache.getStatistics().getLoadSuccessCount());
+    }
+
+    @Test
+    public void testRefreshAheadCounted() throws CacheException {
+        this.cache.get("a", this.loader, 10, new RefreshAheadPolicy(5, 0, this.queueingExecutor));
+        this.now += TimeUnit.SECONDS.toNanos(6);
+        this.cache.get("a", this.loader);
+        Assert.assertEquals(1, this.cache.getStatistics().getRefreshAheadCount());
+        for (final Runnable runnable : this.scheduled) {
+            runnable.run();
+        }
+        Assert.assertEquals(2, this.cache.getStatistics().getLoadSuccessCount());
+    }
+
+    @Test
+    public void testBatchLoadCountedOnce() throws CacheException {
+        this.cache.getAll(Arrays.asList("a", "b"), new BatchCacheLoader<String, String>() {
+            @Override
+            public Map<String, String> refreshAll(final Set<String> keys) {
+                final Map<String, String> values = new HashMap<String, String>();
+                for (final String key : keys) {
+                    values.put(key, key);
+                }
+                return values;
+            }
+        });
+        final CacheStats stats = this.cache.getStatistics();
+        Assert.assertEquals(2, stats.getMissCount());
+        Assert.assertEquals(1, stats.getLoadSuccessCount());
+    }
+
+    @Test
+    public void testEvictionsCounted() {
+        this.cache.setMaximumSize(1);
+        this.cache.put("a", "a");
+        this.cache.put("b", "b");
+        Assert.assertEquals(1, this.cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testReset() throws CacheException {
+        this.cache.get("a", this.loader);
+        this.cache.resetStatistics();
+        final CacheStats stats = this.cache.getStatistics();
+        Assert.assertEquals(0, stats.getMissCount());
+        Assert.assertEquals(0, stats.getLoadSuccessCount());
+        Assert.assertEquals(0, stats.getTotalLoadTime());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        this.cache.registerMBean(server);
+        this.cache.get("a", this.loader);
+        this.cache.get("a", this.loader);
+        Assert.assertEquals(1L, server.getAttribute(this.cache.getObjectName(), "HitCount"));
+        Assert.assertEquals(1, server.getAttribute(this.cache.getObjectName(), "Size"));
+        server.invoke(this.cache.getObjectName(), "resetStatistics", null, null);
+        Assert.assertEquals(0, this.cache.getHitCount());
+        this.cache.unregisterMBean(server);
+        Assert.assertFalse(server.isRegistered(this.cache.getObjectName()));
+    }
+
+    @Test(expected = CacheException.class)
+    public void testMBeanNameTaken() throws CacheException {
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        this.cache.registerMBean(server);
+        new CacheBuilder<String, String>().withName("stats").build().registerMBean(server);
+    }
+
+    @Test
+    public void testStripedCounterConcurrentIncrements() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(40000, counter.sum());
+        counter.reset();
+        Assert.assertEquals(0, counter.sum());
+    }
+}
@@ -0,0 +1,210 @@
+package nl.bitbrains.nebu.common.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests caching of loader failures with a {@link FailureBackoffPolicy}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestFailureBackoff {
+
+    private long now;
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return TestFailureBackoff.this.now;
+        }
+    };
+
+    private boolean fail;
+    private int calls;
+
+    private final CacheLoader<String> loader = new CacheLoader<String>() {
+        @Override
+        public String refresh() throws CacheException {
+            TestFailureBackoff.this.calls++;
+            if (TestFailureBackoff.this.fail) {
+                throw new CacheException("down");
+            }
+            return "value" + TestFailureBackoff.this.calls;
+        }
+    };
+
+    private Cache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new CacheBuilder<String, String>().withName("backoff")
+                .withExpirationTime(10).withTicker(this.ticker)
+                .withFailureBackoffPolicy(new FailureBackoffPolicy(1, 4)).build();
+    }
+
+    private void advanceSeconds(final int seconds) {
+        this.now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private boolean tryGet() {
+        try {
+            this.cache.get("key", this.loader);
+            return true;
+        } catch (final CacheException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testFailureCachedDuringBackoff() {
+        this.fail = true;
+        Assert.assertFalse(this.tryGet());
+        Assert.assertFalse(this.tryGet());
+        Assert.assertEquals(1, this.calls);
+        this.advanceSeconds(1);
+        Assert.assertFalse(this.tryGet());
+        Assert.assertEquals(2, this.calls);
+    }
+
+    @Test
+    public void testBackoffGrowsExponentially() {
+        this.fail = true;
+        this.tryGet();
+        this.advanceSeconds(1);
+        this.tryGet();
+        this.advanceSeconds(1);
+        this.tryGet();
+        Assert.assertEquals(2, this.calls);
+        this.advanceSeconds(1);
+        this.tryGet();
+        Assert.assertEquals(3, this.calls);
+    }
+
+    @Test
+    public void testBackoffIsCapped() {
+        final FailureBackoffPolicy policy = new FailureBackoffPolicy(1, 4);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), policy.getBackoffNanos(1));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(4), policy.getBackoffNanos(3));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(4), policy.getBackoffNanos(100));
+    }
+
+    @Test
+    public void testBackoffExceptionHasCause() {
+        this.fail = true;
+        this.tryGet();
+        try {
+            this.cache.get("key", this.loader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals("down", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testSuccessResetsBackoff() {
+        this.fail = true;
+        this.tryGet();
+        this.advanceSeconds(1);
+        this.fail = false;
+        Assert.assertTrue(this.tryGet());
+        this.cache.clearEntry("key");
+        this.fail = true;
+        this.tryGet();
+        this.advanceSeconds(1);
+        this.tryGet();
+        Assert.assertEquals(4, this.calls);
+    }
+
+    @Test
+    public void testClearEntryForgetsFailure() {
+        this.fail = true;
+        this.tryGet();
+        this.cache.clearEntry("key");
+        this.fail = false;
+        Assert.assertTrue(this.tryGet());
+    }
+
+    @Test
+    public void testLastGoodValueServed() throws CacheException {
+        Assert.assertEquals("value1", this.cache.get("key", this.loader));
+        this.advanceSeconds(10);
+        this.fail = true;
+        Assert.assertEquals("value1", this.cache.get("key", this.loader));
+        Assert.assertEquals("value1", this.cache.get("key", this.loader));
+        Assert.assertEquals(2, this.calls);
+        this.advanceSeconds(1);
+        this.fail = false;
+        Assert.assertEquals("value3", this.cache.get("key", this.loader));
+    }
+
+    @Test
+    public void testRefreshFailureThrowsWithoutPolicy() throws CacheException {
+        final Cache<String, String> plain = new CacheBuilder<String, String>().withName("plain")
+                .withExpirationTime(10).withTicker(this.ticker).build();
+        plain.get("key", this.loader);
+        this.advanceSeconds(10);
+        this.fail = true;
+        try {
+            plain.get("key", this.loader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals("down", e.getMessage());
+        }
+        try {
+            plain.get("key", this.loader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(3, this.calls);
+        }
+    }
+
+    @Test
+    public void testBatchFailureCached() throws CacheException {
+        final BatchCacheLoader<String, String> batchLoader = new BatchCacheLoader<String, String>() {
+            @Override
+            public Map<String, String> refreshAll(final Set<String> keys) {
+                TestFailureBackoff.this.calls++;
+                final Map<String, String> values = new HashMap<String, String>();
+                values.put("a", "a");
+                return values;
+            }
+        };
+        try {
+            this.cache.getAll(Arrays.asList("a", "b"), batchLoader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(1, this.calls);
+        }
+        try {
+            this.cache.getAll(Arrays.asList("a", "b"), batchLoader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(1, this.calls);
+        }
+        this.advanceSeconds(1);
+        try {
+            this.cache.getAll(Arrays.asList("a", "b"), batchLoader);
+            Assert.fail();
+        } catch (final CacheException e) {
+            Assert.assertEquals(2, this.calls);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolicyNonPositiveInitial() {
+        new FailureBackoffPolicy(0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolicyMaxBelowInitial() {
+        new FailureBackoffPolicy(4, 1);
+    }
+}
@@ -0,0 +1,110 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares updating the usage of all 50,000 hosts of a topology once, by
+ * building a new host and putting it in the rack, and by updating the hosts
+ * in place. Updating in place should create no garbage.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostUsageBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 250;
+    private static final int HOSTS_PER_RACK = 50;
+
+    private PhysicalTopology topology;
+    private List<PhysicalHost> hosts;
+    private HostUsage usage;
+    private long time;
+
+    /**
+     * Builds the topology.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(
+                HostUsageBenchmark.RACKS_PER_DATA_CENTER, HostUsageBenchmark.HOSTS_PER_RACK);
+        this.hosts = this.topology.getCPUs();
+        this.usage = new HostUsage();
+    }
+
+    /**
+     * Replaces every host by a new one with the new usage.
+     */
+    @Benchmark
+    public void rebuildHosts() {
+        this.time++;
+        for (final PhysicalRack rack : this.topology.getRacks()) {
+            for (final PhysicalHost host : rack.getCPUs()) {
+                final PhysicalHost updated = new PhysicalHostBuilder().withCpuUsage(0.5)
+                        .withMemUsage(0.5).withLastUpdate(this.time).withDisks(host.getDisks())
+                        .withUuid(host.getUniqueIdentifier()).build();
+                this.topology.addCPUToRack(updated, rack);
+            }
+        }
+    }
+
+    /**
+     * Updates every host in place.
+     */
+    @Benchmark
+    public void updateInPlace() {
+        this.time++;
+        for (int i = 0; i < this.hosts.size(); i++) {
+            this.hosts.get(i).updateUsage(0.5, 0.5, this.time);
+        }
+    }
+
+    /**
+     * @return the sum of the usage of every host, read consistently.
+     */
+    @Benchmark
+    public double readUsage() {
+        double res = 0;
+        for (int i = 0; i < this.hosts.size(); i++) {
+            this.hosts.get(i).readUsage(this.usage);
+            res += this.usage.getCpuUsage() + this.usage.getMemUsage();
+        }
+        return res;
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(HostUsageBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+}
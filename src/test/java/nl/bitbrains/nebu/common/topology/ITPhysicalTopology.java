@@ -1,6 +1,11 @@
 package nl.bitbrains.nebu.common.topology;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
@@ -107,6 +112,151 @@ public class ITPhysicalTopology {
         return s1.getCapacity() == s2.getCapacity();
     }
 
+    @Test
+    @Parameters(method = "copyConstructorParams")
+    public void testIndexContainsAllResources(final int numDcs, final int numRacks,
+            final int numCpus, final int numNetworkDisks, final int numLocalDisks) {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(numDcs,
+                                                                            numRacks,
+                                                                            numCpus,
+                                                                            numNetworkDisks,
+                                                                            numLocalDisks);
+        ITPhysicalTopology.assertIndexed(topology);
+        ITPhysicalTopology.assertIndexed(new PhysicalTopology(topology));
+    }
+
+    @Test
+    public void testIndexAfterMerge() {
+        final PhysicalTopology one = ITPhysicalTopology.createTopology(1, 2, 3, 0, 1);
+        final PhysicalTopology two = ITPhysicalTopology.createTopology(2, 3, 2, 0, 2);
+        ITPhysicalTopology.assertIndexed(PhysicalTopology.mergeTree(one, two));
+    }
+
+    @Test
+    public void testIndexFollowsAdditions() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 1, 0, 0);
+        final PhysicalRack rack = topology.getRackByID("rack0-0");
+        final PhysicalHost host = new PhysicalHostBuilder().withUuid("newHost").build();
+        final PhysicalStore disk = new PhysicalStoreBuilder().withUuid("newDisk").build();
+        host.addDisk(disk);
+        topology.addCPUToRack(host, rack);
+        Assert.assertSame(host, topology.getCPUByID("newHost"));
+        Assert.assertSame(disk, topology.getStoreByID("newDisk"));
+    }
+
+    @Test
+    public void testIndexFollowsRemovals() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(2, 2, 2, 0, 1);
+        topology.removeDataCenter(topology.getDataCenterByID("dc1"));
+        topology.removeCPUFromRack(topology.getCPUByID("host0-1-1"),
+                                   topology.getRackByID("rack0-1"));
+        topology.removeDiskFromRack(topology.getStoreByID("disk0-0-0"),
+                                    topology.getRackByID("rack0-0"));
+        Assert.assertFalse(topology.hasDataCenterByID("dc1"));
+        Assert.assertFalse(topology.hasRackByID("rack1-0"));
+        Assert.assertFalse(topology.hasCPUByID("host1-0-0"));
+        Assert.assertFalse(topology.hasCPUByID("host0-1-1"));
+        Assert.assertFalse(topology.hasStoreByID("disk0-1-1-0"));
+        Assert.assertFalse(topology.hasStoreByID("disk0-0-0"));
+        ITPhysicalTopology.assertIndexed(topology);
+    }
+
+    @Test
+    public void testIndexReplacesResourceWithSameID() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 2, 0, 0);
+        final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc0").build();
+        topology.addDataCenter(dc);
+        Assert.assertSame(dc, topology.getDataCenterByID("dc0"));
+        Assert.assertFalse(topology.hasRackByID("rack0-0"));
+        Assert.assertFalse(topology.hasCPUByID("host0-0-1"));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testGetDataCenterByIDNotFound() {
+        ITPhysicalTopology.createTopology(1, 1, 1, 0, 0).getDataCenterByID("dc1");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testGetRackByIDNotFound() {
+        ITPhysicalTopology.createTopology(1, 1, 1, 0, 0).getRackByID("rack0-1");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testGetStoreByIDNotFound() {
+        ITPhysicalTopology.createTopology(1, 1, 1, 0, 0).getStoreByID("disk0-0-0");
+    }
+
+    @Test
+    @Parameters(method = "copyConstructorParams")
+    public void testIteratorsMatchLists(final int numDcs, final int numRacks, final int numCpus,
+            final int numNetworkDisks, final int numLocalDisks) {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(numDcs,
+                                                                            numRacks,
+                                                                            numCpus,
+                                                                            numNetworkDisks,
+                                                                            numLocalDisks);
+        Assert.assertEquals(new HashSet<PhysicalDataCenter>(topology.getDataCenters()),
+                            new HashSet<PhysicalDataCenter>(topology.getDataCenterView()));
+        ITPhysicalTopology.assertSameElements(topology.getRacks(), topology.iterateRacks());
+        ITPhysicalTopology.assertSameElements(topology.getCPUs(), topology.iterateCPUs());
+        ITPhysicalTopology.assertSameElements(topology.getStores(), topology.iterateStores());
+    }
+
+    @Test
+    public void testViewsReflectChanges() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 1, 0, 0);
+        final PhysicalRack rack = topology.getRackByID("rack0-0");
+        final Collection<PhysicalHost> cpus = rack.getCPUView();
+        final PhysicalHost host = new PhysicalHostBuilder().withUuid("newHost").build();
+        topology.addCPUToRack(host, rack);
+        Assert.assertEquals(2, cpus.size());
+        Assert.assertTrue(cpus.contains(host));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testViewsAreUnmodifiable() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 1, 0, 0);
+        topology.getRackByID("rack0-0").getCPUView().clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIteratorsAreUnmodifiable() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 1, 0, 0);
+        final Iterator<PhysicalHost> iterator = topology.iterateCPUs().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testIteratorPastEnd() {
+        final PhysicalTopology topology = ITPhysicalTopology.createTopology(1, 1, 0, 0, 0);
+        topology.iterateCPUs().iterator().next();
+    }
+
+    private static <T> void assertSameElements(final List<T> expected, final Iterable<T> actual) {
+        final List<T> visited = new ArrayList<T>();
+        for (final T element : actual) {
+            visited.add(element);
+        }
+        Assert.assertEquals(expected.size(), visited.size());
+        Assert.assertEquals(new HashSet<T>(expected), new HashSet<T>(visited));
+    }
+
+    private static void assertIndexed(final PhysicalTopology topology) {
+        for (final PhysicalDataCenter dc : topology.getDataCenters()) {
+            Assert.assertSame(dc, topology.getDataCenterByID(dc.getUniqueIdentifier()));
+        }
+        for (final PhysicalRack rack : topology.getRacks()) {
+            Assert.assertSame(rack, topology.getRackByID(rack.getUniqueIdentifier()));
+        }
+        for (final PhysicalHost host : topology.getCPUs()) {
+            Assert.assertSame(host, topology.getCPUByID(host.getUniqueIdentifier()));
+        }
+        for (final PhysicalStore store : topology.getStores()) {
+            Assert.assertSame(store, topology.getStoreByID(store.getUniqueIdentifier()));
+        }
+    }
+
     private static PhysicalTopology createTopology(final int numDcs, final int numRacks,
             final int numCpus, final int numNetworkDisks, final int numLocalDisks) {
         final PhysicalTopology result = new PhysicalTopology();
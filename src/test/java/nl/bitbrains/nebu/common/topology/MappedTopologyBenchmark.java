@@ -0,0 +1,130 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.topology.factory.TopologyFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the time until a host can be looked up in a topology of 100,000
+ * hosts that is stored in a file: reading the whole file in the binary
+ * format, or mapping it as a {@link MappedTopology}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedTopologyBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 625;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final String HOST = "host2-300-20";
+
+    private File binaryFile;
+    private File mappedFile;
+
+    /**
+     * Writes the topology to a file in both formats.
+     * 
+     * @throws IOException
+     *             if a file can not be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final PhysicalTopology topology = PhysicalTopologyBenchmark.createTopology(
+                MappedTopologyBenchmark.RACKS_PER_DATA_CENTER,
+                MappedTopologyBenchmark.HOSTS_PER_RACK);
+        this.binaryFile = File.createTempFile("topology", ".bin");
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(this.binaryFile));
+        try {
+            TopologyFormat.BINARY.write(topology, out);
+        } finally {
+            out.close();
+        }
+        this.mappedFile = File.createTempFile("topology", ".map");
+        MappedTopology.write(topology, this.mappedFile);
+    }
+
+    /**
+     * Removes the files.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.binaryFile.delete();
+        this.mappedFile.delete();
+    }
+
+    /**
+     * @return a host of the topology read from the binary file.
+     * @throws IOException
+     *             if the file can not be read.
+     * @throws ParseException
+     *             if the file is not valid.
+     */
+    @Benchmark
+    public PhysicalHost readBinary() throws IOException, ParseException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(this.binaryFile));
+        try {
+            return TopologyFormat.BINARY.read(in).getCPUByID(MappedTopologyBenchmark.HOST);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return a host of the mapped topology.
+     * @throws IOException
+     *             if the file can not be read.
+     * @throws ParseException
+     *             if the file is not valid.
+     */
+    @Benchmark
+    public PhysicalHost openMapped() throws IOException, ParseException {
+        return MappedTopology.open(this.mappedFile).getCPUByID(MappedTopologyBenchmark.HOST);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(MappedTopologyBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,191 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link PhysicalTopology#mergeTree(PhysicalTopology, PhysicalTopology)}
+ * with the merge it used to do, which searched the children of every
+ * resource in a copied list. Both topologies cover the same racks, like two
+ * collectors with overlapping views would: the first reports the first three
+ * quarters of the hosts in every rack and the second the last half.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeTreeBenchmark {
+
+    private static final int DATA_CENTERS = 4;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final int DISKS_PER_HOST = 2;
+
+    @Param({ "10", "100" })
+    private int racksPerDataCenter;
+
+    private PhysicalTopology left;
+    private PhysicalTopology right;
+
+    /**
+     * Builds both topologies.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final int half = MergeTreeBenchmark.HOSTS_PER_RACK / 2;
+        final int quarter = MergeTreeBenchmark.HOSTS_PER_RACK / 4;
+        this.left = MergeTreeBenchmark.createTopology(this.racksPerDataCenter, 0, half + quarter);
+        this.right = MergeTreeBenchmark.createTopology(this.racksPerDataCenter, half,
+                                                       MergeTreeBenchmark.HOSTS_PER_RACK);
+    }
+
+    /**
+     * @return the topologies merged by identifier.
+     */
+    @Benchmark
+    public PhysicalTopology hashMerge() {
+        return PhysicalTopology.mergeTree(this.left, this.right, MergePolicy.NEWEST_USAGE);
+    }
+
+    /**
+     * @return the topologies merged by searching lists.
+     */
+    @Benchmark
+    public PhysicalTopology listMerge() {
+        final PhysicalTopology res = new PhysicalTopology(this.left);
+        for (final PhysicalDataCenter datacenter : this.right.getDataCenters()) {
+            final int index = this.left.getDataCenters().indexOf(datacenter);
+            PhysicalDataCenter clone;
+            if (index >= 0) {
+                clone = MergeTreeBenchmark.listMergeDatacenter(this.left.getDataCenters()
+                        .get(index), datacenter);
+            } else {
+                clone = new PhysicalDataCenter(datacenter);
+            }
+            res.addDataCenter(clone);
+        }
+        return res;
+    }
+
+    /**
+     * @param one
+     *            first datacenter.
+     * @param two
+     *            second datacenter.
+     * @return the merged copy.
+     */
+    private static PhysicalDataCenter listMergeDatacenter(final PhysicalDataCenter one,
+            final PhysicalDataCenter two) {
+        final PhysicalDataCenter res = new PhysicalDataCenter(one);
+        for (final PhysicalRack rack : two.getRacks()) {
+            final int index = one.getRacks().indexOf(rack);
+            PhysicalRack clone;
+            if (index >= 0) {
+                clone = MergeTreeBenchmark.listMergeRack(one.getRacks().get(index), rack);
+            } else {
+                clone = new PhysicalRack(rack);
+            }
+            clone.setParent(res);
+            res.addRack(clone);
+        }
+        return res;
+    }
+
+    /**
+     * @param one
+     *            first rack.
+     * @param two
+     *            second rack.
+     * @return the merged copy.
+     */
+    private static PhysicalRack listMergeRack(final PhysicalRack one, final PhysicalRack two) {
+        final PhysicalRack res = new PhysicalRack(one);
+        for (final PhysicalHost cpu : two.getCPUs()) {
+            final int index = one.getCPUs().indexOf(cpu);
+            PhysicalHost clone;
+            if (index < 0) {
+                clone = new PhysicalHost(cpu);
+            } else {
+                clone = new PhysicalHost(one.getCPUs().get(index));
+                for (final PhysicalStore disk : cpu.getDisks()) {
+                    if (one.getCPUs().get(index).getDisks().indexOf(disk) < 0) {
+                        clone.addDisk(new PhysicalStore(disk));
+                    }
+                }
+            }
+            clone.setParent(res);
+            res.addCPU(clone);
+        }
+        return res;
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(MergeTreeBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+
+    /**
+     * @param racksPerDataCenter
+     *            number of racks in each data center.
+     * @param firstHost
+     *            number of the first host in each rack.
+     * @param lastHost
+     *            number after the last host in each rack.
+     * @return a topology with the given hosts.
+     */
+    private static PhysicalTopology createTopology(final int racksPerDataCenter,
+            final int firstHost, final int lastHost) {
+        final PhysicalTopology result = new PhysicalTopology();
+        for (int i = 0; i < MergeTreeBenchmark.DATA_CENTERS; i++) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + i)
+                    .build();
+            result.addDataCenter(dc);
+            for (int j = 0; j < racksPerDataCenter; j++) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + i + "-" + j)
+                        .build();
+                result.addRackToDataCenter(rack, dc);
+                for (int k = firstHost; k < lastHost; k++) {
+                    final String hostID = "host" + i + "-" + j + "-" + k;
+                    final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(0.5)
+                            .withLastUpdate(firstHost).withUuid(hostID).build();
+                    result.addCPUToRack(host, rack);
+                    for (int l = 0; l < MergeTreeBenchmark.DISKS_PER_HOST; l++) {
+                        final PhysicalStore disk = new PhysicalStoreBuilder().withUuid(hostID
+                                + "-disk" + l).build();
+                        result.addDiskToHost(disk, host);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares scanning the usage of all hosts and stores of a topology of
+ * 100,000 hosts through the resources and through the {@link MetricColumns}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricColumnsBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 625;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final long SEED = 42;
+    private static final double THRESHOLD = 0.5;
+
+    private PhysicalTopology topology;
+    private MetricColumns columns;
+
+    /**
+     * Builds the topology and its columns, and gives the hosts random usage.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(
+                MetricColumnsBenchmark.RACKS_PER_DATA_CENTER,
+                MetricColumnsBenchmark.HOSTS_PER_RACK);
+        final Random random = new Random(MetricColumnsBenchmark.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, random.nextDouble(), random.nextDouble());
+        }
+        this.columns = this.topology.getColumns();
+    }
+
+    /**
+     * @return the number of hosts below the threshold, counted by visiting
+     *         the hosts.
+     */
+    @Benchmark
+    public int countHostsIterating() {
+        int res = 0;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            if (host.getCpuUsage() <= MetricColumnsBenchmark.THRESHOLD
+                    && host.getMemUsage() <= MetricColumnsBenchmark.THRESHOLD) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the number of hosts below the threshold, counted in the
+     *         columns.
+     */
+    @Benchmark
+    public int countHostsColumns() {
+        return this.columns.countHostsBelow(MetricColumnsBenchmark.THRESHOLD,
+                                            MetricColumnsBenchmark.THRESHOLD);
+    }
+
+    /**
+     * @return the total used capacity, summed by visiting the stores.
+     */
+    @Benchmark
+    public long usedCapacityIterating() {
+        long res = 0;
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            res += store.getUsed();
+        }
+        return res;
+    }
+
+    /**
+     * @return the total used capacity, summed in the columns.
+     */
+    @Benchmark
+    public long usedCapacityColumns() {
+        return this.columns.getUsedCapacity();
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(MetricColumnsBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
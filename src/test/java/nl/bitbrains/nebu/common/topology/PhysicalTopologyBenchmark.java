@@ -0,0 +1,176 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares looking up a host by its identifier through the index of the
+ * {@link PhysicalTopology} with the linear scan over
+ * {@link PhysicalTopology#getCPUs()} it used to do, and scanning all stores
+ * through the copying and the lazy accessors. Run with the
+ * <code>-prof gc</code> option to compare allocations as well.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicalTopologyBenchmark {
+
+    private static final int DATA_CENTERS = 4;
+    private static final int DISKS_PER_HOST = 2;
+
+    @Param({ "10", "100" })
+    private int racksPerDataCenter;
+
+    @Param({ "40" })
+    private int hostsPerRack;
+
+    private PhysicalTopology topology;
+    private String[] hostIDs;
+    private int next;
+
+    /**
+     * Builds the topology.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(this.racksPerDataCenter,
+                                                                 this.hostsPerRack);
+        this.hostIDs = new String[this.topology.getCPUs().size()];
+        int i = 0;
+        for (final PhysicalHost host : this.topology.getCPUs()) {
+            this.hostIDs[i++] = host.getUniqueIdentifier();
+        }
+    }
+
+    /**
+     * Looks up a host through the index.
+     * 
+     * @return the host.
+     */
+    @Benchmark
+    public PhysicalHost indexedLookup() {
+        return this.topology.getCPUByID(this.nextID());
+    }
+
+    /**
+     * Looks up a host by scanning all hosts.
+     * 
+     * @return the host.
+     */
+    @Benchmark
+    public PhysicalHost linearLookup() {
+        final String id = this.nextID();
+        for (final PhysicalHost host : this.topology.getCPUs()) {
+            if (host.getUniqueIdentifier().equals(id)) {
+                return host;
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * Visits all stores through {@link PhysicalTopology#getStores()}.
+     * 
+     * @return the total capacity of the stores.
+     */
+    @Benchmark
+    public long copyingScan() {
+        long capacity = 0;
+        for (final PhysicalStore store : this.topology.getStores()) {
+            capacity += store.getCapacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Visits all stores through {@link PhysicalTopology#iterateStores()}.
+     * 
+     * @return the total capacity of the stores.
+     */
+    @Benchmark
+    public long lazyScan() {
+        long capacity = 0;
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            capacity += store.getCapacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(PhysicalTopologyBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+
+    /**
+     * @return the identifier of the next host to look up.
+     */
+    private String nextID() {
+        this.next = (this.next + 1) % this.hostIDs.length;
+        return this.hostIDs[this.next];
+    }
+
+    /**
+     * @param racksPerDataCenter
+     *            number of racks in each data center.
+     * @param hostsPerRack
+     *            number of hosts in each rack.
+     * @return a topology of the given size.
+     */
+    public static PhysicalTopology createTopology(final int racksPerDataCenter,
+            final int hostsPerRack) {
+        final PhysicalTopology result = new PhysicalTopology();
+        for (int i = 0; i < PhysicalTopologyBenchmark.DATA_CENTERS; i++) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + i)
+                    .build();
+            result.addDataCenter(dc);
+            for (int j = 0; j < racksPerDataCenter; j++) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + i + "-" + j)
+                        .build();
+                result.addRackToDataCenter(rack, dc);
+                for (int k = 0; k < hostsPerRack; k++) {
+                    final String hostID = "host" + i + "-" + j + "-" + k;
+                    final PhysicalHost host = new PhysicalHostBuilder().withUuid(hostID).build();
+                    result.addCPUToRack(host, rack);
+                    for (int l = 0; l < PhysicalTopologyBenchmark.DISKS_PER_HOST; l++) {
+                        final PhysicalStore disk = new PhysicalStoreBuilder().withUuid(hostID
+                                + "-disk" + l).build();
+                        result.addDiskToHost(disk, host);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,250 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.bitbrains.nebu.common.topology.TopologySnapshot.HostNode;
+import nl.bitbrains.nebu.common.topology.TopologySnapshot.RackNode;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestConcurrentTopology {
+
+    private static final int RACKS = 4;
+    private static final int HOSTS_PER_RACK = 8;
+    private static final int WRITERS = 4;
+    private static final int READERS = 2;
+    private static final int BATCHES_PER_WRITER = 500;
+    private static final double SCALE = 1e6;
+
+    private static final String COUNTER = "counter";
+
+    /**
+     * Increments the last update of the counter host, to detect lost
+     * updates.
+     */
+    private static final TopologyUpdate INCREMENT = new TopologyUpdate() {
+        @Override
+        public TopologySnapshot apply(final TopologySnapshot snapshot) {
+            final long count = snapshot.getHostByID(TestConcurrentTopology.COUNTER)
+                    .getLastUpdate();
+            return snapshot.withHostUsage(TestConcurrentTopology.COUNTER, 0, 0, count + 1);
+        }
+    };
+
+    private ConcurrentTopology topology;
+
+    @Before
+    public void setUp() {
+        this.topology = new ConcurrentTopology();
+        final ConcurrentTopology.Batch setUp = this.topology.batch().withDataCenter("dc")
+                .withRack("counterRack", "dc").withHost(TestConcurrentTopology.COUNTER,
+                                                        "counterRack");
+        for (int i = 0; i < TestConcurrentTopology.RACKS; i++) {
+            setUp.withRack("rack" + i, "dc");
+            for (int j = 0; j < TestConcurrentTopology.HOSTS_PER_RACK; j++) {
+                setUp.withHost("host" + i + "-" + j, "rack" + i);
+            }
+        }
+        setUp.publish();
+    }
+
+    @Test
+    public void testBatchPublishedAtOnce() {
+        final TopologySnapshot before = this.topology.snapshot();
+        final ConcurrentTopology.Batch batch = this.topology.batch()
+                .withHostUsage("host0-0", 0.5, 0.5, 1).withHostDisk("disk", "host0-0", 10, 1)
+                .withoutHost("host0-1");
+        Assert.assertSame(before, this.topology.snapshot());
+        Assert.assertEquals(3, batch.size());
+
+        final TopologySnapshot after = batch.publish();
+        Assert.assertSame(after, this.topology.snapshot());
+        Assert.assertEquals(0, batch.size());
+        Assert.assertEquals(0.5, after.getHostByID("host0-0").getCpuUsage(), 0);
+        Assert.assertTrue(after.hasStoreByID("disk"));
+        Assert.assertFalse(after.hasHostByID("host0-1"));
+        Assert.assertEquals(0, before.getHostByID("host0-0").getCpuUsage(), 0);
+        Assert.assertTrue(before.hasHostByID("host0-1"));
+    }
+
+    @Test
+    public void testFailedBatchPublishesNothing() {
+        final TopologySnapshot before = this.topology.snapshot();
+        try {
+            this.topology.batch().withHostUsage("host0-0", 0.5, 0.5, 1)
+                    .withHostUsage("missing", 0.5, 0.5, 1).publish();
+            Assert.fail();
+        } catch (final NoSuchElementException e) {
+            Assert.assertSame(before, this.topology.snapshot());
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        final TopologySnapshot before = this.topology.snapshot();
+        Assert.assertSame(before, this.topology.batch().publish());
+    }
+
+    @Test
+    public void testUpdate() {
+        this.topology.update(TestConcurrentTopology.INCREMENT);
+        Assert.assertEquals(1, this.topology.snapshot()
+                .getHostByID(TestConcurrentTopology.COUNTER).getLastUpdate());
+    }
+
+    @Test
+    public void testFromPhysicalTopology() {
+        final PhysicalTopology physical = this.topology.snapshot().toTopology();
+        final ConcurrentTopology copy = new ConcurrentTopology(physical);
+        physical.removeDataCenter(physical.getDataCenterByID("dc"));
+        Assert.assertTrue(copy.snapshot().hasHostByID("host0-0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullUpdate() {
+        this.topology.batch().with(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSnapshot() {
+        new ConcurrentTopology((TopologySnapshot) null);
+    }
+
+    /**
+     * Each batch gives all hosts of one rack the same, new usage and
+     * increments the counter. Readers check that they never see a rack in
+     * which only some hosts were updated, and that the counter never goes
+     * back. In the end, no increment may have been lost.
+     */
+    @Test(timeout = 60000)
+    public void testNoTornReadsOrLostUpdates() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> writers = new ArrayList<Thread>();
+        for (int w = 0; w < TestConcurrentTopology.WRITERS; w++) {
+            writers.add(new Thread(new Writer(w, start, failure)));
+        }
+        final List<Thread> readers = new ArrayList<Thread>();
+        for (int r = 0; r < TestConcurrentTopology.READERS; r++) {
+            readers.add(new Thread(new Reader(start, writing, failure)));
+        }
+        for (final Thread thread : readers) {
+            thread.start();
+        }
+        for (final Thread thread : writers) {
+            thread.start();
+        }
+        start.countDown();
+        for (final Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (final Thread thread : readers) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(TestConcurrentTopology.WRITERS
+                * TestConcurrentTopology.BATCHES_PER_WRITER, this.topology.snapshot()
+                .getHostByID(TestConcurrentTopology.COUNTER).getLastUpdate());
+    }
+
+    /**
+     * Publishes batches that update a whole rack.
+     */
+    private final class Writer implements Runnable {
+        private final int id;
+        private final CountDownLatch start;
+        private final AtomicReference<Throwable> failure;
+
+        private Writer(final int id, final CountDownLatch start,
+                final AtomicReference<Throwable> failure) {
+            this.id = id;
+            this.start = start;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.start.await();
+                for (int i = 0; i < TestConcurrentTopology.BATCHES_PER_WRITER; i++) {
+                    final int rack = (this.id + i) % TestConcurrentTopology.RACKS;
+                    final long value = this.id * TestConcurrentTopology.BATCHES_PER_WRITER + i
+                            + 1;
+                    final double usage = value / TestConcurrentTopology.SCALE;
+                    final ConcurrentTopology.Batch batch = TestConcurrentTopology.this.topology
+                            .batch();
+                    for (int j = 0; j < TestConcurrentTopology.HOSTS_PER_RACK; j++) {
+                        batch.withHostUsage("host" + rack + "-" + j, usage, usage, value);
+                    }
+                    batch.with(TestConcurrentTopology.INCREMENT).publish();
+                }
+            } catch (final Throwable e) {
+                this.failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /**
+     * Checks the snapshots while the writers are running.
+     */
+    private final class Reader implements Runnable {
+        private final CountDownLatch start;
+        private final AtomicBoolean writing;
+        private final AtomicReference<Throwable> failure;
+
+        private Reader(final CountDownLatch start, final AtomicBoolean writing,
+                final AtomicReference<Throwable> failure) {
+            this.start = start;
+            this.writing = writing;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.start.await();
+                long lastCount = 0;
+                while (this.writing.get()) {
+                    final TopologySnapshot snapshot = TestConcurrentTopology.this.topology
+                            .snapshot();
+                    final long count = snapshot.getHostByID(TestConcurrentTopology.COUNTER)
+                            .getLastUpdate();
+                    Assert.assertTrue(count >= lastCount);
+                    lastCount = count;
+                    for (int i = 0; i < TestConcurrentTopology.RACKS; i++) {
+                        final RackNode rack = snapshot.getRackByID("rack" + i);
+                        long value = -1;
+                        for (final HostNode host : rack.getHosts()) {
+                            if (value < 0) {
+                                value = host.getLastUpdate();
+                            }
+                            Assert.assertEquals(value, host.getLastUpdate());
+                            Assert.assertEquals(value / TestConcurrentTopology.SCALE,
+                                                host.getCpuUsage(), 0);
+                            Assert.assertEquals(value / TestConcurrentTopology.SCALE,
+                                                host.getMemUsage(), 0);
+                        }
+                    }
+                    Thread.yield();
+                }
+            } catch (final Throwable e) {
+                this.failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.ParseException;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestMappedTopology {
+
+    private static final long SEED = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PhysicalTopology topology;
+    private MappedTopology mapped;
+
+    @Before
+    public void setUp() throws IOException, ParseException {
+        this.topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        final Random random = new Random(TestMappedTopology.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, random.nextDouble(), random.nextDouble());
+        }
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            this.topology.updateStoreUsage(store, 100, random.nextInt(100));
+        }
+        final PhysicalRack rack = this.topology.getRackByID("rack1-2");
+        this.topology.addDiskToRack(new PhysicalStoreBuilder().withCapacity(7).withUsed(3)
+                .withUuid("rackDisk").build(), rack);
+        this.topology.addDataCenter(new PhysicalDataCenterBuilder().withUuid("empty").build());
+
+        final File file = this.folder.newFile();
+        MappedTopology.write(this.topology, file);
+        this.mapped = MappedTopology.open(file);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Assert.assertEquals(this.topology.getRoot().getUniqueIdentifier(),
+                            this.mapped.getRootID());
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(this.topology, this.mapped.toTopology()));
+    }
+
+    @Test
+    public void testCounts() {
+        Assert.assertEquals(5, this.mapped.getDataCenterCount());
+        Assert.assertEquals(12, this.mapped.getRackCount());
+        Assert.assertEquals(48, this.mapped.getHostCount());
+        Assert.assertEquals(97, this.mapped.getStoreCount());
+    }
+
+    @Test
+    public void testGetCPUByID() {
+        final PhysicalHost expected = this.topology.getCPUByID("host2-1-3");
+        final PhysicalHost actual = this.mapped.getCPUByID("host2-1-3");
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(expected.getCpuUsage(), actual.getCpuUsage(), 0);
+        Assert.assertEquals(expected.getMemUsage(), actual.getMemUsage(), 0);
+        Assert.assertEquals(expected.getLastUpdate(), actual.getLastUpdate());
+        Assert.assertEquals(expected.getDisks(), actual.getDisks());
+        Assert.assertSame(actual, actual.getDisks().get(0).getParent());
+        Assert.assertNotSame(actual, this.mapped.getCPUByID("host2-1-3"));
+    }
+
+    @Test
+    public void testGetRackAndDataCenterByID() {
+        final PhysicalRack rack = this.mapped.getRackByID("rack1-2");
+        Assert.assertEquals(4, rack.getCPUs().size());
+        Assert.assertEquals("rackDisk", rack.getDisks().get(0).getUniqueIdentifier());
+        Assert.assertSame(rack, rack.getCPUs().get(0).getParent());
+        final PhysicalDataCenter dc = this.mapped.getDataCenterByID("dc1");
+        Assert.assertEquals(this.topology.getDataCenterByID("dc1").getRacks(), dc.getRacks());
+        Assert.assertTrue(this.mapped.getDataCenterByID("empty").getRacks().isEmpty());
+    }
+
+    @Test
+    public void testGetStoreByID() {
+        final PhysicalStore expected = this.topology.getStoreByID("host0-0-0-disk1");
+        final PhysicalStore actual = this.mapped.getStoreByID("host0-0-0-disk1");
+        Assert.assertEquals(expected.getCapacity(), actual.getCapacity());
+        Assert.assertEquals(expected.getUsed(), actual.getUsed());
+    }
+
+    @Test
+    public void testHasByID() {
+        Assert.assertTrue(this.mapped.hasDataCenterByID("dc3"));
+        Assert.assertTrue(this.mapped.hasRackByID("rack3-2"));
+        Assert.assertTrue(this.mapped.hasCPUByID("host3-2-3"));
+        Assert.assertTrue(this.mapped.hasStoreByID("rackDisk"));
+        Assert.assertFalse(this.mapped.hasCPUByID("rack3-2"));
+        Assert.assertFalse(this.mapped.hasStoreByID("missing"));
+        Assert.assertFalse(this.mapped.hasRackByID(null));
+    }
+
+    @Test
+    public void testPrimitiveAccess() {
+        double cpu = 0;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            cpu += host.getCpuUsage();
+        }
+        double mappedCpu = 0;
+        for (int i = 0; i < this.mapped.getHostCount(); i++) {
+            mappedCpu += this.mapped.getCpuUsage(i);
+            final PhysicalHost host = this.topology.getCPUByID(this.mapped.getHostID(i));
+            Assert.assertEquals(host.getMemUsage(), this.mapped.getMemUsage(i), 0);
+            Assert.assertEquals(host.getLastUpdate(), this.mapped.getLastUpdate(i));
+        }
+        Assert.assertEquals(cpu, mappedCpu, 1e-9);
+        for (int i = 0; i < this.mapped.getStoreCount(); i++) {
+            final PhysicalStore store = this.topology.getStoreByID(this.mapped.getStoreID(i));
+            Assert.assertEquals(store.getCapacity(), this.mapped.getCapacity(i));
+            Assert.assertEquals(store.getUsed(), this.mapped.getUsed(i));
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingHost() {
+        this.mapped.getCPUByID("missing");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testHostOutOfBounds() {
+        this.mapped.getCpuUsage(this.mapped.getHostCount());
+    }
+
+    @Test
+    public void testEmptyTopology() throws IOException, ParseException {
+        final File file = this.folder.newFile();
+        MappedTopology.write(new PhysicalTopology(), file);
+        final MappedTopology empty = MappedTopology.open(file);
+        Assert.assertEquals(0, empty.getHostCount());
+        Assert.assertFalse(empty.hasDataCenterByID("dc0"));
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(new PhysicalTopology(),
+                                                        empty.toTopology()));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testNotMapped() throws IOException, ParseException {
+        final File file = this.folder.newFile();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        MappedTopology.open(file);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTruncated() throws IOException, ParseException {
+        final File file = this.folder.newFile();
+        MappedTopology.write(this.topology, file);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        MappedTopology.open(file);
+    }
+}
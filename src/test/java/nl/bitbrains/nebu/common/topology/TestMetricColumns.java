@@ -0,0 +1,161 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestMetricColumns {
+
+    private static final long SEED = 3;
+    private static final double DELTA = 1e-9;
+
+    private PhysicalTopology topology;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        this.random = new Random(TestMetricColumns.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, this.random.nextDouble(),
+                                          this.random.nextDouble());
+        }
+    }
+
+    /**
+     * Checks that every host and store of the topology is in its slot with
+     * its current metrics, and that there are no others.
+     */
+    private void assertColumns() {
+        final MetricColumns columns = this.topology.getColumns();
+        Assert.assertEquals(this.topology.getCPUs().size(), columns.getHostCount());
+        Assert.assertEquals(this.topology.getStores().size(), columns.getStoreCount());
+        double cpu = 0;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            final int slot = columns.getHostSlot(host.getUniqueIdentifier());
+            Assert.assertSame(host, columns.getHost(slot));
+            Assert.assertEquals(host.getCpuUsage(), columns.getCpuUsage(slot), 0);
+            Assert.assertEquals(host.getMemUsage(), columns.getMemUsage(slot), 0);
+            Assert.assertEquals(host.getLastUpdate(), columns.getLastUpdate(slot));
+            cpu += host.getCpuUsage();
+        }
+        long used = 0;
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            final int slot = columns.getStoreSlot(store.getUniqueIdentifier());
+            Assert.assertSame(store, columns.getStore(slot));
+            Assert.assertEquals(store.getCapacity(), columns.getCapacity(slot));
+            Assert.assertEquals(store.getUsed(), columns.getUsed(slot));
+            used += store.getUsed();
+        }
+        Assert.assertEquals(cpu, columns.getTotalCpuUsage(), TestMetricColumns.DELTA);
+        Assert.assertEquals(used, columns.getUsedCapacity());
+    }
+
+    @Test
+    public void testInitial() {
+        this.assertColumns();
+    }
+
+    @Test
+    public void testUpdates() {
+        final MetricColumns columns = this.topology.getColumns();
+        final PhysicalHost host = this.topology.getCPUByID("host1-2-3");
+        this.topology.updateHostUsage(host, 0.25, 0.75, host.getLastUpdate() + 1);
+        final PhysicalStore store = this.topology.getStoreByID("host0-0-0-disk1");
+        this.topology.updateStoreUsage(store, 100, 40);
+        this.assertColumns();
+        Assert.assertEquals(0.25, columns.getCpuUsage(columns.getHostSlot("host1-2-3")), 0);
+        Assert.assertEquals(60, columns.getTotalCapacity() - columns.getUsedCapacity());
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        this.topology.getColumns();
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(0.5).withUuid("new")
+                .build();
+        this.topology.addCPUToRack(host, rack);
+        this.topology.addDiskToHost(new PhysicalStoreBuilder().withUuid("newDisk").build(),
+                                    host);
+        this.topology.addDiskToRack(new PhysicalStoreBuilder().withUuid("rackDisk").build(),
+                                    rack);
+        this.assertColumns();
+
+        this.topology.removeCPUFromRack(this.topology.getCPUByID("host0-0-0"), rack);
+        this.topology.removeDiskFromRack(this.topology.getStoreByID("rackDisk"), rack);
+        this.assertColumns();
+
+        final PhysicalDataCenter dc = this.topology.getDataCenterByID("dc2");
+        this.topology.removeDataCenter(dc);
+        this.assertColumns();
+        this.topology.addDataCenter(dc);
+        this.assertColumns();
+    }
+
+    @Test
+    public void testQueries() {
+        final MetricColumns columns = this.topology.getColumns();
+        int below = 0;
+        PhysicalHost least = null;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            if (host.getCpuUsage() <= 0.5 && host.getMemUsage() <= 0.5) {
+                below++;
+            }
+            if (least == null || host.getCpuUsage() < least.getCpuUsage()) {
+                least = host;
+            }
+        }
+        Assert.assertEquals(below, columns.countHostsBelow(0.5, 0.5));
+        Assert.assertSame(least, columns.getHost(columns.getLeastCpuUsedSlot()));
+        Assert.assertEquals(columns.getHostCount(), columns.copyMemUsage().length);
+    }
+
+    @Test
+    public void testReadWaitsForTopologyLock() throws InterruptedException {
+        final MetricColumns columns = this.topology.getColumns();
+        final double[][] copy = new double[1][];
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                copy[0] = columns.copyCpuUsage();
+            }
+        });
+        final PhysicalHost host = this.topology.getCPUs().get(0);
+        synchronized (this.topology) {
+            reader.start();
+            while (reader.getState() != Thread.State.BLOCKED) {
+                Assert.assertTrue(reader.isAlive());
+                Thread.sleep(1);
+            }
+            this.topology.removeCPUFromRack(host, host.getParent());
+        }
+        reader.join();
+        this.assertColumns();
+        Assert.assertEquals(columns.getHostCount(), copy[0].length);
+    }
+
+    @Test
+    public void testEmpty() {
+        final MetricColumns columns = new PhysicalTopology().getColumns();
+        Assert.assertEquals(-1, columns.getLeastCpuUsedSlot());
+        Assert.assertEquals(0, columns.getTotalCpuUsage(), 0);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingHost() {
+        this.topology.getColumns().getHostSlot("missing");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSlotOutOfRange() {
+        final MetricColumns columns = this.topology.getColumns();
+        columns.getCpuUsage(columns.getHostCount());
+    }
+}
@@ -0,0 +1,132 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestPersistentMap {
+
+    private static final int MANY = 10000;
+
+    /**
+     * Key with a fixed hash, to force collisions.
+     */
+    private static final class Collider {
+        private final int id;
+
+        Collider(final int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Collider && ((Collider) obj).id == this.id;
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final PersistentMap<String, String> map = PersistentMap.empty();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get("a"));
+        Assert.assertFalse(map.values().iterator().hasNext());
+        Assert.assertSame(map, map.minus("a"));
+    }
+
+    @Test
+    public void testPlusAndGet() {
+        final PersistentMap<String, String> map = PersistentMap.<String, String> empty()
+                .plus("a", "1").plus("b", "2");
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("1", map.get("a"));
+        Assert.assertEquals("2", map.get("b"));
+        Assert.assertFalse(map.containsKey("c"));
+    }
+
+    @Test
+    public void testReplace() {
+        final PersistentMap<String, String> map = PersistentMap.<String, String> empty()
+                .plus("a", "1");
+        final PersistentMap<String, String> replaced = map.plus("a", "2");
+        Assert.assertEquals(1, replaced.size());
+        Assert.assertEquals("2", replaced.get("a"));
+        Assert.assertEquals("1", map.get("a"));
+        Assert.assertSame(replaced, replaced.plus("a", replaced.get("a")));
+    }
+
+    @Test
+    public void testOldVersionsUnchanged() {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < TestPersistentMap.MANY; i++) {
+            map = map.plus(i, i);
+        }
+        final PersistentMap<Integer, Integer> smaller = map.minus(0).minus(1);
+        Assert.assertEquals(TestPersistentMap.MANY, map.size());
+        Assert.assertEquals(TestPersistentMap.MANY - 2, smaller.size());
+        Assert.assertEquals(Integer.valueOf(0), map.get(0));
+        Assert.assertNull(smaller.get(0));
+        Assert.assertSame(smaller, smaller.minus(0));
+    }
+
+    @Test
+    public void testValues() {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < TestPersistentMap.MANY; i++) {
+            map = map.plus(i, i);
+        }
+        for (int i = 0; i < TestPersistentMap.MANY; i += 2) {
+            map = map.minus(i);
+        }
+        final Set<Integer> values = new HashSet<Integer>();
+        for (final Integer value : map.values()) {
+            Assert.assertEquals(1, value % 2);
+            values.add(value);
+        }
+        Assert.assertEquals(TestPersistentMap.MANY / 2, values.size());
+        Assert.assertEquals(TestPersistentMap.MANY / 2, map.values().size());
+    }
+
+    @Test
+    public void testCollisions() {
+        PersistentMap<Object, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 3; i++) {
+            map = map.plus(new Collider(i), i);
+        }
+        map = map.plus("other", 3);
+        Assert.assertEquals(4, map.size());
+        Assert.assertEquals(Integer.valueOf(1), map.get(new Collider(1)));
+        map = map.minus(new Collider(1));
+        Assert.assertNull(map.get(new Collider(1)));
+        Assert.assertEquals(Integer.valueOf(2), map.get(new Collider(2)));
+        Assert.assertEquals(3, map.values().size());
+        int count = 0;
+        for (final Integer value : map.values()) {
+            Assert.assertNotNull(value);
+            count++;
+        }
+        Assert.assertEquals(3, count);
+        Assert.assertTrue(map.minus(new Collider(0)).minus(new Collider(2)).minus("other")
+                .isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        PersistentMap.<String, String> empty().plus(null, "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        PersistentMap.<String, String> empty().plus("a", null);
+    }
+}
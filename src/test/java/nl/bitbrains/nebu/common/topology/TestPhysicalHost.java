@@ -147,6 +147,72 @@ public class TestPhysicalHost {
         Assert.assertArrayEquals(DiskList.toArray(), cpu.getDisks().toArray());
     }
 
+    @Test
+    public void testUpdateUsage() {
+        Assert.assertTrue(this.cpu.updateUsage(0.5, 0.25, 10));
+        final HostUsage usage = this.cpu.readUsage(new HostUsage());
+        Assert.assertEquals(0.5, usage.getCpuUsage(), 0);
+        Assert.assertEquals(0.25, usage.getMemUsage(), 0);
+        Assert.assertEquals(10, usage.getLastUpdate());
+        Assert.assertEquals(0.5, this.cpu.getCpuUsage(), 0);
+    }
+
+    @Test
+    public void testUpdateUsageKeepsNewer() {
+        this.cpu.updateUsage(0.5, 0.25, 10);
+        Assert.assertFalse(this.cpu.updateUsage(0.9, 0.9, 9));
+        Assert.assertEquals(0.5, this.cpu.getCpuUsage(), 0);
+        Assert.assertEquals(10, this.cpu.getLastUpdate());
+    }
+
+    @Test
+    public void testHistory() {
+        Assert.assertNull(this.cpu.getCpuHistory());
+        this.cpu.keepHistory(2);
+        this.cpu.updateUsage(0.1, 0.2, 1);
+        this.cpu.updateUsage(0.3, 0.4, 2, true, null);
+        this.cpu.updateUsage(0.5, 0.6, 3);
+        Assert.assertEquals(2, this.cpu.getCpuHistory().size());
+        Assert.assertEquals(0.4, this.cpu.getCpuHistory().getMean(0), 1e-9);
+        Assert.assertEquals(0.6, this.cpu.getMemHistory().getMax(0), 0);
+        Assert.assertEquals(2, this.cpu.getMemHistory().getTime(1));
+    }
+
+    @Test
+    public void testCopyKeepsUsage() {
+        this.cpu.updateUsage(0.5, 0.25, 10);
+        final PhysicalHost copy = new PhysicalHost(this.cpu);
+        Assert.assertEquals(0.25, copy.getMemUsage(), 0);
+        Assert.assertEquals(10, copy.getLastUpdate());
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreConsistent() throws InterruptedException {
+        final int updates = 100000;
+        final Thread[] writers = new Thread[2];
+        for (int w = 0; w < writers.length; w++) {
+            final int offset = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < updates; i += 2) {
+                        TestPhysicalHost.this.cpu.updateUsage(i, i, i);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        final HostUsage usage = new HostUsage();
+        while (writers[0].isAlive() || writers[1].isAlive()) {
+            this.cpu.readUsage(usage);
+            Assert.assertEquals(usage.getCpuUsage(), usage.getMemUsage(), 0);
+            Assert.assertEquals(usage.getLastUpdate(), (long) usage.getCpuUsage());
+        }
+        writers[0].join();
+        writers[1].join();
+        Assert.assertTrue(this.cpu.getLastUpdate() >= updates - 2);
+    }
+
     private Object[] equalsParams() {
         this.setUp();
         return JUnitParamsRunner.$(JUnitParamsRunner.$(this.cpu, null, false),
@@ -102,6 +102,39 @@ public class TestPhysicalStore {
         }
     }
 
+    @Test
+    public void testHistory() {
+        Assert.assertNull(this.disk.getUsedHistory());
+        this.disk.keepHistory(3);
+        this.disk.setUsed(10);
+        this.disk.addUsed(5);
+        Assert.assertEquals(2, this.disk.getUsedHistory().size());
+        Assert.assertEquals(15, this.disk.getUsedHistory().getValue(0), 0);
+        Assert.assertEquals(12.5, this.disk.getUsedHistory().getMean(0), 0);
+    }
+
+    @Test
+    public void testAddUsedConcurrently() throws InterruptedException {
+        final int additions = 10000;
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < additions; i++) {
+                        TestPhysicalStore.this.disk.addUsed(2);
+                        TestPhysicalStore.this.disk.addUsed(-1);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threads.length * additions, this.disk.getUsed());
+    }
+
     @Test
     @Parameters(method = "hashCodeParams")
     public void hashCodeTest(final Object a, final Object b, final boolean result) {
@@ -201,6 +201,7 @@ public class TestPhysicalTopology {
     public void testRemoveDataCenterConsistency() {
         final PhysicalTopology topology = new PhysicalTopology(this.root);
         final PhysicalDataCenter dc = TestPhysicalTopology.mockDataCenter("DC_A");
+        Mockito.when(this.root.findDataCenter("DC_A")).thenReturn(dc);
         // When
         topology.removeDataCenter(dc);
         // Then
@@ -235,6 +236,7 @@ public class TestPhysicalTopology {
         final PhysicalTopology topology = new PhysicalTopology(this.root);
         final PhysicalDataCenter dc = TestPhysicalTopology.mockDataCenter("DC_A");
         final PhysicalRack rack = TestPhysicalTopology.mockRack("Rack_A");
+        Mockito.when(dc.findRack("Rack_A")).thenReturn(rack);
         // When
         topology.removeRackFromDataCenter(rack, dc);
         // Then
@@ -281,6 +283,7 @@ public class TestPhysicalTopology {
         final PhysicalTopology topology = new PhysicalTopology(this.root);
         final PhysicalRack rack = TestPhysicalTopology.mockRack("Rack_A");
         final PhysicalHost cpu = TestPhysicalTopology.mockCPU("CPU_A");
+        Mockito.when(rack.findCPU("CPU_A")).thenReturn(cpu);
         // When
         topology.removeCPUFromRack(cpu, rack);
         // Then
@@ -327,6 +330,7 @@ public class TestPhysicalTopology {
         final PhysicalTopology topology = new PhysicalTopology(this.root);
         final PhysicalRack rack = TestPhysicalTopology.mockRack("Rack_A");
         final PhysicalStore store = TestPhysicalTopology.mockStore("STORE_A");
+        Mockito.when(rack.findDisk("STORE_A")).thenReturn(store);
         // When
         topology.removeDiskFromRack(store, rack);
         // Then
@@ -373,6 +377,7 @@ public class TestPhysicalTopology {
         final PhysicalTopology topology = new PhysicalTopology(this.root);
         final PhysicalHost host = TestPhysicalTopology.mockCPU("Host_A");
         final PhysicalStore store = TestPhysicalTopology.mockStore("STORE_A");
+        Mockito.when(host.findDisk("STORE_A")).thenReturn(store);
         // When
         topology.removeDiskFromHost(store, host);
         // Then
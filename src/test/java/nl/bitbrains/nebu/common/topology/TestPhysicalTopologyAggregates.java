@@ -0,0 +1,243 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestPhysicalTopologyAggregates {
+
+    private static final long SEED = 42;
+    private static final int CHANGES = 500;
+    private static final double DELTA = 1e-9;
+
+    private PhysicalTopology topology;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        this.random = new Random(TestPhysicalTopologyAggregates.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, this.random.nextDouble(),
+                                          this.random.nextDouble());
+        }
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            this.topology.updateStoreUsage(store, 100, this.random.nextInt(100));
+        }
+    }
+
+    /**
+     * Checks every aggregate of the topology against one computed from
+     * scratch.
+     */
+    private void assertAggregates() {
+        TestPhysicalTopologyAggregates.assertMatches(this.topology.getRacks(),
+                                                     this.topology.getAggregate());
+        for (final PhysicalDataCenter dc : this.topology.getDataCenters()) {
+            TestPhysicalTopologyAggregates.assertMatches(dc.getRacks(),
+                                                         this.topology.getAggregate(dc));
+            for (final PhysicalRack rack : dc.getRacks()) {
+                TestPhysicalTopologyAggregates.assertMatches(Collections.singleton(rack),
+                                                             this.topology.getAggregate(rack));
+            }
+        }
+    }
+
+    static void assertMatches(final Iterable<PhysicalRack> racks,
+            final UsageAggregate actual) {
+        int hosts = 0;
+        double cpu = 0;
+        double mem = 0;
+        double maxCpu = 0;
+        double maxMem = 0;
+        long capacity = 0;
+        long used = 0;
+        for (final PhysicalRack rack : racks) {
+            for (final PhysicalHost host : rack.getCPUs()) {
+                hosts++;
+                cpu += host.getCpuUsage();
+                mem += host.getMemUsage();
+                maxCpu = Math.max(maxCpu, host.getCpuUsage());
+                maxMem = Math.max(maxMem, host.getMemUsage());
+                for (final PhysicalStore disk : host.getDisks()) {
+                    capacity += disk.getCapacity();
+                    used += disk.getUsed();
+                }
+            }
+            for (final PhysicalStore disk : rack.getDisks()) {
+                capacity += disk.getCapacity();
+                used += disk.getUsed();
+            }
+        }
+        Assert.assertEquals(hosts, actual.getHostCount());
+        Assert.assertEquals(hosts == 0 ? 0 : cpu / hosts, actual.getMeanCpuUsage(),
+                            TestPhysicalTopologyAggregates.DELTA);
+        Assert.assertEquals(hosts == 0 ? 0 : mem / hosts, actual.getMeanMemUsage(),
+                            TestPhysicalTopologyAggregates.DELTA);
+        Assert.assertEquals(maxCpu, actual.getMaxCpuUsage(), 0);
+        Assert.assertEquals(maxMem, actual.getMaxMemUsage(), 0);
+        Assert.assertEquals(capacity, actual.getTotalCapacity());
+        Assert.assertEquals(used, actual.getUsedCapacity());
+        Assert.assertEquals(capacity - used, actual.getFreeCapacity());
+    }
+
+    private PhysicalHost busiestHost() {
+        PhysicalHost res = null;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            if (res == null || host.getCpuUsage() > res.getCpuUsage()) {
+                res = host;
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testInitial() {
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testEmptyTopology() {
+        final UsageAggregate aggregate = new PhysicalTopology().getAggregate();
+        Assert.assertEquals(0, aggregate.getHostCount());
+        Assert.assertEquals(0, aggregate.getMeanCpuUsage(), 0);
+        Assert.assertEquals(0, aggregate.getMaxMemUsage(), 0);
+    }
+
+    @Test
+    public void testLowerMaximum() {
+        final UsageAggregate root = this.topology.getAggregate();
+        final PhysicalHost busiest = this.busiestHost();
+        final double max = busiest.getCpuUsage();
+        Assert.assertEquals(max, root.getMaxCpuUsage(), 0);
+        this.topology.updateHostUsage(busiest, 0, busiest.getMemUsage());
+        Assert.assertTrue(root.getMaxCpuUsage() < max);
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testRemoveMaximum() {
+        this.topology.getAggregate();
+        final PhysicalHost busiest = this.busiestHost();
+        this.topology.removeCPUFromRack(busiest, busiest.getParent());
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testRemoveRackAndDataCenter() {
+        this.topology.getAggregate();
+        final PhysicalRack rack = this.busiestHost().getParent();
+        final PhysicalDataCenter dc = rack.getParent();
+        this.topology.removeRackFromDataCenter(rack, dc);
+        this.assertAggregates();
+        this.topology.removeDataCenter(dc);
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testAddResources() {
+        this.topology.getAggregate();
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(2).withMemUsage(2)
+                .withUuid("new").build();
+        this.topology.addCPUToRack(host, rack);
+        this.topology.addDiskToHost(new PhysicalStoreBuilder().withCapacity(10).withUsed(5)
+                .withUuid("newDisk").build(), host);
+        this.topology.addDiskToRack(new PhysicalStoreBuilder().withCapacity(20).withUsed(1)
+                .withUuid("rackDisk").build(), rack);
+        Assert.assertEquals(2, this.topology.getAggregate().getMaxCpuUsage(), 0);
+        this.assertAggregates();
+
+        final PhysicalDataCenter dc = new PhysicalDataCenter(rack.getParent());
+        this.topology.removeDataCenter(rack.getParent());
+        this.topology.addDataCenter(new PhysicalDataCenterBuilder().withUuid("other").build());
+        this.topology.addDataCenter(dc);
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testReplaceByIdentifier() {
+        this.topology.getAggregate();
+        final PhysicalRack rack = this.topology.getRackByID("rack1-1");
+        this.topology.addCPUToRack(new PhysicalHostBuilder().withUuid("host1-1-0").build(), rack);
+        this.topology.addRackToDataCenter(new PhysicalRackBuilder().withUuid("rack1-2").build(),
+                                          rack.getParent());
+        this.topology.addDataCenter(new PhysicalDataCenterBuilder().withUuid("dc2").build());
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testRandomChanges() {
+        this.topology.getAggregate();
+        for (int i = 0; i < TestPhysicalTopologyAggregates.CHANGES; i++) {
+            final PhysicalHost host = this.topology.getCPUByID("host" + this.random.nextInt(3)
+                    + "-" + this.random.nextInt(3) + "-" + this.random.nextInt(4));
+            this.topology.updateHostUsage(host, this.random.nextDouble(),
+                                          this.random.nextDouble());
+            final PhysicalStore disk = host.getDisks().get(0);
+            this.topology.updateStoreUsage(disk, 100 + this.random.nextInt(100),
+                                           this.random.nextInt(100));
+        }
+        this.assertAggregates();
+    }
+
+    @Test
+    public void testSameAggregateReflectsChanges() {
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final UsageAggregate aggregate = this.topology.getAggregate(rack);
+        this.topology.removeCPUFromRack(rack.getCPUs().get(0), rack);
+        Assert.assertSame(aggregate, this.topology.getAggregate(rack));
+        Assert.assertEquals(3, aggregate.getHostCount());
+    }
+
+    @Test
+    public void testReadWaitsForTopologyLock() throws InterruptedException {
+        final UsageAggregate aggregate = this.topology.getAggregate();
+        final double[] mean = new double[1];
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mean[0] = aggregate.getMeanCpuUsage();
+            }
+        });
+        final PhysicalHost host = this.topology.getCPUs().get(0);
+        synchronized (this.topology) {
+            reader.start();
+            while (reader.getState() != Thread.State.BLOCKED) {
+                Assert.assertTrue(reader.isAlive());
+                Thread.sleep(1);
+            }
+            this.topology.removeCPUFromRack(host, host.getParent());
+        }
+        reader.join();
+        TestPhysicalTopologyAggregates.assertMatches(this.topology.getRacks(), aggregate);
+        Assert.assertEquals(aggregate.getMeanCpuUsage(), mean[0],
+                            TestPhysicalTopologyAggregates.DELTA);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRackNotInTopology() {
+        this.topology.getAggregate(new PhysicalRackBuilder().withUuid("missing").build());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemovedDataCenter() {
+        final PhysicalDataCenter dc = this.topology.getDataCenterByID("dc0");
+        this.topology.getAggregate(dc);
+        this.topology.removeDataCenter(dc);
+        this.topology.getAggregate(dc);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullRack() {
+        this.topology.getAggregate((PhysicalRack) null);
+    }
+}
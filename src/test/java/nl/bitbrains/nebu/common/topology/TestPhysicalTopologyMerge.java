@@ -0,0 +1,152 @@
+package nl.bitbrains.nebu.common.topology;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestPhysicalTopologyMerge {
+
+    private static final double LEFT_USAGE = 0.25;
+    private static final double RIGHT_USAGE = 0.75;
+    private static final long LEFT_CAPACITY = 100;
+    private static final long RIGHT_CAPACITY = 200;
+
+    private PhysicalTopology left;
+    private PhysicalTopology right;
+
+    @Before
+    public void setUp() {
+        this.left = TestPhysicalTopologyMerge
+                .createTopology("rack", "host", TestPhysicalTopologyMerge.LEFT_USAGE, 1,
+                                TestPhysicalTopologyMerge.LEFT_CAPACITY);
+        this.right = TestPhysicalTopologyMerge
+                .createTopology("rack", "host", TestPhysicalTopologyMerge.RIGHT_USAGE, 2,
+                                TestPhysicalTopologyMerge.RIGHT_CAPACITY);
+    }
+
+    private static PhysicalTopology createTopology(final String rackID, final String hostID,
+            final double usage, final long lastUpdate, final long capacity) {
+        final PhysicalTopology topology = new PhysicalTopology();
+        final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc").build();
+        topology.addDataCenter(dc);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid(rackID).build();
+        topology.addRackToDataCenter(rack, dc);
+        final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(usage)
+                .withMemUsage(usage).withLastUpdate(lastUpdate).withUuid(hostID).build();
+        topology.addCPUToRack(host, rack);
+        topology.addDiskToHost(new PhysicalStoreBuilder().withCapacity(capacity)
+                .withUuid(hostID + "-disk").build(), host);
+        return topology;
+    }
+
+    private static void assertValues(final PhysicalTopology topology, final double usage,
+            final long capacity) {
+        final PhysicalHost host = topology.getCPUByID("host");
+        Assert.assertEquals(usage, host.getCpuUsage(), 0);
+        Assert.assertEquals(usage, host.getMemUsage(), 0);
+        Assert.assertEquals(capacity, topology.getStoreByID("host-disk").getCapacity());
+    }
+
+    @Test
+    public void testDefaultPrefersLeft() {
+        TestPhysicalTopologyMerge.assertValues(PhysicalTopology.mergeTree(this.left,
+                                                                          this.right),
+                                               TestPhysicalTopologyMerge.LEFT_USAGE,
+                                               TestPhysicalTopologyMerge.LEFT_CAPACITY);
+    }
+
+    @Test
+    public void testPreferRight() {
+        final PhysicalTopology merged = PhysicalTopology.mergeTree(this.left, this.right,
+                                                                   MergePolicy.PREFER_RIGHT);
+        TestPhysicalTopologyMerge.assertValues(merged, TestPhysicalTopologyMerge.RIGHT_USAGE,
+                                               TestPhysicalTopologyMerge.RIGHT_CAPACITY);
+        Assert.assertEquals(2, merged.getCPUByID("host").getLastUpdate());
+    }
+
+    @Test
+    public void testNewestUsage() {
+        TestPhysicalTopologyMerge.assertValues(PhysicalTopology
+                .mergeTree(this.left, this.right, MergePolicy.NEWEST_USAGE),
+                                               TestPhysicalTopologyMerge.RIGHT_USAGE,
+                                               TestPhysicalTopologyMerge.LEFT_CAPACITY);
+        TestPhysicalTopologyMerge.assertValues(PhysicalTopology
+                .mergeTree(this.right, this.left, MergePolicy.NEWEST_USAGE),
+                                               TestPhysicalTopologyMerge.RIGHT_USAGE,
+                                               TestPhysicalTopologyMerge.RIGHT_CAPACITY);
+    }
+
+    @Test
+    public void testNewestUsageTiePrefersLeft() {
+        this.left.updateHostUsage(this.left.getCPUByID("host"),
+                                  TestPhysicalTopologyMerge.LEFT_USAGE,
+                                  TestPhysicalTopologyMerge.LEFT_USAGE, 2);
+        TestPhysicalTopologyMerge.assertValues(PhysicalTopology
+                .mergeTree(this.left, this.right, MergePolicy.NEWEST_USAGE),
+                                               TestPhysicalTopologyMerge.LEFT_USAGE,
+                                               TestPhysicalTopologyMerge.LEFT_CAPACITY);
+    }
+
+    @Test
+    public void testInputsUnmodified() {
+        final PhysicalTopology merged = PhysicalTopology.mergeTree(this.left, this.right,
+                                                                   MergePolicy.PREFER_RIGHT);
+        TestPhysicalTopologyMerge.assertValues(this.left, TestPhysicalTopologyMerge.LEFT_USAGE,
+                                               TestPhysicalTopologyMerge.LEFT_CAPACITY);
+        Assert.assertNotSame(this.right.getCPUByID("host"), merged.getCPUByID("host"));
+        Assert.assertNotSame(this.right.getStoreByID("host-disk"),
+                             merged.getStoreByID("host-disk"));
+    }
+
+    @Test
+    public void testUnion() {
+        final PhysicalTopology other = TestPhysicalTopologyMerge.createTopology("otherRack",
+                                                                                "otherHost", 0,
+                                                                                0, 0);
+        other.addDiskToRack(new PhysicalStoreBuilder().withUuid("nas").build(),
+                            other.getRackByID("otherRack"));
+        other.addDiskToHost(new PhysicalStoreBuilder().withUuid("extraDisk").build(),
+                            other.getCPUByID("otherHost"));
+        final PhysicalTopology merged = PhysicalTopology.mergeTree(this.left, other);
+        Assert.assertEquals(2, merged.getDataCenterByID("dc").getRacks().size());
+        Assert.assertSame(merged.getRackByID("otherRack"), merged.getStoreByID("nas")
+                .getParent());
+        Assert.assertSame(merged.getCPUByID("otherHost"), merged.getStoreByID("extraDisk")
+                .getParent());
+        Assert.assertSame(merged.getDataCenterByID("dc"), merged.getRackByID("rack")
+                .getParent());
+    }
+
+    @Test
+    public void testResourceKeepsLeftPlace() {
+        final PhysicalTopology moved = TestPhysicalTopologyMerge.createTopology("otherRack",
+                                                                                "host", 0, 0,
+                                                                                0);
+        final PhysicalTopology merged = PhysicalTopology.mergeTree(this.left, moved);
+        Assert.assertSame(merged.getRackByID("rack"), merged.getCPUByID("host").getParent());
+        Assert.assertTrue(merged.getRackByID("otherRack").getCPUs().isEmpty());
+    }
+
+    @Test
+    public void testExistingRackInNewDataCenter() {
+        final PhysicalTopology moved = new PhysicalTopology();
+        final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("otherDc")
+                .build();
+        moved.addDataCenter(dc);
+        moved.addRackToDataCenter(new PhysicalRackBuilder().withUuid("rack").build(), dc);
+        final PhysicalTopology merged = PhysicalTopology.mergeTree(this.left, moved);
+        Assert.assertSame(merged.getDataCenterByID("dc"), merged.getRackByID("rack")
+                .getParent());
+        Assert.assertTrue(merged.getDataCenterByID("otherDc").getRacks().isEmpty());
+        Assert.assertEquals(1, merged.getRacks().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPolicy() {
+        PhysicalTopology.mergeTree(this.left, this.right, null);
+    }
+}
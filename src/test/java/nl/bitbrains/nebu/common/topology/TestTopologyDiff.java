@@ -0,0 +1,170 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.text.ParseException;
+import java.util.NoSuchElementException;
+
+import nl.bitbrains.nebu.common.topology.factory.PhysicalTopologyCodec;
+import nl.bitbrains.nebu.common.topology.factory.TopologyDiffCodec;
+import nl.bitbrains.nebu.common.util.binary.BinaryConverter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestTopologyDiff {
+
+    private static final double CPU_USAGE = 0.75;
+    private static final double MEM_USAGE = 0.5;
+    private static final long CAPACITY = 1L << 40;
+    private static final long USED = 1L << 20;
+
+    private PhysicalTopology from;
+    private PhysicalTopology to;
+
+    @Before
+    public void setUp() throws ParseException {
+        this.from = PhysicalTopologyBenchmark.createTopology(3, 4);
+        this.to = TestTopologyDiff.copy(this.from);
+    }
+
+    private static PhysicalTopology copy(final PhysicalTopology topology)
+            throws ParseException {
+        final PhysicalTopologyCodec codec = new PhysicalTopologyCodec();
+        return BinaryConverter.fromBytes(BinaryConverter.toBytes(topology, codec), codec);
+    }
+
+    private void assertApplies() throws ParseException {
+        final TopologyDiff diff = TopologyDiff.between(this.from, this.to);
+        final PhysicalTopology patched = TestTopologyDiff.copy(this.from);
+        diff.apply(patched);
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(this.to, patched));
+        Assert.assertTrue(TopologyDiff.between(this.to, patched).isEmpty());
+    }
+
+    @Test
+    public void testIdenticalIsEmpty() {
+        Assert.assertTrue(TopologyDiff.between(this.from, this.to).isEmpty());
+    }
+
+    @Test
+    public void testUsageChange() throws ParseException {
+        final PhysicalHost host = this.to.getCPUByID("host1-2-3");
+        this.to.updateHostUsage(host, TestTopologyDiff.CPU_USAGE, TestTopologyDiff.MEM_USAGE);
+        final TopologyDiff diff = TopologyDiff.between(this.from, this.to);
+        Assert.assertEquals(1, diff.getHosts().size());
+        Assert.assertEquals("host1-2-3", diff.getHosts().get(0).getId());
+        Assert.assertTrue(diff.getRacks().isEmpty());
+        Assert.assertTrue(diff.getStores().isEmpty());
+
+        final PhysicalHost patched = this.from.getCPUByID("host1-2-3");
+        diff.apply(this.from);
+        Assert.assertSame(patched, this.from.getCPUByID("host1-2-3"));
+        Assert.assertEquals(TestTopologyDiff.CPU_USAGE, patched.getCpuUsage(), 0);
+        Assert.assertEquals(TestTopologyDiff.MEM_USAGE, patched.getMemUsage(), 0);
+    }
+
+    @Test
+    public void testStoreChange() throws ParseException {
+        final PhysicalStore store = this.to.getStoreByID("host0-0-0-disk1");
+        store.setCapacity(TestTopologyDiff.CAPACITY);
+        store.setUsed(TestTopologyDiff.USED);
+        final TopologyDiff diff = TopologyDiff.between(this.from, this.to);
+        Assert.assertEquals(1, diff.getStores().size());
+        diff.apply(this.from);
+        final PhysicalStore patched = this.from.getStoreByID("host0-0-0-disk1");
+        Assert.assertEquals(TestTopologyDiff.CAPACITY, patched.getCapacity());
+        Assert.assertEquals(TestTopologyDiff.USED, patched.getUsed());
+        Assert.assertSame(this.from.getCPUByID("host0-0-0"), patched.getParent());
+    }
+
+    @Test
+    public void testAdd() throws ParseException {
+        final PhysicalDataCenter dataCenter = new PhysicalDataCenterBuilder().withUuid("newDc")
+                .build();
+        this.to.addDataCenter(dataCenter);
+        final PhysicalRack rack = new PhysicalRackBuilder().withUuid("newRack").build();
+        this.to.addRackToDataCenter(rack, dataCenter);
+        final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(0.25)
+                .withUuid("newHost").build();
+        this.to.addCPUToRack(host, rack);
+        this.to.addDiskToHost(new PhysicalStoreBuilder().withUuid("newDisk").build(), host);
+        this.to.addDiskToRack(new PhysicalStoreBuilder().withUuid("newNas").build(),
+                              this.to.getRackByID("rack0-0"));
+        this.assertApplies();
+    }
+
+    @Test
+    public void testRemoveListsTopmostOnly() throws ParseException {
+        this.to.removeDataCenter(this.to.getDataCenterByID("dc0"));
+        final PhysicalRack rack = this.to.getRackByID("rack1-1");
+        this.to.removeRackFromDataCenter(rack, rack.getParent());
+        final PhysicalHost host = this.to.getCPUByID("host1-0-0");
+        this.to.removeCPUFromRack(host, host.getParent());
+        final TopologyDiff diff = TopologyDiff.between(this.from, this.to);
+        Assert.assertEquals(1, diff.getRemovedDataCenters().size());
+        Assert.assertEquals(1, diff.getRemovedRacks().size());
+        Assert.assertEquals(1, diff.getRemovedHosts().size());
+        Assert.assertTrue(diff.getRemovedStores().isEmpty());
+        this.assertApplies();
+    }
+
+    @Test
+    public void testMoveOutOfRemovedParent() throws ParseException {
+        final PhysicalHost host = this.to.getCPUByID("host1-1-2");
+        this.to.removeCPUFromRack(host, host.getParent());
+        this.to.addCPUToRack(host, this.to.getRackByID("rack0-0"));
+        final PhysicalStore disk = this.to.getStoreByID("host1-1-1-disk0");
+        this.to.removeDiskFromHost(disk, (PhysicalHost) disk.getParent());
+        this.to.addDiskToRack(disk, this.to.getRackByID("rack0-1"));
+        final PhysicalRack rack = this.to.getRackByID("rack1-1");
+        this.to.removeRackFromDataCenter(rack, rack.getParent());
+        this.assertApplies();
+        Assert.assertEquals(1, TopologyDiff.between(this.from, this.to).getHosts().size());
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws ParseException {
+        this.to.updateHostUsage(this.to.getCPUByID("host0-1-1"), TestTopologyDiff.CPU_USAGE,
+                                TestTopologyDiff.MEM_USAGE);
+        this.to.addDiskToRack(new PhysicalStoreBuilder().withCapacity(TestTopologyDiff.CAPACITY)
+                .withUuid("newNas").build(), this.to.getRackByID("rack0-0"));
+        final PhysicalRack rack = this.to.getRackByID("rack1-1");
+        this.to.removeRackFromDataCenter(rack, rack.getParent());
+        final TopologyDiffCodec codec = new TopologyDiffCodec();
+        final TopologyDiff diff = BinaryConverter.fromBytes(BinaryConverter
+                .toBytes(TopologyDiff.between(this.from, this.to), codec), codec);
+        diff.apply(this.from);
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(this.to, this.from));
+        Assert.assertEquals(TestTopologyDiff.CPU_USAGE, this.from.getCPUByID("host0-1-1")
+                .getCpuUsage(), 0);
+    }
+
+    @Test
+    public void testDiffIsSmallerThanTopology() {
+        this.to.updateHostUsage(this.to.getCPUByID("host0-1-1"), TestTopologyDiff.CPU_USAGE,
+                                TestTopologyDiff.MEM_USAGE);
+        final int diff = BinaryConverter.toBytes(TopologyDiff.between(this.from, this.to),
+                                                 new TopologyDiffCodec()).length;
+        final int full = BinaryConverter.toBytes(this.to, new PhysicalTopologyCodec()).length;
+        Assert.assertTrue(diff * 10 < full);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testApplyMissingParent() {
+        new TopologyDiffBuilder().withHost("host", "missingRack", 0, 0, 0).build().apply(this.from);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBetweenNull() {
+        TopologyDiff.between(this.from, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderNullParent() {
+        new TopologyDiffBuilder().withRack("rack", null);
+    }
+}
@@ -0,0 +1,175 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestTopologyMerger {
+
+    private static final int COLLECTORS = 4;
+
+    private List<PhysicalTopology> topologies;
+
+    @Before
+    public void setUp() {
+        this.topologies = new ArrayList<PhysicalTopology>();
+        for (int i = 0; i < TestTopologyMerger.COLLECTORS; i++) {
+            this.topologies.add(TestTopologyMerger.createCollector(i));
+        }
+    }
+
+    /**
+     * Creates the topology of a collector that reports on its own data
+     * center and partly on that of the next collector, with different
+     * values.
+     */
+    private static PhysicalTopology createCollector(final int collector) {
+        final PhysicalTopology topology = new PhysicalTopology();
+        for (int i = collector; i <= collector + 1; i++) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + i)
+                    .build();
+            topology.addDataCenter(dc);
+            for (int j = 0; j < 3; j++) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + i + "-" + j)
+                        .build();
+                topology.addRackToDataCenter(rack, dc);
+                topology.addDiskToRack(new PhysicalStoreBuilder().withCapacity(collector)
+                        .withUuid("nas" + i + "-" + j).build(), rack);
+                for (int k = i - collector; k < 4; k++) {
+                    final String hostID = "host" + i + "-" + j + "-" + k;
+                    final PhysicalHost host = new PhysicalHostBuilder()
+                            .withCpuUsage(collector / 10.0).withLastUpdate(10 - collector)
+                            .withUuid(hostID).build();
+                    topology.addCPUToRack(host, rack);
+                    topology.addDiskToHost(new PhysicalStoreBuilder().withUsed(collector)
+                            .withUuid(hostID + "-disk").build(), host);
+                }
+            }
+        }
+        return topology;
+    }
+
+    private PhysicalTopology fold(final MergePolicy policy) {
+        PhysicalTopology res = this.topologies.get(0);
+        for (int i = 1; i < this.topologies.size(); i++) {
+            res = PhysicalTopology.mergeTree(res, this.topologies.get(i), policy);
+        }
+        return res;
+    }
+
+    private static void assertSame(final PhysicalTopology expected,
+            final PhysicalTopology actual) {
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(expected, actual));
+        for (final PhysicalHost host : expected.iterateCPUs()) {
+            final PhysicalHost other = actual.getCPUByID(host.getUniqueIdentifier());
+            Assert.assertEquals(host.getCpuUsage(), other.getCpuUsage(), 0);
+            Assert.assertEquals(host.getLastUpdate(), other.getLastUpdate());
+            Assert.assertEquals(host.getParent(), other.getParent());
+        }
+        for (final PhysicalStore store : expected.iterateStores()) {
+            final PhysicalStore other = actual.getStoreByID(store.getUniqueIdentifier());
+            Assert.assertEquals(store.getCapacity(), other.getCapacity());
+            Assert.assertEquals(store.getUsed(), other.getUsed());
+            Assert.assertEquals(store.getParent(), other.getParent());
+        }
+    }
+
+    @Test
+    public void testSameAsPairwiseMerge() {
+        for (final MergePolicy policy : MergePolicy.values()) {
+            TestTopologyMerger.assertSame(this.fold(policy),
+                                          new TopologyMerger(policy).merge(this.topologies));
+        }
+    }
+
+    @Test
+    public void testSingleThreadedPool() {
+        final ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            TestTopologyMerger.assertSame(this.fold(MergePolicy.NEWEST_USAGE),
+                                          new TopologyMerger(MergePolicy.NEWEST_USAGE, pool)
+                                                  .merge(this.topologies));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParentsAndIndex() {
+        final PhysicalTopology merged = new TopologyMerger(MergePolicy.PREFER_LEFT)
+                .merge(this.topologies);
+        Assert.assertEquals(TestTopologyMerger.COLLECTORS + 1, merged.getDataCenters().size());
+        for (final PhysicalRack rack : merged.iterateRacks()) {
+            Assert.assertSame(rack, merged.getRackByID(rack.getUniqueIdentifier()));
+            Assert.assertSame(merged.getDataCenterByID(rack.getParent().getUniqueIdentifier()),
+                              rack.getParent());
+            for (final PhysicalHost host : rack.getCPUView()) {
+                Assert.assertSame(rack, host.getParent());
+            }
+        }
+        for (final PhysicalStore store : merged.iterateStores()) {
+            Assert.assertSame(store, merged.getStoreByID(store.getUniqueIdentifier()));
+        }
+    }
+
+    @Test
+    public void testInputsUnmodified() {
+        final PhysicalTopology merged = new TopologyMerger(MergePolicy.PREFER_RIGHT)
+                .merge(this.topologies);
+        final PhysicalTopology first = this.topologies.get(0);
+        Assert.assertEquals(2, first.getDataCenters().size());
+        Assert.assertEquals(0, first.getCPUByID("host1-0-1").getCpuUsage(), 0);
+        Assert.assertNotSame(first.getCPUByID("host0-0-0"), merged.getCPUByID("host0-0-0"));
+    }
+
+    @Test
+    public void testHostKeepsFirstPlace() {
+        final PhysicalTopology moved = TestTopologyMerger.createCollector(0);
+        final PhysicalHost host = moved.getCPUByID("host0-0-0");
+        moved.removeCPUFromRack(host, host.getParent());
+        moved.addCPUToRack(host, moved.getRackByID("rack0-1"));
+        final PhysicalTopology merged = new TopologyMerger(MergePolicy.PREFER_RIGHT)
+                .merge(Arrays.asList(this.topologies.get(0), moved));
+        Assert.assertEquals("rack0-0", merged.getCPUByID("host0-0-0").getParent()
+                .getUniqueIdentifier());
+        Assert.assertEquals(4, merged.getRackByID("rack0-1").getCPUs().size());
+    }
+
+    @Test
+    public void testDifferentRootIgnored() {
+        final PhysicalTopology other = new PhysicalTopology(new PhysicalRootBuilder()
+                .withUuid("other").build());
+        other.addDataCenter(new PhysicalDataCenterBuilder().withUuid("otherDc").build());
+        final PhysicalTopology merged = new TopologyMerger(MergePolicy.PREFER_LEFT)
+                .merge(Arrays.asList(this.topologies.get(0), other));
+        Assert.assertEquals(this.topologies.get(0).getRoot(), merged.getRoot());
+        Assert.assertFalse(merged.hasDataCenterByID("otherDc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeNothing() {
+        new TopologyMerger(MergePolicy.PREFER_LEFT).merge(Collections
+                .<PhysicalTopology> emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeNullTopology() {
+        new TopologyMerger(MergePolicy.PREFER_LEFT).merge(Arrays
+                .asList(this.topologies.get(0), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPool() {
+        new TopologyMerger(MergePolicy.PREFER_LEFT, null);
+    }
+}
@@ -0,0 +1,153 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestTopologyQuery {
+
+    private static final long SEED = 7;
+    private static final int RACKS_PER_DATA_CENTER = 20;
+    private static final int HOSTS_PER_RACK = 10;
+    private static final int K = 25;
+    private static final long FREE = 50;
+
+    private PhysicalTopology topology;
+    private ForkJoinPool pool;
+    private HostPredicate hasFreeStore;
+
+    @Before
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(
+                TestTopologyQuery.RACKS_PER_DATA_CENTER, TestTopologyQuery.HOSTS_PER_RACK);
+        final Random random = new Random(TestTopologyQuery.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            // Few distinct values, so that the order depends on the identifiers.
+            this.topology.updateHostUsage(host, random.nextInt(10) / 10.0,
+                                          random.nextInt(10) / 10.0);
+        }
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            this.topology.updateStoreUsage(store, 100, random.nextInt(100));
+        }
+        this.pool = new ForkJoinPool(2);
+        this.hasFreeStore = TopologyPredicates.hasStore(TopologyPredicates
+                .freeCapacityAtLeast(TestTopologyQuery.FREE));
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * @return the hosts of the scope that match the predicate, sorted by
+     *         lowest cpu usage.
+     */
+    private static List<PhysicalHost> expected(final List<PhysicalRack> scope,
+            final HostPredicate predicate) {
+        final List<PhysicalHost> res = new ArrayList<PhysicalHost>();
+        for (final PhysicalRack rack : scope) {
+            for (final PhysicalHost host : rack.getCPUs()) {
+                if (predicate.matches(host)) {
+                    res.add(host);
+                }
+            }
+        }
+        Collections.sort(res, HostOrder.LOWEST_CPU_USAGE);
+        return res;
+    }
+
+    @Test
+    public void testTopSequential() {
+        final List<PhysicalHost> expected = TestTopologyQuery.expected(this.topology.getRacks(),
+                                                                       this.hasFreeStore);
+        Assert.assertEquals(expected.subList(0, TestTopologyQuery.K), this.topology.query()
+                .where(this.hasFreeStore).top(TestTopologyQuery.K, HostOrder.LOWEST_CPU_USAGE));
+    }
+
+    @Test
+    public void testTopParallel() {
+        final List<PhysicalHost> expected = TestTopologyQuery.expected(this.topology.getRacks(),
+                                                                       this.hasFreeStore);
+        Assert.assertEquals(expected.subList(0, TestTopologyQuery.K), this.topology.query()
+                .where(this.hasFreeStore).parallel(this.pool)
+                .top(TestTopologyQuery.K, HostOrder.LOWEST_CPU_USAGE));
+    }
+
+    @Test
+    public void testListParallelKeepsOrder() {
+        final TopologyQuery query = this.topology.query().where(this.hasFreeStore);
+        final List<PhysicalHost> sequential = query.list();
+        Assert.assertEquals(sequential, query.parallel(this.pool).list());
+        Assert.assertEquals(TestTopologyQuery.expected(this.topology.getRacks(),
+                                                       this.hasFreeStore).size(),
+                            sequential.size());
+    }
+
+    @Test
+    public void testInDataCenter() {
+        final PhysicalDataCenter dc = this.topology.getDataCenterByID("dc1");
+        final HostPredicate predicate = TopologyPredicates.cpuUsageAtMost(0.5);
+        final List<PhysicalHost> expected = TestTopologyQuery.expected(dc.getRacks(),
+                                                                       predicate);
+        Assert.assertEquals(expected.subList(0, TestTopologyQuery.K), this.topology.query()
+                .inDataCenter("dc1").where(predicate).parallel(this.pool)
+                .top(TestTopologyQuery.K, HostOrder.LOWEST_CPU_USAGE));
+    }
+
+    @Test
+    public void testInRackFewerThanK() {
+        final PhysicalRack rack = this.topology.getRackByID("rack2-3");
+        final List<PhysicalHost> res = this.topology.query().inRack("rack2-3")
+                .top(TestTopologyQuery.K, HostOrder.HIGHEST_MEM_USAGE);
+        Assert.assertEquals(TestTopologyQuery.HOSTS_PER_RACK, res.size());
+        for (int i = 1; i < res.size(); i++) {
+            Assert.assertTrue(res.get(i - 1).getMemUsage() >= res.get(i).getMemUsage());
+            Assert.assertSame(rack, res.get(i).getParent());
+        }
+    }
+
+    @Test
+    public void testPredicates() {
+        final List<PhysicalHost> res = this.topology.query()
+                .where(TopologyPredicates.memUsageAtMost(0.3))
+                .where(TopologyPredicates.not(TopologyPredicates.cpuUsageAtMost(0.3))).list();
+        Assert.assertFalse(res.isEmpty());
+        for (final PhysicalHost host : res) {
+            Assert.assertTrue(host.getMemUsage() <= 0.3);
+            Assert.assertTrue(host.getCpuUsage() > 0.3);
+        }
+        Assert.assertTrue(this.topology.query()
+                .where(TopologyPredicates.updatedSince(Long.MAX_VALUE)).list().isEmpty());
+        Assert.assertTrue(this.topology.query()
+                .where(TopologyPredicates.hasStore(TopologyPredicates.capacityAtLeast(101)))
+                .list().isEmpty());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingDataCenter() {
+        this.topology.query().inDataCenter("missing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoHosts() {
+        this.topology.query().top(0, HostOrder.LOWEST_CPU_USAGE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullPredicate() {
+        this.topology.query().where(null);
+    }
+}
@@ -0,0 +1,193 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.NoSuchElementException;
+
+import nl.bitbrains.nebu.common.topology.TopologySnapshot.HostNode;
+import nl.bitbrains.nebu.common.topology.TopologySnapshot.RackNode;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestTopologySnapshot {
+
+    private PhysicalTopology topology;
+    private TopologySnapshot snapshot;
+
+    @Before
+    public void setUp() {
+        this.topology = new PhysicalTopology();
+        for (int i = 0; i < 2; i++) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + i)
+                    .build();
+            this.topology.addDataCenter(dc);
+            for (int j = 0; j < 2; j++) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + i + j)
+                        .build();
+                this.topology.addRackToDataCenter(rack, dc);
+                this.topology.addDiskToRack(new PhysicalStoreBuilder().withCapacity(100)
+                        .withUsed(j).withUuid("nas" + i + j).build(), rack);
+                for (int k = 0; k < 3; k++) {
+                    final String hostID = "host" + i + j + k;
+                    final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(k / 10.0)
+                            .withMemUsage(j / 10.0).withLastUpdate(k).withUuid(hostID).build();
+                    this.topology.addCPUToRack(host, rack);
+                    this.topology.addDiskToHost(new PhysicalStoreBuilder().withCapacity(10)
+                            .withUsed(k).withUuid(hostID + "-disk").build(), host);
+                }
+            }
+        }
+        this.snapshot = TopologySnapshot.of(this.topology);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final PhysicalTopology copy = this.snapshot.toTopology();
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(this.topology, copy));
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            final PhysicalHost other = copy.getCPUByID(host.getUniqueIdentifier());
+            Assert.assertEquals(host.getCpuUsage(), other.getCpuUsage(), 0);
+            Assert.assertEquals(host.getMemUsage(), other.getMemUsage(), 0);
+            Assert.assertEquals(host.getLastUpdate(), other.getLastUpdate());
+        }
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            final PhysicalStore other = copy.getStoreByID(store.getUniqueIdentifier());
+            Assert.assertEquals(store.getCapacity(), other.getCapacity());
+            Assert.assertEquals(store.getUsed(), other.getUsed());
+            Assert.assertEquals(store.getParent(), other.getParent());
+        }
+    }
+
+    @Test
+    public void testSnapshotIndependentOfTopology() {
+        this.topology.updateHostUsage(this.topology.getCPUByID("host000"), 1, 1, 1);
+        Assert.assertEquals(0, this.snapshot.getHostByID("host000").getCpuUsage(), 0);
+    }
+
+    @Test
+    public void testLookups() {
+        Assert.assertEquals("root", this.snapshot.getRootID());
+        Assert.assertEquals(2, this.snapshot.getDataCenters().size());
+        Assert.assertEquals("dc1", this.snapshot.getDataCenterOfRack("rack10"));
+        Assert.assertEquals("rack10", this.snapshot.getRackOfHost("host102"));
+        Assert.assertEquals(0.2, this.snapshot.getHostByID("host102").getCpuUsage(), 0);
+        Assert.assertEquals(1, this.snapshot.getStoreByID("nas11").getUsed());
+        Assert.assertEquals(2, this.snapshot.getStoreByID("host102-disk").getUsed());
+        Assert.assertTrue(this.snapshot.hasRackByID("rack01"));
+        Assert.assertFalse(this.snapshot.hasHostByID("rack01"));
+        int hosts = 0;
+        for (final HostNode host : this.snapshot.iterateHosts()) {
+            Assert.assertTrue(this.snapshot.hasHostByID(host.getUniqueIdentifier()));
+            hosts++;
+        }
+        Assert.assertEquals(12, hosts);
+    }
+
+    @Test
+    public void testUpdateSharesUnchangedResources() {
+        final TopologySnapshot updated = this.snapshot.withHostUsage("host000", 0.5, 0.6, 7);
+        final HostNode host = updated.getHostByID("host000");
+        Assert.assertEquals(0.5, host.getCpuUsage(), 0);
+        Assert.assertEquals(0.6, host.getMemUsage(), 0);
+        Assert.assertEquals(7, host.getLastUpdate());
+        Assert.assertEquals(0, this.snapshot.getHostByID("host000").getCpuUsage(), 0);
+
+        Assert.assertSame(this.snapshot.getDataCenterByID("dc1"),
+                          updated.getDataCenterByID("dc1"));
+        Assert.assertSame(this.snapshot.getRackByID("rack01"), updated.getRackByID("rack01"));
+        Assert.assertSame(this.snapshot.getHostByID("host001"), updated.getHostByID("host001"));
+        Assert.assertSame(this.snapshot.getStoreByID("host000-disk"),
+                          updated.getStoreByID("host000-disk"));
+        Assert.assertNotSame(this.snapshot.getRackByID("rack00"), updated.getRackByID("rack00"));
+    }
+
+    @Test
+    public void testStoreUsage() {
+        final TopologySnapshot updated = this.snapshot.withStoreUsage("nas00", 200, 50)
+                .withStoreUsage("host001-disk", 20, 5);
+        Assert.assertEquals(200, updated.getStoreByID("nas00").getCapacity());
+        Assert.assertEquals(50, updated.getStoreByID("nas00").getUsed());
+        Assert.assertEquals(5, updated.getStoreByID("host001-disk").getUsed());
+        Assert.assertEquals(1, updated.getHostByID("host001").getDisks().size());
+        Assert.assertEquals(0, this.snapshot.getStoreByID("nas00").getUsed());
+    }
+
+    @Test
+    public void testAdd() {
+        final TopologySnapshot updated = this.snapshot.withDataCenter("dc2")
+                .withRack("rack20", "dc2").withHost("host200", "rack20")
+                .withHostDisk("host200-disk", "host200", 10, 1)
+                .withRackDisk("nas20", "rack20", 100, 2);
+        final RackNode rack = updated.getRackByID("rack20");
+        Assert.assertEquals(1, rack.getHosts().size());
+        Assert.assertEquals(1, rack.getDisks().size());
+        Assert.assertEquals("rack20", updated.getRackOfHost("host200"));
+        Assert.assertEquals(1, updated.getStoreByID("host200-disk").getUsed());
+        Assert.assertFalse(this.snapshot.hasDataCenterByID("dc2"));
+
+        final PhysicalTopology copy = updated.toTopology();
+        Assert.assertSame(copy.getCPUByID("host200"), copy.getStoreByID("host200-disk")
+                .getParent());
+        Assert.assertSame(copy.getRackByID("rack20"), copy.getStoreByID("nas20").getParent());
+    }
+
+    @Test
+    public void testRemove() {
+        final TopologySnapshot updated = this.snapshot.withoutRack("rack00")
+                .withoutHost("host010").withoutStore("nas11").withoutStore("host011-disk");
+        Assert.assertFalse(updated.hasRackByID("rack00"));
+        Assert.assertFalse(updated.hasHostByID("host000"));
+        Assert.assertFalse(updated.hasStoreByID("nas00"));
+        Assert.assertFalse(updated.hasStoreByID("host000-disk"));
+        Assert.assertFalse(updated.hasHostByID("host010"));
+        Assert.assertFalse(updated.hasStoreByID("host010-disk"));
+        Assert.assertFalse(updated.hasStoreByID("nas11"));
+        Assert.assertTrue(updated.getHostByID("host011").getDisks().isEmpty());
+        Assert.assertEquals(1, updated.getDataCenterByID("dc0").getRacks().size());
+        Assert.assertTrue(this.snapshot.hasHostByID("host000"));
+
+        final TopologySnapshot withoutDc = updated.withoutDataCenter("dc1");
+        Assert.assertFalse(withoutDc.hasDataCenterByID("dc1"));
+        Assert.assertFalse(withoutDc.hasRackByID("rack11"));
+        Assert.assertFalse(withoutDc.hasStoreByID("host112-disk"));
+        Assert.assertSame(withoutDc, withoutDc.withoutDataCenter("dc1"));
+        Assert.assertSame(withoutDc, withoutDc.withoutStore("nas11"));
+    }
+
+    @Test
+    public void testEmpty() {
+        final TopologySnapshot empty = TopologySnapshot.empty("other");
+        Assert.assertEquals("other", empty.getRootID());
+        Assert.assertTrue(empty.getDataCenters().isEmpty());
+        Assert.assertEquals("other", empty.toTopology().getRoot().getUniqueIdentifier());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateHost() {
+        this.snapshot.withHost("host000", "rack01");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateStore() {
+        this.snapshot.withRackDisk("host000-disk", "rack01", 1, 0);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingParent() {
+        this.snapshot.withRack("rack", "dc");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testMissingHost() {
+        this.snapshot.withHostUsage("host", 0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullTopology() {
+        TopologySnapshot.of(null);
+    }
+}
@@ -0,0 +1,130 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestUsageHistory {
+
+    private static final int CAPACITY = 100;
+    private static final long SEED = 11;
+    private static final double DELTA = 1e-9;
+
+    private UsageHistory history;
+
+    @Before
+    public void setUp() {
+        this.history = new UsageHistory(TestUsageHistory.CAPACITY);
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertEquals(0, this.history.size());
+        Assert.assertEquals(0, this.history.getMean(0), 0);
+        Assert.assertEquals(0, this.history.getMax(0), 0);
+        Assert.assertEquals(0, this.history.getPercentile(0.95, 0), 0);
+    }
+
+    @Test
+    public void testWrapsAround() {
+        for (int i = 0; i < TestUsageHistory.CAPACITY + 10; i++) {
+            this.history.add(i, i);
+        }
+        Assert.assertEquals(TestUsageHistory.CAPACITY, this.history.size());
+        Assert.assertEquals(TestUsageHistory.CAPACITY + 9, this.history.getValue(0), 0);
+        Assert.assertEquals(10, this.history.getTime(TestUsageHistory.CAPACITY - 1));
+        Assert.assertEquals(59.5, this.history.getMean(10), TestUsageHistory.DELTA);
+    }
+
+    @Test
+    public void testWindow() {
+        for (int i = 0; i < 10; i++) {
+            this.history.add(i * 1000, i);
+        }
+        Assert.assertEquals(8, this.history.getMean(7000), TestUsageHistory.DELTA);
+        Assert.assertEquals(9, this.history.getMax(7000), 0);
+        Assert.assertEquals(7, this.history.getPercentile(0, 7000), 0);
+        Assert.assertEquals(0, this.history.getMean(10000), 0);
+    }
+
+    @Test
+    public void testAggregatesMatchSorted() {
+        final Random random = new Random(TestUsageHistory.SEED);
+        for (int i = 0; i < 3 * TestUsageHistory.CAPACITY; i++) {
+            this.history.add(i, random.nextInt(20) / 20.0);
+        }
+        final long since = 2 * TestUsageHistory.CAPACITY + 50;
+        final double[] window = new double[50];
+        double sum = 0;
+        for (int age = 0; age < window.length; age++) {
+            window[age] = this.history.getValue(age);
+            sum += window[age];
+        }
+        Arrays.sort(window);
+        Assert.assertEquals(sum / window.length, this.history.getMean(since),
+                            TestUsageHistory.DELTA);
+        Assert.assertEquals(window[window.length - 1], this.history.getMax(since), 0);
+        for (final double fraction : new double[] { 0.01, 0.5, 0.9, 0.95, 1 }) {
+            final int rank = (int) Math.ceil(fraction * window.length);
+            Assert.assertEquals(window[rank - 1], this.history.getPercentile(fraction, since),
+                                0);
+        }
+    }
+
+    @Test
+    public void testOutOfOrderSamples() {
+        for (int i = 0; i < 10; i++) {
+            this.history.add(i * 1000, i);
+        }
+        this.history.add(8500, 20);
+        this.history.add(500, 30);
+        Assert.assertEquals(9000, this.history.getTime(0));
+        Assert.assertEquals(8500, this.history.getTime(1));
+        Assert.assertEquals(500, this.history.getTime(10));
+        Assert.assertEquals(20, this.history.getMax(7000), 0);
+        Assert.assertEquals((7 + 8 + 20 + 9) / 4.0, this.history.getMean(7000),
+                            TestUsageHistory.DELTA);
+        for (int age = 1; age < this.history.size(); age++) {
+            Assert.assertTrue(this.history.getTime(age) <= this.history.getTime(age - 1));
+        }
+    }
+
+    @Test
+    public void testOutOfOrderSampleInFullHistory() {
+        final UsageHistory full = new UsageHistory(3);
+        full.add(10, 1);
+        full.add(20, 2);
+        full.add(30, 3);
+        full.add(5, 4);
+        Assert.assertEquals(10, full.getTime(2));
+        full.add(25, 5);
+        Assert.assertEquals(3, full.size());
+        Assert.assertEquals(30, full.getTime(0));
+        Assert.assertEquals(25, full.getTime(1));
+        Assert.assertEquals(20, full.getTime(2));
+        Assert.assertEquals(5, full.getValue(1), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testTooOld() {
+        this.history.add(0, 1);
+        this.history.getValue(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCapacity() {
+        new UsageHistory(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFraction() {
+        this.history.getPercentile(1.5, 0);
+    }
+}
@@ -0,0 +1,322 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestUtilizationIndex {
+
+    private static final long SEED = 5;
+    private static final int CHANGES = 500;
+    private static final double MAX = 0.3;
+    private static final int WRITERS = 4;
+    private static final int UPDATES_PER_WRITER = 20000;
+    private static final int TIMES = 1000;
+
+    private PhysicalTopology topology;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        this.random = new Random(TestUtilizationIndex.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            // Few distinct values, so that the order depends on the identifiers.
+            this.topology.updateHostUsage(host, this.random.nextInt(10) / 10.0,
+                                          this.random.nextInt(10) / 10.0);
+        }
+    }
+
+    /**
+     * @return the hosts of the racks with at most the maximum usage, least
+     *         loaded first.
+     */
+    private static List<PhysicalHost> expected(final List<PhysicalRack> racks,
+            final HostMetric metric, final double max) {
+        final List<PhysicalHost> res = new ArrayList<PhysicalHost>();
+        for (final PhysicalRack rack : racks) {
+            for (final PhysicalHost host : rack.getCPUs()) {
+                if (metric.of(host) <= max) {
+                    res.add(host);
+                }
+            }
+        }
+        Collections.sort(res, metric == HostMetric.CPU_USAGE ? HostOrder.LOWEST_CPU_USAGE
+                : HostOrder.LOWEST_MEM_USAGE);
+        return res;
+    }
+
+    /**
+     * Checks every scope of the index against the hosts of the topology.
+     */
+    private void assertIndex() {
+        final UtilizationIndex index = this.topology.getUtilizationIndex();
+        for (final HostMetric metric : HostMetric.values()) {
+            final List<PhysicalHost> all = TestUtilizationIndex.expected(this.topology
+                    .getRacks(), metric, Double.MAX_VALUE);
+            Assert.assertEquals(all, index.getHostsAtMost(metric, Double.MAX_VALUE));
+            Assert.assertEquals(all.isEmpty() ? null : all.get(0), index.getLeastLoaded(metric));
+            Assert.assertEquals(all.isEmpty() ? null : all.get(all.size() - 1),
+                                index.getMostLoaded(metric));
+            Assert.assertEquals(TestUtilizationIndex.expected(this.topology.getRacks(), metric,
+                                                              TestUtilizationIndex.MAX),
+                                index.getHostsAtMost(metric, TestUtilizationIndex.MAX));
+            for (final PhysicalDataCenter dc : this.topology.getDataCenters()) {
+                final List<PhysicalHost> inDc = TestUtilizationIndex.expected(dc.getRacks(),
+                                                                              metric,
+                                                                              Double.MAX_VALUE);
+                Assert.assertEquals(inDc, index.getHostsAtMost(metric, Double.MAX_VALUE, dc));
+                for (final PhysicalRack rack : dc.getRacks()) {
+                    final List<PhysicalHost> inRack = TestUtilizationIndex.expected(Collections
+                            .singletonList(rack), metric, TestUtilizationIndex.MAX);
+                    Assert.assertEquals(inRack, index.getHostsAtMost(metric,
+                                                                     TestUtilizationIndex.MAX,
+                                                                     rack));
+                    final List<PhysicalHost> allInRack = TestUtilizationIndex
+                            .expected(Collections.singletonList(rack), metric, Double.MAX_VALUE);
+                    Assert.assertEquals(allInRack.isEmpty() ? null : allInRack.get(0),
+                                        index.getLeastLoaded(metric, rack));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInitial() {
+        this.assertIndex();
+    }
+
+    @Test
+    public void testRandomChanges() {
+        this.topology.getUtilizationIndex();
+        for (int i = 0; i < TestUtilizationIndex.CHANGES; i++) {
+            final PhysicalHost host = this.topology.getCPUByID("host" + this.random.nextInt(3)
+                    + "-" + this.random.nextInt(3) + "-" + this.random.nextInt(4));
+            this.topology.updateHostUsage(host, this.random.nextInt(10) / 10.0,
+                                          this.random.nextInt(10) / 10.0);
+        }
+        this.assertIndex();
+    }
+
+    /**
+     * Several threads update random hosts with random times, some older
+     * than the one the host holds, while the index is queried. In the end,
+     * every host must hold its newest update, and the index and aggregates
+     * must match the hosts.
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentUpdates() throws Exception {
+        this.topology.getUtilizationIndex();
+        this.topology.getAggregate();
+        final List<PhysicalHost> hosts = this.topology.getCPUs();
+        long base = 0;
+        for (final PhysicalHost host : hosts) {
+            base = Math.max(base, host.getLastUpdate() + 1);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Writer> writers = new ArrayList<Writer>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < TestUtilizationIndex.WRITERS; w++) {
+            final Writer writer = new Writer(w, hosts, base, start, failure);
+            writers.add(writer);
+            threads.add(new Thread(writer));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        final UtilizationIndex index = this.topology.getUtilizationIndex();
+        for (final Thread thread : threads) {
+            while (thread.isAlive()) {
+                Assert.assertNotNull(index.getLeastLoaded(HostMetric.CPU_USAGE));
+                index.getHostsAtMost(HostMetric.MEM_USAGE, TestUtilizationIndex.MAX);
+            }
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        for (final PhysicalHost host : hosts) {
+            long newest = 0;
+            for (final Writer writer : writers) {
+                final Long time = writer.newest.get(host);
+                if (time != null) {
+                    newest = Math.max(newest, time);
+                }
+            }
+            Assert.assertEquals(newest, host.getLastUpdate());
+        }
+        this.assertIndex();
+        TestPhysicalTopologyAggregates.assertMatches(this.topology.getRacks(),
+                                                     this.topology.getAggregate());
+        for (final PhysicalRack rack : this.topology.getRacks()) {
+            TestPhysicalTopologyAggregates.assertMatches(Collections.singleton(rack),
+                                                         this.topology.getAggregate(rack));
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveResources() {
+        this.topology.getUtilizationIndex();
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final PhysicalHost idle = new PhysicalHostBuilder().withUuid("host-idle").build();
+        this.topology.addCPUToRack(idle, rack);
+        Assert.assertSame(idle, this.topology.getUtilizationIndex()
+                .getLeastLoaded(HostMetric.CPU_USAGE));
+        this.assertIndex();
+
+        this.topology.removeCPUFromRack(idle, rack);
+        this.topology.removeRackFromDataCenter(this.topology.getRackByID("rack1-1"),
+                                               this.topology.getDataCenterByID("dc1"));
+        this.topology.removeDataCenter(this.topology.getDataCenterByID("dc2"));
+        this.assertIndex();
+
+        final PhysicalRack added = new PhysicalRackBuilder().withUuid("added").build();
+        this.topology.addRackToDataCenter(added, this.topology.getDataCenterByID("dc0"));
+        Assert.assertNull(this.topology.getUtilizationIndex()
+                .getLeastLoaded(HostMetric.MEM_USAGE, added));
+        this.topology.addCPUToRack(new PhysicalHostBuilder().withCpuUsage(1).withUuid("new")
+                .build(), added);
+        this.topology.addDataCenter(new PhysicalDataCenterBuilder().withUuid("dc3").build());
+        this.assertIndex();
+    }
+
+    @Test
+    public void testRemoveThroughWrongParent() {
+        this.topology.getUtilizationIndex();
+        this.topology.getAggregate();
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final PhysicalRack wrongRack = this.topology.getRackByID("rack0-1");
+        final PhysicalStore nas = new PhysicalStoreBuilder().withCapacity(10).withUuid("nas")
+                .build();
+        this.topology.addDiskToRack(nas, rack);
+        final PhysicalHost host = this.topology.getCPUByID("host0-0-1");
+        final PhysicalStore disk = host.getDisks().get(0);
+
+        this.topology.removeCPUFromRack(host, wrongRack);
+        this.topology.removeDiskFromRack(nas, wrongRack);
+        this.topology.removeDiskFromHost(disk, this.topology.getCPUByID("host0-0-2"));
+        Assert.assertSame(host, this.topology.getCPUByID("host0-0-1"));
+        Assert.assertSame(nas, this.topology.getStoreByID("nas"));
+        Assert.assertSame(disk, this.topology.getStoreByID(disk.getUniqueIdentifier()));
+        Assert.assertTrue(rack.getCPUs().contains(host));
+        Assert.assertSame(rack, host.getParent());
+        Assert.assertSame(host, disk.getParent());
+        this.assertIndex();
+        TestPhysicalTopologyAggregates.assertMatches(this.topology.getRacks(),
+                                                     this.topology.getAggregate());
+    }
+
+    @Test
+    public void testRemoveThroughEqualCopy() {
+        this.topology.getUtilizationIndex();
+        this.topology.getAggregate();
+        final PhysicalRack rack = this.topology.getRackByID("rack0-0");
+        final PhysicalHost host = this.topology.getCPUByID("host0-0-1");
+        final PhysicalHost owner = this.topology.getCPUByID("host0-0-2");
+        final PhysicalStore disk = owner.getDisks().get(0);
+
+        this.topology.removeCPUFromRack(new PhysicalHost(host), rack);
+        this.topology.removeDiskFromHost(new PhysicalStore(disk), owner);
+        Assert.assertFalse(this.topology.hasCPUByID("host0-0-1"));
+        Assert.assertFalse(this.topology.hasStoreByID(disk.getUniqueIdentifier()));
+        Assert.assertFalse(rack.getCPUs().contains(host));
+        Assert.assertNull(host.getParent());
+        Assert.assertNull(disk.getParent());
+        this.assertIndex();
+        TestPhysicalTopologyAggregates.assertMatches(this.topology.getRacks(),
+                                                     this.topology.getAggregate());
+    }
+
+    @Test
+    public void testReplaceByIdentifier() {
+        this.topology.getUtilizationIndex();
+        final PhysicalRack rack = this.topology.getRackByID("rack1-1");
+        this.topology.addCPUToRack(new PhysicalHostBuilder().withCpuUsage(0.05)
+                .withUuid("host1-1-0").build(), rack);
+        this.topology.addRackToDataCenter(new PhysicalRackBuilder().withUuid("rack1-2").build(),
+                                          rack.getParent());
+        this.assertIndex();
+    }
+
+    @Test
+    public void testEmptyTopology() {
+        final UtilizationIndex index = new PhysicalTopology().getUtilizationIndex();
+        Assert.assertNull(index.getLeastLoaded(HostMetric.CPU_USAGE));
+        Assert.assertNull(index.getMostLoaded(HostMetric.MEM_USAGE));
+        Assert.assertTrue(index.getHostsAtMost(HostMetric.CPU_USAGE, 1).isEmpty());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRackNotInTopology() {
+        this.topology.getUtilizationIndex().getLeastLoaded(HostMetric.CPU_USAGE,
+                                                           new PhysicalRackBuilder()
+                                                                   .withUuid("missing")
+                                                                   .build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullMetric() {
+        this.topology.getUtilizationIndex().getLeastLoaded(null);
+    }
+
+    /**
+     * Updates random hosts through the topology, and remembers the newest
+     * time it gave each host.
+     */
+    private final class Writer implements Runnable {
+        private final Random random;
+        private final List<PhysicalHost> hosts;
+        private final long base;
+        private final CountDownLatch start;
+        private final AtomicReference<Throwable> failure;
+        private final Map<PhysicalHost, Long> newest;
+
+        private Writer(final int id, final List<PhysicalHost> hosts, final long base,
+                final CountDownLatch start, final AtomicReference<Throwable> failure) {
+            this.random = new Random(TestUtilizationIndex.SEED + id);
+            this.hosts = hosts;
+            this.base = base;
+            this.start = start;
+            this.failure = failure;
+            this.newest = new HashMap<PhysicalHost, Long>();
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.start.await();
+                for (int i = 0; i < TestUtilizationIndex.UPDATES_PER_WRITER; i++) {
+                    final PhysicalHost host = this.hosts.get(this.random.nextInt(this.hosts
+                            .size()));
+                    final long time = this.base
+                            + this.random.nextInt(TestUtilizationIndex.TIMES);
+                    TestUtilizationIndex.this.topology.updateHostUsage(host, this.random
+                            .nextInt(10) / 10.0, this.random.nextInt(10) / 10.0, time);
+                    final Long previous = this.newest.get(host);
+                    if (previous == null || previous < time) {
+                        this.newest.put(host, time);
+                    }
+                }
+            } catch (final Throwable e) {
+                this.failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares merging the topologies of one collector per data center with the
+ * {@link TopologyMerger}, on all processors and on a single thread, with
+ * folding them one by one through
+ * {@link PhysicalTopology#mergeTree(PhysicalTopology, PhysicalTopology, MergePolicy)}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyMergerBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 100;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final int DISKS_PER_HOST = 2;
+
+    @Param({ "2", "8" })
+    private int collectors;
+
+    private List<PhysicalTopology> topologies;
+    private ForkJoinPool singleThread;
+    private TopologyMerger parallelMerger;
+    private TopologyMerger sequentialMerger;
+
+    /**
+     * Builds the topologies of the collectors.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topologies = new ArrayList<PhysicalTopology>();
+        for (int i = 0; i < this.collectors; i++) {
+            this.topologies.add(TopologyMergerBenchmark.createTopology(i));
+        }
+        this.singleThread = new ForkJoinPool(1);
+        this.parallelMerger = new TopologyMerger(MergePolicy.NEWEST_USAGE);
+        this.sequentialMerger = new TopologyMerger(MergePolicy.NEWEST_USAGE, this.singleThread);
+    }
+
+    /**
+     * Stops the single threaded pool.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.singleThread.shutdown();
+    }
+
+    /**
+     * @return the topologies merged one by one.
+     */
+    @Benchmark
+    public PhysicalTopology pairwise() {
+        PhysicalTopology res = this.topologies.get(0);
+        for (int i = 1; i < this.topologies.size(); i++) {
+            res = PhysicalTopology.mergeTree(res, this.topologies.get(i),
+                                             MergePolicy.NEWEST_USAGE);
+        }
+        return res;
+    }
+
+    /**
+     * @return the topologies merged on all processors.
+     */
+    @Benchmark
+    public PhysicalTopology parallel() {
+        return this.parallelMerger.merge(this.topologies);
+    }
+
+    /**
+     * @return the topologies merged on a single thread.
+     */
+    @Benchmark
+    public PhysicalTopology sequential() {
+        return this.sequentialMerger.merge(this.topologies);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TopologyMergerBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * @param collector
+     *            number of the collector.
+     * @return the topology of the data center of the collector.
+     */
+    private static PhysicalTopology createTopology(final int collector) {
+        final PhysicalTopology result = new PhysicalTopology();
+        final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + collector)
+                .build();
+        result.addDataCenter(dc);
+        for (int j = 0; j < TopologyMergerBenchmark.RACKS_PER_DATA_CENTER; j++) {
+            final PhysicalRack rack = new PhysicalRackBuilder()
+                    .withUuid("rack" + collector + "-" + j).build();
+            result.addRackToDataCenter(rack, dc);
+            for (int k = 0; k < TopologyMergerBenchmark.HOSTS_PER_RACK; k++) {
+                final String hostID = "host" + collector + "-" + j + "-" + k;
+                final PhysicalHost host = new PhysicalHostBuilder().withUuid(hostID).build();
+                result.addCPUToRack(host, rack);
+                for (int l = 0; l < TopologyMergerBenchmark.DISKS_PER_HOST; l++) {
+                    final PhysicalStore disk = new PhysicalStoreBuilder().withUuid(hostID
+                            + "-disk" + l).build();
+                    result.addDiskToHost(disk, host);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares selecting the k hosts with the lowest cpu usage that have a store
+ * with enough free capacity, in a topology of 100,000 hosts, with a
+ * {@link TopologyQuery} and by filtering and sorting the list of all hosts.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyQueryBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 625;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final long SEED = 42;
+    private static final long CAPACITY = 1000;
+    private static final long FREE = 500;
+
+    @Param({ "10", "1000" })
+    private int k;
+
+    private PhysicalTopology topology;
+    private HostPredicate predicate;
+
+    /**
+     * Builds the topology and gives its hosts and stores random usage.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(
+                TopologyQueryBenchmark.RACKS_PER_DATA_CENTER,
+                TopologyQueryBenchmark.HOSTS_PER_RACK);
+        final Random random = new Random(TopologyQueryBenchmark.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, random.nextDouble(), random.nextDouble());
+        }
+        for (final PhysicalStore store : this.topology.iterateStores()) {
+            this.topology.updateStoreUsage(store, TopologyQueryBenchmark.CAPACITY, (long) (random
+                    .nextDouble() * TopologyQueryBenchmark.CAPACITY));
+        }
+        this.predicate = TopologyPredicates.hasStore(TopologyPredicates
+                .freeCapacityAtLeast(TopologyQueryBenchmark.FREE));
+    }
+
+    /**
+     * @return the best hosts, found by sorting all matching hosts.
+     */
+    @Benchmark
+    public List<PhysicalHost> filterAndSort() {
+        final List<PhysicalHost> res = new ArrayList<PhysicalHost>();
+        for (final PhysicalHost host : this.topology.getCPUs()) {
+            for (final PhysicalStore disk : host.getDisks()) {
+                if (disk.getCapacity() - disk.getUsed() >= TopologyQueryBenchmark.FREE) {
+                    res.add(host);
+                    break;
+                }
+            }
+        }
+        Collections.sort(res, HostOrder.LOWEST_CPU_USAGE);
+        return res.subList(0, this.k);
+    }
+
+    /**
+     * @return the best hosts, found by a query on the calling thread.
+     */
+    @Benchmark
+    public List<PhysicalHost> sequential() {
+        return this.topology.query().where(this.predicate)
+                .top(this.k, HostOrder.LOWEST_CPU_USAGE);
+    }
+
+    /**
+     * @return the best hosts, found by a query on all processors.
+     */
+    @Benchmark
+    public List<PhysicalHost> parallel() {
+        return this.topology.query().where(this.predicate).parallel()
+                .top(this.k, HostOrder.LOWEST_CPU_USAGE);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TopologyQueryBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,116 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares publishing a new version of a topology in which one host changed,
+ * by copying a {@link PhysicalTopology} and by deriving a new
+ * {@link TopologySnapshot}.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologySnapshotBenchmark {
+
+    private static final int HOSTS_PER_RACK = 40;
+    private static final int DISKS_PER_HOST = 2;
+
+    @Param({ "4", "400" })
+    private int racks;
+
+    private PhysicalTopology topology;
+    private TopologySnapshot snapshot;
+    private String[] hostIDs;
+    private int next;
+
+    /**
+     * Builds a topology with a single data center.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = new PhysicalTopology();
+        final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc").build();
+        this.topology.addDataCenter(dc);
+        this.hostIDs = new String[this.racks * TopologySnapshotBenchmark.HOSTS_PER_RACK];
+        int h = 0;
+        for (int j = 0; j < this.racks; j++) {
+            final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + j).build();
+            this.topology.addRackToDataCenter(rack, dc);
+            for (int k = 0; k < TopologySnapshotBenchmark.HOSTS_PER_RACK; k++) {
+                final String hostID = "host" + j + "-" + k;
+                final PhysicalHost host = new PhysicalHostBuilder().withUuid(hostID).build();
+                this.topology.addCPUToRack(host, rack);
+                for (int l = 0; l < TopologySnapshotBenchmark.DISKS_PER_HOST; l++) {
+                    this.topology.addDiskToHost(new PhysicalStoreBuilder().withUuid(hostID
+                            + "-disk" + l).build(), host);
+                }
+                this.hostIDs[h++] = hostID;
+            }
+        }
+        this.snapshot = TopologySnapshot.of(this.topology);
+    }
+
+    /**
+     * @return the id of the host to update next.
+     */
+    private String nextHost() {
+        this.next = (this.next + 1) % this.hostIDs.length;
+        return this.hostIDs[this.next];
+    }
+
+    /**
+     * @return a copy of the topology with one host changed.
+     */
+    @Benchmark
+    public PhysicalTopology copyAndUpdate() {
+        final PhysicalTopology copy = new PhysicalTopology(this.topology);
+        copy.updateHostUsage(copy.getCPUByID(this.nextHost()), 0.5, 0.5, 1);
+        return copy;
+    }
+
+    /**
+     * @return a snapshot with one host changed.
+     */
+    @Benchmark
+    public TopologySnapshot snapshotUpdate() {
+        return this.snapshot.withHostUsage(this.nextHost(), 0.5, 0.5, 1);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TopologySnapshotBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
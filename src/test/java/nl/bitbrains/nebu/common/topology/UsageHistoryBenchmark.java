@@ -0,0 +1,100 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures a {@link UsageHistory} of five minutes of samples taken every
+ * second: adding a sample, and the 95th percentile of the samples, compared
+ * to sorting a copy of them.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UsageHistoryBenchmark {
+
+    private static final int CAPACITY = 300;
+    private static final long SEED = 42;
+    private static final double FRACTION = 0.95;
+
+    private UsageHistory history;
+    private long time;
+
+    /**
+     * Fills the history with random samples.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.history = new UsageHistory(UsageHistoryBenchmark.CAPACITY);
+        final Random random = new Random(UsageHistoryBenchmark.SEED);
+        for (int i = 0; i < UsageHistoryBenchmark.CAPACITY; i++) {
+            this.history.add(this.time++, random.nextDouble());
+        }
+    }
+
+    /**
+     * Adds a sample, replacing the oldest one.
+     */
+    @Benchmark
+    public void add() {
+        this.history.add(this.time++, 0.5);
+    }
+
+    /**
+     * @return the 95th percentile, selected in the history.
+     */
+    @Benchmark
+    public double percentile() {
+        return this.history.getPercentile(UsageHistoryBenchmark.FRACTION, 0);
+    }
+
+    /**
+     * @return the 95th percentile, found by sorting a copy of the samples.
+     */
+    @Benchmark
+    public double percentileSorted() {
+        final double[] values = new double[this.history.size()];
+        for (int age = 0; age < values.length; age++) {
+            values[age] = this.history.getValue(age);
+        }
+        Arrays.sort(values);
+        return values[(int) Math.ceil(UsageHistoryBenchmark.FRACTION * values.length) - 1];
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(UsageHistoryBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+}
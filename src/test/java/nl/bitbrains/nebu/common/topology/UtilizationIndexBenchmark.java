@@ -0,0 +1,136 @@
+package nl.bitbrains.nebu.common.topology;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares finding the least loaded host of a topology of 100,000 hosts by
+ * visiting the hosts, by scanning the {@link MetricColumns} and through the
+ * {@link UtilizationIndex}, and measures the cost of keeping the index up to
+ * date when a host changes.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilizationIndexBenchmark {
+
+    private static final int RACKS_PER_DATA_CENTER = 625;
+    private static final int HOSTS_PER_RACK = 40;
+    private static final long SEED = 42;
+    private static final double THRESHOLD = 0.001;
+
+    private PhysicalTopology topology;
+    private MetricColumns columns;
+    private UtilizationIndex index;
+    private PhysicalDataCenter dataCenter;
+    private List<PhysicalHost> hosts;
+    private Random random;
+
+    /**
+     * Builds the topology, its columns and its index, and gives the hosts
+     * random usage.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.topology = PhysicalTopologyBenchmark.createTopology(
+                UtilizationIndexBenchmark.RACKS_PER_DATA_CENTER,
+                UtilizationIndexBenchmark.HOSTS_PER_RACK);
+        this.random = new Random(UtilizationIndexBenchmark.SEED);
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            this.topology.updateHostUsage(host, this.random.nextDouble(),
+                                          this.random.nextDouble());
+        }
+        this.columns = this.topology.getColumns();
+        this.index = this.topology.getUtilizationIndex();
+        this.dataCenter = this.topology.getDataCenterByID("dc1");
+        this.hosts = this.topology.getCPUs();
+    }
+
+    /**
+     * @return the least loaded host, found by visiting all hosts.
+     */
+    @Benchmark
+    public PhysicalHost leastLoadedIterating() {
+        PhysicalHost res = null;
+        for (final PhysicalHost host : this.topology.iterateCPUs()) {
+            if (res == null || host.getCpuUsage() < res.getCpuUsage()) {
+                res = host;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the least loaded host, found by scanning the columns.
+     */
+    @Benchmark
+    public PhysicalHost leastLoadedColumns() {
+        return this.columns.getHost(this.columns.getLeastCpuUsedSlot());
+    }
+
+    /**
+     * @return the least loaded host, found in the index.
+     */
+    @Benchmark
+    public PhysicalHost leastLoadedIndex() {
+        return this.index.getLeastLoaded(HostMetric.CPU_USAGE);
+    }
+
+    /**
+     * @return the hosts of a data center under the threshold, found in the
+     *         index.
+     */
+    @Benchmark
+    public List<PhysicalHost> hostsAtMostIndex() {
+        return this.index.getHostsAtMost(HostMetric.CPU_USAGE,
+                                         UtilizationIndexBenchmark.THRESHOLD, this.dataCenter);
+    }
+
+    /**
+     * Updates a random host, which keeps the aggregates, columns and index up
+     * to date.
+     */
+    @Benchmark
+    public void updateHost() {
+        final PhysicalHost host = this.hosts.get(this.random.nextInt(this.hosts.size()));
+        this.topology.updateHostUsage(host, this.random.nextDouble(), this.random.nextDouble());
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws RunnerException
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(UtilizationIndexBenchmark.class.getSimpleName()).addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,156 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import nl.bitbrains.nebu.common.topology.ITPhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalTopologyBenchmark;
+import nl.bitbrains.nebu.common.util.binary.BinaryConverter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestPhysicalTopologyCodec {
+
+    private static final double CPU_USAGE = 0.1 + 0.2;
+    private static final double MEM_USAGE = 1.0 / 3;
+    private static final long CAPACITY = Long.MAX_VALUE;
+    private static final long USED = 1L << 40;
+    private static final long LAST_UPDATE = 1420070400000L;
+
+    private PhysicalTopology topology;
+    private PhysicalTopologyCodec codec;
+
+    @Before
+    public void setUp() {
+        this.codec = new PhysicalTopologyCodec();
+        this.topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        final PhysicalHost host = new PhysicalHostBuilder()
+                .withCpuUsage(TestPhysicalTopologyCodec.CPU_USAGE)
+                .withMemUsage(TestPhysicalTopologyCodec.MEM_USAGE)
+                .withLastUpdate(TestPhysicalTopologyCodec.LAST_UPDATE).withUuid("busyHost").build();
+        this.topology.addCPUToRack(host, this.topology.getRacks().get(1));
+        this.topology.addDiskToHost(new PhysicalStoreBuilder()
+                .withCapacity(TestPhysicalTopologyCodec.CAPACITY)
+                .withUsed(TestPhysicalTopologyCodec.USED).withUuid("bigDisk").build(), host);
+        this.topology.addDiskToRack(new PhysicalStoreBuilder().withCapacity(1)
+                .withUuid("nas").build(), this.topology.getRacks().get(2));
+    }
+
+    private static byte[] write(final TopologyFormat format, final PhysicalTopology topology)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(topology, out);
+        return out.toByteArray();
+    }
+
+    private static PhysicalTopology read(final TopologyFormat format, final byte[] bytes)
+            throws IOException, ParseException {
+        return format.read(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testRoundTrip() throws ParseException {
+        final PhysicalTopology read = BinaryConverter.fromBytes(BinaryConverter
+                .toBytes(this.topology, this.codec), this.codec);
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(this.topology, read));
+    }
+
+    @Test
+    public void testRoundTripValues() throws ParseException {
+        final PhysicalTopology read = BinaryConverter.fromBytes(BinaryConverter
+                .toBytes(this.topology, this.codec), this.codec);
+        final PhysicalHost host = read.getCPUByID("busyHost");
+        Assert.assertEquals(TestPhysicalTopologyCodec.CPU_USAGE, host.getCpuUsage(), 0);
+        Assert.assertEquals(TestPhysicalTopologyCodec.MEM_USAGE, host.getMemUsage(), 0);
+        Assert.assertEquals(TestPhysicalTopologyCodec.LAST_UPDATE, host.getLastUpdate());
+        Assert.assertSame(read.getRacks().get(1), host.getParent());
+        final PhysicalStore disk = read.getStoreByID("bigDisk");
+        Assert.assertEquals(TestPhysicalTopologyCodec.CAPACITY, disk.getCapacity());
+        Assert.assertEquals(TestPhysicalTopologyCodec.USED, disk.getUsed());
+        Assert.assertSame(host, disk.getParent());
+        Assert.assertSame(read.getRacks().get(2), read.getStoreByID("nas").getParent());
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws ParseException {
+        final PhysicalTopology empty = new PhysicalTopology();
+        final PhysicalTopology read = BinaryConverter.fromBytes(BinaryConverter
+                .toBytes(empty, this.codec), this.codec);
+        Assert.assertEquals(empty.getRoot(), read.getRoot());
+        Assert.assertTrue(read.getDataCenters().isEmpty());
+    }
+
+    @Test
+    public void testFormatsAreInterchangeable() throws IOException, ParseException {
+        for (final TopologyFormat format : TopologyFormat.values()) {
+            final PhysicalTopology read = TestPhysicalTopologyCodec
+                    .read(format, TestPhysicalTopologyCodec.write(format, this.topology));
+            Assert.assertTrue(format.name(), ITPhysicalTopology.deepEquals(this.topology, read));
+        }
+    }
+
+    @Test
+    public void testFormatsKeepLastUpdate() throws IOException, ParseException {
+        for (final TopologyFormat format : TopologyFormat.values()) {
+            final PhysicalTopology read = TestPhysicalTopologyCodec
+                    .read(format, TestPhysicalTopologyCodec.write(format, this.topology));
+            Assert.assertEquals(format.name(), TestPhysicalTopologyCodec.LAST_UPDATE, read
+                    .getCPUByID("busyHost").getLastUpdate());
+            Assert.assertEquals(format.name(), 0, read.getCPUByID("host0-0-0").getLastUpdate());
+        }
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanXML() throws IOException {
+        final int binary = TestPhysicalTopologyCodec.write(TopologyFormat.BINARY,
+                                                           this.topology).length;
+        final int xml = TestPhysicalTopologyCodec.write(TopologyFormat.XML, this.topology).length;
+        Assert.assertTrue(binary * 2 < xml);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadXMLAsBinary() throws IOException, ParseException {
+        TestPhysicalTopologyCodec.read(TopologyFormat.BINARY, TestPhysicalTopologyCodec
+                .write(TopologyFormat.XML, this.topology));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadTruncated() throws IOException, ParseException {
+        final byte[] bytes = TestPhysicalTopologyCodec.write(TopologyFormat.BINARY,
+                                                             this.topology);
+        TestPhysicalTopologyCodec.read(TopologyFormat.BINARY,
+                                       Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadMissingId() throws ParseException {
+        BinaryConverter.fromBytes(new byte[] { 'N', 'E', 'B', 'U', 2, 0 }, this.codec);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadVersionWithoutLastUpdate() throws IOException, ParseException {
+        final byte[] bytes = TestPhysicalTopologyCodec.write(TopologyFormat.BINARY,
+                                                             this.topology);
+        bytes[4] = 1;
+        TestPhysicalTopologyCodec.read(TopologyFormat.BINARY, bytes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteNull() throws IOException {
+        TopologyFormat.BINARY.write(null, new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,162 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import nl.bitbrains.nebu.common.topology.ITPhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenter;
+import nl.bitbrains.nebu.common.topology.PhysicalDataCenterBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalRack;
+import nl.bitbrains.nebu.common.topology.PhysicalRackBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalStore;
+import nl.bitbrains.nebu.common.topology.PhysicalStoreBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+
+import org.jdom2.Document;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestPhysicalTopologyReader {
+
+    private static final double CPU_USAGE = 0.25;
+    private static final double MEM_USAGE = 0.75;
+    private static final long CAPACITY = 1000;
+    private static final long USED = 400;
+
+    private PhysicalTopologyReader reader;
+
+    @Before
+    public void setUp() {
+        this.reader = new PhysicalTopologyReader();
+    }
+
+    private static PhysicalTopology createTopology() {
+        final PhysicalTopology topology = new PhysicalTopology();
+        for (int i = 0; i < 2; i++) {
+            final PhysicalDataCenter dc = new PhysicalDataCenterBuilder().withUuid("dc" + i)
+                    .build();
+            topology.addDataCenter(dc);
+            for (int j = 0; j < 2; j++) {
+                final PhysicalRack rack = new PhysicalRackBuilder().withUuid("rack" + i + j)
+                        .build();
+                topology.addRackToDataCenter(rack, dc);
+                topology.addDiskToRack(new PhysicalStoreBuilder()
+                        .withCapacity(TestPhysicalTopologyReader.CAPACITY)
+                        .withUuid("nas" + i + j).build(), rack);
+                for (int k = 0; k < 3; k++) {
+                    final PhysicalHost host = new PhysicalHostBuilder()
+                            .withCpuUsage(TestPhysicalTopologyReader.CPU_USAGE)
+                            .withMemUsage(TestPhysicalTopologyReader.MEM_USAGE)
+                            .withUuid("host" + i + j + k).build();
+                    topology.addCPUToRack(host, rack);
+                    topology.addDiskToHost(new PhysicalStoreBuilder()
+                            .withCapacity(TestPhysicalTopologyReader.CAPACITY)
+                            .withUsed(TestPhysicalTopologyReader.USED)
+                            .withUuid("disk" + i + j + k).build(), host);
+                }
+            }
+        }
+        return topology;
+    }
+
+    private static String toXML(final PhysicalTopology topology) {
+        final PhysicalRootFactory factory = (PhysicalRootFactory) TopologyFactories
+                .createDefault().getPhysicalRootFactory();
+        return new XMLOutputter().outputString(new Document(factory.toXML(topology.getRoot())));
+    }
+
+    private static InputStream stream(final String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReadEqualsJDOMPath() throws ParseException {
+        final PhysicalTopology original = TestPhysicalTopologyReader.createTopology();
+        final PhysicalTopology read = this.reader.read(TestPhysicalTopologyReader
+                .stream(TestPhysicalTopologyReader.toXML(original)));
+        Assert.assertTrue(ITPhysicalTopology.deepEquals(original, read));
+    }
+
+    @Test
+    public void testReadValues() throws ParseException {
+        final PhysicalTopology read = this.reader.read(TestPhysicalTopologyReader
+                .stream(TestPhysicalTopologyReader.toXML(TestPhysicalTopologyReader
+                        .createTopology())));
+        final PhysicalHost host = read.getCPUByID("host010");
+        Assert.assertEquals(TestPhysicalTopologyReader.CPU_USAGE, host.getCpuUsage(), 0);
+        Assert.assertEquals(TestPhysicalTopologyReader.MEM_USAGE, host.getMemUsage(), 0);
+        Assert.assertSame(read.getRackByID("rack01"), host.getParent());
+        final PhysicalStore disk = read.getStoreByID("disk010");
+        Assert.assertEquals(TestPhysicalTopologyReader.USED, disk.getUsed());
+        Assert.assertSame(host, disk.getParent());
+        Assert.assertSame(read.getRackByID("rack01"), read.getStoreByID("nas01").getParent());
+    }
+
+    @Test
+    public void testReadEmptyRoot() throws ParseException {
+        final PhysicalTopology read = this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"/>"));
+        Assert.assertEquals("r", read.getRoot().getUniqueIdentifier());
+        Assert.assertTrue(read.getDataCenters().isEmpty());
+    }
+
+    @Test
+    public void testReadSkipsUnknownElements() throws ParseException {
+        final PhysicalTopology read = this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"><!-- comment --><dataCenter id=\"d\"><rack id=\"k\">"
+                        + "<note><host id=\"x\"/></note><host id=\"h\"><extra>1</extra></host>"
+                        + "</rack></dataCenter></root>"));
+        Assert.assertTrue(read.hasCPUByID("h"));
+        Assert.assertFalse(read.hasCPUByID("x"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadInvalidRoot() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader.stream("<dataCenter id=\"d\"/>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadInvalidChild() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"><rack id=\"k\"/></root>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadMissingId() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"><dataCenter/></root>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadInvalidNumber() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"><dataCenter id=\"d\"><rack id=\"k\"><store id=\"s\">"
+                        + "<capacity>lots</capacity></store></rack></dataCenter></root>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadMalformedXML() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader
+                .stream("<root id=\"r\"><dataCenter id=\"d\"></root>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testReadEmptyDocument() throws ParseException {
+        this.reader.read(TestPhysicalTopologyReader.stream(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadNull() throws ParseException {
+        this.reader.read(null);
+    }
+}
@@ -0,0 +1,248 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.VirtualMachine;
+import nl.bitbrains.nebu.common.VirtualMachine.Status;
+import nl.bitbrains.nebu.common.VirtualMachineBuilder;
+import nl.bitbrains.nebu.common.factories.VirtualMachineFactory;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalTopologyBenchmark;
+import nl.bitbrains.nebu.common.util.binary.BinaryConverter;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.xml.XMLConverter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares encoding and decoding topologies and lists of virtual machines in
+ * the streaming XML and the binary format. {@link #main(String[])} also
+ * prints the size of the documents in both formats.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyCodecBenchmark {
+
+    private static final int HOSTS_PER_RACK = 40;
+    private static final int VMS_PER_HOST = 4;
+    private static final int DISKS_PER_VM = 2;
+
+    @Param({ "10", "100" })
+    private int racksPerDataCenter;
+
+    private PhysicalTopology topology;
+    private List<VirtualMachine> vms;
+    private VirtualMachineFactory vmFactory;
+    private byte[] topologyXML;
+    private byte[] topologyBinary;
+    private byte[] vmsXML;
+    private byte[] vmsBinary;
+
+    /**
+     * Creates the topology and virtual machines and encodes them in both
+     * formats.
+     * 
+     * @throws IOException
+     *             never.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.topology = PhysicalTopologyBenchmark
+                .createTopology(this.racksPerDataCenter, TopologyCodecBenchmark.HOSTS_PER_RACK);
+        this.vms = TopologyCodecBenchmark.createVirtualMachines(this.topology);
+        this.vmFactory = new VirtualMachineFactory();
+        this.topologyXML = this.encodeTopologyXML();
+        this.topologyBinary = this.encodeTopologyBinary();
+        this.vmsXML = this.encodeVirtualMachinesXML();
+        this.vmsBinary = this.encodeVirtualMachinesBinary();
+    }
+
+    /**
+     * @return the topology as XML.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] encodeTopologyXML() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TopologyFormat.XML.write(this.topology, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the topology in the binary format.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] encodeTopologyBinary() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TopologyFormat.BINARY.write(this.topology, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the topology read from XML.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public PhysicalTopology decodeTopologyXML() throws IOException, ParseException {
+        return TopologyFormat.XML.read(new ByteArrayInputStream(this.topologyXML));
+    }
+
+    /**
+     * @return the topology read from the binary format.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public PhysicalTopology decodeTopologyBinary() throws IOException, ParseException {
+        return TopologyFormat.BINARY.read(new ByteArrayInputStream(this.topologyBinary));
+    }
+
+    /**
+     * @return the virtual machines as XML.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] encodeVirtualMachinesXML() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final XMLOutput xml = new XMLOutput(out);
+        xml.startDocument();
+        XMLConverter.writeCollection(this.vms, this.vmFactory, xml);
+        xml.endDocument();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the virtual machines in the binary format.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] encodeVirtualMachinesBinary() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BinaryOutput binary = new BinaryOutput(out);
+        binary.writeHeader();
+        BinaryConverter.writeCollection(this.vms, this.vmFactory, binary);
+        binary.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the virtual machines read from XML.
+     * @throws JDOMException
+     *             never.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public List<VirtualMachine> decodeVirtualMachinesXML() throws JDOMException, IOException,
+            ParseException {
+        final Document xml = new SAXBuilder().build(new ByteArrayInputStream(this.vmsXML));
+        return XMLConverter.convertJDOMElementToList(xml.getRootElement(), this.vmFactory);
+    }
+
+    /**
+     * @return the virtual machines read from the binary format.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public List<VirtualMachine> decodeVirtualMachinesBinary() throws IOException,
+            ParseException {
+        final BinaryInput binary = new BinaryInput(new ByteArrayInputStream(this.vmsBinary));
+        binary.readHeader();
+        return BinaryConverter.readList(binary, this.vmFactory);
+    }
+
+    /**
+     * Prints the size of the documents, then runs the benchmarks with the GC
+     * profiler enabled.
+     * 
+     * @param args
+     *            ignored.
+     * @throws Exception
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final TopologyCodecBenchmark benchmark = new TopologyCodecBenchmark();
+        benchmark.racksPerDataCenter = 100;
+        benchmark.setUp();
+        System.out.println("Topology: " + benchmark.topologyXML.length + " bytes XML, "
+                + benchmark.topologyBinary.length + " bytes binary");
+        System.out.println("Virtual machines: " + benchmark.vmsXML.length + " bytes XML, "
+                + benchmark.vmsBinary.length + " bytes binary");
+
+        final Options options = new OptionsBuilder()
+                .include(TopologyCodecBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+    }
+
+    /**
+     * @param topology
+     *            to place the virtual machines on.
+     * @return virtual machines on every host of the topology, each using
+     *         disks of its host.
+     */
+    private static List<VirtualMachine> createVirtualMachines(final PhysicalTopology topology) {
+        final List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        int i = 0;
+        for (final PhysicalHost cpu : topology.iterateCPUs()) {
+            final String host = cpu.getUniqueIdentifier();
+            for (int j = 0; j < TopologyCodecBenchmark.VMS_PER_HOST; j++) {
+                final VirtualMachineBuilder builder = new VirtualMachineBuilder()
+                        .withUuid("vm" + i++).withHostname("vm-" + host + "-" + j)
+                        .withStatus(Status.ON).withHost(host);
+                for (int k = 0; k < TopologyCodecBenchmark.DISKS_PER_VM; k++) {
+                    builder.withDisk(host + "-disk" + k);
+                }
+                vms.add(builder.build());
+            }
+        }
+        return vms;
+    }
+}
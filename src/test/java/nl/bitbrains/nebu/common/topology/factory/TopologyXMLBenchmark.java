@@ -0,0 +1,238 @@
+package nl.bitbrains.nebu.common.topology.factory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalTopologyBenchmark;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares reading and writing a topology through the JDOM based factories
+ * with the streaming {@link PhysicalTopologyReader} and {@link XMLOutput}.
+ * Besides the JMH results,
+ * {@link #main(String[])} prints the peak heap usage of reading a large
+ * topology with either method.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyXMLBenchmark {
+
+    private static final int HOSTS_PER_RACK = 40;
+    private static final int PEAK_HEAP_RACKS = 500;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Param({ "10", "100" })
+    private int racksPerDataCenter;
+
+    private byte[] document;
+    private PhysicalTopology topology;
+    private TopologyFactories factories;
+    private PhysicalTopologyReader reader;
+
+    /**
+     * Writes the topology to read.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.factories = TopologyFactories.createDefault();
+        this.reader = new PhysicalTopologyReader();
+        this.topology = PhysicalTopologyBenchmark
+                .createTopology(this.racksPerDataCenter, TopologyXMLBenchmark.HOSTS_PER_RACK);
+        this.document = TopologyXMLBenchmark.createDocument(this.factories,
+                                                            this.racksPerDataCenter);
+    }
+
+    /**
+     * Reads the topology through a JDOM document and the factories.
+     * 
+     * @return the topology.
+     * @throws JDOMException
+     *             never.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public PhysicalTopology readJDOM() throws JDOMException, IOException, ParseException {
+        return TopologyXMLBenchmark.readJDOM(this.factories, this.document);
+    }
+
+    /**
+     * Reads the topology with the {@link PhysicalTopologyReader}.
+     * 
+     * @return the topology.
+     * @throws ParseException
+     *             never.
+     */
+    @Benchmark
+    public PhysicalTopology readStreaming() throws ParseException {
+        return this.reader.read(new ByteArrayInputStream(this.document));
+    }
+
+    /**
+     * Writes the topology by building a JDOM document first.
+     * 
+     * @return the written document.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] writeJDOM() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(this.document.length);
+        new XMLOutputter().output(new Document(this.factories.getPhysicalRootFactory()
+                .toXML(this.topology.getRoot())), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the topology directly to the stream with {@link XMLOutput}.
+     * 
+     * @return the written document.
+     * @throws IOException
+     *             never.
+     */
+    @Benchmark
+    public byte[] writeStreaming() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(this.document.length);
+        final XMLOutput xml = new XMLOutput(out);
+        xml.startDocument();
+        xml.write(this.topology.getRoot(), this.factories.getPhysicalRootFactory());
+        xml.endDocument();
+        return out.toByteArray();
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler enabled, then measures the
+     * peak heap usage of both readers.
+     * 
+     * @param args
+     *            ignored.
+     * @throws Exception
+     *             if a benchmark fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+                .include(TopologyXMLBenchmark.class.getSimpleName()).addProfiler("gc").build();
+        new Runner(options).run();
+
+        final TopologyFactories factories = TopologyFactories.createDefault();
+        final byte[] document = TopologyXMLBenchmark
+                .createDocument(factories, TopologyXMLBenchmark.PEAK_HEAP_RACKS);
+        System.out.println("Document size: " + document.length / TopologyXMLBenchmark.MEGABYTE
+                + " MB");
+
+        long before = TopologyXMLBenchmark.resetPeakHeap();
+        TopologyXMLBenchmark.readJDOM(factories, document);
+        System.out.println("Peak heap JDOM: "
+                + (TopologyXMLBenchmark.getPeakHeap() - before) / TopologyXMLBenchmark.MEGABYTE
+                + " MB");
+
+        before = TopologyXMLBenchmark.resetPeakHeap();
+        new PhysicalTopologyReader().read(new ByteArrayInputStream(document));
+        System.out.println("Peak heap streaming: "
+                + (TopologyXMLBenchmark.getPeakHeap() - before) / TopologyXMLBenchmark.MEGABYTE
+                + " MB");
+    }
+
+    /**
+     * @param factories
+     *            to write the topology with.
+     * @param racksPerDataCenter
+     *            size of the topology.
+     * @return the XML document describing a topology of the given size.
+     */
+    private static byte[] createDocument(final TopologyFactories factories,
+            final int racksPerDataCenter) {
+        final PhysicalTopology topology = PhysicalTopologyBenchmark
+                .createTopology(racksPerDataCenter, TopologyXMLBenchmark.HOSTS_PER_RACK);
+        final Document document = new Document(factories.getPhysicalRootFactory()
+                .toXML(topology.getRoot()));
+        return new XMLOutputter().outputString(document).getBytes();
+    }
+
+    /**
+     * @param factories
+     *            to read the topology with.
+     * @param document
+     *            to read.
+     * @return the topology.
+     * @throws JDOMException
+     *             if the document is not valid XML.
+     * @throws IOException
+     *             never.
+     * @throws ParseException
+     *             if the document is not a valid topology.
+     */
+    private static PhysicalTopology readJDOM(final TopologyFactories factories,
+            final byte[] document) throws JDOMException, IOException, ParseException {
+        final Document xml = new SAXBuilder().build(new ByteArrayInputStream(document));
+        return new PhysicalTopology(factories.getPhysicalRootFactory()
+                .fromXML(xml.getRootElement()).build());
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap.
+     * 
+     * @return the heap usage after collecting garbage.
+     */
+    private static long resetPeakHeap() {
+        System.gc();
+        long used = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return the sum of the peak usage of all heap pools since the last
+     *         reset, which is an upper bound of the actual peak.
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
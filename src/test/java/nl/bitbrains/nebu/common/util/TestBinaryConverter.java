@@ -0,0 +1,220 @@
+package nl.bitbrains.nebu.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.bitbrains.nebu.common.factories.IntegerFactory;
+import nl.bitbrains.nebu.common.factories.StringFactory;
+import nl.bitbrains.nebu.common.interfaces.IBuilder;
+import nl.bitbrains.nebu.common.util.binary.BinaryConverter;
+import nl.bitbrains.nebu.common.util.binary.BinaryInput;
+import nl.bitbrains.nebu.common.util.binary.BinaryOutput;
+import nl.bitbrains.nebu.common.util.binary.BinaryReader;
+import nl.bitbrains.nebu.common.util.binary.BinaryWriter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BinaryConverter}, {@link BinaryOutput} and
+ * {@link BinaryInput} classes.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestBinaryConverter {
+
+    private static final int LONG_STRING_LENGTH = 20000;
+
+    private ByteArrayOutputStream bytes;
+    private BinaryOutput out;
+
+    @Before
+    public void setUp() {
+        this.bytes = new ByteArrayOutputStream();
+        this.out = new BinaryOutput(this.bytes);
+    }
+
+    private BinaryInput input() throws IOException {
+        this.out.flush();
+        return new BinaryInput(new ByteArrayInputStream(this.bytes.toByteArray()));
+    }
+
+    @Test
+    public void testVarIntRoundTrip() throws IOException, ParseException {
+        final int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1,
+                Integer.MIN_VALUE };
+        for (final int value : values) {
+            this.out.writeVarInt(value);
+            this.out.writeSignedVarInt(value);
+        }
+        final BinaryInput in = this.input();
+        for (final int value : values) {
+            Assert.assertEquals(value, in.readVarInt());
+            Assert.assertEquals(value, in.readSignedVarInt());
+        }
+    }
+
+    @Test
+    public void testVarIntSize() throws IOException {
+        this.out.writeVarInt(127);
+        this.out.writeSignedVarInt(-64);
+        this.out.flush();
+        Assert.assertEquals(2, this.bytes.size());
+    }
+
+    @Test
+    public void testNumbersRoundTrip() throws IOException, ParseException {
+        final double[] doubles = { 0.1, -0.0, Double.NaN, Double.MIN_VALUE,
+                Double.POSITIVE_INFINITY };
+        for (final double value : doubles) {
+            this.out.writeDouble(value);
+        }
+        this.out.writeLong(Long.MIN_VALUE);
+        this.out.writeLong(Long.MAX_VALUE);
+        this.out.writeBoolean(true);
+        final BinaryInput in = this.input();
+        for (final double value : doubles) {
+            Assert.assertEquals(Double.doubleToRawLongBits(value),
+                                Double.doubleToRawLongBits(in.readDouble()));
+        }
+        Assert.assertEquals(Long.MIN_VALUE, in.readLong());
+        Assert.assertEquals(Long.MAX_VALUE, in.readLong());
+        Assert.assertTrue(in.readBoolean());
+    }
+
+    @Test
+    public void testStringRoundTrip() throws IOException, ParseException {
+        final char[] chars = new char[TestBinaryConverter.LONG_STRING_LENGTH];
+        Arrays.fill(chars, '\u00E9');
+        final String[] values = { "", null, "a\u0000b", "x\uD83D\uDE00", new String(chars) };
+        for (final String value : values) {
+            this.out.writeString(value);
+        }
+        final BinaryInput in = this.input();
+        for (final String value : values) {
+            Assert.assertEquals(value, in.readString());
+        }
+    }
+
+    @Test
+    public void testIdentifiersAreInterned() throws IOException, ParseException {
+        final String id = "0f8fad5b-d9cb-469f-a165-70867728950e";
+        this.out.writeIdentifier(id);
+        this.out.flush();
+        final int first = this.bytes.size();
+        this.out.writeIdentifier(id);
+        this.out.flush();
+        Assert.assertEquals(first + 1, this.bytes.size());
+        this.out.writeIdentifier(null);
+        this.out.writeIdentifier("other");
+        this.out.writeIdentifier(id);
+
+        final BinaryInput in = this.input();
+        Assert.assertEquals(id, in.readIdentifier());
+        Assert.assertEquals(id, in.readIdentifier());
+        Assert.assertNull(in.readIdentifier());
+        Assert.assertEquals("other", in.readIdentifier());
+        Assert.assertEquals(id, in.readIdentifier());
+    }
+
+    @Test
+    public void testCollectionRoundTrip() throws ParseException {
+        final List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            list.add("item" + i);
+        }
+        final List<String> read = BinaryConverter.fromBytes(BinaryConverter
+                .toBytes(list, new ListFactory()), new ListFactory());
+        Assert.assertEquals(list, read);
+    }
+
+    @Test
+    public void testMapRoundTrip() throws IOException, ParseException {
+        final Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("one", 1);
+        map.put("minus", -1000);
+        map.put(null, Integer.MAX_VALUE);
+        BinaryConverter.writeMap(map, new StringFactory(), new IntegerFactory(), this.out);
+        Assert.assertEquals(map, BinaryConverter.readMap(this.input(),
+                                                         new StringFactory(),
+                                                         new IntegerFactory()));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testInvalidHeader() throws ParseException {
+        BinaryConverter.fromBytes("<list />".getBytes(), new ListFactory());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testUnsupportedVersion() throws ParseException {
+        BinaryConverter.fromBytes(new byte[] { 'N', 'E', 'B', 'U', 3 }, new ListFactory());
+    }
+
+    @Test
+    public void testTruncatedInput() {
+        final byte[] full = BinaryConverter.toBytes(Arrays.asList("a", "b"), new ListFactory());
+        for (int length = 0; length < full.length; length++) {
+            try {
+                BinaryConverter.fromBytes(Arrays.copyOf(full, length), new ListFactory());
+                Assert.fail("Truncated input of length " + length + " was accepted.");
+            } catch (final ParseException e) {
+                Assert.assertEquals(length, e.getErrorOffset());
+            }
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTrailingData() throws ParseException {
+        final byte[] full = BinaryConverter.toBytes(Arrays.asList("a"), new ListFactory());
+        BinaryConverter.fromBytes(Arrays.copyOf(full, full.length + 1), new ListFactory());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testUnknownIdentifierReference() throws IOException, ParseException {
+        this.out.writeVarInt(5);
+        this.input().readIdentifier();
+    }
+
+    @Test(expected = ParseException.class)
+    public void testVarIntTooLong() throws IOException, ParseException {
+        for (int i = 0; i < 5; i++) {
+            this.out.writeByte(0xFF);
+        }
+        this.out.writeByte(0);
+        this.input().readVarInt();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteCollectionNull() throws IOException {
+        BinaryConverter.writeCollection(null, new StringFactory(), this.out);
+    }
+
+    /**
+     * Writes and reads lists of strings.
+     */
+    private static class ListFactory implements BinaryWriter<List<String>>,
+            BinaryReader<List<String>> {
+
+        @Override
+        public void toBinary(final List<String> object, final BinaryOutput out)
+                throws IOException {
+            BinaryConverter.writeCollection(object, new StringFactory(), out);
+        }
+
+        @Override
+        public List<String> fromBinary(final BinaryInput in) throws IOException,
+                ParseException {
+            final BinaryReader<IBuilder<String>> factory = new StringFactory();
+            return BinaryConverter.readList(in, factory);
+        }
+    }
+}
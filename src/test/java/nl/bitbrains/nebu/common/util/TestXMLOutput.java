@@ -0,0 +1,193 @@
+package nl.bitbrains.nebu.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.bitbrains.nebu.common.VirtualMachine;
+import nl.bitbrains.nebu.common.VirtualMachine.Status;
+import nl.bitbrains.nebu.common.VirtualMachineBuilder;
+import nl.bitbrains.nebu.common.factories.IntegerFactory;
+import nl.bitbrains.nebu.common.factories.StringFactory;
+import nl.bitbrains.nebu.common.factories.VirtualMachineFactory;
+import nl.bitbrains.nebu.common.topology.PhysicalHost;
+import nl.bitbrains.nebu.common.topology.PhysicalHostBuilder;
+import nl.bitbrains.nebu.common.topology.PhysicalTopology;
+import nl.bitbrains.nebu.common.topology.PhysicalTopologyBenchmark;
+import nl.bitbrains.nebu.common.topology.factory.PhysicalRootFactory;
+import nl.bitbrains.nebu.common.topology.factory.TopologyFactories;
+import nl.bitbrains.nebu.common.util.xml.XMLConverter;
+import nl.bitbrains.nebu.common.util.xml.XMLOutput;
+import nl.bitbrains.nebu.common.util.xml.XMLWriter;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link XMLOutput} class and the streaming factories, which
+ * should write exactly what JDOM writes.
+ * 
+ * @author Jesse Donkervliet, Tim Hegeman, and Stefan Hugtenburg
+ * 
+ */
+public class TestXMLOutput {
+
+    private StringWriter writer;
+    private XMLOutput out;
+
+    @Before
+    public void setUp() {
+        this.writer = new StringWriter();
+        this.out = new XMLOutput(this.writer);
+    }
+
+    private String written() throws IOException {
+        this.out.flush();
+        return this.writer.toString();
+    }
+
+    private static Element trickyElement() {
+        final Element elem = new Element("root").setAttribute("id", "a\"b<&>'\t\n\r c");
+        elem.addContent(new Element("empty"));
+        elem.addContent(new Element("text").addContent("x<&>\"'\r\n\t y \u00e9 \ud83d\ude00"));
+        elem.addContent(new Element("emptyText").addContent(""));
+        elem.addContent(new Element("nullText").addContent((String) null));
+        elem.addContent(new Element("mixed").addContent("a").addContent(new Element("b"))
+                .addContent("c"));
+        return elem;
+    }
+
+    @Test
+    public void testElementMatchesJDOM() throws IOException {
+        final Element elem = TestXMLOutput.trickyElement();
+        this.out.element(elem);
+        final String written = this.written();
+        Assert.assertEquals(new XMLOutputter().outputString(elem), written);
+        Assert.assertTrue(written.contains(" \u00e9 &#x1f600;"));
+    }
+
+    @Test
+    public void testDocumentMatchesJDOM() throws IOException {
+        final Element elem = TestXMLOutput.trickyElement();
+        this.out.startDocument();
+        this.out.element(elem);
+        this.out.endDocument();
+        Assert.assertEquals(new XMLOutputter().outputString(new Document(elem)), this.written());
+    }
+
+    @Test
+    public void testOutputStreamMatchesJDOM() throws IOException {
+        final Element elem = TestXMLOutput.trickyElement();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new XMLOutputter().output(new Document(elem), expected);
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final XMLOutput streamOut = new XMLOutput(actual);
+        streamOut.startDocument();
+        streamOut.element(elem);
+        streamOut.endDocument();
+        Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testTextElement() throws IOException {
+        this.out.textElement("a", "b");
+        Assert.assertEquals("<a>b</a>", this.written());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAttributeAfterContent() throws IOException {
+        this.out.startElement("a");
+        this.out.text("b");
+        this.out.attribute("c", "d");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndWithoutStart() throws IOException {
+        this.out.endElement();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndDocumentWithOpenElement() throws IOException {
+        this.out.startDocument();
+        this.out.startElement("a");
+        this.out.endDocument();
+    }
+
+    @Test
+    public void testWriteWithNonStreamingFactory() throws IOException {
+        final XMLWriter<String> factory = new XMLWriter<String>() {
+            @Override
+            public Element toXML(final String object) {
+                return new Element("item").setAttribute("id", object);
+            }
+        };
+        this.out.write("x", factory);
+        Assert.assertEquals("<item id=\"x\" />", this.written());
+    }
+
+    private static List<VirtualMachine> createVirtualMachines() {
+        final List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        for (int i = 0; i < 3; i++) {
+            vms.add(new VirtualMachineBuilder().withUuid("vm" + i).withHostname("name" + i)
+                    .withStatus(Status.ON).withHost("host" + i).withDisk("disk" + i)
+                    .withDisk("disk" + i + "b").build());
+        }
+        return vms;
+    }
+
+    @Test
+    public void testVirtualMachineListMatchesJDOM() throws IOException {
+        final List<VirtualMachine> vms = TestXMLOutput.createVirtualMachines();
+        final VirtualMachineFactory factory = new VirtualMachineFactory();
+        XMLConverter.writeCollection(vms, factory, VirtualMachineFactory.TAG_LIST_ELEMENT_ROOT,
+                                     this.out);
+        Assert.assertEquals(new XMLOutputter().outputString(XMLConverter
+                .convertCollectionToJDOMElement(vms,
+                                                factory,
+                                                VirtualMachineFactory.TAG_LIST_ELEMENT_ROOT,
+                                                XMLConverter.TAG_ITEM)), this.written());
+    }
+
+    @Test
+    public void testShortVirtualMachineListMatchesJDOM() throws IOException {
+        final List<VirtualMachine> vms = TestXMLOutput.createVirtualMachines();
+        final VirtualMachineFactory factory = new VirtualMachineFactory(false);
+        XMLConverter.writeCollection(vms, factory, this.out);
+        Assert.assertEquals(new XMLOutputter().outputString(XMLConverter
+                .convertCollectionToJDOMElement(vms, factory)), this.written());
+    }
+
+    @Test
+    public void testMapMatchesJDOM() throws IOException {
+        final Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("one", 1);
+        map.put("two & three", 23);
+        XMLConverter.writeMap(map, new StringFactory(), new IntegerFactory(), this.out);
+        Assert.assertEquals(new XMLOutputter().outputString(XMLConverter
+                .convertMapToJDOMElement(map, new StringFactory(), new IntegerFactory())), this
+                .written());
+    }
+
+    @Test
+    public void testTopologyMatchesJDOM() throws IOException {
+        final PhysicalTopology topology = PhysicalTopologyBenchmark.createTopology(3, 4);
+        final PhysicalHost host = new PhysicalHostBuilder().withCpuUsage(0.5).withMemUsage(0.25)
+                .withUuid("busyHost").build();
+        topology.addCPUToRack(host, topology.getRacks().get(0));
+        final PhysicalRootFactory factory = (PhysicalRootFactory) TopologyFactories
+                .createDefault().getPhysicalRootFactory();
+        this.out.startDocument();
+        factory.writeXML(topology.getRoot(), this.out);
+        this.out.endDocument();
+        Assert.assertEquals(new XMLOutputter().outputString(new Document(factory.toXML(topology
+                .getRoot()))), this.written());
+    }
+}